@@ -0,0 +1,156 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Valida o motor de conflitos (AgendaRecursos) contra um ano de agendamentos sintéticos: cada mesa
+// ou sala cheia das 8h às 18h, com funcionários e animais repetidos. Confere livre/conflitos com a
+// varredura da lista inteira (o que a tela precisaria fazer sem o motor) e mede as duas.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkAgenda 2000
+public class BenchmarkAgenda {
+    private static final int CONSULTAS = 2_000;
+    private static final int[] DURACOES = {30, 30, 45, 60, 90};
+
+    public static void main(String[] args) {
+        int quantidadeAnimais = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        Random random = new Random(42);
+        List<PetshopSystemSwing.Agendamento> agendamentos = new ArrayList<>();
+        AgendaRecursos<PetshopSystemSwing.Agendamento> ocupacao = novaOcupacao(agendamentos);
+
+        List<PetshopSystemSwing.Animal> animais = new ArrayList<>();
+        for (int i = 0; i < quantidadeAnimais; i++) {
+            animais.add(new PetshopSystemSwing.Animal("Rex " + i, false, "", "Cachorro", "Macho"));
+        }
+        long[] funcionarios = new long[10];
+        for (int i = 0; i < funcionarios.length; i++) {
+            funcionarios[i] = new PetshopSystemSwing.Funcionario("Funcionário " + i, "", "", "", "", "Feminino").id;
+        }
+
+        // Um ano de agenda: em cada recurso, agendamentos seguidos com intervalos aleatórios; só
+        // entra o que o motor aceita, como na tela
+        ZoneId zona = ZoneId.systemDefault();
+        LocalDate primeiroDia = LocalDate.of(2025, 1, 1);
+        long inicioAno = primeiroDia.atStartOfDay(zona).toEpochSecond() / 60;
+        long fimAno = primeiroDia.plusYears(1).atStartOfDay(zona).toEpochSecond() / 60;
+        int recusados = 0;
+        long montagem = System.nanoTime();
+        for (LocalDate dia = primeiroDia; dia.isBefore(primeiroDia.plusYears(1)); dia = dia.plusDays(1)) {
+            long inicioDia = dia.atStartOfDay(zona).toEpochSecond() / 60;
+            for (String recurso : PetshopSystemSwing.RECURSOS_AGENDA) {
+                long minuto = inicioDia + PetshopSystemSwing.ABERTURA_EXPEDIENTE + random.nextInt(4) * 15;
+                while (true) {
+                    int duracao = DURACOES[random.nextInt(DURACOES.length)];
+                    if (minuto + duracao > inicioDia + PetshopSystemSwing.FECHAMENTO_EXPEDIENTE) break;
+                    PetshopSystemSwing.Agendamento agendamento = new PetshopSystemSwing.Agendamento(
+                            animais.get(random.nextInt(animais.size())), IndiceHorario.horario(minuto), "Banho e tosa");
+                    agendamento.recurso = recurso;
+                    agendamento.funcionario = funcionarios[random.nextInt(funcionarios.length)];
+                    agendamento.duracao = duracao;
+                    if (ocupacao.livre(agendamento.recursos(), minuto, duracao, 0)) {
+                        agendamentos.add(agendamento);
+                        ocupacao.adicionar(agendamento);
+                    } else {
+                        recusados++;
+                    }
+                    minuto += duracao + random.nextInt(3) * 15;
+                }
+            }
+        }
+        System.out.printf("%,d agendamentos em um ano (%,d recusados por conflito), gerados em %.0f ms%n",
+                agendamentos.size(), recusados, (System.nanoTime() - montagem) / 1e6);
+
+        long inicio = System.nanoTime();
+        novaOcupacao(agendamentos).livre(new String[0], 0, 1, 0);
+        System.out.printf("motor montado a partir da lista em %.1f ms%n", (System.nanoTime() - inicio) / 1e6);
+
+        // Consultas: mesa, funcionário e animal aleatórios num horário aleatório do ano
+        String[][] recursos = new String[CONSULTAS][];
+        long[] minutos = new long[CONSULTAS];
+        int[] duracoes = new int[CONSULTAS];
+        for (int i = 0; i < CONSULTAS; i++) {
+            recursos[i] = PetshopSystemSwing.recursosAgendamento(PetshopSystemSwing.RECURSOS_AGENDA[random.nextInt(PetshopSystemSwing.RECURSOS_AGENDA.length)],
+                    funcionarios[random.nextInt(funcionarios.length)], animais.get(random.nextInt(animais.size())));
+            minutos[i] = inicioAno + (long) (random.nextDouble() * (fimAno - inicioAno)) / 15 * 15;
+            duracoes[i] = DURACOES[random.nextInt(DURACOES.length)];
+        }
+
+        int livres = 0;
+        for (int i = 0; i < CONSULTAS; i++) {
+            boolean livre = ocupacao.livre(recursos[i], minutos[i], duracoes[i], 0);
+            if (livre != varredura(agendamentos, recursos[i], minutos[i], duracoes[i]).isEmpty()
+                    || ocupacao.conflitos(recursos[i], minutos[i], duracoes[i], 0).size() != varredura(agendamentos, recursos[i], minutos[i], duracoes[i]).size()) {
+                throw new IllegalStateException("Motor e varredura discordam na consulta " + i);
+            }
+            if (livre) livres++;
+            long sugerido = ocupacao.proximoLivre(recursos[i], minutos[i], duracoes[i], 0);
+            if (!varredura(agendamentos, recursos[i], sugerido, duracoes[i]).isEmpty()) {
+                throw new IllegalStateException("Horário sugerido ocupado na consulta " + i);
+            }
+        }
+        System.out.printf("%,d consultas conferidas com a varredura (%,d horários livres)%n", CONSULTAS, livres);
+
+        double motor = medir(() -> {
+            int n = 0;
+            for (int i = 0; i < CONSULTAS; i++) {
+                if (ocupacao.livre(recursos[i], minutos[i], duracoes[i], 0)) n++;
+            }
+            return n;
+        });
+        double varredura = medir(() -> {
+            int n = 0;
+            for (int i = 0; i < CONSULTAS; i++) {
+                if (varredura(agendamentos, recursos[i], minutos[i], duracoes[i]).isEmpty()) n++;
+            }
+            return n;
+        });
+        double sugestoes = medir(() -> {
+            long n = 0;
+            for (int i = 0; i < CONSULTAS; i++) {
+                n += ocupacao.sugerir(recursos[i], minutos[i], duracoes[i], 5, 0)[4];
+            }
+            return n;
+        });
+        System.out.printf("horário livre?   motor %8.2f us   varredura %10.2f us%n", motor, varredura);
+        System.out.printf("5 sugestões      motor %8.2f us%n", sugestoes);
+    }
+
+    private static AgendaRecursos<PetshopSystemSwing.Agendamento> novaOcupacao(List<PetshopSystemSwing.Agendamento> agendamentos) {
+        return new AgendaRecursos<>(() -> agendamentos, PetshopSystemSwing.Agendamento::recursos,
+                PetshopSystemSwing.Agendamento::minuto, a -> a.duracao, a -> a.id,
+                PetshopSystemSwing.ABERTURA_EXPEDIENTE, PetshopSystemSwing.FECHAMENTO_EXPEDIENTE);
+    }
+
+    // Conflitos achados percorrendo todos os agendamentos
+    private static List<Long> varredura(List<PetshopSystemSwing.Agendamento> agendamentos, String[] recursos, long de, int minutos) {
+        List<Long> conflitos = new ArrayList<>();
+        for (PetshopSystemSwing.Agendamento agendamento : agendamentos) {
+            long inicio = agendamento.minuto();
+            if (inicio >= de + minutos || inicio + agendamento.duracao <= de) continue;
+            for (String recurso : agendamento.recursos()) {
+                if (List.of(recursos).contains(recurso)) {
+                    conflitos.add(agendamento.id);
+                    break;
+                }
+            }
+        }
+        return conflitos;
+    }
+
+    interface Consultas {
+        Object executar();
+    }
+
+    // Microssegundos por consulta, depois de aquecer
+    private static double medir(Consultas consultas) {
+        for (int i = 0; i < 3; i++) {
+            consultas.executar();
+        }
+        long inicio = System.nanoTime();
+        consultas.executar();
+        return (System.nanoTime() - inicio) / 1e3 / CONSULTAS;
+    }
+}
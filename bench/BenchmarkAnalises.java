@@ -0,0 +1,143 @@
+import java.nio.file.Files;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Análises do histórico: vários anos de agendamentos e de vendas sintéticos. Mede a primeira
+// análise (colunas e contagens em paralelo), a repetida sem dados novos (guardada), a repetida
+// depois de algumas vendas (só as novas são contadas) e depois de um agendamento remarcado. Como
+// referência, o jeito direto: percorrer a lista de Agendamento numa thread só. Confere o texto
+// contra contagens diretas: agendamentos por dia da semana, o cliente com mais visitas e o produto
+// com mais receita.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkAnalises 500000 100000     (agendamentos, vendas)
+public class BenchmarkAnalises {
+    private static final int CLIENTES = 20_000;
+    private static final int PRODUTOS = 200;
+    private static final int ANOS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int quantidadeVendas = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        PetshopSystemSwing.saidaErros = mensagem -> {
+            throw new IllegalStateException(mensagem);
+        };
+        PetshopSystemSwing.carregarDados(Files.createTempDirectory("petshop-analises"));
+
+        // Direto nas listas, sem diário: o primeiro instantâneo é montado das listas
+        Random random = new Random(42);
+        List<PetshopSystemSwing.Animal> animais = new ArrayList<>();
+        for (int i = 0; i < CLIENTES; i++) {
+            PetshopSystemSwing.Cliente cliente = new PetshopSystemSwing.Cliente("Cliente " + i, "", "", "", "", "Feminino");
+            PetshopSystemSwing.clientes.add(cliente);
+            PetshopSystemSwing.Animal animal = new PetshopSystemSwing.Animal("Rex " + i, false, "", "Vira lata", "Macho");
+            animal.adicionarCliente(cliente);
+            if (i > 0 && random.nextInt(4) == 0) animal.adicionarCliente(PetshopSystemSwing.clientes.get(random.nextInt(i)));
+            PetshopSystemSwing.animais.add(animal);
+            animais.add(animal);
+        }
+        LocalDateTime inicioHistorico = LocalDateTime.now().withMinute(0).withSecond(0).withNano(0).minusYears(ANOS);
+        for (int i = 0; i < quantidade; i++) {
+            // Horário comercial, com mais movimento perto do fim de semana
+            LocalDateTime horario = inicioHistorico.plusDays(random.nextInt(ANOS * 365)).withHour(8 + random.nextInt(10));
+            if (random.nextInt(3) == 0) horario = horario.plusDays(5 - horario.getDayOfWeek().getValue() % 7 + random.nextInt(2));
+            PetshopSystemSwing.agendamentos.add(new PetshopSystemSwing.Agendamento(animais.get(random.nextInt(animais.size())), horario, "Banho"));
+        }
+        List<LivroVendas.Produto> produtos = new ArrayList<>();
+        for (int i = 0; i < PRODUTOS; i++) {
+            LivroVendas.Produto produto = new LivroVendas.Produto(String.format("SKU%05d", i), "Produto " + i, 100 + random.nextInt(20_000), 0);
+            PetshopSystemSwing.cadastrarProduto(produto);
+            PetshopSystemSwing.movimentarEstoque(produto, quantidadeVendas * 4);
+            produtos.add(produto);
+        }
+        vender(random, produtos, quantidadeVendas);
+        System.out.printf("%,d agendamentos em %d anos, %,d vendas, %,d clientes; %d thread(s) no fork-join%n",
+                quantidade, ANOS, quantidadeVendas, CLIENTES, ForkJoinPool.getCommonPoolParallelism());
+
+        long inicio = System.nanoTime();
+        Repositorio.Instantaneo dados = Repositorio.instantaneo();
+        System.out.printf("instantâneo: %.0f ms%n", (System.nanoTime() - inicio) / 1e6);
+
+        inicio = System.nanoTime();
+        Analises.Resultado resultado = Analises.analisar(dados);
+        System.out.printf("primeira análise: %.0f ms%n", (System.nanoTime() - inicio) / 1e6);
+        String texto = Analises.texto(resultado, dados);
+        conferir(texto, dados);
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < 100; i++) Analises.analisar(Repositorio.instantaneo());
+        System.out.printf("sem dados novos: %.3f ms por análise%n", (System.nanoTime() - inicio) / 100 / 1e6);
+
+        vender(random, produtos, 1_000);
+        inicio = System.nanoTime();
+        dados = Repositorio.instantaneo();
+        texto = Analises.texto(Analises.analisar(dados), dados);
+        System.out.printf("depois de 1.000 vendas: %.1f ms (instantâneo e análise)%n", (System.nanoTime() - inicio) / 1e6);
+        conferir(texto, dados);
+
+        PetshopSystemSwing.Agendamento remarcado = PetshopSystemSwing.agendamentos.get(0);
+        remarcado.horario = remarcado.horario.plusDays(1);
+        PetshopSystemSwing.registrarAlteracao(remarcado);
+        inicio = System.nanoTime();
+        dados = Repositorio.instantaneo();
+        texto = Analises.texto(Analises.analisar(dados), dados);
+        System.out.printf("depois de um agendamento remarcado: %.0f ms (instantâneo e análise)%n", (System.nanoTime() - inicio) / 1e6);
+        conferir(texto, dados);
+
+        inicio = System.nanoTime();
+        int[] porHora = direto();
+        System.out.printf("referência, a lista de Agendamento numa thread só: %.0f ms%n", (System.nanoTime() - inicio) / 1e6);
+        int total = 0;
+        for (int contagem : porHora) total += contagem;
+        if (total != quantidade) throw new IllegalStateException("Contagem direta: " + total);
+        PetshopSystemSwing.encerrarPersistencia();
+    }
+
+    private static void vender(Random random, List<LivroVendas.Produto> produtos, int quantidade) {
+        for (int i = 0; i < quantidade; i++) {
+            LivroVendas.Produto produto = produtos.get(random.nextInt(produtos.size()));
+            int itens = 1 + random.nextInt(3);
+            if (!PetshopSystemSwing.livroVendas.estoque.reservar(produto.sku, itens)) throw new IllegalStateException("Sem estoque: " + produto.sku);
+            PetshopSystemSwing.registrarVenda(produto, itens, PetshopSystemSwing.clientes.get(random.nextInt(CLIENTES)).id);
+        }
+    }
+
+    // Dias da semana, visitas dos clientes mais frequentes e receita contra a contagem direta
+    private static void conferir(String texto, Repositorio.Instantaneo dados) {
+        int[] porHora = direto();
+        int[] porDia = new int[7];
+        for (int i = 0; i < porHora.length; i++) porDia[i / 24] += porHora[i];
+        for (int dia = 0; dia < 7; dia++) {
+            String nome = DayOfWeek.of(dia + 1).getDisplayName(TextStyle.SHORT, new Locale("pt", "BR"));
+            if (!texto.contains(String.format("  %-8s %d%n", nome, porDia[dia]))) throw new IllegalStateException("Dia " + nome + " diferente:\n" + texto);
+        }
+        HashMap<Long, Integer> visitas = new HashMap<>();
+        for (PetshopSystemSwing.Agendamento agendamento : PetshopSystemSwing.agendamentos) {
+            for (PetshopSystemSwing.Cliente cliente : agendamento.animal.clientes) visitas.merge(cliente.id, 1, Integer::sum);
+        }
+        int maior = 0;
+        for (int quantidade : visitas.values()) maior = Math.max(maior, quantidade);
+        if (!texto.contains(": " + maior + " visita(s)")) throw new IllegalStateException("Cliente mais frequente com " + maior + " visitas fora do texto:\n" + texto);
+        HashMap<String, Long> receitas = new HashMap<>();
+        for (LivroVendas.Venda venda : dados.vendas) receitas.merge(venda.sku, venda.totalCentavos(), Long::sum);
+        long maiorReceita = 0;
+        for (long receita : receitas.values()) maiorReceita = Math.max(maiorReceita, receita);
+        if (!texto.contains(LivroVendas.reais(maiorReceita) + "\n")) throw new IllegalStateException("Maior receita " + maiorReceita + " fora do texto:\n" + texto);
+    }
+
+    private static int[] direto() {
+        int[] porHora = new int[7 * 24];
+        for (PetshopSystemSwing.Agendamento agendamento : PetshopSystemSwing.agendamentos) {
+            porHora[(agendamento.horario.getDayOfWeek().getValue() - 1) * 24 + agendamento.horario.getHour()]++;
+        }
+        return porHora;
+    }
+}
@@ -0,0 +1,167 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Carga na API como vários terminais ao mesmo tempo: sobe o ServidorApi neste processo sobre uma
+// pasta temporária, cadastra clientes e animais pela própria API e então dispara requisições de
+// vários clientes HTTP por um tempo fixo (leituras por id, buscas e alterações). Mede requisições
+// por segundo e a latência (percentis) vista por quem chama, incluindo a espera pela thread dona.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkApi 32 10 2000     (clientes HTTP, segundos, cadastros)
+public class BenchmarkApi {
+    private static final int AQUECIMENTO_S = 3;
+
+    public static void main(String[] args) throws Exception {
+        int clientesHttp = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int cadastros = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        Path pasta = Files.createTempDirectory("petshop-api");
+        PetshopSystemSwing.saidaErros = mensagem -> System.err.println("erro: " + mensagem);
+        PetshopSystemSwing.carregarDados(pasta);
+        Thread[] threadDados = new Thread[1];
+        ExecutorService dono = Executors.newSingleThreadExecutor(tarefa -> threadDados[0] = new Thread(tarefa, "petshop-dados"));
+        ServidorApi servidor = new ServidorApi(ServidorApi.endereco("0"), dono, () -> Thread.currentThread() == threadDados[0], null);
+        dono.submit(servidor::iniciar).get();
+        String base = "http://localhost:" + servidor.porta() + "/api/";
+        HttpClient http = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(4)).build();
+
+        Random random = new Random(42);
+        long[] idsClientes = new long[cadastros];
+        long inicio = System.nanoTime();
+        for (int i = 0; i < cadastros; i++) {
+            String nome = "Cliente " + nome(random);
+            HttpResponse<String> resposta = enviar(http, "POST", base + "clientes", "{\"nome\":\"" + nome + "\",\"email\":\"cliente" + i
+                    + "@email.com.br\",\"telefone\":\"619" + String.format("%08d", i) + "\",\"cpf\":\"" + cpf(random) + "\",\"cep\":\"70000000\"}");
+            if (resposta.statusCode() != 201) {
+                i--;
+                continue;
+            }
+            idsClientes[i] = id(resposta);
+            resposta = enviar(http, "POST", base + "animais", "{\"nome\":\"Rex " + nome(random) + "\",\"raca\":\"Vira lata\",\"donos\":[" + idsClientes[i] + "]}");
+            if (resposta.statusCode() != 201) throw new IllegalStateException(resposta.body());
+        }
+        System.out.printf("%,d clientes e %,d animais cadastrados pela API em %d ms%n", cadastros, cadastros,
+                (System.nanoTime() - inicio) / 1_000_000);
+
+        medir(http, base, idsClientes, clientesHttp, AQUECIMENTO_S, null);
+        medir(http, base, idsClientes, clientesHttp, segundos, "mistura 70% leitura, 20% busca, 10% alteração");
+
+        servidor.parar();
+        dono.shutdown();
+        PetshopSystemSwing.encerrarPersistencia();
+        System.exit(0);
+    }
+
+    private static void medir(HttpClient http, String base, long[] ids, int clientesHttp, int segundos, String nome) throws Exception {
+        long fim = System.nanoTime() + segundos * 1_000_000_000L;
+        long[][] latencias = new long[clientesHttp][];
+        int[] quantidades = new int[clientesHttp];
+        AtomicInteger erros = new AtomicInteger();
+        Thread[] threads = new Thread[clientesHttp];
+        for (int t = 0; t < clientesHttp; t++) {
+            int indice = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(indice);
+                long[] medidas = new long[1 << 16];
+                int n = 0;
+                while (System.nanoTime() < fim) {
+                    long id = ids[random.nextInt(ids.length)];
+                    int sorteio = random.nextInt(10);
+                    long antes = System.nanoTime();
+                    try {
+                        HttpResponse<String> resposta;
+                        if (sorteio < 7) {
+                            resposta = enviar(http, "GET", base + "clientes/" + id, null);
+                        } else if (sorteio < 9) {
+                            resposta = enviar(http, "GET", base + "animais?limite=20&busca=" + (char) ('a' + random.nextInt(26))
+                                    + (char) ('a' + random.nextInt(26)), null);
+                        } else {
+                            resposta = enviar(http, "PUT", base + "clientes/" + id,
+                                    "{\"telefone\":\"619" + String.format("%08d", random.nextInt(100_000_000)) + "\"}");
+                        }
+                        if (resposta.statusCode() >= 300) erros.incrementAndGet();
+                    } catch (Exception e) {
+                        erros.incrementAndGet();
+                    }
+                    if (n == medidas.length) medidas = Arrays.copyOf(medidas, n * 2);
+                    medidas[n++] = System.nanoTime() - antes;
+                }
+                latencias[indice] = medidas;
+                quantidades[indice] = n;
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        if (nome == null) return;
+
+        int total = 0;
+        for (int n : quantidades) total += n;
+        long[] todas = new long[total];
+        int posicao = 0;
+        for (int t = 0; t < clientesHttp; t++) {
+            System.arraycopy(latencias[t], 0, todas, posicao, quantidades[t]);
+            posicao += quantidades[t];
+        }
+        Arrays.sort(todas);
+        System.out.printf("%s, %d clientes HTTP: %,.0f requisições/s, %d erro(s)%n", nome, clientesHttp, total / (double) segundos, erros.get());
+        System.out.printf("  latência p50 %.2f ms  p95 %.2f ms  p99 %.2f ms  máx %.2f ms%n", percentil(todas, 50),
+                percentil(todas, 95), percentil(todas, 99), todas[todas.length - 1] / 1e6);
+    }
+
+    private static double percentil(long[] ordenadas, int percentil) {
+        return ordenadas[Math.min(ordenadas.length - 1, (int) ((long) ordenadas.length * percentil / 100))] / 1e6;
+    }
+
+    private static HttpResponse<String> enviar(HttpClient http, String metodo, String url, String corpo) throws Exception {
+        HttpRequest requisicao = HttpRequest.newBuilder(URI.create(url))
+                .method(metodo, corpo == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(corpo, StandardCharsets.UTF_8))
+                .build();
+        return http.send(requisicao, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long id(HttpResponse<String> resposta) {
+        return (Long) ((Map<String, Object>) Json.ler(resposta.body())).get("id");
+    }
+
+    private static String nome(Random random) {
+        char[] letras = new char[6 + random.nextInt(8)];
+        for (int i = 0; i < letras.length; i++) {
+            letras[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letras);
+    }
+
+    // CPF aleatório com os dígitos verificadores certos
+    private static String cpf(Random random) {
+        int[] d = new int[11];
+        for (int i = 0; i < 9; i++) {
+            d[i] = random.nextInt(10);
+        }
+        for (int posicao = 9; posicao < 11; posicao++) {
+            int soma = 0;
+            for (int i = 0; i < posicao; i++) {
+                soma += d[i] * (posicao + 1 - i);
+            }
+            d[posicao] = soma * 10 % 11 % 10;
+        }
+        StringBuilder cpf = new StringBuilder();
+        for (int digito : d) {
+            cpf.append(digito);
+        }
+        return cpf.toString();
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Compara a busca da tela de clientes pelo índice de trigramas (IndiceBusca) com o filtro
+// antigo, que converte e compara todos os campos de todos os clientes a cada tecla.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkBusca 100000
+public class BenchmarkBusca {
+    private static final int REPETICOES = 200;
+
+    public static void main(String[] args) {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        BenchmarkPersistencia.gerarDados(quantidade);
+        List<PetshopSystemSwing.Cliente> clientes = PetshopSystemSwing.clientes;
+        IndiceBusca<PetshopSystemSwing.Cliente> indice = new IndiceBusca<>(() -> clientes,
+                c -> IndiceBusca.campos(c.nome, c.email, c.telefone, c.cpf, c.cep, c.sexo), c -> c.id, false);
+
+        long inicio = System.nanoTime();
+        indice.buscar("");
+        System.out.printf("%,d clientes, índice montado em %.1f ms%n", clientes.size(), (System.nanoTime() - inicio) / 1e6);
+
+        for (String busca : new String[]{"silva 4242", "gabriela", "cliente9999", "61900012", "70001234", "ana"}) {
+            int esperado = filtroAntigo(clientes, busca).size();
+            int encontrados = indice.buscar(busca).length;
+            if (encontrados != esperado) {
+                throw new IllegalStateException("'" + busca + "': índice achou " + encontrados + ", filtro achou " + esperado);
+            }
+            double antigo = medir(() -> filtroAntigo(clientes, busca));
+            double novo = medir(() -> indice.buscar(busca));
+            System.out.printf("%-14s %,7d resultados  filtro %8.3f ms  índice %8.3f ms%n", "'" + busca + "'", encontrados, antigo, novo);
+        }
+    }
+
+    private static double medir(Runnable busca) {
+        for (int i = 0; i < REPETICOES / 4; i++) {
+            busca.run();
+        }
+        long inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            busca.run();
+        }
+        return (System.nanoTime() - inicio) / 1e6 / REPETICOES;
+    }
+
+    // O filtro de abrirTelaClientes antes do índice
+    private static List<PetshopSystemSwing.Cliente> filtroAntigo(List<PetshopSystemSwing.Cliente> clientes, String texto) {
+        String busca = texto.trim().toLowerCase();
+        List<PetshopSystemSwing.Cliente> resultado = new ArrayList<>();
+        for (PetshopSystemSwing.Cliente cliente : clientes) {
+            if (cliente.nome.toLowerCase().contains(busca) ||
+                cliente.email.toLowerCase().contains(busca) ||
+                cliente.telefone.contains(busca) ||
+                cliente.cpf.contains(busca) ||
+                cliente.cep.contains(busca) ||
+                cliente.sexo.toLowerCase().contains(busca)) {
+                resultado.add(cliente);
+            }
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Disputa no estoque: várias threads (caixas) vendendo o mesmo SKU ao mesmo tempo, com reserva e
+// confirmação como numa venda, até o estoque acabar. Compara o Estoque (compareAndSet por SKU)
+// com o mesmo controle atrás de uma trava global, e depois com as vendas espalhadas por muitos
+// SKUs. Confere que nenhuma rodada vende mais do que havia (nem menos) e que o avaliador avisa o
+// estoque baixo uma só vez.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkEstoque 32 2000000     (threads, unidades em estoque por rodada)
+public class BenchmarkEstoque {
+    private static final int SKUS = 1000;
+
+    private interface Caixa {
+        // false = sem estoque
+        boolean vender(String sku);
+    }
+
+    // O que havia antes do Estoque: um mapa comum e uma trava para todos os SKUs
+    private static final class EstoqueTravado {
+        private final HashMap<String, long[]> saldos = new HashMap<>();
+
+        synchronized void somar(String sku, long quantidade) {
+            saldos.computeIfAbsent(sku, s -> new long[2])[0] += quantidade;
+        }
+
+        synchronized boolean reservar(String sku, int quantidade) {
+            long[] saldo = saldos.get(sku);
+            if (saldo[0] < quantidade) return false;
+            saldo[0] -= quantidade;
+            saldo[1] += quantidade;
+            return true;
+        }
+
+        synchronized void confirmar(String sku, int quantidade) {
+            saldos.get(sku)[1] -= quantidade;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int unidades = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        String[] skus = new String[SKUS];
+        for (int i = 0; i < SKUS; i++) skus[i] = String.format("SKU%05d", i);
+
+        for (int rodada = 0; rodada < 2; rodada++) {
+            // A primeira rodada é aquecimento
+            boolean mostrar = rodada == 1;
+
+            Estoque estoque = new Estoque();
+            estoque.definirMinimo(skus[0], unidades / 10);
+            estoque.somar(skus[0], unidades);
+            estoque.avaliar();
+            medir(mostrar, "Estoque, 1 SKU", threads, unidades, (sku) -> {
+                if (!estoque.reservar(skus[0], 1)) return false;
+                estoque.confirmar(skus[0], 1);
+                return true;
+            });
+            conferir(estoque.saldo(skus[0]), 0);
+            List<Estoque.Saldo> baixos = estoque.avaliar();
+            if (baixos.size() != 1 || !estoque.avaliar().isEmpty()) throw new IllegalStateException("Aviso de estoque baixo: " + baixos.size());
+
+            EstoqueTravado travado = new EstoqueTravado();
+            travado.somar(skus[0], unidades);
+            medir(mostrar, "trava global, 1 SKU", threads, unidades, (sku) -> {
+                if (!travado.reservar(skus[0], 1)) return false;
+                travado.confirmar(skus[0], 1);
+                return true;
+            });
+
+            Estoque espalhado = new Estoque();
+            for (String sku : skus) espalhado.somar(sku, unidades / SKUS);
+            medir(mostrar, "Estoque, " + SKUS + " SKUs", threads, unidades / SKUS * SKUS, (sku) -> {
+                if (!espalhado.reservar(sku, 1)) return false;
+                espalhado.confirmar(sku, 1);
+                return true;
+            }, skus);
+            for (String sku : skus) conferir(espalhado.saldo(sku), 0);
+
+            EstoqueTravado travadoEspalhado = new EstoqueTravado();
+            for (String sku : skus) travadoEspalhado.somar(sku, unidades / SKUS);
+            medir(mostrar, "trava global, " + SKUS + " SKUs", threads, unidades / SKUS * SKUS, (sku) -> {
+                if (!travadoEspalhado.reservar(sku, 1)) return false;
+                travadoEspalhado.confirmar(sku, 1);
+                return true;
+            }, skus);
+        }
+    }
+
+    private static void medir(boolean mostrar, String nome, int quantidadeThreads, long unidades, Caixa caixa, String... skus) throws InterruptedException {
+        AtomicLong vendidas = new AtomicLong();
+        Thread[] threads = new Thread[quantidadeThreads];
+        long inicio = System.nanoTime();
+        for (int t = 0; t < quantidadeThreads; t++) {
+            int indice = t;
+            threads[t] = new Thread(() -> {
+                long minhas = 0;
+                if (skus.length == 0) {
+                    while (caixa.vender(null)) minhas++;
+                } else {
+                    // Cada caixa percorre os SKUs a partir de um ponto diferente; um SKU esgotado sai da volta
+                    boolean[] esgotados = new boolean[skus.length];
+                    int restantes = skus.length;
+                    for (int i = indice * 7919; restantes > 0; i++) {
+                        int posicao = Math.floorMod(i, skus.length);
+                        if (esgotados[posicao]) continue;
+                        if (caixa.vender(skus[posicao])) {
+                            minhas++;
+                        } else {
+                            esgotados[posicao] = true;
+                            restantes--;
+                        }
+                    }
+                }
+                vendidas.addAndGet(minhas);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        long tempo = System.nanoTime() - inicio;
+        if (vendidas.get() != unidades) throw new IllegalStateException(nome + ": " + vendidas.get() + " vendidas de " + unidades);
+        if (mostrar) {
+            System.out.printf("%-28s %d threads: %,12.0f vendas/s (%,d unidades em %d ms)%n", nome, quantidadeThreads,
+                    unidades / (tempo / 1e9), unidades, tempo / 1_000_000);
+        }
+    }
+
+    private static void conferir(Estoque.Saldo saldo, int disponivel) {
+        int[] atual = saldo.saldo();
+        if (atual[0] != disponivel || atual[1] != 0) {
+            throw new IllegalStateException(saldo.sku + ": disponível " + atual[0] + ", reservado " + atual[1]);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+// Mede a alocação por linha ao filtrar e desenhar a tabela de agendamentos (colunas de animal,
+// data e horário): o jeito antigo (um SimpleDateFormat novo por célula, sobre um Date, e o texto
+// dos donos refeito a cada leitura) contra os textos guardados no Agendamento e no Animal. Sem
+// JMH no projeto: a alocação vem do contador por thread da JVM (com.sun.management.ThreadMXBean),
+// medida depois de aquecer.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkFormatacao 100000
+public class BenchmarkFormatacao {
+    private static final int AQUECIMENTO = 5;
+    private static final int MEDICOES = 10;
+
+    interface Filtro {
+        int executar();
+    }
+
+    public static void main(String[] args) {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random random = new Random(42);
+        List<PetshopSystemSwing.Animal> animais = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            PetshopSystemSwing.Animal animal = new PetshopSystemSwing.Animal("Rex " + i, false, "", "Cachorro", "Macho");
+            for (int j = 0; j <= i % 3; j++) {
+                animal.adicionarCliente(new PetshopSystemSwing.Cliente("Cliente " + i + "-" + j, "", "", String.format("%011d", i * 3 + j), "", "Feminino"));
+            }
+            animais.add(animal);
+        }
+        List<PetshopSystemSwing.Agendamento> agendamentos = new ArrayList<>();
+        List<Date> datas = new ArrayList<>();
+        long inicio = 1_700_000_000_000L / 60_000L;
+        for (int i = 0; i < quantidade; i++) {
+            PetshopSystemSwing.Agendamento agendamento = new PetshopSystemSwing.Agendamento(animais.get(random.nextInt(animais.size())),
+                    IndiceHorario.horario(inicio + random.nextInt(365 * 24 * 60)), "Banho e tosa");
+            agendamentos.add(agendamento);
+            datas.add(PetshopSystemSwing.paraDate(agendamento.horario));
+        }
+        String procurada = agendamentos.get(0).getDataFormatada().substring(3);
+
+        // As duas versões fazem o mesmo: filtram pelo mês/ano e leem as células de animal, data e horário
+        Filtro antigo = () -> {
+            int n = 0;
+            for (int i = 0; i < quantidade; i++) {
+                Date data = datas.get(i);
+                String dia = new SimpleDateFormat("dd/MM/yyyy").format(data);
+                if (!dia.endsWith(procurada)) continue;
+                PetshopSystemSwing.Animal animal = agendamentos.get(i).animal;
+                String donos = String.join(", ", animal.clientes.stream()
+                        .map(c -> c.nome + (c.cpf.isEmpty() ? "" : " (CPF: " + c.cpf + ")")).collect(Collectors.toList()));
+                n += (animal.nome + " (" + donos + ")").length() + dia.length() + new SimpleDateFormat("HH:mm").format(data).length();
+            }
+            return n;
+        };
+        Filtro atual = () -> {
+            int n = 0;
+            for (PetshopSystemSwing.Agendamento agendamento : agendamentos) {
+                String dia = agendamento.getDataFormatada();
+                if (!dia.endsWith(procurada)) continue;
+                n += agendamento.animal.toString().length() + dia.length() + agendamento.getHorarioFormatado().length();
+            }
+            return n;
+        };
+        if (antigo.executar() != atual.executar()) throw new IllegalStateException("Os filtros discordam");
+
+        System.out.printf("%,d agendamentos%n", quantidade);
+        medir("textos refeitos por célula", antigo, quantidade);
+        medir("textos guardados          ", atual, quantidade);
+
+        // Renomear um cliente refaz só os rótulos dos animais dele, na próxima leitura
+        PetshopSystemSwing.Animal animal = animais.get(0);
+        String antes = animal.toString();
+        animal.clientes.get(0).nome = "Cliente renomeado";
+        if (animal.toString().equals(antes) || !animal.getDonos().startsWith("Cliente renomeado")) {
+            throw new IllegalStateException("Rótulo não foi refeito depois de renomear o cliente");
+        }
+        if (animais.get(1).toString() != animais.get(1).toString()) {
+            throw new IllegalStateException("Rótulo refeito sem mudança");
+        }
+    }
+
+    private static void medir(String nome, Filtro filtro, int linhas) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        int resultado = 0;
+        for (int i = 0; i < AQUECIMENTO; i++) {
+            resultado += filtro.executar();
+        }
+        long bytes = threads.getThreadAllocatedBytes(id);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < MEDICOES; i++) {
+            resultado += filtro.executar();
+        }
+        long tempo = System.nanoTime() - inicio;
+        bytes = threads.getThreadAllocatedBytes(id) - bytes;
+        System.out.printf("%s  %8.1f bytes/linha  %7.1f ns/linha  (%d)%n", nome,
+                (double) bytes / MEDICOES / linhas, (double) tempo / MEDICOES / linhas, resultado);
+    }
+}
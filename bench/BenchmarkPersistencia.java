@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Compara gravação e carga do arquivo de dados: formato binário (CodecBinario) contra a
+// serialização Java (ObjectOutputStream) usada antes, e a abertura mapeada (ArquivoMapeado)
+// contra a decodificação do arquivo inteiro.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkPersistencia 100000
+public class BenchmarkPersistencia {
+    private static final int AQUECIMENTO = 5;
+    private static final int MEDICOES = 10;
+
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        gerarDados(quantidade);
+        int registros = PetshopSystemSwing.clientes.size() + PetshopSystemSwing.animais.size()
+                + PetshopSystemSwing.agendamentos.size() + PetshopSystemSwing.funcionarios.size();
+        System.out.printf("%d registros%n", registros);
+
+        byte[] serializado = gravarSerializacao();
+        byte[] binario = gravarBinario();
+        System.out.printf("tamanho: serialização %,d bytes, binário %,d bytes%n", serializado.length, binario.length);
+
+        medir("gravar serialização", registros, BenchmarkPersistencia::gravarSerializacao);
+        medir("gravar binário", registros, BenchmarkPersistencia::gravarBinario);
+        medir("carregar serialização", registros, () -> lerSerializacao(serializado));
+        medir("carregar binário", registros, () -> CodecBinario.decodificar(ByteBuffer.wrap(binario)));
+
+        Path arquivo = Files.createTempFile("petshop", ".dat");
+        try {
+            Files.write(arquivo, binario);
+            medir("abrir mapeado", registros, () -> abrirMapeado(arquivo));
+            medir("compactar mapeado", registros, () -> compactarMapeado(arquivo));
+        } finally {
+            Files.delete(arquivo);
+        }
+    }
+
+    interface Tarefa {
+        Object executar() throws Exception;
+    }
+
+    private static void medir(String nome, int registros, Tarefa tarefa) throws Exception {
+        for (int i = 0; i < AQUECIMENTO; i++) {
+            tarefa.executar();
+        }
+        long melhor = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < MEDICOES; i++) {
+            long inicio = System.nanoTime();
+            tarefa.executar();
+            long duracao = System.nanoTime() - inicio;
+            melhor = Math.min(melhor, duracao);
+            total += duracao;
+        }
+        double media = total / (double) MEDICOES;
+        System.out.printf("%-24s média %8.2f ms  melhor %8.2f ms  %,12.0f registros/s%n",
+                nome, media / 1e6, melhor / 1e6, registros / (media / 1e9));
+    }
+
+    private static byte[] gravarSerializacao() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(PetshopSystemSwing.clientes);
+            oos.writeObject(PetshopSystemSwing.animais);
+            oos.writeObject(PetshopSystemSwing.agendamentos);
+            oos.writeObject(PetshopSystemSwing.funcionarios);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gravarBinario() {
+        return CodecBinario.codificar(PetshopSystemSwing.clientes, PetshopSystemSwing.animais,
+                PetshopSystemSwing.agendamentos, PetshopSystemSwing.funcionarios, 1, PetshopSystemSwing.novoId(), id -> null);
+    }
+
+    // Abertura como na inicialização do sistema, mais a primeira tela da lista de clientes
+    private static Object abrirMapeado(Path arquivo) throws IOException {
+        ArquivoMapeado mapeado = ArquivoMapeado.abrir(arquivo);
+        List<PetshopSystemSwing.Cliente> clientes = mapeado.lista(Diario.CLIENTE);
+        for (int i = 0; i < Math.min(50, clientes.size()); i++) {
+            clientes.get(i);
+        }
+        return clientes;
+    }
+
+    // Snapshot novo a partir do arquivo mapeado sem decodificar nada: os registros são copiados
+    private static byte[] compactarMapeado(Path arquivo) throws IOException {
+        ArquivoMapeado mapeado = ArquivoMapeado.abrir(arquivo);
+        return CodecBinario.codificar(mapeado.lista(Diario.CLIENTE), mapeado.lista(Diario.ANIMAL),
+                mapeado.lista(Diario.AGENDAMENTO), mapeado.lista(Diario.FUNCIONARIO), 2, mapeado.proximoId, mapeado::obterPorId);
+    }
+
+    private static Object lerSerializacao(byte[] dados) throws Exception {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(dados))) {
+            return new Object[]{ois.readObject(), ois.readObject(), ois.readObject(), ois.readObject()};
+        }
+    }
+
+    // Base sintética: um animal por cliente, um agendamento por animal e um funcionário a cada 100 clientes
+    static void gerarDados(int quantidade) {
+        Random random = new Random(42);
+        String[] nomes = {"Ana", "Bruno", "Carla", "Diego", "Elisa", "Fábio", "Gabriela", "Heitor", "Íris", "João"};
+        String[] racas = {"Cachorro", "Gato", "Roedor", "Aves"};
+        PetshopSystemSwing.clientes = new ArrayList<>();
+        PetshopSystemSwing.animais = new ArrayList<>();
+        PetshopSystemSwing.agendamentos = new ArrayList<>();
+        PetshopSystemSwing.funcionarios = new ArrayList<>();
+        long inicio = 1_700_000_000_000L / 60_000L;
+        for (int i = 0; i < quantidade; i++) {
+            String nome = nomes[random.nextInt(nomes.length)] + " Silva " + i;
+            PetshopSystemSwing.Cliente cliente = new PetshopSystemSwing.Cliente(nome, "cliente" + i + "@email.com",
+                    String.format("619%08d", i), String.format("%011d", i), String.format("%08d", 70000000 + i % 10000), "Feminino");
+            PetshopSystemSwing.clientes.add(cliente);
+            PetshopSystemSwing.Animal animal = new PetshopSystemSwing.Animal("Rex " + i, false, "Observação " + i,
+                    racas[random.nextInt(racas.length)], random.nextBoolean() ? "Macho" : "Fêmea");
+            animal.adicionarCliente(cliente);
+            PetshopSystemSwing.animais.add(animal);
+            PetshopSystemSwing.agendamentos.add(new PetshopSystemSwing.Agendamento(animal,
+                    IndiceHorario.horario(inicio + random.nextInt(365 * 24 * 60)), "Banho e tosa"));
+            if (i % 100 == 0) {
+                PetshopSystemSwing.funcionarios.add(new PetshopSystemSwing.Funcionario("Funcionário " + i, "", "", "", "", "Masculino"));
+            }
+        }
+    }
+}
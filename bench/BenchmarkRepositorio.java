@@ -0,0 +1,273 @@
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Teste de carga do Repositorio: a thread dona altera clientes, animais e agendamentos sem parar
+// (inclusões, alterações, exclusões com a cascata nos donos) enquanto várias threads leem
+// instantâneos e conferem que cada um é coerente: cada linha de cliente tem email e CEP gravados
+// juntos, todo dono de animal existe no mesmo instantâneo, a versão nunca volta e um instantâneo
+// já lido não muda depois. Os leitores também pedem o relatório, e a thread dona confere de tempos
+// em tempos que os contadores mantidos (Agregados) batem com a contagem do zero e que as linhas
+// montadas aos poucos (Repositorio.Linhas.aplicar) são as mesmas das listas. No fim, exclui um
+// cliente e confere que os animais dele ganharam carimbo de alteração novo, para a exportação
+// incremental levá-los. Qualquer violação encerra com IllegalStateException. Mostra alterações por
+// segundo na thread dona, instantâneos lidos por segundo, o custo de montar um instantâneo e o de
+// um relatório.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkRepositorio 8 10 20000     (leitores, segundos, clientes)
+public class BenchmarkRepositorio {
+    private static final int LOTE = 200;
+    private static final int LOTES_POR_CONFERENCIA = 10;
+    private static final String[] RACAS = {"Vira lata", "Poodle", "Labrador", "Siamês", "Persa", ""};
+
+    public static void main(String[] args) throws Exception {
+        int leitores = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int quantidade = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        PetshopSystemSwing.saidaErros = mensagem -> System.err.println("erro: " + mensagem);
+        PetshopSystemSwing.carregarDados(Files.createTempDirectory("petshop-repositorio"));
+        Thread[] threadDados = new Thread[1];
+        ExecutorService dono = Executors.newSingleThreadExecutor(tarefa -> threadDados[0] = new Thread(tarefa, "petshop-dados"));
+        Repositorio.definirDono(dono, () -> Thread.currentThread() == threadDados[0]);
+
+        Random random = new Random(42);
+        List<PetshopSystemSwing.Cliente> vivos = new ArrayList<>();
+        dono.submit(() -> {
+            for (int i = 0; i < quantidade; i++) incluir(random, vivos);
+        }).get();
+
+        long inicio = System.nanoTime();
+        Repositorio.Instantaneo primeiro = Repositorio.instantaneo();
+        System.out.printf("%,d clientes e %,d animais; primeiro instantâneo montado em %.1f ms%n",
+                primeiro.linhas(Diario.CLIENTE).size(), primeiro.linhas(Diario.ANIMAL).size(), (System.nanoTime() - inicio) / 1e6);
+        inicio = System.nanoTime();
+        for (int i = 0; i < 1_000_000; i++) {
+            if (Repositorio.instantaneo() != primeiro) throw new IllegalStateException("Instantâneo refeito sem alteração");
+        }
+        System.out.printf("leitura sem alteração: %.0f ns por instantâneo%n", (System.nanoTime() - inicio) / 1e6);
+
+        long fim = System.nanoTime() + segundos * 1_000_000_000L;
+        AtomicLong lidos = new AtomicLong();
+        AtomicLong linhasConferidas = new AtomicLong();
+        Throwable[] falha = new Throwable[1];
+        Thread[] threads = new Thread[leitores];
+        for (int t = 0; t < leitores; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    long ultimaVersao = -1;
+                    Repositorio.Instantaneo guardado = null;
+                    long somaGuardado = 0;
+                    while (System.nanoTime() < fim) {
+                        Repositorio.Instantaneo dados = Repositorio.instantaneo();
+                        if (dados.versao < ultimaVersao) throw new IllegalStateException("Versão voltou: " + dados.versao + " < " + ultimaVersao);
+                        ultimaVersao = dados.versao;
+                        linhasConferidas.addAndGet(conferir(dados));
+                        Agregados.Resumo resumo = Agregados.resumo();
+                        if (resumo.versao < dados.versao) throw new IllegalStateException("Relatório anterior ao instantâneo já lido");
+                        if (resumo.versao == dados.versao && resumo.clientes != dados.linhas(Diario.CLIENTE).size()) {
+                            throw new IllegalStateException("Relatório com total de clientes diferente do instantâneo da mesma versão");
+                        }
+                        PetshopSystemSwing.gerarRelatorio(resumo);
+                        if (guardado == null) {
+                            guardado = dados;
+                            somaGuardado = soma(dados);
+                        }
+                        lidos.incrementAndGet();
+                    }
+                    if (soma(guardado) != somaGuardado) throw new IllegalStateException("Um instantâneo mudou depois de lido");
+                } catch (Throwable e) {
+                    falha[0] = e;
+                }
+            }, "leitor-" + t);
+            threads[t].start();
+        }
+
+        long alteracoes = 0;
+        long conferencias = 0;
+        long versaoInicial = Repositorio.versao();
+        while (System.nanoTime() < fim) {
+            // A contagem do zero pesa na thread dona: só a cada tantos lotes
+            boolean conferir = alteracoes / LOTE % LOTES_POR_CONFERENCIA == 0;
+            Agregados.Resumo[] conferencia = dono.submit(() -> {
+                for (int i = 0; i < LOTE; i++) alterar(random, vivos);
+                if (conferir) conferirLinhas(Repositorio.instantaneo());
+                return conferir ? Agregados.conferencia() : null;
+            }).get();
+            if (conferencia != null && !conferencia[0].mesmosNumeros(conferencia[1])) {
+                throw new IllegalStateException("Contadores mantidos diferentes da contagem do zero:\n"
+                        + PetshopSystemSwing.gerarRelatorio(conferencia[0]) + "\n" + PetshopSystemSwing.gerarRelatorio(conferencia[1]));
+            }
+            alteracoes += LOTE;
+            if (conferir) conferencias++;
+        }
+        for (Thread thread : threads) thread.join();
+        if (falha[0] != null) throw new IllegalStateException("Leitor encontrou um instantâneo incoerente", falha[0]);
+
+        System.out.printf("%d leitores, %d s: %,.0f alterações/s na thread dona, %,.0f instantâneos lidos/s, %,d linhas conferidas%n",
+                leitores, segundos, alteracoes / (double) segundos, lidos.get() / (double) segundos, linhasConferidas.get());
+        System.out.printf("versões: %,d; %,d conferências dos contadores; nenhuma incoerência encontrada%n", Repositorio.versao() - versaoInicial, conferencias);
+
+        // Relatório com uma alteração antes de cada um: contadores mantidos contra a contagem do zero
+        long mantido = 0;
+        long reconstruido = 0;
+        for (int i = 0; i < 200; i++) {
+            long[] tempos = dono.submit(() -> {
+                alterar(random, vivos);
+                long antes = System.nanoTime();
+                PetshopSystemSwing.gerarRelatorio(Agregados.resumo());
+                long meio = System.nanoTime();
+                PetshopSystemSwing.gerarRelatorio(Agregados.reconstruido());
+                return new long[]{meio - antes, System.nanoTime() - meio};
+            }).get();
+            mantido += tempos[0];
+            reconstruido += tempos[1];
+        }
+        System.out.printf("relatório: %.1f µs com os contadores mantidos, %.1f ms contando do zero%n", mantido / 200 / 1e3, reconstruido / 200 / 1e6);
+
+        int cascata = dono.submit(() -> conferirCascata(vivos)).get();
+        System.out.printf("exclusão de cliente: %d animal(is) com os donos alterados, todos depois da marca da exportação%n", cascata);
+
+        dono.shutdown();
+        PetshopSystemSwing.encerrarPersistencia();
+    }
+
+    // Clientes: email e CEP levam o mesmo número em cada alteração. Animais: donos no mesmo instantâneo
+    private static int conferir(Repositorio.Instantaneo dados) {
+        Repositorio.Linhas clientes = dados.linhas(Diario.CLIENTE);
+        for (Object[] linha : clientes) {
+            String email = (String) linha[2];
+            String cep = (String) linha[5];
+            if (!email.substring(1, email.indexOf('@')).equals(cep)) {
+                throw new IllegalStateException("Cliente " + linha[0] + " com email " + email + " e CEP " + cep);
+            }
+        }
+        Repositorio.Linhas animais = dados.linhas(Diario.ANIMAL);
+        for (Object[] linha : animais) {
+            for (long dono : (long[]) linha[7]) {
+                if (clientes.porId(dono) == null) throw new IllegalStateException("Animal " + linha[0] + " com dono " + dono + " fora do instantâneo");
+            }
+        }
+        return clientes.size() + animais.size();
+    }
+
+    // Na thread dona: os animais de um cliente excluído ficam com o carimbo depois da última
+    // alteração que já estava no instantâneo, senão a exportação incremental não os levaria
+    private static int conferirCascata(List<PetshopSystemSwing.Cliente> vivos) {
+        Repositorio.Linhas antes = Repositorio.instantaneo().linhas(Diario.ANIMAL);
+        PetshopSystemSwing.Cliente excluido = null;
+        for (Object[] linha : antes) {
+            if (((long[]) linha[7]).length == 0) continue;
+            excluido = (PetshopSystemSwing.Cliente) PetshopSystemSwing.entidadePorId(((long[]) linha[7])[0]);
+            break;
+        }
+        if (excluido == null) throw new IllegalStateException("Nenhum cliente com animal para excluir");
+        long marca = 0;
+        List<Long> doExcluido = new ArrayList<>();
+        for (Object[] linha : antes) {
+            marca = Math.max(marca, (Long) linha[8]);
+            for (long id : (long[]) linha[7]) {
+                if (id == excluido.id) doExcluido.add((Long) linha[0]);
+            }
+        }
+        vivos.remove(excluido);
+        PetshopSystemSwing.apagarCliente(excluido);
+        PetshopSystemSwing.registrarExclusao(excluido);
+        Repositorio.Linhas depois = Repositorio.instantaneo().linhas(Diario.ANIMAL);
+        for (long id : doExcluido) {
+            Object[] linha = depois.porId(id);
+            if ((Long) linha[8] <= marca) throw new IllegalStateException("Animal " + id + " perdeu um dono sem mudar o carimbo de alteração");
+        }
+        return doExcluido.size();
+    }
+
+    // Na thread dona: cada tipo do instantâneo tem as linhas das listas, na mesma ordem
+    private static void conferirLinhas(Repositorio.Instantaneo dados) {
+        for (byte tipo : new byte[]{Diario.CLIENTE, Diario.ANIMAL, Diario.AGENDAMENTO, Diario.FUNCIONARIO}) {
+            conferirLinhas(dados.linhas(tipo), Exportador.tabela(tipo));
+        }
+    }
+
+    private static <T> void conferirLinhas(Repositorio.Linhas linhas, Exportador.Tabela<T> tabela) {
+        List<T> lista = tabela.lista.get();
+        if (linhas.size() != lista.size()) throw new IllegalStateException(tabela.nome + ": " + linhas.size() + " linhas, " + lista.size() + " na lista");
+        for (int i = 0; i < lista.size(); i++) {
+            Object[] esperada = tabela.valores.valores(lista.get(i));
+            if (!Arrays.deepEquals(linhas.get(i), esperada) || linhas.porId((Long) esperada[0]) != linhas.get(i)
+                    || linhas.posicao((Long) esperada[0]) != i) {
+                throw new IllegalStateException(tabela.nome + ": linha " + i + " diferente da lista (id " + esperada[0] + ")");
+            }
+        }
+    }
+
+    private static long soma(Repositorio.Instantaneo dados) {
+        long soma = 0;
+        for (Object[] linha : dados.linhas(Diario.CLIENTE)) soma = soma * 31 + Arrays.hashCode(linha);
+        for (Object[] linha : dados.linhas(Diario.ANIMAL)) soma = soma * 31 + (Long) linha[0] + Arrays.hashCode((long[]) linha[7]);
+        return soma;
+    }
+
+    // Na thread dona, como as telas fazem
+    private static void incluir(Random random, List<PetshopSystemSwing.Cliente> vivos) {
+        int numero = random.nextInt(100_000_000);
+        PetshopSystemSwing.Cliente cliente = new PetshopSystemSwing.Cliente("Cliente " + nome(random), "c" + String.format("%08d", numero) + "@x.com.br",
+                "61999999999", "", String.format("%08d", numero), "Prefiro não responder");
+        PetshopSystemSwing.clientes.add(cliente);
+        PetshopSystemSwing.registrarInclusao(cliente);
+        vivos.add(cliente);
+        PetshopSystemSwing.Animal animal = new PetshopSystemSwing.Animal("Rex " + nome(random), false, "", RACAS[random.nextInt(RACAS.length)],
+                random.nextBoolean() ? "Macho" : "Fêmea");
+        animal.adicionarCliente(cliente);
+        if (vivos.size() > 1) animal.adicionarCliente(vivos.get(random.nextInt(vivos.size() - 1)));
+        PetshopSystemSwing.animais.add(animal);
+        PetshopSystemSwing.registrarInclusao(animal);
+        if (random.nextBoolean()) {
+            PetshopSystemSwing.Agendamento agendamento = new PetshopSystemSwing.Agendamento(animal, horario(random), "Banho");
+            PetshopSystemSwing.agendamentos.add(agendamento);
+            PetshopSystemSwing.registrarInclusao(agendamento);
+        }
+    }
+
+    private static void alterar(Random random, List<PetshopSystemSwing.Cliente> vivos) {
+        int sorteio = random.nextInt(10);
+        if (sorteio == 0 && !PetshopSystemSwing.agendamentos.isEmpty()) {
+            // Remarcação: o agendamento troca de dia nos contadores
+            PetshopSystemSwing.Agendamento agendamento = PetshopSystemSwing.agendamentos.get(random.nextInt(PetshopSystemSwing.agendamentos.size()));
+            agendamento.horario = horario(random);
+            PetshopSystemSwing.registrarAlteracao(agendamento);
+        } else if (sorteio < 7 || vivos.size() < 2) {
+            PetshopSystemSwing.Cliente cliente = vivos.get(random.nextInt(vivos.size()));
+            int numero = random.nextInt(100_000_000);
+            cliente.email = "c" + String.format("%08d", numero) + "@x.com.br";
+            cliente.cep = String.format("%08d", numero);
+            PetshopSystemSwing.registrarAlteracao(cliente);
+        } else if (sorteio < 9) {
+            incluir(random, vivos);
+        } else {
+            PetshopSystemSwing.Cliente cliente = vivos.remove(random.nextInt(vivos.size()));
+            PetshopSystemSwing.apagarCliente(cliente);
+            PetshopSystemSwing.registrarExclusao(cliente);
+        }
+    }
+
+    // De duas semanas atrás a duas semanas à frente
+    private static LocalDateTime horario(Random random) {
+        return LocalDateTime.now().withSecond(0).withNano(0).plusMinutes(random.nextInt(40_320) - 20_160);
+    }
+
+    private static String nome(Random random) {
+        char[] letras = new char[6 + random.nextInt(8)];
+        for (int i = 0; i < letras.length; i++) {
+            letras[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letras);
+    }
+}
@@ -0,0 +1,118 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+// Vazão da validação de cadastros: as regras como as telas faziam (Pattern.matches, que compila
+// a expressão a cada chamada) contra a Validacao (email pré-compilado, nomes e dígitos conferidos
+// sem regex). Confere antes que as duas aceitam e recusam os mesmos registros e que a conta dos
+// dígitos verificadores bate com CPFs conhecidos. Sem JMH no projeto: tempo por System.nanoTime e
+// alocação pelo contador por thread da JVM, depois de aquecer.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkValidacao 200000
+public class BenchmarkValidacao {
+    private static final int AQUECIMENTO = 5;
+    private static final int MEDICOES = 10;
+
+    interface Regras {
+        boolean aceita(String[] registro);
+    }
+
+    public static void main(String[] args) {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        for (String valido : new String[]{"52998224725", "11144477735", "39053344705"}) {
+            if (!Validacao.cpf(valido)) throw new IllegalStateException("CPF válido recusado: " + valido);
+        }
+        for (String invalido : new String[]{"52998224724", "11111111111", "1114447773", "1114447773a"}) {
+            if (Validacao.cpf(invalido)) throw new IllegalStateException("CPF inválido aceito: " + invalido);
+        }
+
+        // Registros de cadastro: a maioria válida, alguns com um campo errado
+        Random random = new Random(42);
+        String[][] registros = new String[quantidade][];
+        for (int i = 0; i < quantidade; i++) {
+            String[] registro = {"Cliente " + nome(random), "cliente" + i + "@email.com.br",
+                    String.format("619%08d", random.nextInt(100_000_000)), cpf(random), String.format("%08d", random.nextInt(100_000_000))};
+            if (i % 10 == 0) {
+                int campo = random.nextInt(registro.length);
+                registro[campo] = registro[campo].substring(0, registro[campo].length() - 1) + (campo == 0 ? "7" : "x");
+            }
+            registros[i] = registro;
+        }
+
+        Regras antigas = registro -> registro[0].length() >= 3 && Pattern.matches("[\\p{L}\\s]+", registro[0])
+                && Pattern.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$", registro[1])
+                && Pattern.matches("\\d{11}", registro[2])
+                && Pattern.matches("\\d{11}", registro[3])
+                && Pattern.matches("\\d{8}", registro[4]);
+        Regras formato = registro -> Validacao.letras(registro[0], 3) && Validacao.email(registro[1])
+                && Validacao.telefone(registro[2]) && Validacao.digitos(registro[3], 11) && Validacao.cep(registro[4]);
+        Regras completas = registro -> formato.aceita(registro) && Validacao.cpf(registro[3]);
+
+        int aceitos = 0;
+        for (String[] registro : registros) {
+            if (antigas.aceita(registro) != formato.aceita(registro)) {
+                throw new IllegalStateException("Regras discordam: " + String.join(", ", registro));
+            }
+            if (completas.aceita(registro)) aceitos++;
+        }
+        System.out.printf("%,d registros, %,d aceitos com os dígitos verificadores%n", quantidade, aceitos);
+
+        medir("Pattern.matches por campo   ", antigas, registros);
+        medir("Validacao (formato)         ", formato, registros);
+        medir("Validacao (com verificador) ", completas, registros);
+        medir("só os CPFs                  ", registro -> Validacao.cpf(registro[3]), registros);
+    }
+
+    private static String nome(Random random) {
+        char[] letras = new char[5 + random.nextInt(8)];
+        for (int i = 0; i < letras.length; i++) {
+            letras[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letras);
+    }
+
+    // CPF aleatório com os dígitos verificadores certos
+    private static String cpf(Random random) {
+        int[] d = new int[11];
+        for (int i = 0; i < 9; i++) {
+            d[i] = random.nextInt(10);
+        }
+        for (int posicao = 9; posicao < 11; posicao++) {
+            int soma = 0;
+            for (int i = 0; i < posicao; i++) {
+                soma += d[i] * (posicao + 1 - i);
+            }
+            d[posicao] = soma * 10 % 11 % 10;
+        }
+        StringBuilder cpf = new StringBuilder();
+        for (int digito : d) {
+            cpf.append(digito);
+        }
+        return cpf.toString();
+    }
+
+    private static void medir(String nome, Regras regras, String[][] registros) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        int aceitos = 0;
+        for (int i = 0; i < AQUECIMENTO; i++) {
+            for (String[] registro : registros) {
+                if (regras.aceita(registro)) aceitos++;
+            }
+        }
+        long bytes = threads.getThreadAllocatedBytes(id);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < MEDICOES; i++) {
+            for (String[] registro : registros) {
+                if (regras.aceita(registro)) aceitos++;
+            }
+        }
+        long tempo = System.nanoTime() - inicio;
+        bytes = threads.getThreadAllocatedBytes(id) - bytes;
+        long total = (long) MEDICOES * registros.length;
+        System.out.printf("%s %,12.0f registros/s  %8.1f bytes/registro  (%d)%n", nome,
+                total / (tempo / 1e9), (double) bytes / total, aceitos);
+    }
+}
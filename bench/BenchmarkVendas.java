@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// Livro de vendas: registra vendas como o caixa faz (reserva no estoque e registro na thread
+// dona, uma por vez) e mede quanto cada venda segura a thread dona, quanto tempo leva até tudo
+// estar no disco, em quantos segmentos o livro ficou e quanto custa reabrir (com o estoque refeito
+// igual): a primeira reabertura lê todos os segmentos e grava o checkpoint, a segunda parte dele e
+// lê as vendas anteriores em segundo plano. Depois corta o último segmento no meio de um registro (queda durante a escrita) e
+// confere que a reabertura perde só a venda incompleta e que o livro continua gravando depois dela.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -cp bin BenchmarkVendas 200000     (vendas)
+public class BenchmarkVendas {
+    private static final int PRODUTOS = 500;
+
+    public static void main(String[] args) throws IOException {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Path pasta = Files.createTempDirectory("petshop-vendas");
+        PetshopSystemSwing.saidaErros = mensagem -> {
+            throw new IllegalStateException(mensagem);
+        };
+        PetshopSystemSwing.carregarDados(pasta);
+
+        Random random = new Random(42);
+        List<LivroVendas.Produto> produtos = new ArrayList<>();
+        for (int i = 0; i < PRODUTOS; i++) {
+            LivroVendas.Produto produto = new LivroVendas.Produto(String.format("SKU%05d", i), "Produto " + i, 100 + random.nextInt(20_000), 0);
+            PetshopSystemSwing.cadastrarProduto(produto);
+            PetshopSystemSwing.movimentarEstoque(produto, quantidade * 3);
+            produtos.add(produto);
+        }
+
+        long[] latencias = new long[quantidade];
+        long totalCentavos = 0;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < quantidade; i++) {
+            LivroVendas.Produto produto = produtos.get(random.nextInt(produtos.size()));
+            int itens = 1 + random.nextInt(3);
+            long antes = System.nanoTime();
+            if (!PetshopSystemSwing.livroVendas.estoque.reservar(produto.sku, itens)) throw new IllegalStateException("Sem estoque: " + produto.sku);
+            PetshopSystemSwing.registrarVenda(produto, itens, 0);
+            latencias[i] = System.nanoTime() - antes;
+            totalCentavos += produto.precoCentavos * itens;
+        }
+        long registro = System.nanoTime() - inicio;
+        PetshopSystemSwing.encerrarPersistencia();
+        long disco = System.nanoTime() - inicio;
+        Arrays.sort(latencias);
+        System.out.printf("%,d vendas: %,.0f vendas/s na thread dona, %,.0f vendas/s até o disco%n",
+                quantidade, quantidade / (registro / 1e9), quantidade / (disco / 1e9));
+        System.out.printf("  por venda na thread dona: p50 %.1f µs  p99 %.1f µs  máx %.1f ms%n",
+                latencias[quantidade / 2] / 1e3, latencias[quantidade * 99 / 100] / 1e3, latencias[quantidade - 1] / 1e6);
+
+        List<Path> segmentos = segmentos(pasta);
+        long bytes = 0;
+        for (Path segmento : segmentos) bytes += Files.size(segmento);
+        System.out.printf("  %d segmento(s), %,d bytes (%.1f bytes por venda)%n", segmentos.size(), bytes, bytes / (double) quantidade);
+
+        inicio = System.nanoTime();
+        LivroVendas livro = LivroVendas.abrir(pasta, BenchmarkVendas::falhar);
+        System.out.printf("  reabertura sem checkpoint: %.1f ms%n", (System.nanoTime() - inicio) / 1e6);
+        conferir(livro, produtos, quantidade, totalCentavos);
+        livro.close();
+
+        inicio = System.nanoTime();
+        livro = LivroVendas.abrir(pasta, BenchmarkVendas::falhar);
+        long abertura = System.nanoTime() - inicio;
+        livro.vendas().get(0);
+        System.out.printf("  reabertura com checkpoint: %.1f ms (vendas anteriores lidas em %.1f ms)%n",
+                abertura / 1e6, (System.nanoTime() - inicio) / 1e6);
+        conferir(livro, produtos, quantidade, totalCentavos);
+        livro.close();
+
+        // Queda no meio da última venda: o final incompleto é descartado e o resto continua
+        Path ultimo = segmentos.get(segmentos.size() - 1);
+        try (RandomAccessFile arquivo = new RandomAccessFile(ultimo.toFile(), "rw")) {
+            arquivo.setLength(arquivo.length() - 3);
+        }
+        livro = LivroVendas.abrir(pasta, BenchmarkVendas::falhar);
+        if (livro.vendas().size() != quantidade - 1) {
+            throw new IllegalStateException("Depois do corte: " + livro.vendas().size() + " vendas, esperado " + (quantidade - 1));
+        }
+        // E o que for registrado depois do corte continua legível
+        livro.estoque.reservar(produtos.get(0).sku, 1);
+        livro.registrarLote(List.of(livro.registrarVenda(produtos.get(0), 1, 0)));
+        livro.close();
+        livro = LivroVendas.abrir(pasta, BenchmarkVendas::falhar);
+        if (livro.vendas().size() != quantidade) {
+            throw new IllegalStateException("Venda depois do corte perdida: " + livro.vendas().size() + " vendas, esperado " + quantidade);
+        }
+        livro.close();
+        System.out.println("  corte no meio do último registro: só a venda incompleta foi perdida");
+    }
+
+    private static void falhar(IOException e) {
+        throw new UncheckedIOException(e);
+    }
+
+    private static void conferir(LivroVendas livro, List<LivroVendas.Produto> produtos, int quantidade, long totalCentavos) {
+        List<LivroVendas.Venda> vendas = livro.vendas();
+        if (vendas.size() != quantidade) throw new IllegalStateException(vendas.size() + " vendas lidas, esperado " + quantidade);
+        long[] resumo = LivroVendas.resumo(vendas, 0, Long.MAX_VALUE);
+        if (resumo[1] != totalCentavos) throw new IllegalStateException("Total lido " + resumo[1] + ", esperado " + totalCentavos);
+        for (int i = 0; i < vendas.size(); i++) {
+            if (vendas.get(i).numero != i + 1) throw new IllegalStateException("Venda fora de ordem na posição " + i);
+        }
+        for (LivroVendas.Produto produto : produtos) {
+            if (livro.estoque.saldo(produto.sku).disponivel() != PetshopSystemSwing.livroVendas.estoque.saldo(produto.sku).disponivel()) {
+                throw new IllegalStateException("Estoque refeito diferente para " + produto.sku);
+            }
+        }
+    }
+
+    private static List<Path> segmentos(Path pasta) throws IOException {
+        List<Path> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta.resolve(LivroVendas.PASTA), "*.seg")) {
+            for (Path arquivo : arquivos) segmentos.add(arquivo);
+        }
+        Collections.sort(segmentos);
+        return segmentos;
+    }
+}
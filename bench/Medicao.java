@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Medição no estilo do JMH, sem a dependência (o projeto não tem arquivo de build): iterações de
+// aquecimento descartadas, depois iterações de medição de duração fixa, cada uma repetindo a
+// operação até o tempo acabar. O resultado é o tempo médio por operação entre as iterações, com o
+// erro do intervalo de confiança de 99,9% (t de Student), na mesma forma da tabela do JMH. O valor
+// devolvido pela operação vai para consumir(), para o JIT não eliminar o trabalho.
+//
+// Ao contrário do JMH, tudo roda na mesma JVM (sem forks): a ordem das medições pode influenciar
+// o perfil do JIT, então comparações finas devem rodar a suíte filtrada (SuiteBenchmarks --filtro).
+final class Medicao {
+    interface Operacao {
+        Object executar() throws Exception;
+    }
+
+    static final class Resultado {
+        final String nome;
+        final int tamanho;
+        final int iteracoes;
+        // Nanossegundos por operação
+        final double media;
+        final double erro;
+
+        Resultado(String nome, int tamanho, int iteracoes, double media, double erro) {
+            this.nome = nome;
+            this.tamanho = tamanho;
+            this.iteracoes = iteracoes;
+            this.media = media;
+            this.erro = erro;
+        }
+    }
+
+    // t de Student bicaudal para 99,9%, por graus de liberdade (1 a 20); acima disso a normal
+    private static final double[] T_999 = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850};
+    private static final double T_999_NORMAL = 3.291;
+
+    private static volatile Object sumidouro = new Object();
+    private static volatile int consumidos;
+
+    private final int aquecimentos;
+    private final int medicoes;
+    private final long duracaoIteracaoNs;
+    private final List<Resultado> resultados = new ArrayList<>();
+
+    Medicao(int aquecimentos, int medicoes, long duracaoIteracaoMs) {
+        this.aquecimentos = aquecimentos;
+        this.medicoes = medicoes;
+        this.duracaoIteracaoNs = duracaoIteracaoMs * 1_000_000;
+    }
+
+    static void consumir(Object valor) {
+        // Nunca é igual, mas o JIT não tem como saber
+        if (valor == sumidouro) consumidos++;
+    }
+
+    Resultado medir(String nome, int tamanho, Operacao operacao) throws Exception {
+        return medir(nome, tamanho, 1, operacao);
+    }
+
+    // Uma chamada de operacao faz operacoesPorChamada operações (como o @OperationsPerInvocation)
+    Resultado medir(String nome, int tamanho, int operacoesPorChamada, Operacao operacao) throws Exception {
+        // O lixo da medição anterior não entra na conta desta
+        System.gc();
+        for (int i = 0; i < aquecimentos; i++) iteracao(operacao);
+        double[] tempos = new double[medicoes];
+        for (int i = 0; i < medicoes; i++) tempos[i] = iteracao(operacao) / operacoesPorChamada;
+        double media = 0;
+        for (double tempo : tempos) media += tempo;
+        media /= tempos.length;
+        double variancia = 0;
+        for (double tempo : tempos) variancia += (tempo - media) * (tempo - media);
+        double erro = 0;
+        if (tempos.length > 1) {
+            variancia /= tempos.length - 1;
+            int liberdade = tempos.length - 1;
+            double t = liberdade <= T_999.length ? T_999[liberdade - 1] : T_999_NORMAL;
+            erro = t * Math.sqrt(variancia / tempos.length);
+        }
+        Resultado resultado = new Resultado(nome, tamanho, tempos.length, media, erro);
+        resultados.add(resultado);
+        System.out.println(linha(resultado));
+        return resultado;
+    }
+
+    // Nanossegundos por chamada; pelo menos uma chamada, mesmo que passe do tempo da iteração
+    private double iteracao(Operacao operacao) throws Exception {
+        long inicio = System.nanoTime();
+        long fim = inicio + duracaoIteracaoNs;
+        long chamadas = 0;
+        long agora;
+        do {
+            consumir(operacao.executar());
+            chamadas++;
+            agora = System.nanoTime();
+        } while (agora < fim);
+        return (agora - inicio) / (double) chamadas;
+    }
+
+    static String cabecalho() {
+        return String.format(Locale.ROOT, "%-44s %9s  %4s  %3s %14s   %12s  %5s", "Benchmark", "(tamanho)", "Mode", "Cnt", "Score", "Error", "Units");
+    }
+
+    // Unidade escolhida pela grandeza do tempo, como o JMH faz com -tu
+    static String linha(Resultado resultado) {
+        String unidade;
+        double escala;
+        if (resultado.media >= 1e7) {
+            unidade = "ms/op";
+            escala = 1e6;
+        } else if (resultado.media >= 1e4) {
+            unidade = "us/op";
+            escala = 1e3;
+        } else {
+            unidade = "ns/op";
+            escala = 1;
+        }
+        return String.format(Locale.ROOT, "%-44s %9d  %4s  %3d %14.3f ± %12.3f  %5s", resultado.nome, resultado.tamanho, "avgt",
+                resultado.iteracoes, resultado.media / escala, resultado.erro / escala, unidade);
+    }
+
+    // Uma linha por medição, em nanossegundos por operação, para comparar rodadas
+    void gravarCsv(Path arquivo) throws IOException {
+        try (Writer saida = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8)) {
+            saida.write("benchmark;tamanho;iteracoes;ns_por_op;erro_ns\n");
+            for (Resultado resultado : resultados) {
+                saida.write(String.format(Locale.ROOT, "%s;%d;%d;%.1f;%.1f%n", resultado.nome, resultado.tamanho, resultado.iteracoes,
+                        resultado.media, resultado.erro));
+            }
+        }
+    }
+}
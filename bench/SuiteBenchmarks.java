@@ -0,0 +1,322 @@
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Suíte dos caminhos que mais pesam, medidos com Medicao (no estilo do JMH) sobre a base sintética
+// de BenchmarkPersistencia.gerarDados, em cada tamanho pedido. O tamanho é o número aproximado de
+// registros no arquivo: um terço clientes, um terço animais (um dono cada) e um terço agendamentos.
+//
+//   persistencia  gravar o snapshot como salvarDados (codificar, gravar o .tmp com fsync e trocar
+//                 pelo arquivo com ATOMIC_MOVE); carregar como carregarDados (abrir mapeado e ler a
+//                 primeira tela de clientes) e, para comparar, decodificando o arquivo inteiro.
+//                 carregarDados em si trava o arquivo e abre o diário, e não pode repetir na mesma JVM.
+//   busca         uma tecla no campo de busca das telas: cada chamada busca o próximo prefixo do
+//                 texto digitado (o nome de um registro do meio da base), com os índices montados
+//                 como os de PetshopSystemSwing. montar é a primeira busca da tela, com o índice vazio.
+//   donos         Animal.getDonos com o texto guardado e logo depois de todos os clientes mudarem de
+//                 nome (a troca do nome entra na conta), por animal.
+//   formatacao    data e horário do Agendamento guardados e logo depois de remarcar, por agendamento.
+//   tabela        as telas de clientes e de agendamentos: ModeloTabela com todos os ids e a primeira
+//                 tela de linhas lida, contra o DefaultTableModel de antes, com uma linha copiada
+//                 por registro. Sem JTable ligada, então sem os eventos por linha do addRow.
+//
+// A linha de base desta máquina está em bench/linha-de-base.txt; para comparar uma mudança, rode a
+// suíte antes e depois com --csv e compare as duas saídas. As medições de 1 s do padrão servem
+// para uma olhada rápida: com fsync e coleta de lixo no meio, gravar e carregar tudo variam mais
+// que isso entre iterações, e a linha de base usa iterações mais longas e em maior número.
+//
+// Na raiz do projeto:
+//   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+//   java -Xmx4g -cp bin SuiteBenchmarks --tamanhos 1000,100000,1000000 --aquecimentos 5 --medicoes 10 --tempo 3000
+//   java -cp bin SuiteBenchmarks --tamanhos 100000 --filtro "busca|tabela" --medicoes 10 --tempo 2000 --csv depois.csv
+public class SuiteBenchmarks {
+    private static final int LINHAS_VISIVEIS = 30;
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> tamanhos = List.of(1_000, 100_000, 1_000_000);
+        Pattern filtro = null;
+        int aquecimentos = 3;
+        int medicoes = 5;
+        long tempo = 1000;
+        Path csv = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--tamanhos":
+                    List<Integer> lidos = new ArrayList<>();
+                    for (String tamanho : args[i + 1].split(",")) lidos.add(Integer.parseInt(tamanho.trim()));
+                    tamanhos = lidos;
+                    break;
+                case "--filtro":
+                    filtro = Pattern.compile(args[i + 1]);
+                    break;
+                case "--aquecimentos":
+                    aquecimentos = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--medicoes":
+                    medicoes = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--tempo":
+                    tempo = Long.parseLong(args[i + 1]);
+                    break;
+                case "--csv":
+                    csv = Path.of(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opção desconhecida: " + args[i]);
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("# JVM: %s %s, %s%n", System.getProperty("java.vm.name"), System.getProperty("java.runtime.version"),
+                String.join(" ", ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        System.out.printf("# %s %s, %d processador(es), heap máximo %,d MB%n", System.getProperty("os.name"), System.getProperty("os.arch"),
+                runtime.availableProcessors(), runtime.maxMemory() >> 20);
+        System.out.printf("# %d aquecimento(s) e %d medição(ões) de %d ms por benchmark; erro = intervalo de 99,9%%%n", aquecimentos, medicoes, tempo);
+
+        Medicao medicao = new Medicao(aquecimentos, medicoes, tempo);
+        System.out.println(Medicao.cabecalho());
+        for (int tamanho : tamanhos) {
+            new SuiteBenchmarks(medicao, filtro, tamanho).rodar();
+        }
+        if (csv != null) medicao.gravarCsv(csv);
+    }
+
+    private final Medicao medicao;
+    private final Pattern filtro;
+    private final int tamanho;
+    // Como PetshopSystemSwing.entidadesPorId, para os modelos das tabelas
+    private final HashMap<Long, Object> porId = new HashMap<>();
+
+    private SuiteBenchmarks(Medicao medicao, Pattern filtro, int tamanho) {
+        this.medicao = medicao;
+        this.filtro = filtro;
+        this.tamanho = tamanho;
+    }
+
+    private void rodar() throws Exception {
+        BenchmarkPersistencia.gerarDados(Math.max(1, tamanho / 3));
+        List<PetshopSystemSwing.Cliente> clientes = PetshopSystemSwing.clientes;
+        List<PetshopSystemSwing.Animal> animais = PetshopSystemSwing.animais;
+        List<PetshopSystemSwing.Agendamento> agendamentos = PetshopSystemSwing.agendamentos;
+        porId.clear();
+        for (PetshopSystemSwing.Cliente cliente : clientes) porId.put(cliente.id, cliente);
+        for (PetshopSystemSwing.Animal animal : animais) porId.put(animal.id, animal);
+        for (PetshopSystemSwing.Agendamento agendamento : agendamentos) porId.put(agendamento.id, agendamento);
+
+        Path pasta = Files.createTempDirectory("petshop-suite");
+        try {
+            persistencia(pasta);
+        } finally {
+            try (Stream<Path> arquivos = Files.list(pasta)) {
+                for (Path arquivo : (Iterable<Path>) arquivos::iterator) Files.delete(arquivo);
+            }
+            Files.delete(pasta);
+        }
+        busca(clientes, animais, agendamentos);
+        donos(clientes, animais);
+        formatacao(agendamentos);
+        tabela(clientes, agendamentos);
+    }
+
+    private boolean incluido(String nome) {
+        return filtro == null || filtro.matcher(nome).find();
+    }
+
+    private void medir(String nome, Medicao.Operacao operacao) throws Exception {
+        medir(nome, 1, operacao);
+    }
+
+    private void medir(String nome, int operacoesPorChamada, Medicao.Operacao operacao) throws Exception {
+        if (incluido(nome)) medicao.medir(nome, tamanho, operacoesPorChamada, operacao);
+    }
+
+    private void persistencia(Path pasta) throws Exception {
+        Path arquivo = pasta.resolve("petshop.dat");
+        Path temporario = pasta.resolve("petshop.dat.tmp");
+        byte[] dados = codificar();
+        Files.write(arquivo, dados);
+        int registros = PetshopSystemSwing.clientes.size() + PetshopSystemSwing.animais.size()
+                + PetshopSystemSwing.agendamentos.size() + PetshopSystemSwing.funcionarios.size();
+        if (CodecBinario.carregar(arquivo).clientes.size() != PetshopSystemSwing.clientes.size()) {
+            throw new IllegalStateException("Arquivo gravado não confere");
+        }
+
+        medir("persistencia.salvarDados", () -> {
+            try (FileOutputStream saida = new FileOutputStream(temporario.toFile())) {
+                saida.write(codificar());
+                saida.getFD().sync();
+            }
+            return Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        });
+        medir("persistencia.carregarDados.mapeado", () -> {
+            ArquivoMapeado mapeado = ArquivoMapeado.abrir(arquivo);
+            List<PetshopSystemSwing.Cliente> lista = mapeado.lista(Diario.CLIENTE);
+            for (int i = 0; i < Math.min(LINHAS_VISIVEIS, lista.size()); i++) lista.get(i);
+            return lista;
+        });
+        medir("persistencia.carregarDados.completo", () -> {
+            CodecBinario.Dados carregados = CodecBinario.carregar(arquivo);
+            int lidos = carregados.clientes.size() + carregados.animais.size() + carregados.agendamentos.size() + carregados.funcionarios.size();
+            if (lidos != registros) throw new IllegalStateException(lidos + " registros lidos de " + registros);
+            return carregados;
+        });
+    }
+
+    private static byte[] codificar() {
+        return CodecBinario.codificar(PetshopSystemSwing.clientes, PetshopSystemSwing.animais,
+                PetshopSystemSwing.agendamentos, PetshopSystemSwing.funcionarios, 1, PetshopSystemSwing.novoId(), id -> null);
+    }
+
+    private void busca(List<PetshopSystemSwing.Cliente> clientes, List<PetshopSystemSwing.Animal> animais,
+                       List<PetshopSystemSwing.Agendamento> agendamentos) throws Exception {
+        medir("busca.clientes.montar", () -> {
+            IndiceBusca<PetshopSystemSwing.Cliente> indice = indiceClientes(clientes);
+            indice.montar();
+            return indice;
+        });
+        int meio = clientes.size() / 2;
+        teclas("busca.clientes.tecla", indiceClientes(clientes), clientes.get(meio).nome);
+        teclas("busca.animais.tecla", new IndiceBusca<>(() -> animais,
+                a -> IndiceBusca.campos(a.nome, a.getDonos(), a.raca, a.sexo), a -> a.id, PetshopSystemSwing.BUSCA_IGNORA_ACENTOS), animais.get(meio).nome);
+        teclas("busca.agendamentos.tecla", new IndiceBusca<>(() -> agendamentos,
+                a -> IndiceBusca.campos(a.animal.toString(), a.getDataFormatada(), a.getHorarioFormatado(), a.recurso, a.detalhes),
+                a -> a.id, PetshopSystemSwing.BUSCA_IGNORA_ACENTOS), agendamentos.get(meio).animal.nome);
+    }
+
+    private static IndiceBusca<PetshopSystemSwing.Cliente> indiceClientes(List<PetshopSystemSwing.Cliente> clientes) {
+        return new IndiceBusca<>(() -> clientes,
+                c -> IndiceBusca.campos(c.nome, c.email, c.telefone, c.cpf, c.cep, c.sexo), c -> c.id, PetshopSystemSwing.BUSCA_IGNORA_ACENTOS);
+    }
+
+    // Cada chamada é a busca de uma tecla a mais do texto, voltando ao começo no fim
+    private <T> void teclas(String nome, IndiceBusca<T> indice, String digitado) throws Exception {
+        if (!incluido(nome)) return;
+        String texto = digitado.toLowerCase(Locale.ROOT);
+        indice.montar();
+        if (indice.buscar(texto).length == 0) throw new IllegalStateException(nome + ": '" + texto + "' não encontrado");
+        int[] tecla = {0};
+        medir(nome, () -> {
+            tecla[0] = tecla[0] % texto.length() + 1;
+            return indice.buscar(texto.substring(0, tecla[0]));
+        });
+    }
+
+    private void donos(List<PetshopSystemSwing.Cliente> clientes, List<PetshopSystemSwing.Animal> animais) throws Exception {
+        medir("donos.getDonos.guardado", animais.size(), () -> {
+            int total = 0;
+            for (PetshopSystemSwing.Animal animal : animais) total += animal.getDonos().length();
+            return total;
+        });
+        // Dois nomes por cliente, alternados a cada chamada: todo texto de donos fica velho
+        String[][] nomes = new String[2][clientes.size()];
+        for (int i = 0; i < clientes.size(); i++) {
+            nomes[0][i] = clientes.get(i).nome;
+            nomes[1][i] = clientes.get(i).nome + " Jr";
+        }
+        int[] vez = {0};
+        medir("donos.getDonos.renomeados", animais.size(), () -> {
+            String[] novos = nomes[vez[0]++ & 1];
+            for (int i = 0; i < novos.length; i++) clientes.get(i).nome = novos[i];
+            int total = 0;
+            for (PetshopSystemSwing.Animal animal : animais) total += animal.getDonos().length();
+            return total;
+        });
+        for (int i = 0; i < clientes.size(); i++) clientes.get(i).nome = nomes[0][i];
+        if (!animais.get(0).getDonos().equals(clientes.get(0).toString())) throw new IllegalStateException("Donos velhos: " + animais.get(0).getDonos());
+    }
+
+    private void formatacao(List<PetshopSystemSwing.Agendamento> agendamentos) throws Exception {
+        medir("formatacao.agendamento.guardada", agendamentos.size(), () -> {
+            int total = 0;
+            for (PetshopSystemSwing.Agendamento agendamento : agendamentos) {
+                total += agendamento.getDataFormatada().length() + agendamento.getHorarioFormatado().length();
+            }
+            return total;
+        });
+        LocalDateTime[][] horarios = new LocalDateTime[2][agendamentos.size()];
+        for (int i = 0; i < agendamentos.size(); i++) {
+            horarios[0][i] = agendamentos.get(i).horario;
+            horarios[1][i] = agendamentos.get(i).horario.plusMinutes(30);
+        }
+        int[] vez = {0};
+        medir("formatacao.agendamento.remarcado", agendamentos.size(), () -> {
+            LocalDateTime[] novos = horarios[vez[0]++ & 1];
+            int total = 0;
+            for (int i = 0; i < novos.length; i++) {
+                PetshopSystemSwing.Agendamento agendamento = agendamentos.get(i);
+                agendamento.horario = novos[i];
+                total += agendamento.getDataFormatada().length() + agendamento.getHorarioFormatado().length();
+            }
+            return total;
+        });
+        for (int i = 0; i < agendamentos.size(); i++) agendamentos.get(i).horario = horarios[0][i];
+    }
+
+    private void tabela(List<PetshopSystemSwing.Cliente> clientes, List<PetshopSystemSwing.Agendamento> agendamentos) throws Exception {
+        String[] colunasClientes = {"Nome", "Sexo", "Email", "Telefone", "CPF", "CEP"};
+        medir("tabela.clientes.ModeloTabela", () -> {
+            ModeloTabela<PetshopSystemSwing.Cliente> modelo = new ModeloTabela<>(colunasClientes, id -> (PetshopSystemSwing.Cliente) porId.get(id), (cliente, coluna) -> {
+                switch (coluna) {
+                    case 0: return cliente.nome;
+                    case 1: return cliente.sexo;
+                    case 2: return cliente.email;
+                    case 3: return cliente.telefone;
+                    case 4: return cliente.cpf;
+                    default: return cliente.cep;
+                }
+            });
+            modelo.mostrar(ModeloTabela.ids(clientes));
+            return primeiraTela(modelo);
+        });
+        medir("tabela.clientes.DefaultTableModel", () -> {
+            DefaultTableModel modelo = new DefaultTableModel(colunasClientes, 0);
+            for (PetshopSystemSwing.Cliente cliente : clientes) {
+                modelo.addRow(new Object[]{cliente.nome, cliente.sexo, cliente.email, cliente.telefone, cliente.cpf, cliente.cep});
+            }
+            return primeiraTela(modelo);
+        });
+        String[] colunasAgendamentos = {"Animal", "Data", "Horário", "Recurso", "Detalhes"};
+        medir("tabela.agendamentos.ModeloTabela", () -> {
+            ModeloTabela<PetshopSystemSwing.Agendamento> modelo = new ModeloTabela<>(colunasAgendamentos, id -> (PetshopSystemSwing.Agendamento) porId.get(id), (agendamento, coluna) -> {
+                switch (coluna) {
+                    case 0: return agendamento.animal.toString();
+                    case 1: return agendamento.getDataFormatada();
+                    case 2: return agendamento.getHorarioFormatado();
+                    case 3: return agendamento.recurso;
+                    default: return agendamento.detalhes;
+                }
+            });
+            modelo.mostrar(ModeloTabela.ids(agendamentos));
+            return primeiraTela(modelo);
+        });
+        medir("tabela.agendamentos.DefaultTableModel", () -> {
+            DefaultTableModel modelo = new DefaultTableModel(colunasAgendamentos, 0);
+            for (PetshopSystemSwing.Agendamento agendamento : agendamentos) {
+                modelo.addRow(new Object[]{agendamento.animal.toString(), agendamento.getDataFormatada(), agendamento.getHorarioFormatado(),
+                        agendamento.recurso, agendamento.detalhes});
+            }
+            return primeiraTela(modelo);
+        });
+    }
+
+    // O que a JTable lê para desenhar a primeira tela
+    private static int primeiraTela(TableModel modelo) {
+        int total = 0;
+        for (int linha = 0; linha < Math.min(LINHAS_VISIVEIS, modelo.getRowCount()); linha++) {
+            for (int coluna = 0; coluna < modelo.getColumnCount(); coluna++) {
+                total += String.valueOf(modelo.getValueAt(linha, coluna)).length();
+            }
+        }
+        return total;
+    }
+}
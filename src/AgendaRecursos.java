@@ -0,0 +1,310 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+// Ocupação dos recursos da agenda (mesas de banho e tosa, consultório, funcionários, o próprio
+// animal): cada recurso tem uma árvore de intervalos com os horários já marcados, então saber se
+// um horário está livre ou sugerir os próximos horários livres custa O(log n) por recurso, sem
+// percorrer os agendamentos. Horários em minutos desde 1970, intervalos [início, fim).
+// Cada registro tem um intervalo em cada um dos seus recursos, e a ocupação guardada dele diz
+// quais: uma alteração tira exatamente esses nós antes de indexar o horário novo.
+class AgendaRecursos<T> {
+    // Intervalos de um recurso numa treap ordenada por (início, id); cada nó guarda o maior fim
+    // da sua subárvore, o que permite descartar subárvores inteiras que terminam antes da consulta
+    static class ArvoreIntervalos {
+        private static class No {
+            final long inicio;
+            final long fim;
+            final long id;
+            final int prioridade;
+            long maiorFim;
+            No esquerda;
+            No direita;
+
+            No(long inicio, long fim, long id) {
+                this.inicio = inicio;
+                this.fim = fim;
+                this.id = id;
+                // Prioridade derivada do id: a forma da árvore não depende da ordem de inserção
+                this.prioridade = Long.hashCode(id * 0x9E3779B97F4A7C15L);
+                this.maiorFim = fim;
+            }
+        }
+
+        private No raiz;
+        private int tamanho;
+
+        int tamanho() {
+            return tamanho;
+        }
+
+        private static int comparar(long inicio, long id, No no) {
+            int c = Long.compare(inicio, no.inicio);
+            return c != 0 ? c : Long.compare(id, no.id);
+        }
+
+        private static No ajustar(No no) {
+            no.maiorFim = no.fim;
+            if (no.esquerda != null) no.maiorFim = Math.max(no.maiorFim, no.esquerda.maiorFim);
+            if (no.direita != null) no.maiorFim = Math.max(no.maiorFim, no.direita.maiorFim);
+            return no;
+        }
+
+        private static No girarDireita(No no) {
+            No filho = no.esquerda;
+            no.esquerda = filho.direita;
+            filho.direita = ajustar(no);
+            return ajustar(filho);
+        }
+
+        private static No girarEsquerda(No no) {
+            No filho = no.direita;
+            no.direita = filho.esquerda;
+            filho.esquerda = ajustar(no);
+            return ajustar(filho);
+        }
+
+        void inserir(long inicio, long fim, long id) {
+            raiz = inserir(raiz, new No(inicio, fim, id));
+            tamanho++;
+        }
+
+        private static No inserir(No no, No novo) {
+            if (no == null) return novo;
+            if (comparar(novo.inicio, novo.id, no) < 0) {
+                no.esquerda = inserir(no.esquerda, novo);
+                if (no.esquerda.prioridade > no.prioridade) return girarDireita(no);
+            } else {
+                no.direita = inserir(no.direita, novo);
+                if (no.direita.prioridade > no.prioridade) return girarEsquerda(no);
+            }
+            return ajustar(no);
+        }
+
+        void remover(long inicio, long id) {
+            int antes = tamanho;
+            raiz = remover(raiz, inicio, id);
+            if (tamanho == antes) throw new IllegalStateException("Intervalo não encontrado: " + id);
+        }
+
+        private No remover(No no, long inicio, long id) {
+            if (no == null) return null;
+            int c = comparar(inicio, id, no);
+            if (c < 0) {
+                no.esquerda = remover(no.esquerda, inicio, id);
+            } else if (c > 0) {
+                no.direita = remover(no.direita, inicio, id);
+            } else {
+                tamanho--;
+                return juntar(no.esquerda, no.direita);
+            }
+            return ajustar(no);
+        }
+
+        // Todas as chaves de a vêm antes das de b
+        private static No juntar(No a, No b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            if (a.prioridade > b.prioridade) {
+                a.direita = juntar(a.direita, b);
+                return ajustar(a);
+            }
+            b.esquerda = juntar(a, b.esquerda);
+            return ajustar(b);
+        }
+
+        // O primeiro intervalo (em ordem de início) que cruza [de, ate), fora o de id ignorar
+        No sobreposto(long de, long ate, long ignorar) {
+            return sobreposto(raiz, de, ate, ignorar);
+        }
+
+        private static No sobreposto(No no, long de, long ate, long ignorar) {
+            while (no != null && no.maiorFim > de) {
+                No naEsquerda = sobreposto(no.esquerda, de, ate, ignorar);
+                if (naEsquerda != null) return naEsquerda;
+                if (no.inicio >= ate) return null;
+                if (no.fim > de && no.id != ignorar) return no;
+                no = no.direita;
+            }
+            return null;
+        }
+
+        void sobrepostos(long de, long ate, long ignorar, Collection<Long> destino) {
+            sobrepostos(raiz, de, ate, ignorar, destino);
+        }
+
+        private static void sobrepostos(No no, long de, long ate, long ignorar, Collection<Long> destino) {
+            while (no != null && no.maiorFim > de) {
+                sobrepostos(no.esquerda, de, ate, ignorar, destino);
+                if (no.inicio >= ate) return;
+                if (no.fim > de && no.id != ignorar) destino.add(no.id);
+                no = no.direita;
+            }
+        }
+    }
+
+    // Onde um registro foi indexado, para tirá-lo das árvores depois que ele muda
+    private static class Ocupacao {
+        final long inicio;
+        final long fim;
+        final String[] recursos;
+
+        Ocupacao(long inicio, long fim, String[] recursos) {
+            this.inicio = inicio;
+            this.fim = fim;
+            this.recursos = recursos;
+        }
+    }
+
+    private final Supplier<? extends List<T>> origem;
+    private final Function<T, String[]> recursos;
+    private final ToLongFunction<T> inicio;
+    private final ToIntFunction<T> duracao;
+    private final ToLongFunction<T> id;
+    private final ZoneId zona = ZoneId.systemDefault();
+    // Expediente em minutos do dia; as sugestões ficam dentro dele
+    private final int abertura;
+    private final int fechamento;
+
+    private HashMap<String, ArvoreIntervalos> porRecurso;
+    private HashMap<Long, Ocupacao> ocupacoes;
+
+    AgendaRecursos(Supplier<? extends List<T>> origem, Function<T, String[]> recursos, ToLongFunction<T> inicio,
+                   ToIntFunction<T> duracao, ToLongFunction<T> id, int abertura, int fechamento) {
+        this.origem = origem;
+        this.recursos = recursos;
+        this.inicio = inicio;
+        this.duracao = duracao;
+        this.id = id;
+        this.abertura = abertura;
+        this.fechamento = fechamento;
+    }
+
+    private void garantir() {
+        if (porRecurso != null) return;
+        List<T> lista = origem.get();
+        porRecurso = new HashMap<>();
+        ocupacoes = new HashMap<>(lista.size() * 2);
+        for (T entidade : lista) {
+            indexar(entidade);
+        }
+    }
+
+    private void indexar(T entidade) {
+        long chave = id.applyAsLong(entidade);
+        if (ocupacoes.containsKey(chave)) return;
+        long de = inicio.applyAsLong(entidade);
+        Ocupacao ocupacao = new Ocupacao(de, de + Math.max(1, duracao.applyAsInt(entidade)), recursos.apply(entidade));
+        for (String recurso : ocupacao.recursos) {
+            porRecurso.computeIfAbsent(recurso, r -> new ArvoreIntervalos()).inserir(ocupacao.inicio, ocupacao.fim, chave);
+        }
+        ocupacoes.put(chave, ocupacao);
+    }
+
+    private void desindexar(long chave) {
+        Ocupacao ocupacao = ocupacoes.remove(chave);
+        if (ocupacao == null) return;
+        for (String recurso : ocupacao.recursos) {
+            ArvoreIntervalos arvore = porRecurso.get(recurso);
+            arvore.remover(ocupacao.inicio, chave);
+            if (arvore.tamanho() == 0) porRecurso.remove(recurso);
+        }
+    }
+
+    void adicionar(T entidade) {
+        if (porRecurso == null) return;
+        indexar(entidade);
+    }
+
+    void atualizar(T entidade) {
+        if (porRecurso == null) return;
+        desindexar(id.applyAsLong(entidade));
+        indexar(entidade);
+    }
+
+    void remover(T entidade) {
+        if (porRecurso == null) return;
+        desindexar(id.applyAsLong(entidade));
+    }
+
+    // Ids dos registros que ocupam algum dos recursos em [de, de + minutos), fora o de id ignorar
+    // (o próprio registro, numa edição; 0 para nenhum)
+    List<Long> conflitos(String[] recursosPedidos, long de, int minutos, long ignorar) {
+        garantir();
+        // O mesmo agendamento pode ocupar mais de um dos recursos pedidos
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        for (String recurso : recursosPedidos) {
+            ArvoreIntervalos arvore = porRecurso.get(recurso);
+            if (arvore != null) arvore.sobrepostos(de, de + minutos, ignorar, ids);
+        }
+        return new ArrayList<>(ids);
+    }
+
+    boolean livre(String[] recursosPedidos, long de, int minutos, long ignorar) {
+        garantir();
+        for (String recurso : recursosPedidos) {
+            ArvoreIntervalos arvore = porRecurso.get(recurso);
+            if (arvore != null && arvore.sobreposto(de, de + minutos, ignorar) != null) return false;
+        }
+        return true;
+    }
+
+    // Primeiro início a partir de aPartirDe, dentro do expediente, em que todos os recursos estão
+    // livres por minutos seguidos. Cada conflito empurra o candidato para o fim do intervalo que
+    // o ocupa, então o número de passos é o de intervalos atravessados, não o de minutos
+    long proximoLivre(String[] recursosPedidos, long aPartirDe, int minutos, long ignorar) {
+        garantir();
+        if (minutos > fechamento - abertura) throw new IllegalArgumentException("Duração maior que o expediente: " + minutos);
+        long candidato = noExpediente(aPartirDe, minutos);
+        boolean mudou = true;
+        while (mudou) {
+            mudou = false;
+            for (String recurso : recursosPedidos) {
+                ArvoreIntervalos arvore = porRecurso.get(recurso);
+                if (arvore == null) continue;
+                ArvoreIntervalos.No ocupado;
+                while ((ocupado = arvore.sobreposto(candidato, candidato + minutos, ignorar)) != null) {
+                    candidato = noExpediente(ocupado.fim, minutos);
+                    mudou = true;
+                }
+            }
+        }
+        return candidato;
+    }
+
+    // Os próximos quantidade horários livres, um depois do outro, a partir de aPartirDe
+    long[] sugerir(String[] recursosPedidos, long aPartirDe, int minutos, int quantidade, long ignorar) {
+        long[] sugestoes = new long[quantidade];
+        long candidato = aPartirDe;
+        for (int i = 0; i < quantidade; i++) {
+            sugestoes[i] = proximoLivre(recursosPedidos, candidato, minutos, ignorar);
+            candidato = sugestoes[i] + minutos;
+        }
+        return sugestoes;
+    }
+
+    // Leva o minuto para dentro do expediente: antes da abertura vai para a abertura, e se não
+    // cabe mais no dia vai para a abertura do dia seguinte
+    private long noExpediente(long minuto, int minutos) {
+        ZonedDateTime horario = Instant.ofEpochSecond(minuto * 60L).atZone(zona);
+        LocalDate dia = horario.toLocalDate();
+        int minutoDoDia = horario.getHour() * 60 + horario.getMinute();
+        if (minutoDoDia < abertura) return inicioDoDia(dia) + abertura;
+        if (minutoDoDia + minutos > fechamento) return inicioDoDia(dia.plusDays(1)) + abertura;
+        return minuto;
+    }
+
+    private long inicioDoDia(LocalDate dia) {
+        return Math.floorDiv(dia.atStartOfDay(zona).toEpochSecond(), 60L);
+    }
+}
@@ -0,0 +1,288 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Contadores da tela Relatórios mantidos a cada alteração, para o relatório sair sem percorrer os
+// cadastros: animais para adoção, por raça e por sexo, agendamentos e vendas por dia (a semana e
+// o mês somam no máximo 31 dias). Cada animal e agendamento guarda o que contou, e uma alteração
+// ou exclusão desconta isso antes de contar o valor novo.
+//
+// Os contadores são montados do zero no primeiro relatório (e não na abertura, que continua sem
+// decodificar os cadastros), sobre as linhas de um instantâneo e na thread de quem pediu o
+// relatório, não na dona. As alterações feitas enquanto isso ficam anotadas e são aplicadas por
+// cima quando os contadores são instalados; daí em diante eles acompanham Repositorio.alterado,
+// na thread dona. As vendas só crescem e são contadas no resumo, a partir da última já contada.
+// reconstruido() conta um instantâneo do zero sem mexer nos contadores, para conferir os mantidos.
+class Agregados {
+    // O que um animal contou
+    private static final class Animal {
+        final String raca;
+        final String sexo;
+        final boolean paraAdocao;
+
+        Animal(String raca, String sexo, boolean paraAdocao) {
+            this.raca = chave(raca);
+            this.sexo = chave(sexo);
+            this.paraAdocao = paraAdocao;
+        }
+    }
+
+    // Números do relatório num momento, imutáveis
+    static final class Resumo {
+        // Repositorio.versao() do momento
+        final long versao;
+        // Quando foi calculado (System.currentTimeMillis) e o dia de "hoje"
+        final long momento;
+        final LocalDate hoje;
+        final int clientes;
+        final int animais;
+        final int paraAdocao;
+        final int agendamentos;
+        final int agendamentosHoje;
+        final int agendamentosSemana;
+        final int agendamentosMes;
+        final int produtos;
+        final int vendas;
+        // {quantidade, centavos}
+        final long[] vendasHoje;
+        final long[] vendasMes;
+        final int funcionarios;
+        // Da maior contagem para a menor
+        final List<Map.Entry<String, Integer>> porRaca;
+        final List<Map.Entry<String, Integer>> porSexo;
+
+        // Os totais de cadastros são {clientes, animais, agendamentos, funcionários, produtos}
+        private Resumo(Agregados agregados, LocalDate hoje, long versao, int[] totais) {
+            this.versao = versao;
+            this.momento = System.currentTimeMillis();
+            this.hoje = hoje;
+            this.clientes = totais[0];
+            this.animais = totais[1];
+            this.paraAdocao = agregados.paraAdocao;
+            this.agendamentos = totais[2];
+            this.agendamentosHoje = agregados.agendamentos(hoje, hoje);
+            this.agendamentosSemana = agregados.agendamentos(hoje, hoje.plusDays(6));
+            this.agendamentosMes = agregados.agendamentos(hoje.withDayOfMonth(1), hoje.withDayOfMonth(hoje.lengthOfMonth()));
+            this.produtos = totais[4];
+            this.vendas = agregados.vendasContadas;
+            this.vendasHoje = agregados.vendas(hoje, hoje);
+            this.vendasMes = agregados.vendas(hoje.withDayOfMonth(1), hoje);
+            this.funcionarios = totais[3];
+            this.porRaca = ordenados(agregados.porRaca);
+            this.porSexo = ordenados(agregados.porSexo);
+        }
+
+        // Os mesmos números (sem olhar versão e momento)
+        boolean mesmosNumeros(Resumo outro) {
+            return hoje.equals(outro.hoje) && clientes == outro.clientes && animais == outro.animais
+                    && paraAdocao == outro.paraAdocao && agendamentos == outro.agendamentos
+                    && agendamentosHoje == outro.agendamentosHoje && agendamentosSemana == outro.agendamentosSemana
+                    && agendamentosMes == outro.agendamentosMes && produtos == outro.produtos && vendas == outro.vendas
+                    && vendasHoje[0] == outro.vendasHoje[0] && vendasHoje[1] == outro.vendasHoje[1]
+                    && vendasMes[0] == outro.vendasMes[0] && vendasMes[1] == outro.vendasMes[1]
+                    && funcionarios == outro.funcionarios && porRaca.equals(outro.porRaca) && porSexo.equals(outro.porSexo);
+        }
+    }
+
+    // Colunas das linhas do instantâneo (Exportador)
+    private static final int COLUNA_RACA = coluna(Exportador.ANIMAIS, "raca");
+    private static final int COLUNA_SEXO = coluna(Exportador.ANIMAIS, "sexo");
+    private static final int COLUNA_PARA_ADOCAO = coluna(Exportador.ANIMAIS, "para_adocao");
+    private static final int COLUNA_HORARIO = coluna(Exportador.AGENDAMENTOS, "horario");
+    private static final Object EXCLUIDO = new Object();
+
+    // Os contadores mantidos; null até o primeiro relatório (só a thread dona mexe)
+    private static Agregados mantidos;
+    // Enquanto os contadores são montados: id -> entidade alterada ou EXCLUIDO (só a thread dona)
+    private static HashMap<Long, Object> pendentes;
+    private static volatile Resumo ultimo;
+
+    // id do animal -> Animal, id do agendamento -> dia (LocalDate.toEpochDay)
+    private final HashMap<Long, Object> contados = new HashMap<>();
+    private int paraAdocao;
+    private final HashMap<String, Integer> porRaca = new HashMap<>();
+    private final HashMap<String, Integer> porSexo = new HashMap<>();
+    private final HashMap<Long, Integer> agendamentosPorDia = new HashMap<>();
+    // dia -> {quantidade, centavos}
+    private final HashMap<Long, long[]> vendasPorDia = new HashMap<>();
+    private int vendasContadas;
+
+    // Na thread dona, por Repositorio.alterado
+    static void alterado(Object entidade, boolean excluida) {
+        if (!(entidade instanceof PetshopSystemSwing.Animal) && !(entidade instanceof PetshopSystemSwing.Agendamento)) return;
+        long id = PetshopSystemSwing.idEntidade(entidade);
+        Agregados agregados = mantidos;
+        if (agregados != null) {
+            agregados.descontar(id);
+            if (!excluida) agregados.contar(entidade);
+        } else if (pendentes != null) {
+            pendentes.put(id, excluida ? EXCLUIDO : entidade);
+        }
+    }
+
+    // O resumo de agora, de qualquer thread; sem recalcular se nada mudou no mesmo dia
+    static Resumo resumo() {
+        Resumo resumo = ultimo;
+        if (resumo != null && resumo.versao == Repositorio.versao() && resumo.hoje.equals(LocalDate.now())) return resumo;
+        Resumo mantido = Repositorio.naDona(() -> mantidos != null ? resumoMantido() : null);
+        if (mantido != null) return mantido;
+        // Primeiro relatório. As anotações começam antes do instantâneo, que é montado nesta
+        // thread; reaplicar uma alteração que o instantâneo já tinha não muda nada. Dois pedidos
+        // ao mesmo tempo contam cada um o seu instantâneo e o segundo a chegar descarta o dele
+        Repositorio.naDona(() -> {
+            if (mantidos == null && pendentes == null) pendentes = new HashMap<>();
+            return null;
+        });
+        Agregados contados = contar(Repositorio.instantaneo());
+        return Repositorio.naDona(() -> {
+            if (mantidos == null) {
+                for (Map.Entry<Long, Object> alteracao : pendentes.entrySet()) {
+                    contados.descontar(alteracao.getKey());
+                    if (alteracao.getValue() != EXCLUIDO) contados.contar(alteracao.getValue());
+                }
+                pendentes = null;
+                mantidos = contados;
+            }
+            return resumoMantido();
+        });
+    }
+
+    // Na thread dona
+    private static Resumo resumoMantido() {
+        LivroVendas livro = PetshopSystemSwing.livroVendas;
+        if (livro != null) mantidos.contarVendas(livro.vendas());
+        Resumo novo = new Resumo(mantidos, LocalDate.now(), Repositorio.versao(), new int[]{PetshopSystemSwing.clientes.size(),
+                PetshopSystemSwing.animais.size(), PetshopSystemSwing.agendamentos.size(), PetshopSystemSwing.funcionarios.size(),
+                livro != null ? livro.quantidadeProdutos() : 0});
+        ultimo = novo;
+        return novo;
+    }
+
+    // Conta um instantâneo de agora do zero, sem mexer nos contadores mantidos
+    static Resumo reconstruido() {
+        return reconstruido(Repositorio.instantaneo(), LocalDate.now());
+    }
+
+    private static Resumo reconstruido(Repositorio.Instantaneo dados, LocalDate hoje) {
+        return new Resumo(contar(dados), hoje, dados.versao, new int[]{dados.linhas(Diario.CLIENTE).size(), dados.linhas(Diario.ANIMAL).size(),
+                dados.linhas(Diario.AGENDAMENTO).size(), dados.linhas(Diario.FUNCIONARIO).size(), dados.produtos.size()});
+    }
+
+    // {mantido, reconstruído}, do mesmo momento; a contagem do zero fica fora da thread dona, e
+    // os contadores e as linhas são montados antes, também fora, para lá só restar o incremental
+    static Resumo[] conferencia() {
+        resumo();
+        Repositorio.instantaneo();
+        Object[] momento = Repositorio.naDona(() -> new Object[]{resumo(), Repositorio.instantaneo()});
+        Resumo mantido = (Resumo) momento[0];
+        return new Resumo[]{mantido, reconstruido((Repositorio.Instantaneo) momento[1], mantido.hoje)};
+    }
+
+    // Em qualquer thread: as linhas do instantâneo não mudam
+    private static Agregados contar(Repositorio.Instantaneo dados) {
+        Agregados agregados = new Agregados();
+        for (Object[] linha : dados.linhas(Diario.ANIMAL)) {
+            agregados.contar((Long) linha[0], new Animal((String) linha[COLUNA_RACA], (String) linha[COLUNA_SEXO], (Boolean) linha[COLUNA_PARA_ADOCAO]));
+        }
+        for (Object[] linha : dados.linhas(Diario.AGENDAMENTO)) {
+            agregados.contar((Long) linha[0], LocalDateTime.parse((String) linha[COLUNA_HORARIO]).toLocalDate().toEpochDay());
+        }
+        agregados.contarVendas(dados.vendas);
+        return agregados;
+    }
+
+    // Na thread dona, com a entidade viva
+    private void contar(Object entidade) {
+        long id = PetshopSystemSwing.idEntidade(entidade);
+        if (entidade instanceof PetshopSystemSwing.Animal) {
+            PetshopSystemSwing.Animal animal = (PetshopSystemSwing.Animal) entidade;
+            contar(id, new Animal(animal.raca, animal.sexo, animal.paraAdocao));
+        } else {
+            contar(id, ((PetshopSystemSwing.Agendamento) entidade).horario.toLocalDate().toEpochDay());
+        }
+    }
+
+    private void contar(long id, Animal animal) {
+        if (animal.paraAdocao) paraAdocao++;
+        porRaca.merge(animal.raca, 1, Integer::sum);
+        porSexo.merge(animal.sexo, 1, Integer::sum);
+        contados.put(id, animal);
+    }
+
+    private void contar(long id, long dia) {
+        agendamentosPorDia.merge(dia, 1, Integer::sum);
+        contados.put(id, dia);
+    }
+
+    private void descontar(long id) {
+        Object contado = contados.remove(id);
+        if (contado instanceof Animal) {
+            Animal animal = (Animal) contado;
+            if (animal.paraAdocao) paraAdocao--;
+            diminuir(porRaca, animal.raca);
+            diminuir(porSexo, animal.sexo);
+        } else if (contado != null) {
+            diminuir(agendamentosPorDia, (Long) contado);
+        }
+    }
+
+    // As vendas registradas desde a última contagem
+    private void contarVendas(List<LivroVendas.Venda> vendas) {
+        for (int i = vendasContadas; i < vendas.size(); i++) {
+            LivroVendas.Venda venda = vendas.get(i);
+            long dia = Instant.ofEpochMilli(venda.momento).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+            long[] total = vendasPorDia.computeIfAbsent(dia, d -> new long[2]);
+            total[0]++;
+            total[1] += venda.totalCentavos();
+        }
+        vendasContadas = vendas.size();
+    }
+
+    // Dias de..ate, inclusive
+    private int agendamentos(LocalDate de, LocalDate ate) {
+        int total = 0;
+        for (long dia = de.toEpochDay(); dia <= ate.toEpochDay(); dia++) {
+            total += agendamentosPorDia.getOrDefault(dia, 0);
+        }
+        return total;
+    }
+
+    private long[] vendas(LocalDate de, LocalDate ate) {
+        long[] total = new long[2];
+        for (long dia = de.toEpochDay(); dia <= ate.toEpochDay(); dia++) {
+            long[] doDia = vendasPorDia.get(dia);
+            if (doDia == null) continue;
+            total[0] += doDia[0];
+            total[1] += doDia[1];
+        }
+        return total;
+    }
+
+    private static int coluna(Exportador.Tabela<?> tabela, String nome) {
+        return Arrays.asList(tabela.colunas).indexOf(nome);
+    }
+
+    private static <K> void diminuir(HashMap<K, Integer> contagens, K chave) {
+        contagens.computeIfPresent(chave, (k, quantidade) -> quantidade > 1 ? quantidade - 1 : null);
+    }
+
+    private static String chave(String texto) {
+        String chave = Objects.toString(texto, "").trim();
+        return chave.isEmpty() ? "(não informado)" : chave;
+    }
+
+    private static List<Map.Entry<String, Integer>> ordenados(HashMap<String, Integer> contagens) {
+        List<Map.Entry<String, Integer>> lista = new ArrayList<>();
+        for (Map.Entry<String, Integer> contagem : contagens.entrySet()) lista.add(Map.entry(contagem.getKey(), contagem.getValue()));
+        lista.sort(Map.Entry.<String, Integer>comparingByValue(Collections.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+        return Collections.unmodifiableList(lista);
+    }
+}
@@ -0,0 +1,414 @@
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.stream.IntStream;
+
+// Estatísticas do histórico inteiro para a tela Relatórios: agendamentos por dia da semana e hora,
+// por ano, retorno dos clientes (visitas dos animais deles) e receita por produto. Roda fora da
+// thread dona, sobre um instantâneo do Repositorio, e divide o histórico em partes somadas em
+// paralelo (fork-join): primeiro os horários viram colunas de primitivos (dia, ano, hora, animal),
+// depois cada parte conta nas suas colunas e as contagens parciais são juntadas.
+//
+// O resultado fica guardado até chegarem dados novos: as colunas e as contagens dos agendamentos
+// valem enquanto o instantâneo traz as mesmas Linhas de agendamentos (e de animais, para os
+// donos); as vendas só crescem, então só as novas são contadas e somadas às anteriores.
+class Analises {
+    // Linhas por parte; abaixo disso a parte não se divide mais
+    private static final int LIMITE_PARTE = 8192;
+    private static final int CLIENTES_NO_RELATORIO = 10;
+    private static final int PRODUTOS_NO_RELATORIO = 10;
+
+    // Agendamentos em colunas: dia (LocalDate.toEpochDay), ano, hora e id do animal
+    private static final class Colunas {
+        final Repositorio.Linhas linhas;
+        final int[] dias;
+        final short[] anos;
+        final byte[] horas;
+        final long[] animais;
+        final int anoMinimo;
+        final int quantidadeAnos;
+
+        // As linhas que são as mesmas das colunas anteriores (copy-on-write do Repositorio) não
+        // são lidas de novo
+        Colunas(Repositorio.Linhas linhas, Colunas anteriores) {
+            this.linhas = linhas;
+            int colunaHorario = Arrays.asList(linhas.tabela.colunas).indexOf("horario");
+            int colunaAnimal = Arrays.asList(linhas.tabela.colunas).indexOf("animal");
+            dias = new int[linhas.size()];
+            anos = new short[linhas.size()];
+            horas = new byte[linhas.size()];
+            animais = new long[linhas.size()];
+            IntStream.range(0, linhas.size()).parallel().forEach(i -> {
+                Object[] linha = linhas.get(i);
+                int anterior = anteriores == null ? -1 : anteriores.linhas.posicao((Long) linha[0]);
+                if (anterior >= 0 && anteriores.linhas.get(anterior) == linha) {
+                    dias[i] = anteriores.dias[anterior];
+                    anos[i] = anteriores.anos[anterior];
+                    horas[i] = anteriores.horas[anterior];
+                    animais[i] = anteriores.animais[anterior];
+                    return;
+                }
+                String horario = (String) linha[colunaHorario];
+                LocalDate data = data(horario);
+                dias[i] = (int) data.toEpochDay();
+                anos[i] = (short) data.getYear();
+                horas[i] = (byte) hora(horario);
+                Long animal = (Long) linha[colunaAnimal];
+                animais[i] = animal == null ? 0 : animal;
+            });
+            int minimo = anos.length == 0 ? 0 : Short.MAX_VALUE;
+            int maximo = anos.length == 0 ? 0 : Short.MIN_VALUE;
+            for (short ano : anos) {
+                minimo = Math.min(minimo, ano);
+                maximo = Math.max(maximo, ano);
+            }
+            anoMinimo = minimo;
+            quantidadeAnos = maximo - minimo + 1;
+        }
+
+        // O horário vem de LocalDateTime.toString(): uuuu-MM-ddTHH:mm[:ss[.n]]. Lido pelas
+        // posições, que é bem mais barato que LocalDateTime.parse; anos fora de 4 dígitos pelo parse
+        private static LocalDate data(String horario) {
+            if (horario.length() < 16 || horario.charAt(10) != 'T') return LocalDateTime.parse(horario).toLocalDate();
+            return LocalDate.of(numero(horario, 0, 4), numero(horario, 5, 7), numero(horario, 8, 10));
+        }
+
+        private static int hora(String horario) {
+            if (horario.length() < 16 || horario.charAt(10) != 'T') return LocalDateTime.parse(horario).getHour();
+            return numero(horario, 11, 13);
+        }
+
+        private static int numero(String texto, int inicio, int fim) {
+            int numero = 0;
+            for (int i = inicio; i < fim; i++) numero = numero * 10 + (texto.charAt(i) - '0');
+            return numero;
+        }
+    }
+
+    // Donos de cada animal por posição: animal na posição p das Linhas de animais -> clientes nas
+    // posições clientes[inicio[p]..inicio[p + 1]) das Linhas de clientes
+    private static final class Donos {
+        final Repositorio.Linhas animais;
+        final Repositorio.Linhas clientes;
+        final int[] inicio;
+        final int[] posicoes;
+
+        Donos(Repositorio.Linhas animais, Repositorio.Linhas clientes) {
+            this.animais = animais;
+            this.clientes = clientes;
+            int colunaDonos = Arrays.asList(animais.tabela.colunas).indexOf("donos");
+            inicio = new int[animais.size() + 1];
+            int total = 0;
+            for (int i = 0; i < animais.size(); i++) total += ((long[]) animais.get(i)[colunaDonos]).length;
+            int[] posicoes = new int[total];
+            int proxima = 0;
+            for (int i = 0; i < animais.size(); i++) {
+                inicio[i] = proxima;
+                for (long dono : (long[]) animais.get(i)[colunaDonos]) {
+                    int posicao = clientes.posicao(dono);
+                    if (posicao >= 0) posicoes[proxima++] = posicao;
+                }
+            }
+            inicio[animais.size()] = proxima;
+            this.posicoes = posicoes;
+        }
+    }
+
+    // Contagem dos agendamentos de uma parte, em arrays: nada de caixa (Integer, Long) por linha
+    private static final class Agenda {
+        // [dia da semana (0 = segunda) * 24 + hora]
+        final int[] porHora = new int[7 * 24];
+        // [ano - Colunas.anoMinimo]
+        final int[] porAno;
+        // Por posição do cliente: visitas e o primeiro e o último dia com visita
+        final int[] visitas;
+        final int[] primeiro;
+        final int[] ultimo;
+
+        Agenda(int anos, int clientes) {
+            porAno = new int[anos];
+            visitas = new int[clientes];
+            primeiro = new int[clientes];
+            ultimo = new int[clientes];
+            Arrays.fill(primeiro, Integer.MAX_VALUE);
+            Arrays.fill(ultimo, Integer.MIN_VALUE);
+        }
+
+        // posicoesAnimais: posição nas Linhas de animais do animal de cada agendamento (-1 = nenhum)
+        static Agenda contar(Colunas colunas, int[] posicoesAnimais, Donos donos, int inicio, int fim) {
+            Agenda agenda = new Agenda(colunas.quantidadeAnos, donos.clientes.size());
+            for (int i = inicio; i < fim; i++) {
+                int dia = colunas.dias[i];
+                // O dia 0 (1970-01-01) foi uma quinta-feira
+                agenda.porHora[Math.floorMod(dia + 3, 7) * 24 + colunas.horas[i]]++;
+                agenda.porAno[colunas.anos[i] - colunas.anoMinimo]++;
+                int animal = posicoesAnimais[i];
+                if (animal < 0) continue;
+                for (int k = donos.inicio[animal]; k < donos.inicio[animal + 1]; k++) {
+                    int cliente = donos.posicoes[k];
+                    agenda.visitas[cliente]++;
+                    agenda.primeiro[cliente] = Math.min(agenda.primeiro[cliente], dia);
+                    agenda.ultimo[cliente] = Math.max(agenda.ultimo[cliente], dia);
+                }
+            }
+            return agenda;
+        }
+
+        static Agenda juntar(Agenda a, Agenda b) {
+            for (int i = 0; i < a.porHora.length; i++) a.porHora[i] += b.porHora[i];
+            for (int i = 0; i < a.porAno.length; i++) a.porAno[i] += b.porAno[i];
+            for (int i = 0; i < a.visitas.length; i++) {
+                a.visitas[i] += b.visitas[i];
+                a.primeiro[i] = Math.min(a.primeiro[i], b.primeiro[i]);
+                a.ultimo[i] = Math.max(a.ultimo[i], b.ultimo[i]);
+            }
+            return a;
+        }
+    }
+
+    // Contagem das vendas de uma parte
+    private static final class Vendas {
+        // sku -> {quantidade, centavos}
+        final HashMap<String, long[]> porProduto = new HashMap<>();
+        // ano -> {vendas, centavos}
+        final HashMap<Integer, long[]> porAno = new HashMap<>();
+        // id do cliente -> compras
+        final HashMap<Long, Long> clientes = new HashMap<>();
+
+        static Vendas contar(List<LivroVendas.Venda> vendas, int inicio, int fim) {
+            Vendas parte = new Vendas();
+            ZoneId zona = ZoneId.systemDefault();
+            for (int i = inicio; i < fim; i++) {
+                LivroVendas.Venda venda = vendas.get(i);
+                long total = venda.totalCentavos();
+                long[] produto = parte.porProduto.computeIfAbsent(venda.sku, s -> new long[2]);
+                produto[0] += venda.quantidade;
+                produto[1] += total;
+                long[] ano = parte.porAno.computeIfAbsent(Instant.ofEpochMilli(venda.momento).atZone(zona).getYear(), a -> new long[2]);
+                ano[0]++;
+                ano[1] += total;
+                if (venda.cliente != 0) parte.clientes.merge(venda.cliente, 1L, Long::sum);
+            }
+            return parte;
+        }
+
+        // Não mexe em b; a pode ser o resultado de outra soma
+        static Vendas juntar(Vendas a, Vendas b) {
+            b.porProduto.forEach((sku, total) -> a.porProduto.merge(sku, total.clone(), (x, y) -> new long[]{x[0] + y[0], x[1] + y[1]}));
+            b.porAno.forEach((ano, total) -> a.porAno.merge(ano, total.clone(), (x, y) -> new long[]{x[0] + y[0], x[1] + y[1]}));
+            b.clientes.forEach((cliente, compras) -> a.clientes.merge(cliente, compras, Long::sum));
+            return a;
+        }
+    }
+
+    // Uma parte do histórico [inicio, fim): conta direto se é pequena, senão divide ao meio
+    private interface Contagem<P> {
+        P contar(int inicio, int fim);
+    }
+
+    private static final class Parte<P> extends RecursiveTask<P> {
+        private static final long serialVersionUID = 1L;
+
+        private final int inicio;
+        private final int fim;
+        private final int tamanho;
+        private final Contagem<P> contagem;
+        private final BinaryOperator<P> juntar;
+
+        Parte(int inicio, int fim, int tamanho, Contagem<P> contagem, BinaryOperator<P> juntar) {
+            this.inicio = inicio;
+            this.fim = fim;
+            this.tamanho = tamanho;
+            this.contagem = contagem;
+            this.juntar = juntar;
+        }
+
+        @Override
+        protected P compute() {
+            if (fim - inicio <= tamanho) return contagem.contar(inicio, fim);
+            int meio = (inicio + fim) >>> 1;
+            Parte<P> esquerda = new Parte<>(inicio, meio, tamanho, contagem, juntar);
+            esquerda.fork();
+            P direita = new Parte<>(meio, fim, tamanho, contagem, juntar).compute();
+            return juntar.apply(esquerda.join(), direita);
+        }
+    }
+
+    static final class Resultado {
+        // Versão e momento do instantâneo analisado
+        final long versao;
+        final long momento;
+        final int agendamentos;
+        final int quantidadeVendas;
+        private final Agenda agenda;
+        private final int anoMinimo;
+        // As posições dos clientes na Agenda são destas Linhas
+        private final Repositorio.Linhas clientes;
+        private final Vendas vendas;
+
+        private Resultado(Repositorio.Instantaneo dados, Agenda agenda, int anoMinimo, Repositorio.Linhas clientes, Vendas vendas) {
+            this.versao = dados.versao;
+            this.momento = dados.momento;
+            this.agendamentos = dados.linhas(Diario.AGENDAMENTO).size();
+            this.quantidadeVendas = dados.vendas.size();
+            this.agenda = agenda;
+            this.anoMinimo = anoMinimo;
+            this.clientes = clientes;
+            this.vendas = vendas;
+        }
+    }
+
+    // Guardados entre uma análise e outra; uma análise por vez
+    private static Colunas colunas;
+    private static Donos donos;
+    // Posição do animal de cada agendamento, para as colunas e as Linhas de animais de agora
+    private static int[] posicoesAnimais;
+    private static Colunas colunasPosicoes;
+    private static Repositorio.Linhas animaisPosicoes;
+    private static Agenda agenda;
+    private static Colunas colunasAgenda;
+    private static Donos donosAgenda;
+    private static Vendas vendas = new Vendas();
+    private static int vendasContadas;
+
+    // Em qualquer thread (de preferência fora da EDT: a primeira análise percorre o histórico todo)
+    static synchronized Resultado analisar(Repositorio.Instantaneo dados) {
+        Repositorio.Linhas agendamentos = dados.linhas(Diario.AGENDAMENTO);
+        Repositorio.Linhas animais = dados.linhas(Diario.ANIMAL);
+        Repositorio.Linhas clientes = dados.linhas(Diario.CLIENTE);
+        if (colunas == null || agendamentos != colunas.linhas) colunas = new Colunas(agendamentos, colunas);
+        if (donos == null || animais != donos.animais || clientes != donos.clientes) donos = new Donos(animais, clientes);
+        if (colunas != colunasPosicoes || animais != animaisPosicoes) {
+            Colunas atuais = colunas;
+            int[] posicoes = new int[atuais.animais.length];
+            IntStream.range(0, posicoes.length).parallel().forEach(i -> posicoes[i] = animais.posicao(atuais.animais[i]));
+            posicoesAnimais = posicoes;
+            colunasPosicoes = colunas;
+            animaisPosicoes = animais;
+        }
+        if (colunas != colunasAgenda || donos != donosAgenda) {
+            Colunas atuais = colunas;
+            int[] posicoes = posicoesAnimais;
+            Donos atuaisDonos = donos;
+            // Cada parte tem arrays do tamanho dos clientes: poucas partes por thread
+            int tamanho = Math.max(LIMITE_PARTE, agendamentos.size() / (4 * ForkJoinPool.getCommonPoolParallelism()) + 1);
+            agenda = dividir(agendamentos.size(), tamanho, (inicio, fim) -> Agenda.contar(atuais, posicoes, atuaisDonos, inicio, fim), Agenda::juntar);
+            colunasAgenda = colunas;
+            donosAgenda = donos;
+        }
+        // As vendas do instantâneo são um prefixo das que já foram contadas, ou o contrário
+        List<LivroVendas.Venda> lista = dados.vendas;
+        if (lista.size() < vendasContadas) {
+            vendas = new Vendas();
+            vendasContadas = 0;
+        }
+        if (lista.size() > vendasContadas) {
+            int inicio = vendasContadas;
+            Vendas novas = dividir(lista.size() - inicio, LIMITE_PARTE, (de, ate) -> Vendas.contar(lista, inicio + de, inicio + ate), Vendas::juntar);
+            // O resultado anterior pode estar sendo lido: a soma vai para um objeto novo
+            vendas = Vendas.juntar(Vendas.juntar(new Vendas(), vendas), novas);
+            vendasContadas = lista.size();
+        }
+        return new Resultado(dados, agenda, colunas.anoMinimo, donos.clientes, vendas);
+    }
+
+    private static <P> P dividir(int quantidade, int tamanho, Contagem<P> contagem, BinaryOperator<P> juntar) {
+        return ForkJoinPool.commonPool().invoke(new Parte<>(0, quantidade, tamanho, contagem, juntar));
+    }
+
+    // Texto para a tela; nomes de clientes e produtos vêm do instantâneo analisado
+    static String texto(Resultado resultado, Repositorio.Instantaneo dados) {
+        StringBuilder texto = new StringBuilder();
+        texto.append("Análises do Histórico\n");
+        texto.append("Dados de ").append(PetshopSystemSwing.FORMATO_DATA_HORA.format(
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(resultado.momento), ZoneId.systemDefault()))).append(", ")
+                .append(resultado.agendamentos).append(" agendamento(s) e ").append(resultado.quantidadeVendas).append(" venda(s)\n");
+
+        texto.append("\nPor Ano:\n");
+        TreeMap<Integer, long[]> anos = new TreeMap<>();
+        for (int i = 0; i < resultado.agenda.porAno.length; i++) {
+            if (resultado.agenda.porAno[i] > 0) anos.computeIfAbsent(resultado.anoMinimo + i, a -> new long[3])[0] = resultado.agenda.porAno[i];
+        }
+        resultado.vendas.porAno.forEach((ano, total) -> {
+            long[] linha = anos.computeIfAbsent(ano, a -> new long[3]);
+            linha[1] = total[0];
+            linha[2] = total[1];
+        });
+        for (Map.Entry<Integer, long[]> ano : anos.entrySet()) {
+            long[] linha = ano.getValue();
+            texto.append(String.format("  %d: %d agendamento(s), %d venda(s), %s%n", ano.getKey(), linha[0], linha[1], LivroVendas.reais(linha[2])));
+        }
+
+        texto.append("\nDias da Semana Mais Movimentados:\n");
+        int[] porDia = new int[7];
+        for (int i = 0; i < resultado.agenda.porHora.length; i++) porDia[i / 24] += resultado.agenda.porHora[i];
+        Integer[] dias = {0, 1, 2, 3, 4, 5, 6};
+        Arrays.sort(dias, (a, b) -> porDia[b] != porDia[a] ? Integer.compare(porDia[b], porDia[a]) : Integer.compare(a, b));
+        for (int dia : dias) {
+            texto.append(String.format("  %-8s %d%n", nomeDia(dia), porDia[dia]));
+        }
+
+        texto.append("\nAgendamentos por Hora:\n     ");
+        for (int dia = 0; dia < 7; dia++) texto.append(String.format(" %5s", nomeDia(dia)));
+        texto.append('\n');
+        for (int hora = 0; hora < 24; hora++) {
+            int totalHora = 0;
+            for (int dia = 0; dia < 7; dia++) totalHora += resultado.agenda.porHora[dia * 24 + hora];
+            // Horas sem nenhum agendamento no histórico ficam de fora
+            if (totalHora == 0) continue;
+            texto.append(String.format("  %02dh", hora));
+            for (int dia = 0; dia < 7; dia++) texto.append(String.format(" %5d", resultado.agenda.porHora[dia * 24 + hora]));
+            texto.append('\n');
+        }
+
+        Agenda agenda = resultado.agenda;
+        int comVisita = 0;
+        int comRetorno = 0;
+        List<Integer> maisVisitas = new ArrayList<>();
+        for (int i = 0; i < agenda.visitas.length; i++) {
+            if (agenda.visitas[i] == 0) continue;
+            comVisita++;
+            if (agenda.ultimo[i] > agenda.primeiro[i]) comRetorno++;
+            maisVisitas.add(i);
+        }
+        texto.append("\nRetorno dos Clientes:\n");
+        texto.append(String.format("  %d cliente(s) com agendamento, %d voltaram em outro dia (%.1f%%)%n", comVisita, comRetorno,
+                comVisita == 0 ? 0.0 : comRetorno * 100.0 / comVisita));
+        maisVisitas.sort((a, b) -> Integer.compare(agenda.visitas[b], agenda.visitas[a]));
+        for (int cliente : maisVisitas.subList(0, Math.min(CLIENTES_NO_RELATORIO, maisVisitas.size()))) {
+            Object[] linha = resultado.clientes.get(cliente);
+            int visitas = agenda.visitas[cliente];
+            texto.append(String.format("  %s: %d visita(s)", linha[1], visitas));
+            if (visitas > 1) texto.append(String.format(", uma a cada %.0f dia(s)", (agenda.ultimo[cliente] - agenda.primeiro[cliente]) / (double) (visitas - 1)));
+            texto.append(String.format(", %d compra(s)%n", resultado.vendas.clientes.getOrDefault((Long) linha[0], 0L)));
+        }
+
+        texto.append("\nReceita por Produto:\n");
+        List<Map.Entry<String, long[]>> produtos = new ArrayList<>(resultado.vendas.porProduto.entrySet());
+        produtos.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        HashMap<String, String> nomes = new HashMap<>();
+        for (LivroVendas.Produto produto : dados.produtos) nomes.put(produto.sku, produto.nome);
+        for (Map.Entry<String, long[]> produto : produtos.subList(0, Math.min(PRODUTOS_NO_RELATORIO, produtos.size()))) {
+            texto.append(String.format("  %s %s: %d unidade(s), %s%n", produto.getKey(), nomes.getOrDefault(produto.getKey(), ""),
+                    produto.getValue()[0], LivroVendas.reais(produto.getValue()[1])));
+        }
+        return texto.toString();
+    }
+
+    private static String nomeDia(int dia) {
+        return DayOfWeek.of(dia + 1).getDisplayName(TextStyle.SHORT, new Locale("pt", "BR"));
+    }
+}
@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+// petshop.dat (versão 2+) mapeado em memória: abrir custa só o cabeçalho e o índice, e cada
+// registro é decodificado na primeira vez que alguém o acessa. O sistema operacional traz as
+// páginas do arquivo sob demanda, então bases grandes abrem sem ler o arquivo inteiro.
+class ArquivoMapeado {
+    private final ByteBuffer mapa;
+    private final CodecBinario.EsquemaArquivo esquema;
+    private final Secao[] secoes;
+    final long geracao;
+    final long proximoId;
+
+    // Seção de um tipo: registros listados seguidos dos avulsos, acessados pelo ordinal
+    class Secao {
+        final byte tipo;
+        final int listados;
+        final int avulsos;
+        private final int indice;
+        private final int tabelaRegistros;
+        private final int tabelaIds;
+        private Object[] cache;
+
+        private Secao(int indice, int listados, int avulsos, int tabelaRegistros) {
+            this.indice = indice;
+            this.tipo = esquema.tipos[indice];
+            this.listados = listados;
+            this.avulsos = avulsos;
+            this.tabelaRegistros = tabelaRegistros;
+            this.tabelaIds = tabelaRegistros + (listados + avulsos) * CodecBinario.TAMANHO_ENTRADA_INDICE;
+        }
+
+        int fimIndice() {
+            return tabelaIds + (listados + avulsos) * CodecBinario.TAMANHO_ENTRADA_INDICE;
+        }
+
+        // A entidade é guardada no cache antes de ler os campos, então todos os acessos
+        // (inclusive por referência) devolvem o mesmo objeto
+        synchronized Object obter(int ordinal) {
+            if (cache == null) cache = new Object[listados + avulsos];
+            Object entidade = cache[ordinal];
+            if (entidade == null) {
+                CodecBinario.Entrada in = registro(ordinal);
+                entidade = CodecBinario.novaEntidade(tipo, in.varint());
+                cache[ordinal] = entidade;
+                esquema.lerRegistro(indice, in, entidade, ArquivoMapeado.this::obterPorId);
+            }
+            return entidade;
+        }
+
+        synchronized Object seCarregado(int ordinal) {
+            return cache == null ? null : cache[ordinal];
+        }
+
+        // Retrato do cache por ordinal (null = nada decodificado), para ListaPreguicosa.congelada
+        synchronized Object[] carregados() {
+            return cache == null ? null : cache.clone();
+        }
+
+        // A entidade do cache, se já foi decodificada (e talvez alterada); senão uma cópia
+        // decodificada só para quem chamou, que não fica no cache. As referências dela são
+        // entidades só com o id, a não ser as que já estão no cache (ver referenciaLeve)
+        Object lerSemGuardar(int ordinal) {
+            Object entidade = seCarregado(ordinal);
+            return entidade != null ? entidade : lerDoArquivo(ordinal);
+        }
+
+        // Sempre a cópia decodificada do arquivo, mesmo que o registro esteja no cache: para listas
+        // congeladas, em que o cache pode ter mudado depois da cópia
+        Object lerDoArquivo(int ordinal) {
+            CodecBinario.Entrada in = registro(ordinal);
+            Object entidade = CodecBinario.novaEntidade(tipo, in.varint());
+            esquema.lerRegistro(indice, in, entidade, ArquivoMapeado.this::referenciaLeve);
+            return entidade;
+        }
+
+        long id(int ordinal) {
+            return registro(ordinal).varint();
+        }
+
+        // Ids referenciados pelo registro, lidos direto do arquivo
+        void referencias(int ordinal, LongConsumer destino) {
+            CodecBinario.Entrada in = registro(ordinal);
+            in.varint();
+            esquema.referencias(indice, in, destino);
+        }
+
+        // Copia o registro como está no arquivo; só vale se o esquema do arquivo é o atual.
+        // O fim do registro é achado pulando os campos, então o índice não guarda tamanhos
+        boolean copiar(int ordinal, CodecBinario.Saida out) {
+            if (!esquema.igualAoAtual[indice]) return false;
+            CodecBinario.Entrada in = registro(ordinal);
+            int inicio = in.buffer().position();
+            in.varint();
+            esquema.pularRegistro(indice, in);
+            out.bytes(in.buffer().limit(in.buffer().position()).position(inicio));
+            return true;
+        }
+
+        // Busca binária na tabela de ordinais em ordem de id; -1 se o id não está nesta seção
+        int ordinalDoId(long id) {
+            int inicio = 0;
+            int fim = listados + avulsos - 1;
+            while (inicio <= fim) {
+                int meio = (inicio + fim) >>> 1;
+                int ordinal = mapa.getInt(tabelaIds + meio * CodecBinario.TAMANHO_ENTRADA_INDICE);
+                long atual = id(ordinal);
+                if (atual < id) inicio = meio + 1;
+                else if (atual > id) fim = meio - 1;
+                else return ordinal;
+            }
+            return -1;
+        }
+
+        private CodecBinario.Entrada registro(int ordinal) {
+            int posicao = mapa.getInt(tabelaRegistros + ordinal * CodecBinario.TAMANHO_ENTRADA_INDICE);
+            return new CodecBinario.Entrada(mapa.duplicate().position(posicao));
+        }
+    }
+
+    private ArquivoMapeado(ByteBuffer mapa) {
+        this.mapa = mapa;
+        CodecBinario.Entrada in = new CodecBinario.Entrada(mapa.duplicate());
+        in.inteiro();
+        in.curto();
+        this.geracao = in.longo();
+        this.proximoId = in.longo();
+        int posicaoIndice = (int) in.longo();
+        this.esquema = CodecBinario.EsquemaArquivo.ler(in);
+        this.secoes = new Secao[esquema.tipos.length];
+        for (int t = 0; t < secoes.length; t++) {
+            secoes[t] = new Secao(t, mapa.getInt(posicaoIndice), mapa.getInt(posicaoIndice + 4), posicaoIndice + 8);
+            posicaoIndice = secoes[t].fimIndice();
+        }
+    }
+
+    // null quando o arquivo não tem índice (serialização Java ou versão 1); nesse caso quem
+    // chama usa CodecBinario.carregar, que lê tudo de uma vez e regrava no formato atual.
+    // O mapeamento continua válido depois que o canal é fechado.
+    static ArquivoMapeado abrir(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            // Um ByteBuffer mapeado endereça no máximo 2 GB
+            if (tamanho < CodecBinario.POSICAO_INDICE + 8 || tamanho > Integer.MAX_VALUE) return null;
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+            if (mapa.getInt(0) != CodecBinario.MAGICO || mapa.getShort(4) < 2 || mapa.getShort(4) > CodecBinario.VERSAO) {
+                return null;
+            }
+            return new ArquivoMapeado(mapa);
+        }
+    }
+
+    Secao secao(byte tipo) {
+        int t = esquema.indice(tipo);
+        return t < 0 ? null : secoes[t];
+    }
+
+    // Lista com os registros listados do tipo, decodificados sob demanda
+    <T> ListaPreguicosa<T> lista(byte tipo) {
+        return new ListaPreguicosa<>(secao(tipo));
+    }
+
+    private Object referenciaLeve(long id) {
+        for (Secao secao : secoes) {
+            if (CodecBinario.esquemaLocal(secao.tipo) == null) continue;
+            int ordinal = secao.ordinalDoId(id);
+            if (ordinal < 0) continue;
+            Object carregada = secao.seCarregado(ordinal);
+            return carregada != null ? carregada : CodecBinario.novaEntidade(secao.tipo, id);
+        }
+        return null;
+    }
+
+    // Registro pelo id como está no arquivo, sem decodificar, para a compactação fora da thread
+    // dona; null se o id não está no arquivo
+    CodecBinario.Bruto bruto(long id) {
+        for (Secao secao : secoes) {
+            if (CodecBinario.esquemaLocal(secao.tipo) == null) continue;
+            int ordinal = secao.ordinalDoId(id);
+            if (ordinal >= 0) return new CodecBinario.Bruto(secao, ordinal);
+        }
+        return null;
+    }
+
+    // Se o esquema de todos os tipos conhecidos é o atual, todo registro pode ser copiado (Secao.copiar)
+    boolean copiavel() {
+        for (int t = 0; t < secoes.length; t++) {
+            if (CodecBinario.esquemaLocal(secoes[t].tipo) != null && !esquema.igualAoAtual[t]) return false;
+        }
+        return true;
+    }
+
+    Object obterPorId(long id) {
+        for (Secao secao : secoes) {
+            if (CodecBinario.esquemaLocal(secao.tipo) == null) continue;
+            int ordinal = secao.ordinalDoId(id);
+            if (ordinal >= 0) return secao.obter(ordinal);
+        }
+        return null;
+    }
+}
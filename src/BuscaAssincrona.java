@@ -0,0 +1,102 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.JTextComponent;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Busca de uma tela fora da EDT: as teclas são agrupadas (debounce), a consulta roda na thread
+// de busca e só o resultado da consulta mais recente volta para a tabela. Uma tecla nova
+// descarta a consulta que ainda está na fila ou em andamento.
+class BuscaAssincrona {
+    private static final int ESPERA_MS = 150;
+
+    // Uma thread para todas as telas: as consultas são curtas e só a última de cada tela importa
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "petshop-busca");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JTextComponent campo;
+    private final IndiceBusca<?> indice;
+    private final Consumer<long[]> publicar;
+    private final JLabel lblMetricas;
+    private final Timer temporizador;
+    // Cada tecla gera uma nova geração; consultas de gerações anteriores são descartadas
+    private final AtomicLong geracao = new AtomicLong();
+    private long ultimaTecla;
+
+    // Métricas de latência (acessadas só na EDT)
+    private int consultas;
+    private int descartadas;
+    private long tempoTotalConsultas;
+    private long maiorConsulta;
+
+    BuscaAssincrona(JTextComponent campo, IndiceBusca<?> indice, Consumer<long[]> publicar, JLabel lblMetricas) {
+        this.campo = campo;
+        this.indice = indice;
+        this.publicar = publicar;
+        this.lblMetricas = lblMetricas;
+        this.temporizador = new Timer(ESPERA_MS, e -> executarAgora());
+        this.temporizador.setRepeats(false);
+        campo.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { agendar(); }
+            public void removeUpdate(DocumentEvent e) { agendar(); }
+            public void changedUpdate(DocumentEvent e) { agendar(); }
+        });
+    }
+
+    private void agendar() {
+        ultimaTecla = System.nanoTime();
+        geracao.incrementAndGet();
+        temporizador.restart();
+    }
+
+    // Consulta sem esperar o debounce (ex.: filtro de um checkbox)
+    void executarAgora() {
+        temporizador.stop();
+        long minha = geracao.incrementAndGet();
+        String texto = campo.getText();
+        long inicioEspera = ultimaTecla != 0 ? ultimaTecla : System.nanoTime();
+        ultimaTecla = 0;
+        // A montagem lê as listas, então fica na EDT; só acontece na primeira busca da tela
+        indice.montar();
+        EXECUTOR.execute(() -> {
+            // Ainda na fila quando chegou uma tecla nova: nem consulta
+            if (geracao.get() != minha) {
+                descartar();
+                return;
+            }
+            long inicio = System.nanoTime();
+            long[] resultado = indice.buscar(texto);
+            long duracao = System.nanoTime() - inicio;
+            SwingUtilities.invokeLater(() -> {
+                if (geracao.get() != minha) {
+                    descartadas++;
+                    return;
+                }
+                publicar.accept(resultado);
+                registrar(resultado.length, duracao, System.nanoTime() - inicioEspera);
+            });
+        });
+    }
+
+    private void descartar() {
+        SwingUtilities.invokeLater(() -> descartadas++);
+    }
+
+    // Consulta = tempo no índice; total = da última tecla até a tabela atualizada (inclui o debounce)
+    private void registrar(int resultados, long duracaoConsulta, long duracaoTotal) {
+        consultas++;
+        tempoTotalConsultas += duracaoConsulta;
+        maiorConsulta = Math.max(maiorConsulta, duracaoConsulta);
+        if (lblMetricas == null) return;
+        lblMetricas.setText(String.format("%d resultado(s) - consulta %.2f ms, total %.0f ms",
+                resultados, duracaoConsulta / 1e6, duracaoTotal / 1e6));
+        lblMetricas.setToolTipText(String.format("%d consultas, %d descartadas, média %.2f ms, máxima %.2f ms",
+                consultas, descartadas, tempoTotalConsultas / 1e6 / consultas, maiorConsulta / 1e6));
+    }
+}
@@ -0,0 +1,811 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+// Formato binário do arquivo de dados, no lugar da serialização Java das entidades.
+//
+// Layout (big-endian):
+//   int mágico "PSB1", short versão, long geração, long próximo id, long posição do índice (versão 2+)
+//   esquema: varint nº de tipos; por tipo: byte tipo, texto nome, varint nº de campos e,
+//            por campo, texto nome + byte tipo do campo
+//   uma seção por tipo, na ordem do esquema: varint nº de registros da lista + registros,
+//            varint nº de registros avulsos (só referenciados por outra entidade) + registros
+//   registro: varint id + campos na ordem do esquema
+//   índice (versão 2+), uma entrada por tipo na ordem do esquema, com largura fixa para ser
+//            consultado direto no arquivo mapeado (ver ArquivoMapeado):
+//            int listados, int avulsos, int posição de cada registro na ordem da seção e
+//            int ordinal de cada registro em ordem de id (para busca binária pelo id)
+//
+// Textos são UTF-8 com o tamanho em varint, datas são epoch-millis e referências são o id da
+// entidade referenciada. O leitor casa os campos do arquivo com os atuais pelo nome, então
+// campos novos ou removidos entre versões não quebram a leitura.
+class CodecBinario {
+    static final int MAGICO = 0x50534231; // "PSB1"
+    static final short VERSAO = 2;
+    private static final int MAGICO_SERIALIZACAO_JAVA = 0xACED0005;
+    static final int POSICAO_INDICE = 4 + 2 + 8 + 8;
+    static final int TAMANHO_ENTRADA_INDICE = 4;
+
+    // Tipos de campo
+    static final byte TEXTO = 1;
+    static final byte BOOLEANO = 2;
+    static final byte DATA = 3;
+    static final byte REFERENCIA = 4;
+    static final byte LISTA_REFERENCIAS = 5;
+    static final byte INTEIRO = 6;
+
+    static class Dados {
+        List<PetshopSystemSwing.Cliente> clientes = new ArrayList<>();
+        List<PetshopSystemSwing.Animal> animais = new ArrayList<>();
+        List<PetshopSystemSwing.Agendamento> agendamentos = new ArrayList<>();
+        List<PetshopSystemSwing.Funcionario> funcionarios = new ArrayList<>();
+        long geracao;
+        long proximoId;
+    }
+
+    interface Escritor<T> {
+        void escrever(T entidade, Saida out);
+    }
+
+    interface Leitor<T> {
+        void ler(T entidade, Entrada in, LongFunction<Object> referencias);
+    }
+
+    static class Campo<T> {
+        final String nome;
+        final byte tipo;
+        final Escritor<T> escritor;
+        final Leitor<T> leitor;
+
+        Campo(String nome, byte tipo, Escritor<T> escritor, Leitor<T> leitor) {
+            this.nome = nome;
+            this.tipo = tipo;
+            this.escritor = escritor;
+            this.leitor = leitor;
+        }
+    }
+
+    static class Esquema<T> {
+        final byte tipo;
+        final String nome;
+        final Class<T> classe;
+        final LongFunction<T> fabrica;
+        final ToLongFunction<T> id;
+        final List<Campo<T>> campos;
+
+        @SafeVarargs
+        Esquema(byte tipo, String nome, Class<T> classe, LongFunction<T> fabrica, ToLongFunction<T> id, Campo<T>... campos) {
+            this.tipo = tipo;
+            this.nome = nome;
+            this.classe = classe;
+            this.fabrica = fabrica;
+            this.id = id;
+            // Só lê o array dos varargs, sem repassá-lo (assim o @SafeVarargs vale de fato)
+            ArrayList<Campo<T>> lista = new ArrayList<>(campos.length);
+            for (Campo<T> campo : campos) lista.add(campo);
+            this.campos = Collections.unmodifiableList(lista);
+        }
+
+        void escrever(Object entidade, Saida out) {
+            T t = classe.cast(entidade);
+            for (Campo<T> campo : campos) {
+                campo.escritor.escrever(t, out);
+            }
+        }
+    }
+
+    static final Esquema<PetshopSystemSwing.Cliente> CLIENTE = new Esquema<>(Diario.CLIENTE, "Cliente", PetshopSystemSwing.Cliente.class,
+            id -> {
+                PetshopSystemSwing.Cliente c = new PetshopSystemSwing.Cliente(null, null, null, null, null, null);
+                c.id = id;
+                return c;
+            },
+            c -> c.id,
+            texto("nome", c -> c.nome, (c, v) -> c.nome = v),
+            texto("email", c -> c.email, (c, v) -> c.email = v),
+            texto("telefone", c -> c.telefone, (c, v) -> c.telefone = v),
+            texto("cpf", c -> c.cpf, (c, v) -> c.cpf = v),
+            texto("cep", c -> c.cep, (c, v) -> c.cep = v),
+            texto("sexo", c -> c.sexo, (c, v) -> c.sexo = v),
+            data("alterado", c -> c.alterado, (c, v) -> c.alterado = v));
+
+    static final Esquema<PetshopSystemSwing.Animal> ANIMAL = new Esquema<>(Diario.ANIMAL, "Animal", PetshopSystemSwing.Animal.class,
+            id -> {
+                PetshopSystemSwing.Animal a = new PetshopSystemSwing.Animal(null, false, null, null, null);
+                a.id = id;
+                return a;
+            },
+            a -> a.id,
+            texto("nome", a -> a.nome, (a, v) -> a.nome = v),
+            new Campo<>("semDono", BOOLEANO, (a, out) -> out.booleano(a.semDono), (a, in, refs) -> a.semDono = in.booleano()),
+            new Campo<>("paraAdocao", BOOLEANO, (a, out) -> out.booleano(a.paraAdocao), (a, in, refs) -> a.paraAdocao = in.booleano()),
+            texto("observacao", a -> a.observacao, (a, v) -> a.observacao = v),
+            texto("raca", a -> a.raca, (a, v) -> a.raca = v),
+            texto("sexo", a -> a.sexo, (a, v) -> a.sexo = v),
+            new Campo<>("clientes", LISTA_REFERENCIAS,
+                    (a, out) -> {
+                        out.varint(a.clientes.size());
+                        for (PetshopSystemSwing.Cliente c : a.clientes) {
+                            out.varint(c.id);
+                        }
+                    },
+                    (a, in, refs) -> {
+                        int n = in.varintInt();
+                        a.clientes.clear();
+                        for (int i = 0; i < n; i++) {
+                            Object dono = refs.apply(in.varint());
+                            if (dono instanceof PetshopSystemSwing.Cliente) a.clientes.add((PetshopSystemSwing.Cliente) dono);
+                        }
+                    }),
+            data("alterado", a -> a.alterado, (a, v) -> a.alterado = v));
+
+    static final Esquema<PetshopSystemSwing.Agendamento> AGENDAMENTO = new Esquema<>(Diario.AGENDAMENTO, "Agendamento", PetshopSystemSwing.Agendamento.class,
+            id -> {
+                PetshopSystemSwing.Agendamento a = new PetshopSystemSwing.Agendamento(null, null, null);
+                a.id = id;
+                return a;
+            },
+            a -> a.id,
+            // Referência que não resolve mantém o animal atual (null num registro novo)
+            new Campo<>("animal", REFERENCIA, (a, out) -> out.varint(a.animal.id), (a, in, refs) -> {
+                Object animal = refs.apply(in.varint());
+                if (animal instanceof PetshopSystemSwing.Animal) a.animal = (PetshopSystemSwing.Animal) animal;
+            }),
+            // Gravado como milissegundos desde 1970, o mesmo formato de quando o horário era um Date
+            new Campo<>("horario", DATA, (a, out) -> out.longo(a.horario.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()),
+                    (a, in, refs) -> a.horario = LocalDateTime.ofInstant(Instant.ofEpochMilli(in.longo()), ZoneId.systemDefault())),
+            texto("detalhes", a -> a.detalhes, (a, v) -> a.detalhes = v),
+            // Campos novos vão sempre no fim: registros antigos do diário terminam antes deles
+            new Campo<>("duracao", INTEIRO, (a, out) -> out.varint(a.duracao), (a, in, refs) -> a.duracao = in.varintInt()),
+            texto("recurso", a -> a.recurso, (a, v) -> a.recurso = v),
+            // Id sem resolver: funcionários vêm depois dos agendamentos no arquivo
+            new Campo<>("funcionario", INTEIRO, (a, out) -> out.varint(a.funcionario), (a, in, refs) -> a.funcionario = in.varint()),
+            data("alterado", a -> a.alterado, (a, v) -> a.alterado = v));
+
+    static final Esquema<PetshopSystemSwing.Funcionario> FUNCIONARIO = new Esquema<>(Diario.FUNCIONARIO, "Funcionario", PetshopSystemSwing.Funcionario.class,
+            id -> {
+                PetshopSystemSwing.Funcionario f = new PetshopSystemSwing.Funcionario(null, null, null, null, null, null);
+                f.id = id;
+                return f;
+            },
+            f -> f.id,
+            texto("nome", f -> f.nome, (f, v) -> f.nome = v),
+            texto("email", f -> f.email, (f, v) -> f.email = v),
+            texto("telefone", f -> f.telefone, (f, v) -> f.telefone = v),
+            texto("cpf", f -> f.cpf, (f, v) -> f.cpf = v),
+            texto("cep", f -> f.cep, (f, v) -> f.cep = v),
+            texto("sexo", f -> f.sexo, (f, v) -> f.sexo = v),
+            data("alterado", f -> f.alterado, (f, v) -> f.alterado = v));
+
+    // Ordem das seções no arquivo: quem é referenciado vem antes de quem referencia
+    static final List<Esquema<?>> ESQUEMAS = List.of(CLIENTE, ANIMAL, AGENDAMENTO, FUNCIONARIO);
+
+    interface Setter<T> {
+        void definir(T entidade, String valor);
+    }
+
+    interface Getter<T> {
+        String obter(T entidade);
+    }
+
+    private static <T> Campo<T> texto(String nome, Getter<T> getter, Setter<T> setter) {
+        return new Campo<>(nome, TEXTO, (e, out) -> out.texto(getter.obter(e)), (e, in, refs) -> setter.definir(e, in.texto()));
+    }
+
+    // Epoch-millis guardado num long da entidade
+    private static <T> Campo<T> data(String nome, ToLongFunction<T> getter, ObjLongConsumer<T> setter) {
+        return new Campo<>(nome, DATA, (e, out) -> out.longo(getter.applyAsLong(e)), (e, in, refs) -> setter.accept(e, in.longo()));
+    }
+
+    static Esquema<?> esquema(byte tipo) {
+        Esquema<?> esquema = esquemaLocal(tipo);
+        if (esquema == null) throw new IllegalArgumentException("Tipo de entidade desconhecido: " + tipo);
+        return esquema;
+    }
+
+    // Esquema atual para um tipo lido do arquivo (null se o tipo não existe mais)
+    static Esquema<?> esquemaLocal(byte tipo) {
+        for (Esquema<?> esquema : ESQUEMAS) {
+            if (esquema.tipo == tipo) return esquema;
+        }
+        return null;
+    }
+
+    static Esquema<?> esquemaDe(Object entidade) {
+        for (Esquema<?> esquema : ESQUEMAS) {
+            if (esquema.classe.isInstance(entidade)) return esquema;
+        }
+        throw new IllegalArgumentException("Entidade sem esquema: " + entidade.getClass().getName());
+    }
+
+    // Campos de uma única entidade, na ordem do esquema atual (payload dos registros do diário)
+    static byte[] codificarEntidade(Object entidade) {
+        Saida out = new Saida(128);
+        esquemaDe(entidade).escrever(entidade, out);
+        return out.bytes();
+    }
+
+    static void decodificarEntidade(Object entidade, byte[] dados, LongFunction<Object> referencias) {
+        decodificarCampos(esquemaDe(entidade), entidade, new Entrada(ByteBuffer.wrap(dados)), referencias);
+    }
+
+    private static <T> void decodificarCampos(Esquema<T> esquema, Object entidade, Entrada in, LongFunction<Object> referencias) {
+        T t = esquema.classe.cast(entidade);
+        for (Campo<T> campo : esquema.campos) {
+            // Registro gravado antes de um campo existir: o campo fica com o valor padrão
+            if (!in.buffer().hasRemaining()) break;
+            campo.leitor.ler(t, in, referencias);
+        }
+    }
+
+    static Object novaEntidade(byte tipo, long id) {
+        return esquema(tipo).fabrica.apply(id);
+    }
+
+    // Arquivo completo
+
+    // Registro avulso copiado byte a byte do arquivo mapeado, devolvido pelo resolvedor de um
+    // Congelado no lugar da entidade
+    static final class Bruto {
+        final ArquivoMapeado.Secao secao;
+        final int ordinal;
+
+        Bruto(ArquivoMapeado.Secao secao, int ordinal) {
+            this.secao = secao;
+            this.ordinal = ordinal;
+        }
+    }
+
+    // Listas de um momento, para a thread de gravação codificar sem tocar nas entidades vivas
+    static final class Congelado {
+        private final List<PetshopSystemSwing.Cliente> clientes;
+        private final List<PetshopSystemSwing.Animal> animais;
+        private final List<PetshopSystemSwing.Agendamento> agendamentos;
+        private final List<PetshopSystemSwing.Funcionario> funcionarios;
+        final long geracao;
+        private final long proximoId;
+        private final LongFunction<Object> resolvedor;
+
+        private Congelado(List<PetshopSystemSwing.Cliente> clientes, List<PetshopSystemSwing.Animal> animais,
+                          List<PetshopSystemSwing.Agendamento> agendamentos, List<PetshopSystemSwing.Funcionario> funcionarios,
+                          long geracao, long proximoId, LongFunction<Object> resolvedor) {
+            this.clientes = clientes;
+            this.animais = animais;
+            this.agendamentos = agendamentos;
+            this.funcionarios = funcionarios;
+            this.geracao = geracao;
+            this.proximoId = proximoId;
+            this.resolvedor = resolvedor;
+        }
+
+        byte[] codificar() {
+            return CodecBinario.codificar(clientes, animais, agendamentos, funcionarios, geracao, proximoId, resolvedor);
+        }
+    }
+
+    // Chamado pela thread dona. Registros do arquivo que não foram decodificados ficam só como
+    // ordinal e o resto vira cópia rasa (ver ListaPreguicosa.congelada). Entidades apagadas que
+    // ainda são referenciadas vêm de excluidos, cópias tiradas na exclusão, ou do arquivo.
+    // null se o arquivo tem um esquema antigo: aí os registros dele não podem ser copiados
+    // e quem chama codifica na hora
+    static Congelado congelar(List<PetshopSystemSwing.Cliente> clientes, List<PetshopSystemSwing.Animal> animais,
+                              List<PetshopSystemSwing.Agendamento> agendamentos, List<PetshopSystemSwing.Funcionario> funcionarios,
+                              long geracao, long proximoId, ArquivoMapeado arquivo, Map<Long, Object> excluidos) {
+        if (arquivo != null && !arquivo.copiavel()) return null;
+        LongFunction<Object> resolvedor = id -> {
+            Object excluido = excluidos.get(id);
+            return excluido != null || arquivo == null ? excluido : arquivo.bruto(id);
+        };
+        return new Congelado(congelada(clientes, PetshopSystemSwing.Cliente::copia), congelada(animais, PetshopSystemSwing.Animal::copia),
+                congelada(agendamentos, PetshopSystemSwing.Agendamento::copia), congelada(funcionarios, PetshopSystemSwing.Funcionario::copia),
+                geracao, proximoId, resolvedor);
+    }
+
+    // Também usada para montar o instantâneo do zero fora da thread dona (Repositorio)
+    static <T> List<T> congelada(List<T> lista, UnaryOperator<T> copia) {
+        if (lista instanceof ListaPreguicosa) return ((ListaPreguicosa<T>) lista).congelada(copia);
+        ArrayList<T> copias = new ArrayList<>(lista.size());
+        for (T entidade : lista) copias.add(copia.apply(entidade));
+        return copias;
+    }
+
+    // As listas podem ser ListaPreguicosa: registros que ainda não foram decodificados são copiados
+    // byte a byte do arquivo mapeado, sem materializar as entidades. Entidades referenciadas que não
+    // estão nas listas vêm do resolvedor (e, se ele não tem, do próprio objeto referenciado)
+    static byte[] codificar(List<PetshopSystemSwing.Cliente> clientes, List<PetshopSystemSwing.Animal> animais,
+                            List<PetshopSystemSwing.Agendamento> agendamentos, List<PetshopSystemSwing.Funcionario> funcionarios,
+                            long geracao, long proximoId, LongFunction<Object> resolvedor) {
+        // Donos e animais que só existem como referência (ex.: animal apagado que ainda tem agendamentos)
+        HashSet<Long> animaisListados = ids(animais);
+        LinkedHashMap<Long, Object> animaisAvulsos = new LinkedHashMap<>();
+        for (int i = 0; i < agendamentos.size(); i++) {
+            referencias(agendamentos, i, (animal, id) -> {
+                if (!animaisListados.contains(id) && !animaisAvulsos.containsKey(id)) animaisAvulsos.put(id, resolver(resolvedor, animal, id));
+            });
+        }
+        animaisAvulsos.values().removeIf(Objects::isNull);
+        HashSet<Long> clientesListados = ids(clientes);
+        LinkedHashMap<Long, Object> clientesAvulsos = new LinkedHashMap<>();
+        List<Object> avulsos = new ArrayList<>(animaisAvulsos.values());
+        for (List<?> lista : List.of(animais, avulsos)) {
+            for (int i = 0; i < lista.size(); i++) {
+                referencias(lista, i, (cliente, id) -> {
+                    if (!clientesListados.contains(id) && !clientesAvulsos.containsKey(id)) clientesAvulsos.put(id, resolver(resolvedor, cliente, id));
+                });
+            }
+        }
+        clientesAvulsos.values().removeIf(Objects::isNull);
+
+        Saida out = new Saida(64 * 1024);
+        out.inteiro(MAGICO);
+        out.curto(VERSAO);
+        out.longo(geracao);
+        out.longo(proximoId);
+        out.longo(0); // posição do índice, preenchida no fim
+        out.varint(ESQUEMAS.size());
+        for (Esquema<?> esquema : ESQUEMAS) {
+            out.byte_(esquema.tipo);
+            out.texto(esquema.nome);
+            out.varint(esquema.campos.size());
+            for (Campo<?> campo : esquema.campos) {
+                out.texto(campo.nome);
+                out.byte_(campo.tipo);
+            }
+        }
+        Saida indice = new Saida(1024);
+        escreverSecao(out, indice, CLIENTE, clientes, new ArrayList<>(clientesAvulsos.values()));
+        escreverSecao(out, indice, ANIMAL, animais, avulsos);
+        escreverSecao(out, indice, AGENDAMENTO, agendamentos, List.of());
+        escreverSecao(out, indice, FUNCIONARIO, funcionarios, List.of());
+        out.longoEm(POSICAO_INDICE, out.tamanho());
+        out.bytes(indice);
+        return out.bytes();
+    }
+
+    private static Object resolver(LongFunction<Object> resolvedor, Object referenciada, long id) {
+        Object resolvida = resolvedor.apply(id);
+        return resolvida != null ? resolvida : referenciada;
+    }
+
+    private static void escreverSecao(Saida out, Saida indice, Esquema<?> esquema, List<?> lista, List<?> avulsos) {
+        int total = lista.size() + avulsos.size();
+        int[] posicoes = new int[total];
+        long[] ids = new long[total];
+        int ordinal = 0;
+        for (List<?> registros : List.of(lista, avulsos)) {
+            out.varint(registros.size());
+            ListaPreguicosa<?> preguicosa = registros instanceof ListaPreguicosa ? (ListaPreguicosa<?>) registros : null;
+            for (int i = 0; i < registros.size(); i++, ordinal++) {
+                posicoes[ordinal] = out.tamanho();
+                if (preguicosa != null && preguicosa.copiarSeNaoCarregado(i, out)) {
+                    ids[ordinal] = preguicosa.id(i);
+                } else if (registros.get(i) instanceof Bruto) {
+                    // Só existe quando o esquema do arquivo é o atual (ver congelar)
+                    Bruto bruto = (Bruto) registros.get(i);
+                    ids[ordinal] = bruto.secao.id(bruto.ordinal);
+                    bruto.secao.copiar(bruto.ordinal, out);
+                } else {
+                    Object entidade = registros.get(i);
+                    ids[ordinal] = idDe(esquema, entidade);
+                    out.varint(ids[ordinal]);
+                    esquema.escrever(entidade, out);
+                }
+            }
+        }
+        indice.inteiro(lista.size());
+        indice.inteiro(avulsos.size());
+        for (int posicao : posicoes) {
+            indice.inteiro(posicao);
+        }
+        Integer[] ordem = new Integer[total];
+        for (int i = 0; i < total; i++) ordem[i] = i;
+        Arrays.sort(ordem, Comparator.comparingLong(i -> ids[i]));
+        for (int i : ordem) {
+            indice.inteiro(i);
+        }
+    }
+
+    private static <T> long idDe(Esquema<T> esquema, Object entidade) {
+        return esquema.id.applyAsLong(esquema.classe.cast(entidade));
+    }
+
+    private static HashSet<Long> ids(List<?> lista) {
+        HashSet<Long> ids = new HashSet<>(lista.size() * 2);
+        ListaPreguicosa<?> preguicosa = lista instanceof ListaPreguicosa ? (ListaPreguicosa<?>) lista : null;
+        for (int i = 0; i < lista.size(); i++) {
+            ids.add(preguicosa != null ? preguicosa.id(i) : idDe(esquemaDe(lista.get(i)), lista.get(i)));
+        }
+        return ids;
+    }
+
+    // Entidades referenciadas pelo registro i (donos de um animal, animal de um agendamento); quando
+    // o registro ainda não foi decodificado só o id é conhecido e a entidade vem null
+    private static void referencias(List<?> lista, int i, ObjLongConsumer<Object> destino) {
+        if (lista instanceof ListaPreguicosa
+                && ((ListaPreguicosa<?>) lista).referenciasSeNaoCarregado(i, id -> destino.accept(null, id))) {
+            return;
+        }
+        Object entidade = lista.get(i);
+        if (entidade instanceof Bruto) {
+            ((Bruto) entidade).secao.referencias(((Bruto) entidade).ordinal, id -> destino.accept(null, id));
+        } else if (entidade instanceof PetshopSystemSwing.Animal) {
+            for (PetshopSystemSwing.Cliente cliente : ((PetshopSystemSwing.Animal) entidade).clientes) {
+                destino.accept(cliente, cliente.id);
+            }
+        } else if (entidade instanceof PetshopSystemSwing.Agendamento && ((PetshopSystemSwing.Agendamento) entidade).animal != null) {
+            destino.accept(((PetshopSystemSwing.Agendamento) entidade).animal, ((PetshopSystemSwing.Agendamento) entidade).animal.id);
+        }
+    }
+
+    static Dados carregar(Path arquivo) throws IOException {
+        byte[] conteudo = Files.readAllBytes(arquivo);
+        ByteBuffer buffer = ByteBuffer.wrap(conteudo);
+        if (conteudo.length >= 4 && buffer.getInt(0) == MAGICO_SERIALIZACAO_JAVA) {
+            return lerLegado(conteudo);
+        }
+        return decodificar(buffer);
+    }
+
+    // Decodifica o arquivo inteiro de uma vez (versões 1 e 2)
+    static Dados decodificar(ByteBuffer buffer) throws IOException {
+        Entrada in = new Entrada(buffer);
+        if (in.inteiro() != MAGICO) throw new IOException("Arquivo de dados inválido");
+        short versao = in.curto();
+        if (versao > VERSAO) throw new IOException("Arquivo de dados de uma versão mais nova (" + versao + ")");
+        Dados dados = new Dados();
+        dados.geracao = in.longo();
+        dados.proximoId = in.longo();
+        if (versao >= 2) in.longo();
+        EsquemaArquivo esquemaArquivo = EsquemaArquivo.ler(in);
+
+        HashMap<Long, Object> porId = new HashMap<>();
+        for (int t = 0; t < esquemaArquivo.tipos.length; t++) {
+            Esquema<?> local = esquemaLocal(esquemaArquivo.tipos[t]);
+            List<Object> lista = local == null ? null : listaDe(dados, local.tipo);
+            for (int parte = 0; parte < 2; parte++) {
+                int registros = in.varintInt();
+                for (int r = 0; r < registros; r++) {
+                    long id = in.varint();
+                    Object entidade = local == null ? null : local.fabrica.apply(id);
+                    esquemaArquivo.lerRegistro(t, in, entidade, porId::get);
+                    if (entidade == null) continue;
+                    porId.put(id, entidade);
+                    if (parte == 0) lista.add(entidade);
+                }
+            }
+        }
+        dados.agendamentos.removeIf(a -> a.animal == null || a.horario == null);
+        return dados;
+    }
+
+    // Esquema gravado no cabeçalho de um arquivo, casado com os campos atuais pelo nome
+    static class EsquemaArquivo {
+        final byte[] tipos;
+        final byte[][] tiposCampos;
+        // null onde o campo do arquivo não existe mais no esquema atual (é pulado)
+        final Campo<?>[][] campos;
+        // true quando o tipo tem exatamente os campos atuais, na mesma ordem
+        final boolean[] igualAoAtual;
+
+        private EsquemaArquivo(int tipos) {
+            this.tipos = new byte[tipos];
+            this.tiposCampos = new byte[tipos][];
+            this.campos = new Campo<?>[tipos][];
+            this.igualAoAtual = new boolean[tipos];
+        }
+
+        static EsquemaArquivo ler(Entrada in) {
+            EsquemaArquivo esquema = new EsquemaArquivo(in.varintInt());
+            for (int t = 0; t < esquema.tipos.length; t++) {
+                esquema.tipos[t] = in.byte_();
+                in.texto();
+                Esquema<?> local = esquemaLocal(esquema.tipos[t]);
+                int campos = in.varintInt();
+                esquema.tiposCampos[t] = new byte[campos];
+                esquema.campos[t] = new Campo<?>[campos];
+                boolean igual = local != null && local.campos.size() == campos;
+                for (int c = 0; c < campos; c++) {
+                    String nome = in.texto();
+                    esquema.tiposCampos[t][c] = in.byte_();
+                    if (local != null) {
+                        for (Campo<?> campo : local.campos) {
+                            if (campo.nome.equals(nome) && campo.tipo == esquema.tiposCampos[t][c]) esquema.campos[t][c] = campo;
+                        }
+                    }
+                    igual = igual && esquema.campos[t][c] == local.campos.get(c);
+                }
+                esquema.igualAoAtual[t] = igual;
+            }
+            return esquema;
+        }
+
+        int indice(byte tipo) {
+            for (int t = 0; t < tipos.length; t++) {
+                if (tipos[t] == tipo) return t;
+            }
+            return -1;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void lerRegistro(int t, Entrada in, Object entidade, LongFunction<Object> referencias) {
+            for (int c = 0; c < tiposCampos[t].length; c++) {
+                if (entidade != null && campos[t][c] != null) {
+                    ((Campo) campos[t][c]).leitor.ler(entidade, in, referencias);
+                } else {
+                    pular(in, tiposCampos[t][c]);
+                }
+            }
+        }
+
+        void pularRegistro(int t, Entrada in) {
+            for (int c = 0; c < tiposCampos[t].length; c++) {
+                pular(in, tiposCampos[t][c]);
+            }
+        }
+
+        // Só coleta os ids referenciados pelo registro, sem criar a entidade
+        void referencias(int t, Entrada in, LongConsumer destino) {
+            for (int c = 0; c < tiposCampos[t].length; c++) {
+                byte tipo = tiposCampos[t][c];
+                if (tipo == REFERENCIA) {
+                    destino.accept(in.varint());
+                } else if (tipo == LISTA_REFERENCIAS) {
+                    int n = in.varintInt();
+                    for (int i = 0; i < n; i++) destino.accept(in.varint());
+                } else {
+                    pular(in, tipo);
+                }
+            }
+        }
+    }
+
+    private static void pular(Entrada in, byte tipo) {
+        switch (tipo) {
+            case TEXTO: in.pularTexto(); break;
+            case BOOLEANO: in.byte_(); break;
+            case DATA: in.longo(); break;
+            case REFERENCIA: in.varint(); break;
+            case INTEIRO: in.varint(); break;
+            case LISTA_REFERENCIAS: {
+                int n = in.varintInt();
+                for (int i = 0; i < n; i++) in.varint();
+                break;
+            }
+            default: throw new IllegalStateException("Tipo de campo desconhecido: " + tipo);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Object> listaDe(Dados dados, byte tipo) {
+        switch (tipo) {
+            case Diario.CLIENTE: return (List) dados.clientes;
+            case Diario.ANIMAL: return (List) dados.animais;
+            case Diario.AGENDAMENTO: return (List) dados.agendamentos;
+            default: return (List) dados.funcionarios;
+        }
+    }
+
+    // Leitor do petshop.dat gravado com ObjectOutputStream (versões anteriores)
+    @SuppressWarnings("unchecked")
+    private static Dados lerLegado(byte[] conteudo) throws IOException {
+        Dados dados = new Dados();
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(conteudo))) {
+            dados.clientes = (ArrayList<PetshopSystemSwing.Cliente>) ois.readObject();
+            dados.animais = (ArrayList<PetshopSystemSwing.Animal>) ois.readObject();
+            dados.agendamentos = (ArrayList<PetshopSystemSwing.Agendamento>) ois.readObject();
+            dados.funcionarios = (ArrayList<PetshopSystemSwing.Funcionario>) ois.readObject();
+            try {
+                dados.geracao = ois.readLong();
+            } catch (EOFException e) {
+                // Gravado antes do diário existir
+                dados.geracao = 0;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        return dados;
+    }
+
+    // Buffer de escrita que cresce sob demanda
+    static class Saida {
+        private byte[] buf;
+        private int pos;
+
+        Saida(int capacidade) {
+            buf = new byte[capacidade];
+        }
+
+        private void garantir(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+
+        void byte_(int b) {
+            garantir(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void booleano(boolean b) {
+            byte_(b ? 1 : 0);
+        }
+
+        void curto(int v) {
+            garantir(2);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        void inteiro(int v) {
+            garantir(4);
+            for (int s = 24; s >= 0; s -= 8) buf[pos++] = (byte) (v >>> s);
+        }
+
+        void longo(long v) {
+            garantir(8);
+            for (int s = 56; s >= 0; s -= 8) buf[pos++] = (byte) (v >>> s);
+        }
+
+        // Inteiro sem sinal em 7 bits por byte (LEB128)
+        void varint(long v) {
+            garantir(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        // Tamanho + 1 (0 = null) seguido dos bytes UTF-8, codificados sem criar arrays intermediários.
+        // Um surrogate solto vira '?', como em String.getBytes
+        void texto(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            int n = s.length();
+            int tamanho = 0;
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) tamanho++;
+                else if (c < 0x800) tamanho += 2;
+                else if (!Character.isSurrogate(c)) tamanho += 3;
+                else if (par(s, i)) {
+                    tamanho += 4;
+                    i++;
+                } else tamanho++;
+            }
+            varint(tamanho + 1L);
+            garantir(tamanho);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (par(s, i)) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    buf[pos++] = '?';
+                }
+            }
+        }
+
+        private static boolean par(String s, int i) {
+            return Character.isHighSurrogate(s.charAt(i)) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1));
+        }
+
+        void longoEm(int posicao, long v) {
+            for (int s = 56; s >= 0; s -= 8) buf[posicao++] = (byte) (v >>> s);
+        }
+
+        void bytes(ByteBuffer origem) {
+            int n = origem.remaining();
+            garantir(n);
+            origem.get(buf, pos, n);
+            pos += n;
+        }
+
+        void bytes(Saida origem) {
+            garantir(origem.pos);
+            System.arraycopy(origem.buf, 0, buf, pos, origem.pos);
+            pos += origem.pos;
+        }
+
+        int tamanho() {
+            return pos;
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    // Leitura sobre um ByteBuffer (array em memória ou arquivo mapeado)
+    static class Entrada {
+        private final ByteBuffer buf;
+        private byte[] temporario = new byte[64];
+
+        Entrada(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        ByteBuffer buffer() {
+            return buf;
+        }
+
+        byte byte_() {
+            return buf.get();
+        }
+
+        boolean booleano() {
+            return buf.get() != 0;
+        }
+
+        short curto() {
+            return buf.getShort();
+        }
+
+        int inteiro() {
+            return buf.getInt();
+        }
+
+        long longo() {
+            return buf.getLong();
+        }
+
+        long varint() {
+            long v = 0;
+            int s = 0;
+            byte b;
+            do {
+                b = buf.get();
+                v |= (long) (b & 0x7F) << s;
+                s += 7;
+            } while (b < 0);
+            return v;
+        }
+
+        int varintInt() {
+            return (int) varint();
+        }
+
+        String texto() {
+            int tamanho = varintInt() - 1;
+            if (tamanho < 0) return null;
+            if (buf.hasArray()) {
+                String s = new String(buf.array(), buf.arrayOffset() + buf.position(), tamanho, StandardCharsets.UTF_8);
+                buf.position(buf.position() + tamanho);
+                return s;
+            }
+            if (temporario.length < tamanho) temporario = new byte[Math.max(tamanho, temporario.length * 2)];
+            buf.get(temporario, 0, tamanho);
+            return new String(temporario, 0, tamanho, StandardCharsets.UTF_8);
+        }
+
+        void pularTexto() {
+            int tamanho = varintInt() - 1;
+            if (tamanho > 0) buf.position(buf.position() + tamanho);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Diário (append-only) das alterações feitas desde o último snapshot de petshop.dat.
+// Cada registro descreve uma única inclusão, alteração ou exclusão de uma entidade,
+// então salvar custa o tamanho da mudança e não o tamanho da base inteira.
+class Diario implements Closeable {
+    // Operações
+    static final byte INCLUSAO = 1;
+    static final byte ALTERACAO = 2;
+    static final byte EXCLUSAO = 3;
+
+    // Tipos de entidade
+    static final byte CLIENTE = 1;
+    static final byte ANIMAL = 2;
+    static final byte AGENDAMENTO = 3;
+    static final byte FUNCIONARIO = 4;
+
+    private static final int MAGICO = 0x50534A31; // "PSJ1"
+    private static final int TAMANHO_CABECALHO = 12; // mágico + geração
+
+    static class Registro {
+        final byte operacao;
+        final byte tipo;
+        final long id;
+        final byte[] dados;
+
+        Registro(byte operacao, byte tipo, long id, byte[] dados) {
+            this.operacao = operacao;
+            this.tipo = tipo;
+            this.id = id;
+            this.dados = dados;
+        }
+    }
+
+    private final FileChannel canal;
+    private long geracao;
+    private int registros;
+    private int pendentesFsync;
+
+    private Diario(FileChannel canal, long geracao, int registros) {
+        this.canal = canal;
+        this.geracao = geracao;
+        this.registros = registros;
+    }
+
+    // Abre o diário e reaplica os registros que pertencem ao snapshot da geração informada.
+    // Um diário de outra geração já está contido no snapshot (a compactação foi interrompida
+    // depois de gravar o snapshot) e é descartado. Um registro final incompleto ou corrompido
+    // (queda no meio da escrita) é truncado.
+    static Diario abrir(Path caminho, long geracao, Consumer<Registro> aplicador) throws IOException {
+        FileChannel canal = FileChannel.open(caminho, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int registros = 0;
+            long fimValido = -1;
+            if (canal.size() >= TAMANHO_CABECALHO) {
+                ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+                lerCompleto(canal, cabecalho, 0);
+                cabecalho.flip();
+                if (cabecalho.getInt() == MAGICO && cabecalho.getLong() == geracao) {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(
+                            Files.newInputStream(caminho), 64 * 1024));
+                    try (in) {
+                        in.skipNBytes(TAMANHO_CABECALHO);
+                        long posicao = TAMANHO_CABECALHO;
+                        while (true) {
+                            Registro registro = lerRegistro(in);
+                            if (registro == null) break;
+                            aplicador.accept(registro);
+                            registros++;
+                            posicao += 4 + 1 + 1 + 8 + registro.dados.length + 4;
+                        }
+                        fimValido = posicao;
+                    }
+                }
+            }
+            Diario diario = new Diario(canal, geracao, registros);
+            if (fimValido < 0) {
+                diario.reiniciar(geracao);
+            } else {
+                canal.truncate(fimValido);
+                canal.position(fimValido);
+            }
+            return diario;
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    // Formato: [int tamanho][byte operação][byte tipo][long id][dados][int crc32]
+    private static Registro lerRegistro(DataInputStream in) throws IOException {
+        try {
+            int tamanho = in.readInt();
+            if (tamanho < 0 || tamanho > 64 * 1024 * 1024) return null;
+            byte operacao = in.readByte();
+            byte tipo = in.readByte();
+            long id = in.readLong();
+            byte[] dados = new byte[tamanho];
+            in.readFully(dados);
+            int crc = in.readInt();
+            if (crc != crc(operacao, tipo, id, dados)) return null;
+            return new Registro(operacao, tipo, id, dados);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // Grava os registros com uma única escrita; o fsync fica a cargo de quem chama (sincronizar),
+    // para que um lote inteiro custe um só fsync
+    void registrarLote(List<Registro> lote) throws IOException {
+        int tamanho = 0;
+        for (Registro registro : lote) {
+            tamanho += 4 + 1 + 1 + 8 + registro.dados.length + 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+        for (Registro registro : lote) {
+            buffer.putInt(registro.dados.length);
+            buffer.put(registro.operacao);
+            buffer.put(registro.tipo);
+            buffer.putLong(registro.id);
+            buffer.put(registro.dados);
+            buffer.putInt(crc(registro.operacao, registro.tipo, registro.id, registro.dados));
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        registros += lote.size();
+        pendentesFsync += lote.size();
+    }
+
+    void sincronizar() throws IOException {
+        if (pendentesFsync > 0) {
+            canal.force(false);
+            pendentesFsync = 0;
+        }
+    }
+
+    // Chamado depois que um novo snapshot foi gravado: o diário passa a valer para a nova geração.
+    void reiniciar(long novaGeracao) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        cabecalho.putInt(MAGICO);
+        cabecalho.putLong(novaGeracao);
+        cabecalho.flip();
+        canal.truncate(0);
+        canal.position(0);
+        while (cabecalho.hasRemaining()) {
+            canal.write(cabecalho);
+        }
+        canal.force(false);
+        geracao = novaGeracao;
+        registros = 0;
+        pendentesFsync = 0;
+    }
+
+    long getGeracao() {
+        return geracao;
+    }
+
+    int getRegistros() {
+        return registros;
+    }
+
+    long getTamanho() throws IOException {
+        return canal.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sincronizar();
+        } finally {
+            canal.close();
+        }
+    }
+
+    private static int crc(byte operacao, byte tipo, long id, byte[] dados) {
+        CRC32 crc = new CRC32();
+        ByteBuffer cabecalho = ByteBuffer.allocate(10);
+        cabecalho.put(operacao).put(tipo).putLong(id).flip();
+        crc.update(cabecalho);
+        crc.update(dados);
+        return (int) crc.getValue();
+    }
+
+    private static void lerCompleto(FileChannel canal, ByteBuffer destino, long posicao) throws IOException {
+        while (destino.hasRemaining()) {
+            int lidos = canal.read(destino, posicao);
+            if (lidos < 0) throw new EOFException();
+            posicao += lidos;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Saldo de estoque por SKU, que qualquer thread pode consultar e reservar: a tela de vendas na
+// EDT e as requisições da API nas threads do servidor, sem passar pela thread dona e sem trava
+// global. Cada SKU tem um único AtomicLong com o disponível e o reservado juntos (32 bits cada),
+// então uma reserva é um compareAndSet e quem lê nunca vê uma reserva contada só de um lado.
+//
+// Fluxo de uma venda: reservar (pode falhar por falta de estoque), depois confirmar quando a venda
+// é registrada no livro, ou liberar se ela for cancelada. As reservas só existem em memória; as
+// entradas e as vendas confirmadas estão no livro de vendas e refazem o saldo na abertura.
+//
+// Um avaliador em segundo plano olha os SKUs que mudaram desde a última passada e avisa quando
+// o disponível chega ao mínimo do produto (uma vez por vez que cruza o mínimo).
+class Estoque {
+    private static final long INTERVALO_AVALIACAO_MS = 5000;
+
+    static final class Saldo {
+        final String sku;
+        // disponível << 32 | reservado
+        private final AtomicLong estado = new AtomicLong();
+        // 0 = sem aviso de estoque baixo
+        volatile int minimo;
+        // Já avisado abaixo do mínimo; só o avaliador mexe
+        private boolean avisado;
+
+        private Saldo(String sku) {
+            this.sku = sku;
+        }
+
+        int disponivel() {
+            return disponivel(estado.get());
+        }
+
+        int reservado() {
+            return reservado(estado.get());
+        }
+
+        // {disponível, reservado} do mesmo momento
+        int[] saldo() {
+            long atual = estado.get();
+            return new int[]{disponivel(atual), reservado(atual)};
+        }
+
+        boolean baixo() {
+            int minimo = this.minimo;
+            return minimo > 0 && disponivel() <= minimo;
+        }
+
+        private void somar(int disponivel, int reservado) {
+            long atual;
+            long novo;
+            do {
+                atual = estado.get();
+                long novoDisponivel = (long) disponivel(atual) + disponivel;
+                long novoReservado = (long) reservado(atual) + reservado;
+                if (novoDisponivel < Integer.MIN_VALUE || novoDisponivel > Integer.MAX_VALUE || novoReservado < 0 || novoReservado > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Saldo de estoque fora do limite: " + sku);
+                }
+                novo = estado(novoDisponivel, novoReservado);
+            } while (!estado.compareAndSet(atual, novo));
+        }
+
+        private static int disponivel(long estado) {
+            return (int) (estado >> 32);
+        }
+
+        private static int reservado(long estado) {
+            return (int) estado;
+        }
+
+        private static long estado(long disponivel, long reservado) {
+            return disponivel << 32 | (reservado & 0xFFFFFFFFL);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Saldo> saldos = new ConcurrentHashMap<>();
+    // SKUs que mudaram desde a última avaliação
+    private final Set<Saldo> alterados = ConcurrentHashMap.newKeySet();
+    private volatile ScheduledExecutorService avaliador;
+
+    // null se o SKU não tem produto cadastrado
+    Saldo saldo(String sku) {
+        return saldos.get(sku);
+    }
+
+    List<Saldo> saldos() {
+        return new ArrayList<>(saldos.values());
+    }
+
+    // Cadastro ou atualização do produto (thread dona)
+    void definirMinimo(String sku, int minimo) {
+        Saldo saldo = saldos.computeIfAbsent(sku, Saldo::new);
+        saldo.minimo = minimo;
+        alterados.add(saldo);
+    }
+
+    // Tira do disponível e passa para o reservado, se houver o bastante. Qualquer thread
+    boolean reservar(String sku, int quantidade) {
+        Saldo saldo = saldos.get(sku);
+        if (saldo == null || quantidade <= 0) return false;
+        long atual;
+        long novo;
+        do {
+            atual = saldo.estado.get();
+            int disponivel = Saldo.disponivel(atual);
+            if (disponivel < quantidade) return false;
+            novo = Saldo.estado(disponivel - quantidade, (long) Saldo.reservado(atual) + quantidade);
+        } while (!saldo.estado.compareAndSet(atual, novo));
+        alterados.add(saldo);
+        return true;
+    }
+
+    // Venda cancelada: a reserva volta para o disponível
+    void liberar(String sku, int quantidade) {
+        Saldo saldo = reservado(sku);
+        saldo.somar(quantidade, -quantidade);
+        alterados.add(saldo);
+    }
+
+    // Venda registrada: a reserva sai do estoque
+    void confirmar(String sku, int quantidade) {
+        Saldo saldo = reservado(sku);
+        saldo.somar(0, -quantidade);
+        alterados.add(saldo);
+    }
+
+    // Só existe reserva de SKU com produto (ver reservar); outro SKU aqui é erro de quem chamou
+    private Saldo reservado(String sku) {
+        Saldo saldo = saldos.get(sku);
+        if (saldo == null) throw new IllegalArgumentException("SKU sem produto cadastrado: " + sku);
+        return saldo;
+    }
+
+    // Entrada (positiva) ou ajuste (negativo) de estoque, e as vendas lidas do livro na abertura
+    void somar(String sku, int quantidade) {
+        Saldo saldo = saldos.computeIfAbsent(sku, Saldo::new);
+        saldo.somar(quantidade, 0);
+        alterados.add(saldo);
+    }
+
+    // Avisa, na thread do avaliador, os SKUs que chegaram ao mínimo (todos os de uma passada num
+    // aviso só). Só a primeira chamada inicia
+    void iniciarAvaliador(Consumer<List<Saldo>> aviso) {
+        if (avaliador != null) return;
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "petshop-estoque");
+            thread.setDaemon(true);
+            return thread;
+        });
+        avaliador = executor;
+        executor.scheduleWithFixedDelay(() -> {
+            List<Saldo> baixos = avaliar();
+            if (baixos.isEmpty()) return;
+            try {
+                aviso.accept(baixos);
+            } catch (RuntimeException e) {
+                // Um aviso que falhou não pode parar o avaliador
+            }
+        }, INTERVALO_AVALIACAO_MS, INTERVALO_AVALIACAO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Uma passada sobre os SKUs alterados: os que acabaram de chegar ao mínimo. Uma thread por vez
+    synchronized List<Saldo> avaliar() {
+        List<Saldo> baixos = new ArrayList<>();
+        for (Saldo saldo : alterados) {
+            // Tirar antes de ler: uma mudança depois disto marca o SKU de novo para a próxima passada
+            alterados.remove(saldo);
+            boolean baixo = saldo.baixo();
+            if (baixo && !saldo.avisado) baixos.add(saldo);
+            saldo.avisado = baixo;
+        }
+        return baixos;
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Exportação das entidades para CSV (separado por ponto e vírgula) ou JSON Lines, um arquivo por
+// tipo na pasta de destino. Lê um instantâneo do Repositorio, então roda em qualquer thread e os
+// arquivos refletem um mesmo momento mesmo que as telas alterem algo durante a exportação.
+// Referências saem como ids (animal, donos, funcionário).
+//
+// Incremental: só saem os registros com alterado maior que a marca d'água. A marca da última
+// exportação fica em exportacao.marca na própria pasta, e a nova marca é o maior carimbo visto.
+// Os arquivos incrementais levam a marca de origem no nome (clientes-desde-<marca>.csv).
+// Exclusões não aparecem na exportação incremental; uma exportação completa (marca 0) as reflete.
+//
+// Do livro de vendas saem produtos.csv, sempre o cadastro inteiro (produtos não têm carimbo e são
+// poucos), e vendas.csv. Vendas nunca mudam e têm número sequencial, então a marca delas é o
+// número da última exportada (segunda linha de exportacao.marca) e a incremental começa direto
+// na posição seguinte, sem percorrer o histórico.
+class Exportador {
+    static final String ARQUIVO_MARCA = "exportacao.marca";
+    private static final int TAMANHO_BUFFER = 1 << 16;
+
+    interface Colunas<T> {
+        Object[] valores(T entidade);
+    }
+
+    interface Conteudo {
+        void escrever(Writer saida) throws IOException;
+    }
+
+    // Um tipo de cadastro com as colunas dele; as mesmas colunas são os campos do JSON da API.
+    // A última coluna é sempre o carimbo alterado
+    static class Tabela<T> {
+        final String nome;
+        final String[] colunas;
+        final Supplier<List<T>> lista;
+        final Colunas<T> valores;
+
+        Tabela(String nome, String[] colunas, Supplier<List<T>> lista, Colunas<T> valores) {
+            this.nome = nome;
+            this.colunas = colunas;
+            this.lista = lista;
+            this.valores = valores;
+        }
+
+        void json(Writer saida, T entidade) throws IOException {
+            Json.escrever(saida, colunas, valores.valores(entidade));
+        }
+    }
+
+    static class Resultado {
+        // Registros escritos por arquivo, na ordem da exportação
+        final LinkedHashMap<String, Integer> registros = new LinkedHashMap<>();
+        long marca;
+        // Número da última venda exportada
+        long ultimaVenda;
+    }
+
+    private static final String[] COLUNAS_PESSOA = {"id", "nome", "email", "telefone", "cpf", "cep", "sexo", "alterado"};
+    private static final String[] COLUNAS_ANIMAL = {"id", "nome", "raca", "sexo", "observacao", "sem_dono", "para_adocao", "donos", "alterado"};
+    private static final String[] COLUNAS_AGENDAMENTO = {"id", "animal", "horario", "duracao", "recurso", "funcionario", "detalhes", "alterado"};
+    // Valores em centavos, como em POST /api/vendas
+    private static final String[] COLUNAS_PRODUTO = {"sku", "nome", "preco", "minimo"};
+    private static final String[] COLUNAS_VENDA = {"numero", "sku", "quantidade", "preco", "total", "cliente", "momento"};
+
+    static final Tabela<PetshopSystemSwing.Cliente> CLIENTES = new Tabela<>("clientes", COLUNAS_PESSOA, () -> PetshopSystemSwing.clientes,
+            c -> new Object[]{c.id, c.nome, c.email, c.telefone, c.cpf, c.cep, c.sexo, c.alterado});
+    static final Tabela<PetshopSystemSwing.Animal> ANIMAIS = new Tabela<>("animais", COLUNAS_ANIMAL, () -> PetshopSystemSwing.animais,
+            a -> new Object[]{a.id, a.nome, a.raca, a.sexo, a.observacao, a.semDono, a.paraAdocao, a.idsClientes(), a.alterado});
+    static final Tabela<PetshopSystemSwing.Agendamento> AGENDAMENTOS = new Tabela<>("agendamentos", COLUNAS_AGENDAMENTO, () -> PetshopSystemSwing.agendamentos,
+            a -> new Object[]{a.id, a.animal == null ? null : a.animal.id, a.horario.toString(), a.duracao, a.recurso, a.funcionario, a.detalhes, a.alterado});
+    static final Tabela<PetshopSystemSwing.Funcionario> FUNCIONARIOS = new Tabela<>("funcionarios", COLUNAS_PESSOA, () -> PetshopSystemSwing.funcionarios,
+            f -> new Object[]{f.id, f.nome, f.email, f.telefone, f.cpf, f.cep, f.sexo, f.alterado});
+
+    static Tabela<?> tabela(byte tipo) {
+        switch (tipo) {
+            case Diario.CLIENTE:
+                return CLIENTES;
+            case Diario.ANIMAL:
+                return ANIMAIS;
+            case Diario.AGENDAMENTO:
+                return AGENDAMENTOS;
+            default:
+                return FUNCIONARIOS;
+        }
+    }
+
+    private final Path pasta;
+    private final boolean json;
+
+    Exportador(Path pasta, boolean json) {
+        this.pasta = pasta;
+        this.json = json;
+    }
+
+    // Marca da última exportação para a pasta; 0 se nunca houve uma
+    static long marcaAnterior(Path pasta) throws IOException {
+        return marcas(pasta)[0];
+    }
+
+    // Número da última venda exportada para a pasta; 0 se nenhuma (ou marca de antes das vendas)
+    static long ultimaVendaAnterior(Path pasta) throws IOException {
+        return marcas(pasta)[1];
+    }
+
+    private static long[] marcas(Path pasta) throws IOException {
+        long[] marcas = new long[2];
+        try {
+            String[] linhas = new String(Files.readAllBytes(pasta.resolve(ARQUIVO_MARCA)), StandardCharsets.UTF_8).trim().split("\\s+");
+            for (int i = 0; i < Math.min(linhas.length, marcas.length); i++) marcas[i] = Long.parseLong(linhas[i]);
+        } catch (NoSuchFileException e) {
+            return marcas;
+        } catch (NumberFormatException e) {
+            throw new IOException("Marca d'água inválida em " + pasta.resolve(ARQUIVO_MARCA));
+        }
+        return marcas;
+    }
+
+    // desde e desdeVenda em 0 para a exportação completa
+    Resultado exportar(long desde, long desdeVenda) throws IOException {
+        Files.createDirectories(pasta);
+        Repositorio.Instantaneo dados = Repositorio.instantaneo();
+        Resultado resultado = new Resultado();
+        resultado.marca = desde;
+        resultado.ultimaVenda = desdeVenda;
+        escrever(dados.linhas(Diario.CLIENTE), desde, resultado);
+        escrever(dados.linhas(Diario.ANIMAL), desde, resultado);
+        escrever(dados.linhas(Diario.AGENDAMENTO), desde, resultado);
+        escrever(dados.linhas(Diario.FUNCIONARIO), desde, resultado);
+        escreverProdutos(dados.produtos, resultado);
+        escreverVendas(dados.vendas, desde > 0 || desdeVenda > 0, desdeVenda, resultado);
+        // A marca só avança depois que todos os arquivos foram trocados
+        substituir(pasta.resolve(ARQUIVO_MARCA), saida -> saida.write(resultado.marca + "\n" + resultado.ultimaVenda + "\n"));
+        return resultado;
+    }
+
+    private void escrever(Repositorio.Linhas linhas, long desde, Resultado resultado) throws IOException {
+        Tabela<?> tabela = linhas.tabela;
+        // A incremental sai em arquivos próprios, sem sobrescrever a exportação completa da pasta
+        String arquivo = tabela.nome + (desde > 0 ? "-desde-" + desde : "") + extensao();
+        int[] escritos = {0};
+        substituir(pasta.resolve(arquivo), saida -> {
+            if (!json) linhaCsv(saida, tabela.colunas);
+            for (Object[] linha : linhas) {
+                long alterado = (Long) linha[linha.length - 1];
+                resultado.marca = Math.max(resultado.marca, alterado);
+                if (alterado <= desde) continue;
+                linha(saida, tabela.colunas, linha);
+                escritos[0]++;
+            }
+        });
+        resultado.registros.put(arquivo, escritos[0]);
+    }
+
+    private void escreverProdutos(List<LivroVendas.Produto> produtos, Resultado resultado) throws IOException {
+        String arquivo = "produtos" + extensao();
+        substituir(pasta.resolve(arquivo), saida -> {
+            if (!json) linhaCsv(saida, COLUNAS_PRODUTO);
+            for (LivroVendas.Produto produto : produtos) {
+                linha(saida, COLUNAS_PRODUTO, new Object[]{produto.sku, produto.nome, produto.precoCentavos, produto.minimo});
+            }
+        });
+        resultado.registros.put(arquivo, produtos.size());
+    }
+
+    // Venda de número n está na posição n - 1 da lista
+    private void escreverVendas(List<LivroVendas.Venda> vendas, boolean incremental, long desdeVenda, Resultado resultado) throws IOException {
+        String arquivo = "vendas" + (incremental ? "-desde-" + desdeVenda : "") + extensao();
+        int inicio = (int) Math.min(desdeVenda, vendas.size());
+        substituir(pasta.resolve(arquivo), saida -> {
+            if (!json) linhaCsv(saida, COLUNAS_VENDA);
+            for (int i = inicio; i < vendas.size(); i++) {
+                LivroVendas.Venda venda = vendas.get(i);
+                linha(saida, COLUNAS_VENDA, new Object[]{venda.numero, venda.sku, venda.quantidade, venda.precoCentavos,
+                        venda.totalCentavos(), venda.cliente == 0 ? null : venda.cliente, venda.momento});
+            }
+        });
+        resultado.registros.put(arquivo, vendas.size() - inicio);
+        if (!vendas.isEmpty()) resultado.ultimaVenda = Math.max(resultado.ultimaVenda, vendas.get(vendas.size() - 1).numero);
+    }
+
+    private String extensao() {
+        return json ? ".jsonl" : ".csv";
+    }
+
+    private void linha(Writer saida, String[] colunas, Object[] valores) throws IOException {
+        if (json) {
+            Json.escrever(saida, colunas, valores);
+            saida.write('\n');
+        } else {
+            linhaCsv(saida, valores);
+        }
+    }
+
+    // Escreve num arquivo temporário e troca de uma vez: quem lê a pasta nunca vê um arquivo pela metade
+    private static void substituir(Path destino, Conteudo conteudo) throws IOException {
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (BufferedWriter saida = new BufferedWriter(Files.newBufferedWriter(temporario, StandardCharsets.UTF_8), TAMANHO_BUFFER)) {
+            conteudo.escrever(saida);
+        }
+        Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void linhaCsv(Writer saida, Object[] valores) throws IOException {
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) saida.write(';');
+            Object valor = valores[i];
+            if (valor instanceof long[]) {
+                long[] ids = (long[]) valor;
+                for (int j = 0; j < ids.length; j++) {
+                    if (j > 0) saida.write('|');
+                    saida.write(Long.toString(ids[j]));
+                }
+            } else if (valor instanceof String) {
+                String texto = (String) valor;
+                if (texto.indexOf(';') < 0 && texto.indexOf('"') < 0 && texto.indexOf('\n') < 0 && texto.indexOf('\r') < 0) {
+                    saida.write(texto);
+                } else {
+                    saida.write('"');
+                    saida.write(texto.replace("\"", "\"\""));
+                    saida.write('"');
+                }
+            } else if (valor != null) {
+                saida.write(valor.toString());
+            }
+        }
+        saida.write('\n');
+    }
+}
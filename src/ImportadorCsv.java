@@ -0,0 +1,247 @@
+import javax.swing.*;
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+// Importação de cadastros em massa a partir de CSV (vírgula ou ponto e vírgula) ou TSV: o arquivo
+// é lido em lotes, sem carregar tudo na memória. As linhas de cada lote são validadas em paralelo
+// (regras que não dependem dos dados já cadastrados) e depois aplicadas na EDT, em ordem, onde
+// entram a checagem de duplicados e a inclusão nas listas e índices. Linhas recusadas vão para um
+// arquivo de erros ao lado do original, com o número da linha e o motivo.
+class ImportadorCsv {
+    static final int TAMANHO_LOTE = 2_000;
+
+    // Uma linha de dados, com os campos acessados pelo nome da coluna do cabeçalho
+    static class Linha {
+        final long numero;
+        final String[] valores;
+        private final HashMap<String, Integer> colunas;
+        // Motivo da recusa; null enquanto a linha é aceita
+        String erro;
+
+        Linha(long numero, String[] valores, HashMap<String, Integer> colunas) {
+            this.numero = numero;
+            this.valores = valores;
+            this.colunas = colunas;
+        }
+
+        String campo(String nome) {
+            Integer coluna = colunas.get(nome);
+            return coluna == null || coluna >= valores.length ? "" : valores[coluna].trim();
+        }
+    }
+
+    interface Validador {
+        // Mensagem de erro, ou null se a linha é aceita
+        String validar(Linha linha);
+    }
+
+    interface Aplicador {
+        // Chamado na EDT (sem interface, na thread que importa) com as linhas do lote; as que já
+        // têm erro devem ser ignoradas, e as recusadas aqui recebem o erro
+        void aplicar(List<Linha> linhas);
+    }
+
+    interface Progresso {
+        // Chamado na EDT (sem interface, na thread que importa) depois de cada lote
+        void atualizar(long bytesLidos, long tamanho, int importadas, int recusadas);
+    }
+
+    static class Resultado {
+        int importadas;
+        int recusadas;
+        // null se nenhuma linha foi recusada
+        Path arquivoErros;
+    }
+
+    private static class ContadorBytes extends FilterInputStream {
+        volatile long lidos;
+
+        ContadorBytes(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) lidos++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] destino, int inicio, int tamanho) throws IOException {
+            int n = super.read(destino, inicio, tamanho);
+            if (n > 0) lidos += n;
+            return n;
+        }
+    }
+
+    private final Path arquivo;
+    private final Validador validador;
+    private final Aplicador aplicador;
+    private final Progresso progresso;
+    // Linha de comando: não há EDT, a thread que importa é a dona das listas
+    private final boolean semInterface;
+    private long linhaAtual;
+    private char separador;
+
+    ImportadorCsv(Path arquivo, Validador validador, Aplicador aplicador, Progresso progresso, boolean semInterface) {
+        this.arquivo = arquivo;
+        this.validador = validador;
+        this.aplicador = aplicador;
+        this.progresso = progresso;
+        this.semInterface = semInterface;
+    }
+
+    // Nome de coluna comparável: minúsculas e sem acentos ("Raça" e "raca" são a mesma coluna)
+    static String normalizarColuna(String nome) {
+        String semAcentos = Normalizer.normalize(nome.trim(), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return semAcentos.toLowerCase(Locale.ROOT);
+    }
+
+    // Roda fora da EDT; bloqueia até o arquivo inteiro ser importado. Sem interface, roda na thread
+    // que é dona das listas
+    Resultado importar() throws IOException, InterruptedException {
+        Resultado resultado = new Resultado();
+        long tamanho = Files.size(arquivo);
+        ContadorBytes contador = new ContadorBytes(Files.newInputStream(arquivo));
+        BufferedWriter erros = null;
+        try (BufferedReader leitor = new BufferedReader(new InputStreamReader(contador, StandardCharsets.UTF_8))) {
+            String primeira = leitor.readLine();
+            if (primeira == null) return resultado;
+            linhaAtual = 1;
+            if (primeira.startsWith("\uFEFF")) primeira = primeira.substring(1);
+            separador = detectarSeparador(primeira);
+            HashMap<String, Integer> colunas = new HashMap<>();
+            String[] cabecalho = separar(primeira, leitor);
+            for (int i = 0; i < cabecalho.length; i++) {
+                colunas.put(normalizarColuna(cabecalho[i]), i);
+            }
+
+            List<Linha> lote = new ArrayList<>(TAMANHO_LOTE);
+            while (true) {
+                lote.clear();
+                String texto;
+                while (lote.size() < TAMANHO_LOTE && (texto = leitor.readLine()) != null) {
+                    long numero = ++linhaAtual;
+                    if (texto.trim().isEmpty()) continue;
+                    lote.add(new Linha(numero, separar(texto, leitor), colunas));
+                }
+                if (lote.isEmpty()) break;
+
+                lote.parallelStream().forEach(linha -> linha.erro = validador.validar(linha));
+                if (semInterface) aplicador.aplicar(lote);
+                else naEdt(() -> aplicador.aplicar(lote));
+
+                for (Linha linha : lote) {
+                    if (linha.erro == null) {
+                        resultado.importadas++;
+                        continue;
+                    }
+                    if (erros == null) {
+                        resultado.arquivoErros = arquivo.resolveSibling(arquivo.getFileName() + ".erros.csv");
+                        erros = Files.newBufferedWriter(resultado.arquivoErros, StandardCharsets.UTF_8);
+                        erros.write("linha" + separador + "erro" + separador + String.join(String.valueOf(separador), cabecalho));
+                        erros.newLine();
+                    }
+                    erros.write(linha.numero + String.valueOf(separador) + citar(linha.erro));
+                    for (String valor : linha.valores) {
+                        erros.write(separador);
+                        erros.write(citar(valor));
+                    }
+                    erros.newLine();
+                    resultado.recusadas++;
+                }
+                long lidos = contador.lidos;
+                int importadas = resultado.importadas;
+                int recusadas = resultado.recusadas;
+                if (semInterface) progresso.atualizar(lidos, tamanho, importadas, recusadas);
+                else SwingUtilities.invokeLater(() -> progresso.atualizar(lidos, tamanho, importadas, recusadas));
+            }
+        } finally {
+            if (erros != null) erros.close();
+        }
+        return resultado;
+    }
+
+    private static void naEdt(Runnable acao) throws InterruptedException {
+        try {
+            SwingUtilities.invokeAndWait(acao);
+        } catch (InvocationTargetException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+            if (causa instanceof Error) throw (Error) causa;
+            throw new IllegalStateException(causa);
+        }
+    }
+
+    // O separador mais frequente no cabeçalho
+    private static char detectarSeparador(String cabecalho) {
+        char melhor = ',';
+        int maior = 0;
+        for (char candidato : new char[]{',', ';', '\t'}) {
+            int quantidade = 0;
+            for (int i = 0; i < cabecalho.length(); i++) {
+                if (cabecalho.charAt(i) == candidato) quantidade++;
+            }
+            if (quantidade > maior) {
+                maior = quantidade;
+                melhor = candidato;
+            }
+        }
+        return melhor;
+    }
+
+    // Campos de um registro; um campo entre aspas pode ter separadores, aspas dobradas ("") e
+    // quebras de linha, e nesse caso o registro continua nas próximas linhas do arquivo
+    private String[] separar(String texto, BufferedReader leitor) throws IOException {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreAspas = false;
+        int i = 0;
+        while (true) {
+            if (i == texto.length()) {
+                if (!entreAspas) break;
+                String proxima = leitor.readLine();
+                if (proxima == null) break;
+                linhaAtual++;
+                campo.append('\n');
+                texto = proxima;
+                i = 0;
+                continue;
+            }
+            char c = texto.charAt(i++);
+            if (entreAspas) {
+                if (c != '"') {
+                    campo.append(c);
+                } else if (i < texto.length() && texto.charAt(i) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    entreAspas = false;
+                }
+            } else if (c == '"') {
+                entreAspas = true;
+            } else if (c == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString());
+        return campos.toArray(new String[0]);
+    }
+
+    private String citar(String valor) {
+        if (valor.indexOf(separador) < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0) return valor;
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+}
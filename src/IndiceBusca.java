@@ -0,0 +1,256 @@
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+// Índice invertido de trigramas para as caixas de busca das telas: cada trigrama do texto
+// pesquisável aponta para os registros que o contêm, então uma busca cruza algumas listas
+// em vez de percorrer (e converter para minúsculas) todos os campos de todos os registros.
+//
+// Cada registro recebe um número de documento na ordem em que entra no índice; as listas de
+// cada trigrama ficam ordenadas por esse número e o resultado sai na ordem da lista original.
+// Um documento nunca é renumerado: a alteração troca só os trigramas dele e a remoção deixa um
+// buraco (texto null), então ids e textos crescem com as inclusões e vivos conta os ocupados.
+// As buscas rodam na thread de busca (BuscaAssincrona) e as alterações na EDT, por isso os
+// métodos são synchronized; a montagem lê a lista original e é feita na EDT (montar).
+class IndiceBusca<T> {
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    // Separa os campos no texto indexado, para nenhum trigrama atravessar dois campos
+    static final char SEPARADOR = '\n';
+
+    private final Supplier<? extends List<T>> origem;
+    private final Function<T, String> texto;
+    private final ToLongFunction<T> id;
+    private final boolean ignorarAcentos;
+
+    private HashMap<Long, Integer> documentoDoId;
+    private long[] ids;
+    // Texto normalizado de cada documento; null = removido
+    private String[] textos;
+    private int documentos;
+    private int vivos;
+    private Trigramas porTrigrama;
+
+    // Números de documento em ordem crescente
+    private static class Lista {
+        int[] itens = new int[4];
+        int tamanho;
+
+        void adicionar(int documento) {
+            if (tamanho == itens.length) itens = Arrays.copyOf(itens, tamanho * 2);
+            // Documentos novos sempre têm o maior número: o caso comum é acrescentar no fim
+            int posicao = tamanho == 0 || itens[tamanho - 1] < documento ? tamanho : -Arrays.binarySearch(itens, 0, tamanho, documento) - 1;
+            if (posicao < 0) return;
+            System.arraycopy(itens, posicao, itens, posicao + 1, tamanho - posicao);
+            itens[posicao] = documento;
+            tamanho++;
+        }
+
+        void remover(int documento) {
+            int posicao = Arrays.binarySearch(itens, 0, tamanho, documento);
+            if (posicao < 0) return;
+            System.arraycopy(itens, posicao + 1, itens, posicao, tamanho - posicao - 1);
+            tamanho--;
+        }
+
+        boolean contem(int documento, int[] inicio) {
+            int posicao = Arrays.binarySearch(itens, inicio[0], tamanho, documento);
+            inicio[0] = posicao < 0 ? -posicao - 1 : posicao + 1;
+            return posicao >= 0;
+        }
+    }
+
+    // Trigrama -> lista, com endereçamento aberto para não criar um Long por trigrama
+    private static class Trigramas {
+        private long[] chaves = new long[1024];
+        private Lista[] listas = new Lista[1024];
+        private int quantidade;
+
+        private int posicao(long chave) {
+            int mascara = chaves.length - 1;
+            int i = Long.hashCode(chave * 0x9E3779B97F4A7C15L) & mascara;
+            while (listas[i] != null && chaves[i] != chave) i = (i + 1) & mascara;
+            return i;
+        }
+
+        Lista obter(long chave) {
+            return listas[posicao(chave)];
+        }
+
+        Lista obterOuCriar(long chave) {
+            int i = posicao(chave);
+            if (listas[i] == null) {
+                if ((quantidade + 1) * 2 > chaves.length) {
+                    crescer();
+                    i = posicao(chave);
+                }
+                chaves[i] = chave;
+                listas[i] = new Lista();
+                quantidade++;
+            }
+            return listas[i];
+        }
+
+        private void crescer() {
+            long[] chavesAntigas = chaves;
+            Lista[] listasAntigas = listas;
+            chaves = new long[chavesAntigas.length * 2];
+            listas = new Lista[chaves.length];
+            for (int i = 0; i < chavesAntigas.length; i++) {
+                if (listasAntigas[i] == null) continue;
+                int j = posicao(chavesAntigas[i]);
+                chaves[j] = chavesAntigas[i];
+                listas[j] = listasAntigas[i];
+            }
+        }
+    }
+
+    IndiceBusca(Supplier<? extends List<T>> origem, Function<T, String> texto, ToLongFunction<T> id, boolean ignorarAcentos) {
+        this.origem = origem;
+        this.texto = texto;
+        this.id = id;
+        this.ignorarAcentos = ignorarAcentos;
+    }
+
+    // Junta os campos pesquisáveis de um registro
+    static String campos(String... valores) {
+        return String.join(String.valueOf(SEPARADOR), valores);
+    }
+
+    String normalizar(String s) {
+        if (s == null) return "";
+        String minusculo = s.toLowerCase(Locale.ROOT);
+        if (!ignorarAcentos || ascii(minusculo)) return minusculo;
+        return MARCAS.matcher(Normalizer.normalize(minusculo, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    private static boolean ascii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    private static long trigrama(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    synchronized void montar() {
+        if (porTrigrama != null) return;
+        List<T> lista = origem.get();
+        documentoDoId = new HashMap<>(lista.size() * 2);
+        ids = new long[Math.max(16, lista.size())];
+        textos = new String[ids.length];
+        porTrigrama = new Trigramas();
+        for (T entidade : lista) {
+            indexar(entidade);
+        }
+    }
+
+    private void indexar(T entidade) {
+        long chave = id.applyAsLong(entidade);
+        if (documentoDoId.containsKey(chave)) return;
+        if (documentos == ids.length) {
+            ids = Arrays.copyOf(ids, documentos * 2);
+            textos = Arrays.copyOf(textos, ids.length);
+        }
+        int documento = documentos++;
+        String normalizado = normalizar(texto.apply(entidade));
+        ids[documento] = chave;
+        textos[documento] = normalizado;
+        documentoDoId.put(chave, documento);
+        vivos++;
+        for (int i = 0; i + 3 <= normalizado.length(); i++) {
+            porTrigrama.obterOuCriar(trigrama(normalizado, i)).adicionar(documento);
+        }
+    }
+
+    synchronized boolean montado() {
+        return porTrigrama != null;
+    }
+
+    synchronized void adicionar(T entidade) {
+        if (porTrigrama == null) return;
+        indexar(entidade);
+    }
+
+    // Mantém o número de documento, então o registro não muda de posição no resultado
+    synchronized void atualizar(T entidade) {
+        if (porTrigrama == null) return;
+        Integer documento = documentoDoId.get(id.applyAsLong(entidade));
+        if (documento == null) {
+            indexar(entidade);
+            return;
+        }
+        String anterior = textos[documento];
+        String novo = normalizar(texto.apply(entidade));
+        if (novo.equals(anterior)) return;
+        removerTrigramas(documento, anterior);
+        textos[documento] = novo;
+        for (int i = 0; i + 3 <= novo.length(); i++) {
+            porTrigrama.obterOuCriar(trigrama(novo, i)).adicionar(documento);
+        }
+    }
+
+    synchronized void remover(T entidade) {
+        if (porTrigrama == null) return;
+        Integer documento = documentoDoId.remove(id.applyAsLong(entidade));
+        if (documento == null) return;
+        removerTrigramas(documento, textos[documento]);
+        textos[documento] = null;
+        vivos--;
+    }
+
+    synchronized boolean contem(long chave) {
+        return porTrigrama != null && documentoDoId.containsKey(chave);
+    }
+
+    private void removerTrigramas(int documento, String normalizado) {
+        for (int i = 0; i + 3 <= normalizado.length(); i++) {
+            // Listas vazias ficam no mapa; o conjunto de trigramas de um texto é pequeno e estável
+            Lista lista = porTrigrama.obter(trigrama(normalizado, i));
+            if (lista != null) lista.remover(documento);
+        }
+    }
+
+    // Ids dos registros cujo texto contém a busca, na ordem do índice. Buscas com menos de três
+    // letras não têm trigrama e comparam direto com os textos já normalizados
+    synchronized long[] buscar(String busca) {
+        montar();
+        String consulta = normalizar(busca.trim());
+        long[] resultado = new long[vivos];
+        int encontrados = 0;
+        if (consulta.length() < 3) {
+            for (int d = 0; d < documentos; d++) {
+                if (textos[d] != null && textos[d].contains(consulta)) resultado[encontrados++] = ids[d];
+            }
+            return Arrays.copyOf(resultado, encontrados);
+        }
+
+        int quantidade = consulta.length() - 2;
+        Lista[] listas = new Lista[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            listas[i] = porTrigrama.obter(trigrama(consulta, i));
+            if (listas[i] == null || listas[i].tamanho == 0) return new long[0];
+        }
+        // Parte da menor lista e confere as outras por busca binária
+        Arrays.sort(listas, (a, b) -> Integer.compare(a.tamanho, b.tamanho));
+        int[][] inicios = new int[quantidade][1];
+        Lista menor = listas[0];
+        candidatos:
+        for (int c = 0; c < menor.tamanho; c++) {
+            int documento = menor.itens[c];
+            for (int i = 1; i < quantidade; i++) {
+                if (listas[i] != menor && !listas[i].contem(documento, inicios[i])) continue candidatos;
+            }
+            // Os trigramas podem estar no texto sem formar a busca em sequência
+            if (textos[documento].contains(consulta)) resultado[encontrados++] = ids[documento];
+        }
+        return Arrays.copyOf(resultado, encontrados);
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// Relação muitos-para-muitos entre animais e donos, com um conjunto de vizinhos em cada direção:
+// "donos do animal" e "animais do cliente" custam o número de vínculos envolvidos, e apagar um
+// cliente desfaz só os vínculos dele, sem percorrer todos os animais. A lista de donos de cada
+// animal continua sendo a fonte; o índice só acompanha. As duas direções são sempre simétricas
+// e não guardam conjuntos vazios: animal sem dono não aparece em donosPorAnimal. Com um dono só
+// por registro serve também de um-para-muitos (agendamentos de cada animal).
+class IndiceDonos<T> {
+    private static final long[] VAZIO = new long[0];
+
+    private final Supplier<? extends List<T>> origem;
+    private final ToLongFunction<T> id;
+    private final Function<T, long[]> donos;
+
+    private HashMap<Long, HashSet<Long>> donosPorAnimal;
+    private HashMap<Long, HashSet<Long>> animaisPorDono;
+
+    IndiceDonos(Supplier<? extends List<T>> origem, ToLongFunction<T> id, Function<T, long[]> donos) {
+        this.origem = origem;
+        this.id = id;
+        this.donos = donos;
+    }
+
+    private void garantir() {
+        if (donosPorAnimal != null) return;
+        List<T> lista = origem.get();
+        donosPorAnimal = new HashMap<>(lista.size() * 2);
+        animaisPorDono = new HashMap<>();
+        for (T animal : lista) {
+            ligar(id.applyAsLong(animal), donos.apply(animal));
+        }
+    }
+
+    // Troca os donos do animal pelos informados, mexendo só nos vínculos que mudaram (uma
+    // religação em lote, como a do diálogo de edição, custa a diferença entre os conjuntos)
+    private void ligar(long animal, long[] novos) {
+        HashSet<Long> atuais = donosPorAnimal.get(animal);
+        HashSet<Long> desejados = new HashSet<>();
+        for (long dono : novos) {
+            desejados.add(dono);
+        }
+        if (atuais != null) {
+            for (Long dono : atuais) {
+                if (!desejados.contains(dono)) desligar(animaisPorDono, dono, animal);
+            }
+        }
+        for (Long dono : desejados) {
+            if (atuais == null || !atuais.contains(dono)) animaisPorDono.computeIfAbsent(dono, d -> new HashSet<>()).add(animal);
+        }
+        if (desejados.isEmpty()) donosPorAnimal.remove(animal);
+        else donosPorAnimal.put(animal, desejados);
+    }
+
+    private static void desligar(HashMap<Long, HashSet<Long>> vizinhos, long de, long ate) {
+        HashSet<Long> conjunto = vizinhos.get(de);
+        if (conjunto == null) return;
+        conjunto.remove(ate);
+        if (conjunto.isEmpty()) vizinhos.remove(de);
+    }
+
+    private static long[] ids(HashSet<Long> conjunto) {
+        if (conjunto == null) return VAZIO;
+        long[] ids = new long[conjunto.size()];
+        int i = 0;
+        for (long valor : conjunto) {
+            ids[i++] = valor;
+        }
+        return ids;
+    }
+
+    void adicionar(T animal) {
+        if (donosPorAnimal == null) return;
+        ligar(id.applyAsLong(animal), donos.apply(animal));
+    }
+
+    void atualizar(T animal) {
+        if (donosPorAnimal == null) return;
+        ligar(id.applyAsLong(animal), donos.apply(animal));
+    }
+
+    void remover(T animal) {
+        if (donosPorAnimal == null) return;
+        long chave = id.applyAsLong(animal);
+        HashSet<Long> atuais = donosPorAnimal.remove(chave);
+        if (atuais == null) return;
+        for (Long dono : atuais) {
+            desligar(animaisPorDono, dono, chave);
+        }
+    }
+
+    // Desfaz todos os vínculos do dono e devolve os animais que eram dele
+    long[] removerDono(long dono) {
+        garantir();
+        HashSet<Long> animais = animaisPorDono.remove(dono);
+        if (animais == null) return VAZIO;
+        for (Long animal : animais) {
+            desligar(donosPorAnimal, animal, dono);
+        }
+        return ids(animais);
+    }
+
+    long[] animais(long dono) {
+        garantir();
+        return ids(animaisPorDono.get(dono));
+    }
+
+    boolean possui(long dono, long animal) {
+        garantir();
+        HashSet<Long> animais = animaisPorDono.get(dono);
+        return animais != null && animais.contains(animal);
+    }
+}
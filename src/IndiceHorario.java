@@ -0,0 +1,209 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// Agenda ordenada por horário: minuto (desde 1970) -> ids dos registros daquele minuto, em ordem
+// de id, numa TreeMap. Consultas por intervalo ("hoje", "esta semana") percorrem só o trecho da
+// árvore do intervalo, e a contagem por dia fica pronta em outra árvore, sem formatar datas.
+// Cada id está em no máximo um minuto (minutoDoId diz qual), e porDia soma exatamente os ids
+// de porMinuto: indexar e desindexar mexem nas três estruturas juntas.
+class IndiceHorario<T> {
+    private static final long[] VAZIO = new long[0];
+
+    private final Supplier<? extends List<T>> origem;
+    private final ToLongFunction<T> minuto;
+    private final ToLongFunction<T> id;
+    private final ZoneId zona = ZoneId.systemDefault();
+
+    private TreeMap<Long, long[]> porMinuto;
+    // Minuto com que cada registro foi indexado, para achá-lo depois que o horário muda
+    private HashMap<Long, Long> minutoDoId;
+    // Dia (LocalDate.toEpochDay, no fuso local) -> quantidade de registros
+    private TreeMap<Long, Integer> porDia;
+
+    IndiceHorario(Supplier<? extends List<T>> origem, ToLongFunction<T> minuto, ToLongFunction<T> id) {
+        this.origem = origem;
+        this.minuto = minuto;
+        this.id = id;
+    }
+
+    // Horário local (fuso do sistema, como na tela) em minutos desde 1970
+    static long minuto(LocalDateTime horario) {
+        return Math.floorDiv(horario.atZone(ZoneId.systemDefault()).toEpochSecond(), 60L);
+    }
+
+    static LocalDateTime horario(long minuto) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(minuto * 60L), ZoneId.systemDefault());
+    }
+
+    long inicioDoDia(LocalDate dia) {
+        return Math.floorDiv(dia.atStartOfDay(zona).toEpochSecond(), 60L);
+    }
+
+    private long dia(long minuto) {
+        return Instant.ofEpochSecond(minuto * 60L).atZone(zona).toLocalDate().toEpochDay();
+    }
+
+    private void garantir() {
+        if (porMinuto != null) return;
+        List<T> lista = origem.get();
+        int quantidade = lista.size();
+        porMinuto = new TreeMap<>();
+        minutoDoId = new HashMap<>(quantidade * 2);
+        porDia = new TreeMap<>();
+        long[] ids = new long[quantidade];
+        long[] minutos = new long[quantidade];
+        long menor = Long.MAX_VALUE;
+        long maior = Long.MIN_VALUE;
+        for (int i = 0; i < quantidade; i++) {
+            T entidade = lista.get(i);
+            ids[i] = id.applyAsLong(entidade);
+            minutos[i] = minuto.applyAsLong(entidade);
+            menor = Math.min(menor, minutos[i]);
+            maior = Math.max(maior, minutos[i]);
+        }
+        if (quantidade > 0 && maior - menor >= 1L << 31) {
+            // Horários espalhados por milhares de anos: monta registro a registro
+            for (int i = 0; i < quantidade; i++) {
+                indexar(ids[i], minutos[i], true);
+            }
+            return;
+        }
+
+        // Inserir na árvore em ordem aleatória é o que pesa na montagem: ordena (minuto, posição)
+        // empacotados num long e insere cada minuto uma vez só, já em ordem
+        long[] ordem = new long[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            ordem[i] = (minutos[i] - menor) << 32 | i;
+        }
+        Arrays.sort(ordem);
+        long fimDoDia = Long.MIN_VALUE;
+        long dia = 0;
+        int doDia = 0;
+        for (int inicio = 0, fim; inicio < quantidade; inicio = fim) {
+            long m = minutos[(int) ordem[inicio]];
+            fim = inicio + 1;
+            while (fim < quantidade && ordem[fim] >>> 32 == ordem[inicio] >>> 32) fim++;
+            long[] doMinuto = new long[fim - inicio];
+            int distintos = 0;
+            for (int j = inicio; j < fim; j++) {
+                long chave = ids[(int) ordem[j]];
+                if (minutoDoId.putIfAbsent(chave, m) == null) doMinuto[distintos++] = chave;
+            }
+            if (distintos == 0) continue;
+            doMinuto = Arrays.copyOf(doMinuto, distintos);
+            Arrays.sort(doMinuto);
+            porMinuto.put(m, doMinuto);
+            // Contagem por dia na mesma passada: um cálculo de fuso por dia, e não um por registro
+            if (m >= fimDoDia) {
+                if (doDia > 0) porDia.put(dia, doDia);
+                dia = dia(m);
+                fimDoDia = inicioDoDia(LocalDate.ofEpochDay(dia + 1));
+                doDia = 0;
+            }
+            doDia += distintos;
+        }
+        if (doDia > 0) porDia.put(dia, doDia);
+    }
+
+    private void indexar(long chave, long m, boolean contarDia) {
+        if (minutoDoId.putIfAbsent(chave, m) != null) return;
+        long[] ids = porMinuto.get(m);
+        if (ids == null) {
+            porMinuto.put(m, new long[]{chave});
+        } else {
+            int posicao = -Arrays.binarySearch(ids, chave) - 1;
+            long[] novos = new long[ids.length + 1];
+            System.arraycopy(ids, 0, novos, 0, posicao);
+            novos[posicao] = chave;
+            System.arraycopy(ids, posicao, novos, posicao + 1, ids.length - posicao);
+            porMinuto.put(m, novos);
+        }
+        if (contarDia) porDia.merge(dia(m), 1, Integer::sum);
+    }
+
+    private void desindexar(long chave) {
+        Long m = minutoDoId.remove(chave);
+        if (m == null) return;
+        long[] ids = porMinuto.get(m);
+        int posicao = Arrays.binarySearch(ids, chave);
+        if (ids.length == 1) {
+            porMinuto.remove(m);
+        } else {
+            long[] novos = new long[ids.length - 1];
+            System.arraycopy(ids, 0, novos, 0, posicao);
+            System.arraycopy(ids, posicao + 1, novos, posicao, novos.length - posicao);
+            porMinuto.put(m, novos);
+        }
+        porDia.computeIfPresent(dia(m), (d, quantidade) -> quantidade == 1 ? null : quantidade - 1);
+    }
+
+    void adicionar(T entidade) {
+        if (porMinuto == null) return;
+        indexar(id.applyAsLong(entidade), minuto.applyAsLong(entidade), true);
+    }
+
+    void atualizar(T entidade) {
+        if (porMinuto == null) return;
+        long chave = id.applyAsLong(entidade);
+        long m = minuto.applyAsLong(entidade);
+        Long anterior = minutoDoId.get(chave);
+        if (anterior != null && anterior == m) return;
+        desindexar(chave);
+        indexar(chave, m, true);
+    }
+
+    void remover(T entidade) {
+        if (porMinuto == null) return;
+        desindexar(id.applyAsLong(entidade));
+    }
+
+    // Ids com horário em [de, ate), em ordem de horário e depois de id
+    long[] entre(long de, long ate) {
+        garantir();
+        if (de >= ate) return VAZIO;
+        long[] resultado = new long[16];
+        int quantidade = 0;
+        for (long[] ids : porMinuto.subMap(de, ate).values()) {
+            if (quantidade + ids.length > resultado.length) {
+                resultado = Arrays.copyOf(resultado, Math.max(resultado.length * 2, quantidade + ids.length));
+            }
+            System.arraycopy(ids, 0, resultado, quantidade, ids.length);
+            quantidade += ids.length;
+        }
+        return Arrays.copyOf(resultado, quantidade);
+    }
+
+    long[] doPeriodo(LocalDate primeiroDia, LocalDate ultimoDia) {
+        return entre(inicioDoDia(primeiroDia), inicioDoDia(ultimoDia.plusDays(1)));
+    }
+
+    // Minuto do registro, ou Long.MIN_VALUE se ele não está no índice
+    long minutoDoRegistro(long chave) {
+        garantir();
+        Long m = minutoDoId.get(chave);
+        return m == null ? Long.MIN_VALUE : m;
+    }
+
+    int contarNoDia(LocalDate dia) {
+        garantir();
+        return porDia.getOrDefault(dia.toEpochDay(), 0);
+    }
+
+    // Soma das contagens diárias de primeiroDia até ultimoDia, inclusive
+    int contar(LocalDate primeiroDia, LocalDate ultimoDia) {
+        garantir();
+        int total = 0;
+        for (int quantidade : porDia.subMap(primeiroDia.toEpochDay(), true, ultimoDia.toEpochDay(), true).values()) {
+            total += quantidade;
+        }
+        return total;
+    }
+}
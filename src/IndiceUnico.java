@@ -0,0 +1,84 @@
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Índice único (chave -> entidade) sobre uma das listas, para que buscas e checagens de
+// duplicidade não percorram a lista inteira. É montado no primeiro uso, a partir da lista
+// atual, para não decodificar o arquivo mapeado inteiro na abertura; depois disso quem altera
+// a lista avisa o índice (adicionar, atualizar, remover).
+class IndiceUnico<T> {
+    private final Supplier<? extends List<T>> origem;
+    // null = entidade fica fora do índice (ex.: CPF em branco)
+    private final Function<T, String> chave;
+    private HashMap<String, T> porChave;
+    // Chave com que cada entidade foi indexada, para reindexar depois que os campos mudam
+    private IdentityHashMap<T, String> chaves;
+
+    IndiceUnico(Supplier<? extends List<T>> origem, Function<T, String> chave) {
+        this.origem = origem;
+        this.chave = chave;
+    }
+
+    // Nome sem diferença de maiúsculas nem de espaços repetidos
+    static String normalizarNome(String nome) {
+        if (nome == null) return null;
+        String normalizado = nome.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return normalizado.isEmpty() ? null : normalizado;
+    }
+
+    static String normalizarCpf(String cpf) {
+        return cpf == null || cpf.isEmpty() ? null : cpf;
+    }
+
+    private void garantir() {
+        if (porChave != null) return;
+        List<T> lista = origem.get();
+        porChave = new HashMap<>(lista.size() * 2);
+        chaves = new IdentityHashMap<>(lista.size() * 2);
+        for (T entidade : lista) {
+            indexar(entidade);
+        }
+    }
+
+    private void indexar(T entidade) {
+        String valor = chave.apply(entidade);
+        if (valor == null) return;
+        // Bases antigas podem ter duplicados: o primeiro cadastrado fica no índice
+        porChave.putIfAbsent(valor, entidade);
+        chaves.put(entidade, valor);
+    }
+
+    // A chave já deve vir normalizada (normalizarNome, normalizarCpf)
+    T obter(String valor) {
+        if (valor == null) return null;
+        garantir();
+        return porChave.get(valor);
+    }
+
+    boolean existeOutro(String valor, T entidade) {
+        T existente = obter(valor);
+        return existente != null && existente != entidade;
+    }
+
+    void adicionar(T entidade) {
+        if (porChave == null) return;
+        indexar(entidade);
+    }
+
+    void atualizar(T entidade) {
+        if (porChave == null) return;
+        remover(entidade);
+        indexar(entidade);
+    }
+
+    void remover(T entidade) {
+        if (porChave == null) return;
+        String anterior = chaves.remove(entidade);
+        if (anterior != null && porChave.get(anterior) == entidade) {
+            porChave.remove(anterior);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// O pouco de JSON que o sistema precisa, sem biblioteca: escrever um objeto plano (exportação e
+// respostas da API) e ler o corpo das requisições. Na leitura, objetos viram LinkedHashMap, listas
+// ArrayList, números Long (ou Double, se tiverem fração ou expoente), e o resto String, Boolean ou null.
+class Json {
+    private final String texto;
+    private int posicao;
+
+    private Json(String texto) {
+        this.texto = texto;
+    }
+
+    // Objeto com as colunas na ordem dada; valores String, long[] (lista de ids), Object[], null ou
+    // qualquer outro que se escreva pelo toString (números, booleanos)
+    static void escrever(Writer saida, String[] colunas, Object[] valores) throws IOException {
+        saida.write('{');
+        for (int i = 0; i < colunas.length; i++) {
+            if (i > 0) saida.write(',');
+            texto(saida, colunas[i]);
+            saida.write(':');
+            valor(saida, valores[i]);
+        }
+        saida.write('}');
+    }
+
+    static void valor(Writer saida, Object valor) throws IOException {
+        if (valor instanceof long[]) {
+            long[] ids = (long[]) valor;
+            saida.write('[');
+            for (int j = 0; j < ids.length; j++) {
+                if (j > 0) saida.write(',');
+                saida.write(Long.toString(ids[j]));
+            }
+            saida.write(']');
+        } else if (valor instanceof Object[]) {
+            Object[] itens = (Object[]) valor;
+            saida.write('[');
+            for (int j = 0; j < itens.length; j++) {
+                if (j > 0) saida.write(',');
+                valor(saida, itens[j]);
+            }
+            saida.write(']');
+        } else if (valor instanceof String) {
+            texto(saida, (String) valor);
+        } else {
+            saida.write(String.valueOf(valor));
+        }
+    }
+
+    static void texto(Writer saida, String texto) throws IOException {
+        saida.write('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"': saida.write("\\\""); break;
+                case '\\': saida.write("\\\\"); break;
+                case '\n': saida.write("\\n"); break;
+                case '\r': saida.write("\\r"); break;
+                case '\t': saida.write("\\t"); break;
+                default:
+                    if (c < 0x20) saida.write(String.format("\\u%04x", (int) c));
+                    else saida.write(c);
+            }
+        }
+        saida.write('"');
+    }
+
+    // IllegalArgumentException com a posição do erro se o texto não for um JSON válido
+    static Object ler(String texto) {
+        Json leitor = new Json(texto);
+        Object valor = leitor.valor();
+        leitor.espacos();
+        if (leitor.posicao < texto.length()) throw leitor.erro("conteúdo depois do fim");
+        return valor;
+    }
+
+    private Object valor() {
+        espacos();
+        if (posicao >= texto.length()) throw erro("fim inesperado");
+        char c = texto.charAt(posicao);
+        switch (c) {
+            case '{': return objeto();
+            case '[': return lista();
+            case '"': return texto();
+            case 't': return palavra("true", Boolean.TRUE);
+            case 'f': return palavra("false", Boolean.FALSE);
+            case 'n': return palavra("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return numero();
+                throw erro("caractere inesperado '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> objeto() {
+        LinkedHashMap<String, Object> objeto = new LinkedHashMap<>();
+        posicao++;
+        espacos();
+        if (proximo('}')) return objeto;
+        while (true) {
+            espacos();
+            if (posicao >= texto.length() || texto.charAt(posicao) != '"') throw erro("nome de campo esperado");
+            String nome = texto();
+            espacos();
+            if (!proximo(':')) throw erro("':' esperado");
+            objeto.put(nome, valor());
+            espacos();
+            if (proximo('}')) return objeto;
+            if (!proximo(',')) throw erro("',' ou '}' esperado");
+        }
+    }
+
+    private List<Object> lista() {
+        ArrayList<Object> lista = new ArrayList<>();
+        posicao++;
+        espacos();
+        if (proximo(']')) return lista;
+        while (true) {
+            lista.add(valor());
+            espacos();
+            if (proximo(']')) return lista;
+            if (!proximo(',')) throw erro("',' ou ']' esperado");
+        }
+    }
+
+    private String texto() {
+        StringBuilder resultado = new StringBuilder();
+        posicao++;
+        while (true) {
+            if (posicao >= texto.length()) throw erro("texto sem fim");
+            char c = texto.charAt(posicao++);
+            if (c == '"') return resultado.toString();
+            if (c != '\\') {
+                resultado.append(c);
+                continue;
+            }
+            if (posicao >= texto.length()) throw erro("texto sem fim");
+            char escape = texto.charAt(posicao++);
+            switch (escape) {
+                case '"': resultado.append('"'); break;
+                case '\\': resultado.append('\\'); break;
+                case '/': resultado.append('/'); break;
+                case 'b': resultado.append('\b'); break;
+                case 'f': resultado.append('\f'); break;
+                case 'n': resultado.append('\n'); break;
+                case 'r': resultado.append('\r'); break;
+                case 't': resultado.append('\t'); break;
+                case 'u':
+                    if (posicao + 4 > texto.length()) throw erro("escape \\u incompleto");
+                    try {
+                        resultado.append((char) Integer.parseInt(texto.substring(posicao, posicao + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw erro("escape \\u inválido");
+                    }
+                    posicao += 4;
+                    break;
+                default:
+                    throw erro("escape inválido '\\" + escape + "'");
+            }
+        }
+    }
+
+    private Object numero() {
+        int inicio = posicao;
+        boolean inteiro = true;
+        while (posicao < texto.length()) {
+            char c = texto.charAt(posicao);
+            if (c == '.' || c == 'e' || c == 'E') inteiro = false;
+            else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) break;
+            posicao++;
+        }
+        String numero = texto.substring(inicio, posicao);
+        try {
+            return inteiro ? (Object) Long.parseLong(numero) : (Object) Double.parseDouble(numero);
+        } catch (NumberFormatException e) {
+            throw erro("número inválido '" + numero + "'");
+        }
+    }
+
+    private Object palavra(String palavra, Object valor) {
+        if (!texto.startsWith(palavra, posicao)) throw erro("valor inválido");
+        posicao += palavra.length();
+        return valor;
+    }
+
+    private boolean proximo(char c) {
+        if (posicao < texto.length() && texto.charAt(posicao) == c) {
+            posicao++;
+            return true;
+        }
+        return false;
+    }
+
+    private void espacos() {
+        while (posicao < texto.length()) {
+            char c = texto.charAt(posicao);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return;
+            posicao++;
+        }
+    }
+
+    private IllegalArgumentException erro(String motivo) {
+        return new IllegalArgumentException("JSON inválido na posição " + posicao + ": " + motivo);
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.LongConsumer;
+import java.util.function.UnaryOperator;
+
+// Lista de entidades de uma seção do arquivo mapeado: cada posição guarda só o ordinal do
+// registro e a entidade é decodificada no primeiro get. Enquanto a lista não é alterada ela
+// nem aloca os arrays de posições.
+class ListaPreguicosa<T> extends AbstractList<T> implements RandomAccess {
+    private final ArquivoMapeado.Secao secao;
+    private int tamanho;
+    // null enquanto a lista é exatamente os registros listados da seção, na ordem do arquivo
+    private int[] ordinais;
+    // Entidades criadas depois da abertura (ordinal -1)
+    private Object[] itens;
+    // Cópia para a compactação (ver congelada): os registros com ordinal nunca são decodificados
+    private boolean congelada;
+
+    ListaPreguicosa(ArquivoMapeado.Secao secao) {
+        this.secao = secao;
+        this.tamanho = secao == null ? 0 : secao.listados;
+    }
+
+    private int ordinal(int i) {
+        return ordinais == null ? i : ordinais[i];
+    }
+
+    private void separar() {
+        if (ordinais != null) return;
+        ordinais = new int[Math.max(tamanho, 10)];
+        for (int i = 0; i < tamanho; i++) ordinais[i] = i;
+        itens = new Object[ordinais.length];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        if (i < 0 || i >= tamanho) throw new IndexOutOfBoundsException("Índice " + i + ", tamanho " + tamanho);
+        int ordinal = ordinal(i);
+        return (T) (ordinal < 0 ? itens[i] : secao.obter(ordinal));
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public T set(int i, T elemento) {
+        T anterior = get(i);
+        separar();
+        ordinais[i] = -1;
+        itens[i] = elemento;
+        return anterior;
+    }
+
+    @Override
+    public void add(int i, T elemento) {
+        if (i < 0 || i > tamanho) throw new IndexOutOfBoundsException("Índice " + i + ", tamanho " + tamanho);
+        separar();
+        if (tamanho == ordinais.length) {
+            ordinais = Arrays.copyOf(ordinais, tamanho + (tamanho >> 1) + 1);
+            itens = Arrays.copyOf(itens, ordinais.length);
+        }
+        System.arraycopy(ordinais, i, ordinais, i + 1, tamanho - i);
+        System.arraycopy(itens, i, itens, i + 1, tamanho - i);
+        ordinais[i] = -1;
+        itens[i] = elemento;
+        tamanho++;
+        modCount++;
+    }
+
+    @Override
+    public T remove(int i) {
+        T anterior = get(i);
+        separar();
+        System.arraycopy(ordinais, i + 1, ordinais, i, tamanho - i - 1);
+        System.arraycopy(itens, i + 1, itens, i, tamanho - i - 1);
+        tamanho--;
+        itens[tamanho] = null;
+        modCount++;
+        return anterior;
+    }
+
+    // Registros ainda não decodificados são achados pelo id no índice do arquivo, sem decodificar a lista
+    @Override
+    public int indexOf(Object o) {
+        if (secao != null && o != null && CodecBinario.esquemaLocal(secao.tipo).classe.isInstance(o)) {
+            int procurado = secao.ordinalDoId(PetshopSystemSwing.idEntidade(o));
+            if (procurado >= 0 && secao.obter(procurado) == o) {
+                for (int i = 0; i < tamanho; i++) {
+                    if (ordinal(i) == procurado) return i;
+                }
+                return -1;
+            }
+        }
+        for (int i = 0; i < tamanho; i++) {
+            if (ordinal(i) < 0 && itens[i] == o) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int i = indexOf(o);
+        if (i < 0) return false;
+        remove(i);
+        return true;
+    }
+
+    // Para percorrer a lista inteira sem deixar tudo decodificado na memória (exportação): o que
+    // ainda não foi decodificado é lido numa cópia descartável. Na cópia congelada, sempre do
+    // arquivo: o que a thread dona decodificar depois não é desta versão
+    @SuppressWarnings("unchecked")
+    T semGuardar(int i) {
+        if (i < 0 || i >= tamanho) throw new IndexOutOfBoundsException("Índice " + i + ", tamanho " + tamanho);
+        int ordinal = ordinal(i);
+        if (ordinal < 0) return (T) itens[i];
+        return (T) (congelada ? secao.lerDoArquivo(ordinal) : secao.lerSemGuardar(ordinal));
+    }
+
+    // O mesmo para uma lista qualquer das entidades (ArrayList quando não há arquivo mapeado)
+    static <T> T semGuardar(List<T> lista, int i) {
+        return lista instanceof ListaPreguicosa ? ((ListaPreguicosa<T>) lista).semGuardar(i) : lista.get(i);
+    }
+
+    // Acesso ao arquivo sem decodificar, usado na compactação (CodecBinario.codificar) e nas
+    // tabelas das telas (ModeloTabela)
+
+    long id(int i) {
+        int ordinal = ordinal(i);
+        return ordinal >= 0 ? secao.id(ordinal) : PetshopSystemSwing.idEntidade(itens[i]);
+    }
+
+    // Registros já decodificados podem ter sido alterados e são codificados de novo
+    boolean copiarSeNaoCarregado(int i, CodecBinario.Saida out) {
+        int ordinal = ordinal(i);
+        return ordinal >= 0 && (congelada || secao.seCarregado(ordinal) == null) && secao.copiar(ordinal, out);
+    }
+
+    boolean referenciasSeNaoCarregado(int i, LongConsumer destino) {
+        int ordinal = ordinal(i);
+        if (ordinal < 0 || (!congelada && secao.seCarregado(ordinal) != null)) return false;
+        secao.referencias(ordinal, destino);
+        return true;
+    }
+
+    // Estado atual da lista para ser codificado em outra thread (chamado pela thread dona): o que
+    // ainda não foi decodificado continua só como ordinal, já que o arquivo mapeado não muda, e o
+    // resto vira cópia, pelo mesmo critério de copiarSeNaoCarregado. Custa um int por posição mais
+    // as cópias, em vez da codificação inteira
+    @SuppressWarnings("unchecked")
+    ListaPreguicosa<T> congelada(UnaryOperator<T> copia) {
+        ListaPreguicosa<T> congelada = new ListaPreguicosa<>(secao);
+        congelada.congelada = true;
+        congelada.tamanho = tamanho;
+        Object[] carregados = secao == null ? null : secao.carregados();
+        if (ordinais == null && carregados == null) return congelada;
+        congelada.ordinais = new int[tamanho];
+        congelada.itens = new Object[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            int ordinal = ordinal(i);
+            Object entidade = ordinal < 0 ? itens[i] : carregados == null ? null : carregados[ordinal];
+            if (entidade == null) {
+                congelada.ordinais[i] = ordinal;
+            } else {
+                congelada.ordinais[i] = -1;
+                congelada.itens[i] = copia.apply((T) entidade);
+            }
+        }
+        return congelada;
+    }
+}
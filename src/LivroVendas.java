@@ -0,0 +1,559 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Livro de vendas: cadastro de produtos e as vendas, gravados só no fim de arquivos de segmento
+// (pasta vendas/, 000001.seg, 000002.seg...). Uma venda nunca é alterada nem excluída, então não
+// há snapshot nem compactação como no diário: quando o segmento atual passa do tamanho limite o
+// próximo é aberto e os anteriores não são mais tocados. Uma alteração de produto é um novo
+// registro com o mesmo SKU; na abertura vale o último. Entradas e ajustes de estoque também são
+// registros do livro, e o saldo de cada SKU (Estoque) é refeito das entradas menos as vendas.
+//
+// Para a abertura não reler o histórico inteiro, livro.ckp guarda o estado até o fim do último
+// segmento fechado: produtos, saldo de cada SKU, quantidade de vendas e o momento da última. Na
+// abertura só os segmentos depois dele são lidos (normalmente só o atual), e as vendas anteriores
+// são lidas em segundo plano (petshop-vendas); quem pede uma delas antes de a leitura terminar
+// espera por ela. O checkpoint é regravado na abertura quando há segmentos fechados depois dele, e
+// é ignorado se os segmentos que ele cobre não têm mais o tamanho de quando foi gravado.
+//
+// A parte em memória (produtos e vendas) é da thread dona das listas; os arquivos são escritos
+// pela thread de gravação do ServicoPersistencia (registrarLote, sincronizar), que junta as
+// vendas de uma rajada em um só fsync.
+class LivroVendas implements Closeable {
+    static final String PASTA = "vendas";
+    // Tipos de registro
+    static final byte PRODUTO = 1;
+    static final byte VENDA = 2;
+    static final byte ESTOQUE = 3;
+
+    private static final int MAGICO = 0x50535631; // "PSV1"
+    private static final int TAMANHO_CABECALHO = 8; // mágico + número do segmento
+    private static final long TAMANHO_SEGMENTO = 4L * 1024 * 1024;
+    private static final String EXTENSAO = ".seg";
+    private static final String CHECKPOINT = "livro.ckp";
+    private static final int MAGICO_CHECKPOINT = 0x50534331; // "PSC1"
+
+    // O que é preciso de um segmento lido: cada registro válido, em ordem
+    private interface Leitor {
+        void aplicar(byte tipo, ByteBuffer dados) throws IOException;
+    }
+
+    static final class Produto {
+        final String sku;
+        final String nome;
+        final long precoCentavos;
+        // Estoque mínimo antes do aviso; 0 = sem aviso
+        final int minimo;
+
+        Produto(String sku, String nome, long precoCentavos, int minimo) {
+            this.sku = sku;
+            this.nome = nome;
+            this.precoCentavos = precoCentavos;
+            this.minimo = minimo;
+        }
+    }
+
+    static final class Venda {
+        // Sequencial no livro, a partir de 1
+        final long numero;
+        final String sku;
+        final int quantidade;
+        // Preço unitário no momento da venda
+        final long precoCentavos;
+        // Id do cliente; 0 = venda sem cliente
+        final long cliente;
+        // Milissegundos, nunca menor que o da venda anterior
+        final long momento;
+
+        Venda(long numero, String sku, int quantidade, long precoCentavos, long cliente, long momento) {
+            this.numero = numero;
+            this.sku = sku;
+            this.quantidade = quantidade;
+            this.precoCentavos = precoCentavos;
+            this.cliente = cliente;
+            this.momento = momento;
+        }
+
+        long totalCentavos() {
+            return precoCentavos * quantidade;
+        }
+    }
+
+    private final Path pasta;
+    final Estoque estoque = new Estoque();
+    // Só a thread dona
+    private final LinkedHashMap<String, Produto> produtos = new LinkedHashMap<>();
+    // Vendas dos segmentos cobertos pelo checkpoint: null até a leitura em segundo plano terminar
+    private volatile Venda[] anteriores;
+    private int quantidadeAnteriores;
+    private final CountDownLatch anterioresLidas = new CountDownLatch(1);
+    private volatile IOException falhaAnteriores;
+    // As demais. Só cresce: posições já preenchidas nunca mudam, então vendas() pode entregar o
+    // prefixo a outras threads sem copiar (o array é trocado por um maior, não alterado, quando enche)
+    private Venda[] vendas = new Venda[1024];
+    // Total, contando as anteriores
+    private int quantidadeVendas;
+    private long ultimoMomento;
+    // Só a thread de gravação
+    private FileChannel canal;
+    private int segmento;
+    private long tamanho;
+    private int pendentesFsync;
+
+    private LivroVendas(Path pasta) {
+        this.pasta = pasta;
+    }
+
+    // Lê os segmentos depois do checkpoint em ordem. Um final incompleto ou corrompido no último
+    // segmento (queda no meio da escrita) é truncado; num segmento anterior é erro, porque ele já
+    // estava fechado. tratadorErro recebe, em outra thread, o que falhar depois da abertura
+    // (checkpoint que não pôde ser gravado, vendas anteriores ilegíveis)
+    static LivroVendas abrir(Path pastaDados, Consumer<IOException> tratadorErro) throws IOException {
+        LivroVendas livro = new LivroVendas(pastaDados.resolve(PASTA));
+        Files.createDirectories(livro.pasta);
+        List<Path> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(livro.pasta, "*" + EXTENSAO)) {
+            for (Path arquivo : arquivos) segmentos.add(arquivo);
+        }
+        Collections.sort(segmentos);
+        int coberto = livro.lerCheckpoint(segmentos);
+        int primeiro = 0;
+        while (primeiro < segmentos.size() && numero(segmentos.get(primeiro)) <= coberto) primeiro++;
+        for (int i = primeiro; i < segmentos.size(); i++) {
+            long fimValido = ler(segmentos.get(i), livro::aplicar);
+            boolean ultimo = i == segmentos.size() - 1;
+            if (fimValido < Files.size(segmentos.get(i)) && !ultimo) {
+                throw new IOException("Segmento de vendas corrompido: " + segmentos.get(i));
+            }
+            if (i == segmentos.size() - 2) {
+                try {
+                    livro.gravarCheckpoint(segmentos.subList(0, i + 1));
+                } catch (IOException e) {
+                    // Só a próxima abertura fica mais lenta
+                    tratadorErro.accept(e);
+                }
+            }
+            if (ultimo) {
+                livro.segmento = numero(segmentos.get(i));
+                livro.canal = FileChannel.open(segmentos.get(i), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (fimValido < TAMANHO_CABECALHO) {
+                    livro.canal.truncate(0);
+                    livro.escreverCabecalho();
+                } else {
+                    livro.canal.truncate(fimValido);
+                    livro.canal.position(fimValido);
+                    livro.tamanho = fimValido;
+                }
+            }
+        }
+        if (livro.canal == null) livro.novoSegmento(1);
+        livro.lerAnteriores(segmentos.subList(0, primeiro), tratadorErro);
+        return livro;
+    }
+
+    // Formato: cabeçalho, depois [int tamanho][byte tipo][dados][int crc32] por registro; textos
+    // como [short tamanho][UTF-8]. Devolve onde termina o último registro válido. O segmento é
+    // lido de uma vez (ele tem no máximo o tamanho limite mais um lote)
+    private static long ler(Path arquivo, Leitor leitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(arquivo));
+        if (buffer.remaining() < TAMANHO_CABECALHO || buffer.getInt() != MAGICO || buffer.getInt() != numero(arquivo)) return 0;
+        CRC32 crc = new CRC32();
+        int inicio = buffer.position();
+        while (buffer.remaining() >= 4 + 1 + 4) {
+            int tamanhoDados = buffer.getInt(inicio);
+            if (tamanhoDados < 0 || tamanhoDados > buffer.remaining() - 4 - 1 - 4) break;
+            crc.reset();
+            crc.update(buffer.array(), inicio + 4, 1 + tamanhoDados);
+            if (buffer.getInt(inicio + 4 + 1 + tamanhoDados) != (int) crc.getValue()) break;
+            ByteBuffer dados = ByteBuffer.wrap(buffer.array(), inicio + 4 + 1, tamanhoDados).slice();
+            leitor.aplicar(buffer.get(inicio + 4), dados);
+            inicio += 4 + 1 + tamanhoDados + 4;
+            buffer.position(inicio);
+        }
+        return inicio;
+    }
+
+    // Formato: [int mágico][int último segmento coberto][long bytes dos segmentos cobertos]
+    // [int vendas][long momento da última][int produtos][produto...][int saldos][sku, disponível...]
+    // [int crc32 de tudo antes]. Devolve o último segmento coberto; 0 sem checkpoint utilizável
+    private int lerCheckpoint(List<Path> segmentos) throws IOException {
+        byte[] conteudo;
+        try {
+            conteudo = Files.readAllBytes(pasta.resolve(CHECKPOINT));
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        if (conteudo.length < 4) return 0;
+        CRC32 crc = new CRC32();
+        crc.update(conteudo, 0, conteudo.length - 4);
+        ByteBuffer dados = ByteBuffer.wrap(conteudo);
+        if (dados.getInt(conteudo.length - 4) != (int) crc.getValue() || dados.getInt() != MAGICO_CHECKPOINT) return 0;
+        try {
+            int coberto = dados.getInt();
+            long bytes = dados.getLong();
+            // O segmento atual nunca é coberto, e os cobertos continuam como estavam
+            if (segmentos.isEmpty() || numero(segmentos.get(segmentos.size() - 1)) <= coberto) return 0;
+            long bytesAgora = 0;
+            for (Path segmento : segmentos) {
+                if (numero(segmento) <= coberto) bytesAgora += Files.size(segmento);
+            }
+            if (bytesAgora != bytes) return 0;
+            quantidadeAnteriores = dados.getInt();
+            quantidadeVendas = quantidadeAnteriores;
+            ultimoMomento = dados.getLong();
+            for (int i = dados.getInt(); i > 0; i--) {
+                Produto produto = new Produto(texto(dados), texto(dados), dados.getLong(), dados.getInt());
+                produtos.put(produto.sku, produto);
+                estoque.definirMinimo(produto.sku, produto.minimo);
+            }
+            for (int i = dados.getInt(); i > 0; i--) {
+                estoque.somar(texto(dados), dados.getInt());
+            }
+            return coberto;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Checkpoint de vendas inválido", e);
+        }
+    }
+
+    // Na abertura, com o estado logo depois do último segmento de cobertos
+    private void gravarCheckpoint(List<Path> cobertos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream saida = new DataOutputStream(bytes);
+        long tamanhoCobertos = 0;
+        for (Path segmento : cobertos) tamanhoCobertos += Files.size(segmento);
+        saida.writeInt(MAGICO_CHECKPOINT);
+        saida.writeInt(numero(cobertos.get(cobertos.size() - 1)));
+        saida.writeLong(tamanhoCobertos);
+        saida.writeInt(quantidadeVendas);
+        saida.writeLong(ultimoMomento);
+        saida.writeInt(produtos.size());
+        for (Produto produto : produtos.values()) {
+            escreverTexto(saida, produto.sku);
+            escreverTexto(saida, produto.nome);
+            saida.writeLong(produto.precoCentavos);
+            saida.writeInt(produto.minimo);
+        }
+        List<Estoque.Saldo> saldos = estoque.saldos();
+        saida.writeInt(saldos.size());
+        for (Estoque.Saldo saldo : saldos) {
+            escreverTexto(saida, saldo.sku);
+            saida.writeInt(saldo.disponivel());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        saida.writeInt((int) crc.getValue());
+        Path temporario = pasta.resolve(CHECKPOINT + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temporario.toFile())) {
+            bytes.writeTo(fos);
+            fos.getFD().sync();
+        }
+        Files.move(temporario, pasta.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Os segmentos cobertos só são lidos aqui e não mudam mais; só as vendas saem deles
+    private void lerAnteriores(List<Path> cobertos, Consumer<IOException> tratadorErro) {
+        if (quantidadeAnteriores == 0) {
+            anteriores = new Venda[0];
+            anterioresLidas.countDown();
+            return;
+        }
+        Map<String, Produto> cadastro = Map.copyOf(produtos);
+        Venda[] lidas = new Venda[quantidadeAnteriores];
+        Thread leitura = new Thread(() -> {
+            int[] quantidade = {0};
+            try {
+                for (Path segmento : cobertos) {
+                    ler(segmento, (tipo, dados) -> {
+                        if (tipo != VENDA) return;
+                        Venda venda = venda(dados, cadastro);
+                        if (quantidade[0] == lidas.length || venda.numero != quantidade[0] + 1) {
+                            throw new IOException("Vendas de " + segmento + " não conferem com o checkpoint; apague " + CHECKPOINT);
+                        }
+                        lidas[quantidade[0]++] = venda;
+                    });
+                }
+                if (quantidade[0] != lidas.length) throw new IOException("Faltam vendas anteriores ao checkpoint; apague " + CHECKPOINT);
+                anteriores = lidas;
+            } catch (IOException e) {
+                falhaAnteriores = e;
+                tratadorErro.accept(e);
+            } catch (RuntimeException e) {
+                falhaAnteriores = new IOException("Registro de vendas inválido", e);
+                tratadorErro.accept(falhaAnteriores);
+            } finally {
+                anterioresLidas.countDown();
+            }
+        }, "petshop-vendas");
+        leitura.setDaemon(true);
+        leitura.start();
+    }
+
+    // Espera a leitura em segundo plano, se ela ainda não terminou
+    private Venda[] anteriores() {
+        Venda[] lidas = anteriores;
+        if (lidas != null) return lidas;
+        try {
+            anterioresLidas.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Leitura das vendas interrompida", e);
+        }
+        if (falhaAnteriores != null) throw new UncheckedIOException(falhaAnteriores);
+        return anteriores;
+    }
+
+    private void aplicar(byte tipo, ByteBuffer dados) throws IOException {
+        try {
+            if (tipo == PRODUTO) {
+                // O mínimo veio depois do preço; registros mais antigos terminam no preço
+                Produto produto = new Produto(texto(dados), texto(dados), dados.getLong(), dados.hasRemaining() ? dados.getInt() : 0);
+                produtos.put(produto.sku, produto);
+                estoque.definirMinimo(produto.sku, produto.minimo);
+            } else if (tipo == VENDA) {
+                Venda venda = venda(dados, produtos);
+                adicionar(venda);
+                estoque.somar(venda.sku, -venda.quantidade);
+            } else if (tipo == ESTOQUE) {
+                estoque.somar(texto(dados), dados.getInt());
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Registro de vendas inválido", e);
+        }
+    }
+
+    private static Venda venda(ByteBuffer dados, Map<String, Produto> produtos) {
+        String sku = texto(dados);
+        // O mesmo String do produto, em vez de um por venda
+        Produto produto = produtos.get(sku);
+        return new Venda(dados.getLong(), produto != null ? produto.sku : sku, dados.getInt(), dados.getLong(), dados.getLong(), dados.getLong());
+    }
+
+    // Na thread dona. Devolve o registro a gravar (ServicoPersistencia.gravarLancamento)
+    byte[] cadastrarProduto(Produto produto) {
+        produtos.put(produto.sku, produto);
+        estoque.definirMinimo(produto.sku, produto.minimo);
+        byte[] sku = utf8(produto.sku);
+        byte[] nome = utf8(produto.nome);
+        ByteBuffer dados = ByteBuffer.allocate(2 + sku.length + 2 + nome.length + 8 + 4);
+        dados.putShort((short) sku.length).put(sku).putShort((short) nome.length).put(nome).putLong(produto.precoCentavos).putInt(produto.minimo);
+        return registro(PRODUTO, dados.array());
+    }
+
+    // Na thread dona. Entrada (positiva) ou ajuste (negativo) no estoque de um produto cadastrado
+    byte[] movimentarEstoque(Produto produto, int quantidade) {
+        estoque.somar(produto.sku, quantidade);
+        byte[] sku = utf8(produto.sku);
+        ByteBuffer dados = ByteBuffer.allocate(2 + sku.length + 4);
+        dados.putShort((short) sku.length).put(sku).putInt(quantidade);
+        return registro(ESTOQUE, dados.array());
+    }
+
+    // Na thread dona, com a quantidade já reservada no estoque (Estoque.reservar), que a venda
+    // confirma. Preço do cadastro atual do produto
+    byte[] registrarVenda(Produto produto, int quantidade, long cliente) {
+        long momento = Math.max(System.currentTimeMillis(), ultimoMomento);
+        Venda venda = new Venda(quantidadeVendas + 1, produto.sku, quantidade, produto.precoCentavos, cliente, momento);
+        adicionar(venda);
+        estoque.confirmar(produto.sku, quantidade);
+        byte[] sku = utf8(venda.sku);
+        ByteBuffer dados = ByteBuffer.allocate(2 + sku.length + 8 + 4 + 8 + 8 + 8);
+        dados.putShort((short) sku.length).put(sku).putLong(venda.numero).putInt(venda.quantidade)
+                .putLong(venda.precoCentavos).putLong(venda.cliente).putLong(venda.momento);
+        return registro(VENDA, dados.array());
+    }
+
+    private void adicionar(Venda venda) {
+        int posicao = quantidadeVendas - quantidadeAnteriores;
+        if (posicao == vendas.length) vendas = Arrays.copyOf(vendas, vendas.length * 2);
+        vendas[posicao] = venda;
+        quantidadeVendas++;
+        ultimoMomento = venda.momento;
+    }
+
+    Produto produto(String sku) {
+        return produtos.get(sku);
+    }
+
+    int quantidadeProdutos() {
+        return produtos.size();
+    }
+
+    // Cópia, na ordem de cadastro
+    List<Produto> produtos() {
+        return List.copyOf(produtos.values());
+    }
+
+    // As vendas até agora, em ordem; a lista não muda depois, mesmo com novas vendas. O tamanho
+    // sai na hora; uma venda anterior ao checkpoint espera a leitura em segundo plano
+    List<Venda> vendas() {
+        Venda[] itens = vendas;
+        int quantidade = quantidadeVendas;
+        int deAntes = quantidadeAnteriores;
+        return new AbstractList<Venda>() {
+            @Override
+            public Venda get(int i) {
+                if (i < 0 || i >= quantidade) throw new IndexOutOfBoundsException(i);
+                return i < deAntes ? anteriores()[i] : itens[i - deAntes];
+            }
+
+            @Override
+            public int size() {
+                return quantidade;
+            }
+        };
+    }
+
+    // Quantidade e total em centavos das vendas com momento em [de, ate); as vendas estão em
+    // ordem de momento, então só a faixa é percorrida
+    static long[] resumo(List<Venda> vendas, long de, long ate) {
+        long[] resumo = new long[2];
+        for (int i = primeiraDesde(vendas, de); i < vendas.size() && vendas.get(i).momento < ate; i++) {
+            resumo[0]++;
+            resumo[1] += vendas.get(i).totalCentavos();
+        }
+        return resumo;
+    }
+
+    private static int primeiraDesde(List<Venda> vendas, long momento) {
+        int inicio = 0;
+        int fim = vendas.size();
+        while (inicio < fim) {
+            int meio = (inicio + fim) >>> 1;
+            if (vendas.get(meio).momento < momento) {
+                inicio = meio + 1;
+            } else {
+                fim = meio;
+            }
+        }
+        return inicio;
+    }
+
+    static String reais(long centavos) {
+        return (centavos < 0 ? "-" : "") + "R$ " + Math.abs(centavos) / 100 + "," + String.format("%02d", Math.abs(centavos) % 100);
+    }
+
+    // "12,50", "12.50" ou "12" em centavos
+    static long centavos(String texto) {
+        try {
+            return new BigDecimal(texto.trim().replace(',', '.')).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Preço com mais de duas casas decimais: " + texto);
+        }
+    }
+
+    // Na thread de gravação: uma escrita por lote, trocando de segmento antes se ele passaria do limite
+    void registrarLote(List<byte[]> lote) throws IOException {
+        int tamanhoLote = 0;
+        for (byte[] registro : lote) tamanhoLote += registro.length;
+        if (tamanho > TAMANHO_CABECALHO && tamanho + tamanhoLote > TAMANHO_SEGMENTO) {
+            canal.force(false);
+            canal.close();
+            pendentesFsync = 0;
+            novoSegmento(segmento + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(tamanhoLote);
+        for (byte[] registro : lote) buffer.put(registro);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        tamanho += tamanhoLote;
+        pendentesFsync += lote.size();
+    }
+
+    void sincronizar() throws IOException {
+        if (pendentesFsync > 0) {
+            canal.force(false);
+            pendentesFsync = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sincronizar();
+        } finally {
+            canal.close();
+        }
+    }
+
+    private void novoSegmento(int numero) throws IOException {
+        segmento = numero;
+        canal = FileChannel.open(pasta.resolve(String.format("%06d", numero) + EXTENSAO),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        escreverCabecalho();
+    }
+
+    private void escreverCabecalho() throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        cabecalho.putInt(MAGICO);
+        cabecalho.putInt(segmento);
+        cabecalho.flip();
+        while (cabecalho.hasRemaining()) {
+            canal.write(cabecalho);
+        }
+        // O segmento novo precisa existir no disco antes do primeiro registro dele
+        canal.force(true);
+        tamanho = TAMANHO_CABECALHO;
+    }
+
+    private static int numero(Path segmento) {
+        String nome = segmento.getFileName().toString();
+        try {
+            return Integer.parseInt(nome.substring(0, nome.length() - EXTENSAO.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] registro(byte tipo, byte[] dados) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 1 + dados.length + 4);
+        buffer.putInt(dados.length).put(tipo).put(dados).putInt(crc(tipo, dados));
+        return buffer.array();
+    }
+
+    private static void escreverTexto(DataOutputStream saida, String texto) throws IOException {
+        byte[] bytes = utf8(texto);
+        saida.writeShort(bytes.length);
+        saida.write(bytes);
+    }
+
+    private static byte[] utf8(String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) throw new IllegalArgumentException("Texto muito longo: " + texto.substring(0, 40) + "...");
+        return bytes;
+    }
+
+    private static String texto(ByteBuffer dados) {
+        int tamanho = dados.getShort();
+        String texto = new String(dados.array(), dados.arrayOffset() + dados.position(), tamanho, StandardCharsets.UTF_8);
+        dados.position(dados.position() + tamanho);
+        return texto;
+    }
+
+    private static int crc(byte tipo, byte[] dados) {
+        CRC32 crc = new CRC32();
+        crc.update(tipo);
+        crc.update(dados);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,92 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+// Modelo das tabelas das telas. As linhas são só os ids das entidades e cada célula é lida da
+// entidade na hora de desenhar, sem copiar os campos para um Object[] por linha como o
+// DefaultTableModel; com o arquivo mapeado, só as linhas visíveis chegam a ser decodificadas.
+// Trocar o conteúdo (mostrar) dispara um único evento, e não um por linha.
+class ModeloTabela<T> extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    interface Colunas<T> {
+        Object valor(T entidade, int coluna);
+    }
+
+    private final String[] colunas;
+    private final Colunas<T> valores;
+    private final LongFunction<T> resolvedor;
+    private long[] ids = new long[0];
+    private int linhas;
+
+    ModeloTabela(String[] colunas, LongFunction<T> resolvedor, Colunas<T> valores) {
+        this.colunas = colunas;
+        this.resolvedor = resolvedor;
+        this.valores = valores;
+    }
+
+    // Ids de uma lista, sem decodificar os registros que ainda estão só no arquivo mapeado
+    static long[] ids(List<?> lista) {
+        long[] ids = new long[lista.size()];
+        if (lista instanceof ListaPreguicosa) {
+            ListaPreguicosa<?> preguicosa = (ListaPreguicosa<?>) lista;
+            for (int i = 0; i < ids.length; i++) ids[i] = preguicosa.id(i);
+        } else {
+            for (int i = 0; i < ids.length; i++) ids[i] = PetshopSystemSwing.idEntidade(lista.get(i));
+        }
+        return ids;
+    }
+
+    // O array passa a ser do modelo
+    void mostrar(long[] novos) {
+        ids = novos;
+        linhas = novos.length;
+        fireTableDataChanged();
+    }
+
+    long id(int linha) {
+        return ids[linha];
+    }
+
+    T entidade(int linha) {
+        return resolvedor.apply(ids[linha]);
+    }
+
+    void adicionar(long id) {
+        if (linhas == ids.length) ids = Arrays.copyOf(ids, Math.max(16, linhas * 2));
+        ids[linhas++] = id;
+        fireTableRowsInserted(linhas - 1, linhas - 1);
+    }
+
+    void alterada(int linha) {
+        fireTableRowsUpdated(linha, linha);
+    }
+
+    void remover(int linha) {
+        System.arraycopy(ids, linha + 1, ids, linha, linhas - linha - 1);
+        linhas--;
+        fireTableRowsDeleted(linha, linha);
+    }
+
+    @Override
+    public int getRowCount() {
+        return linhas;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return colunas.length;
+    }
+
+    @Override
+    public String getColumnName(int coluna) {
+        return colunas[coluna];
+    }
+
+    @Override
+    public Object getValueAt(int linha, int coluna) {
+        T entidade = entidade(linha);
+        return entidade == null ? null : valores.valor(entidade, coluna);
+    }
+}
@@ -0,0 +1,323 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Entrada sem interface gráfica, para rodar em servidor ou pelo cron sobre os mesmos arquivos de
+// dados: nada aqui cria janela nem caixa de diálogo, então o AWT nunca é inicializado. A thread
+// principal faz o papel da EDT (é a única que mexe nas listas), e os erros que a tela mostraria
+// numa caixa de diálogo saem no stderr.
+//
+//   javac -encoding UTF-8 -d bin src/*.java     (na raiz do projeto, a cada atualização)
+//   java -cp bin PetshopLinhaComando [--pasta <pasta de dados>] <comando> [argumentos]
+//
+// Saída: 0 sucesso, 1 a verificação encontrou problemas, 2 erro (uso, arquivo, dados em uso).
+public class PetshopLinhaComando {
+    private static final String USO = "Uso: PetshopLinhaComando [--pasta <pasta de dados>] <comando>\n\n"
+            + "Comandos:\n"
+            + "  carregar                                  abre os dados e mostra os totais\n"
+            + "  relatorio [--reconstruir]                 mostra o relatório da tela Relatórios; --reconstruir\n"
+            + "                                            conta tudo de novo e confere com os contadores mantidos\n"
+            + "  analises                                  mostra as análises do histórico (tela Relatórios)\n"
+            + "  exportar <pasta> [--json] [--incremental] exporta os cadastros e as vendas em CSV ou JSON Lines\n"
+            + "  importar clientes|animais|funcionarios <arquivo>\n"
+            + "                                            importa um arquivo CSV/TSV\n"
+            + "  verificar                                 confere ids, referências e cadastros\n"
+            + "  compactar                                 grava um snapshot novo e zera o diário\n"
+            + "  servir [[endereço:]porta]                 abre a API HTTP para os terminais (padrão 8080, só nesta\n"
+            + "                                            máquina; 0.0.0.0:8080 abre para a rede da loja)\n";
+
+    private static final int SUCESSO = 0;
+    private static final int PROBLEMAS = 1;
+    private static final int ERRO = 2;
+    private static final int PORTA_API = 8080;
+
+    private static volatile int erros;
+
+    public static void main(String[] args) {
+        // Garantia extra: se algum caminho ainda tocar no AWT, que seja no modo sem tela
+        System.setProperty("java.awt.headless", "true");
+        System.exit(executar(args));
+    }
+
+    static int executar(String[] args) {
+        Path pasta = Paths.get("");
+        List<String> argumentos = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--pasta") && i + 1 < args.length) pasta = Paths.get(args[++i]);
+            else argumentos.add(args[i]);
+        }
+        if (argumentos.isEmpty()) {
+            System.err.print(USO);
+            return ERRO;
+        }
+        String comando = argumentos.get(0);
+        List<String> resto = argumentos.subList(1, argumentos.size());
+        if (!comandoValido(comando, resto)) {
+            System.err.print(USO);
+            return ERRO;
+        }
+
+        PetshopSystemSwing.saidaErros = mensagem -> {
+            erros++;
+            System.err.println("erro: " + mensagem);
+        };
+        long inicio = System.nanoTime();
+        PetshopSystemSwing.carregarDados(pasta);
+        if (erros > 0) return ERRO;
+        long carga = (System.nanoTime() - inicio) / 1_000_000;
+
+        int saida;
+        try {
+            switch (comando) {
+                case "carregar":
+                    System.out.printf("%d cliente(s), %d animal(is), %d agendamento(s), %d funcionário(s), %d venda(s) carregados em %d ms%n",
+                            PetshopSystemSwing.clientes.size(), PetshopSystemSwing.animais.size(),
+                            PetshopSystemSwing.agendamentos.size(), PetshopSystemSwing.funcionarios.size(),
+                            PetshopSystemSwing.livroVendas.vendas().size(), carga);
+                    saida = SUCESSO;
+                    break;
+                case "relatorio":
+                    saida = relatorio(resto.contains("--reconstruir"));
+                    break;
+                case "analises":
+                    Repositorio.Instantaneo dados = Repositorio.instantaneo();
+                    System.out.print(Analises.texto(Analises.analisar(dados), dados));
+                    saida = SUCESSO;
+                    break;
+                case "exportar":
+                    saida = exportar(resto);
+                    break;
+                case "importar":
+                    saida = importar(resto.get(0), Paths.get(resto.get(1)));
+                    break;
+                case "verificar":
+                    saida = verificar();
+                    break;
+                case "servir":
+                    saida = servir(ServidorApi.endereco(resto.isEmpty() ? String.valueOf(PORTA_API) : resto.get(0)));
+                    break;
+                default:
+                    PetshopSystemSwing.compactarDados();
+                    saida = SUCESSO;
+                    break;
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("erro: " + e.getMessage());
+            saida = ERRO;
+        }
+        // O que foi enfileirado (importação, compactação, migração de formato) chega ao disco
+        // antes de responder, para que a saída reflita também as falhas de gravação
+        PetshopSystemSwing.encerrarPersistencia();
+        return erros > 0 ? ERRO : saida;
+    }
+
+    private static boolean comandoValido(String comando, List<String> argumentos) {
+        switch (comando) {
+            case "relatorio":
+                return argumentos.isEmpty() || (argumentos.size() == 1 && argumentos.get(0).equals("--reconstruir"));
+            case "carregar":
+            case "analises":
+            case "verificar":
+            case "compactar":
+                return argumentos.isEmpty();
+            case "exportar":
+                if (argumentos.isEmpty()) return false;
+                for (String opcao : argumentos.subList(1, argumentos.size())) {
+                    if (!opcao.equals("--json") && !opcao.equals("--incremental")) return false;
+                }
+                return true;
+            case "importar":
+                return argumentos.size() == 2 && tipoImportacao(argumentos.get(0)) != null;
+            case "servir":
+                return argumentos.isEmpty() || (argumentos.size() == 1 && argumentos.get(0).matches("(.+:)?\\d{1,5}"));
+            default:
+                return false;
+        }
+    }
+
+    // Com reconstruir, o relatório sai de uma contagem do zero, conferida com os contadores mantidos
+    private static int relatorio(boolean reconstruir) {
+        if (!reconstruir) {
+            System.out.print(PetshopSystemSwing.gerarRelatorio(Agregados.resumo()));
+            return SUCESSO;
+        }
+        Agregados.Resumo[] conferencia = Agregados.conferencia();
+        System.out.print(PetshopSystemSwing.gerarRelatorio(conferencia[1]));
+        if (conferencia[0].mesmosNumeros(conferencia[1])) return SUCESSO;
+        System.out.println("\nProblema: os contadores mantidos diferem da contagem do zero:\n");
+        System.out.print(PetshopSystemSwing.gerarRelatorio(conferencia[0]));
+        return PROBLEMAS;
+    }
+
+    private static int exportar(List<String> argumentos) throws IOException {
+        Path destino = Paths.get(argumentos.get(0));
+        boolean json = argumentos.contains("--json");
+        boolean incremental = argumentos.contains("--incremental");
+        long desde = incremental ? Exportador.marcaAnterior(destino) : 0;
+        long desdeVenda = incremental ? Exportador.ultimaVendaAnterior(destino) : 0;
+        Exportador.Resultado resultado = new Exportador(destino, json).exportar(desde, desdeVenda);
+        for (Map.Entry<String, Integer> arquivo : resultado.registros.entrySet()) {
+            System.out.println(destino.resolve(arquivo.getKey()) + ": " + arquivo.getValue() + " registro(s)");
+        }
+        return SUCESSO;
+    }
+
+    // Fica atendendo até o processo ser encerrado (Ctrl+C ou kill). As listas passam a ser da
+    // thread petshop-dados, que faz para a API o papel que a EDT faz na interface
+    private static int servir(InetSocketAddress endereco) throws IOException, InterruptedException {
+        Thread[] threadDados = new Thread[1];
+        ExecutorService dono = Executors.newSingleThreadExecutor(tarefa -> threadDados[0] = new Thread(tarefa, "petshop-dados"));
+        ServidorApi servidor = new ServidorApi(endereco, dono, () -> Thread.currentThread() == threadDados[0],
+                System.getenv(PetshopSystemSwing.CHAVE_API));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.parar();
+            dono.shutdown();
+            try {
+                dono.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            PetshopSystemSwing.encerrarPersistencia();
+        }));
+        try {
+            dono.submit(servidor::iniciar).get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        System.out.println("API em http://" + endereco.getHostString() + ":" + servidor.porta() + "/api/ (Ctrl+C encerra)");
+        new CountDownLatch(1).await();
+        return SUCESSO;
+    }
+
+    private static String tipoImportacao(String nome) {
+        switch (nome) {
+            case "clientes":
+                return PetshopSystemSwing.IMPORTAR_CLIENTES;
+            case "animais":
+                return PetshopSystemSwing.IMPORTAR_ANIMAIS;
+            case "funcionarios":
+                return PetshopSystemSwing.IMPORTAR_FUNCIONARIOS;
+            default:
+                return null;
+        }
+    }
+
+    private static int importar(String tipo, Path arquivo) throws IOException, InterruptedException {
+        ImportadorCsv importador = PetshopSystemSwing.criarImportador(tipoImportacao(tipo), arquivo,
+                (lidos, tamanho, importadas, recusadas) -> { }, true);
+        ImportadorCsv.Resultado resultado;
+        try {
+            resultado = importador.importar();
+        } finally {
+            // Os lotes já aplicados ficam, e precisam chegar ao disco
+            PetshopSystemSwing.compactarDados();
+        }
+        System.out.println(resultado.importadas + " registro(s) importado(s), " + resultado.recusadas + " recusado(s)");
+        if (resultado.arquivoErros != null) System.out.println("Linhas recusadas e motivos em: " + resultado.arquivoErros);
+        return SUCESSO;
+    }
+
+    // Erros: registro que não decodifica, id repetido, referência para um registro que não está
+    // nas listas. Avisos: cadastros que as telas recusariam hoje (CPF repetido, campo inválido),
+    // que podem ter vindo de versões antigas
+    private static int verificar() {
+        List<String> problemas = new ArrayList<>();
+        int avisos = 0;
+        HashSet<Long> ids = new HashSet<>();
+        HashSet<Long> idsClientes = new HashSet<>();
+        HashSet<Long> idsAnimais = new HashSet<>();
+        HashSet<Long> idsFuncionarios = new HashSet<>();
+        HashMap<String, Long> cpfs = new HashMap<>();
+
+        List<PetshopSystemSwing.Cliente> clientes = PetshopSystemSwing.clientes;
+        for (int i = 0; i < clientes.size(); i++) {
+            PetshopSystemSwing.Cliente cliente = ler(clientes, i, "cliente", problemas);
+            if (cliente == null) continue;
+            if (!ids.add(cliente.id)) problemas.add("id repetido: " + cliente.id + " (cliente " + cliente.nome + ")");
+            idsClientes.add(cliente.id);
+            avisos += avisoPessoa("cliente", cliente.id, Validacao.pessoa(cliente.nome, cliente.email, cliente.telefone,
+                    cliente.cpf, cliente.cep, cliente.sexo), cliente.cpf, cpfs);
+        }
+        cpfs.clear();
+        List<PetshopSystemSwing.Funcionario> funcionarios = PetshopSystemSwing.funcionarios;
+        for (int i = 0; i < funcionarios.size(); i++) {
+            PetshopSystemSwing.Funcionario funcionario = ler(funcionarios, i, "funcionário", problemas);
+            if (funcionario == null) continue;
+            if (!ids.add(funcionario.id)) problemas.add("id repetido: " + funcionario.id + " (funcionário " + funcionario.nome + ")");
+            idsFuncionarios.add(funcionario.id);
+            avisos += avisoPessoa("funcionário", funcionario.id, Validacao.pessoa(funcionario.nome, funcionario.email,
+                    funcionario.telefone, funcionario.cpf, funcionario.cep, funcionario.sexo), funcionario.cpf, cpfs);
+        }
+        List<PetshopSystemSwing.Animal> animais = PetshopSystemSwing.animais;
+        for (int i = 0; i < animais.size(); i++) {
+            PetshopSystemSwing.Animal animal = ler(animais, i, "animal", problemas);
+            if (animal == null) continue;
+            if (!ids.add(animal.id)) problemas.add("id repetido: " + animal.id + " (animal " + animal.nome + ")");
+            idsAnimais.add(animal.id);
+            for (long dono : animal.idsClientes()) {
+                if (!idsClientes.contains(dono)) problemas.add("animal " + animal.id + " tem como dono o cliente " + dono + ", que não existe");
+            }
+            String erro = Validacao.animal(animal.nome, animal.raca, animal.sexo);
+            if (erro != null) {
+                System.out.println("aviso: animal " + animal.id + ": " + erro);
+                avisos++;
+            }
+        }
+        List<PetshopSystemSwing.Agendamento> agendamentos = PetshopSystemSwing.agendamentos;
+        for (int i = 0; i < agendamentos.size(); i++) {
+            PetshopSystemSwing.Agendamento agendamento = ler(agendamentos, i, "agendamento", problemas);
+            if (agendamento == null) continue;
+            if (!ids.add(agendamento.id)) problemas.add("id repetido: " + agendamento.id + " (agendamento)");
+            if (agendamento.animal == null || !idsAnimais.contains(agendamento.animal.id)) {
+                problemas.add("agendamento " + agendamento.id + " é de um animal que não existe");
+            }
+            if (agendamento.funcionario != 0 && !idsFuncionarios.contains(agendamento.funcionario)) {
+                problemas.add("agendamento " + agendamento.id + " tem o funcionário " + agendamento.funcionario + ", que não existe");
+            }
+        }
+
+        for (String problema : problemas) {
+            System.out.println("erro: " + problema);
+        }
+        System.out.printf("%d registro(s) verificados: %d erro(s), %d aviso(s)%n", ids.size(), problemas.size(), avisos);
+        return problemas.isEmpty() ? SUCESSO : PROBLEMAS;
+    }
+
+    // Sem deixar a base inteira decodificada na memória, como na exportação
+    private static <T> T ler(List<T> lista, int i, String tipo, List<String> problemas) {
+        try {
+            return lista instanceof ListaPreguicosa ? ((ListaPreguicosa<T>) lista).semGuardar(i) : lista.get(i);
+        } catch (RuntimeException e) {
+            problemas.add(tipo + " na posição " + i + " não pôde ser lido: " + e);
+            return null;
+        }
+    }
+
+    private static int avisoPessoa(String tipo, long id, String erro, String cpf, HashMap<String, Long> cpfs) {
+        int avisos = 0;
+        if (erro != null) {
+            System.out.println("aviso: " + tipo + " " + id + ": " + erro);
+            avisos++;
+        }
+        String chave = IndiceUnico.normalizarCpf(cpf);
+        if (chave != null) {
+            Long outro = cpfs.putIfAbsent(chave, id);
+            if (outro != null) {
+                System.out.println("aviso: " + tipo + " " + id + " tem o mesmo CPF que " + outro);
+                avisos++;
+            }
+        }
+        return avisos;
+    }
+}
@@ -1,29 +1,57 @@
 import javax.swing.*;
-import javax.swing.event.DocumentListener;
-import javax.swing.event.DocumentEvent;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
 
 public class PetshopSystemSwing {
     // Classes para estruturar dados
-    static class Cliente implements Serializable {
+    static class Cliente implements Serializable, Cloneable {
         private static final long serialVersionUID = 2L;
+        long id;
         String nome;
         String email;
         String telefone;
         String cpf;
         String cep;
         String sexo;
+        // Última inclusão ou alteração (ver marcarAlteracao), para a exportação incremental; 0 = desconhecida
+        long alterado;
+        // Rótulo (toString) e o nome/CPF com que foi montado; uma edição troca o objeto String
+        // do campo, então comparar a referência basta para saber se está velho
+        private transient String rotulo;
+        private transient String rotuloNome;
+        private transient String rotuloCpf;
 
         Cliente(String nome, String email, String telefone, String cpf, String cep, String sexo) {
+            this.id = novoId();
             this.nome = nome;
             this.email = email != null ? email : "";
             this.telefone = telefone != null ? telefone : "";
@@ -32,13 +60,29 @@ public class PetshopSystemSwing {
             this.sexo = sexo;
         }
 
+        // Cópia rasa com o mesmo id (sem passar pelo construtor, que gasta um id novo), para a
+        // compactação codificar fora da thread dona (ver CodecBinario.congelar)
+        Cliente copia() {
+            try {
+                return (Cliente) clone();
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
         public String toString() {
-            return nome + (cpf.isEmpty() ? "" : " (CPF: " + cpf + ")");
+            if (rotulo == null || rotuloNome != nome || rotuloCpf != cpf) {
+                rotulo = nome + (cpf.isEmpty() ? "" : " (CPF: " + cpf + ")");
+                rotuloNome = nome;
+                rotuloCpf = cpf;
+            }
+            return rotulo;
         }
     }
 
-    static class Animal implements Serializable {
+    static class Animal implements Serializable, Cloneable {
         private static final long serialVersionUID = 3L;
+        long id;
         String nome;
         ArrayList<Cliente> clientes;
         boolean semDono;
@@ -46,8 +90,17 @@ public class PetshopSystemSwing {
         String observacao;
         String raca;
         String sexo;
+        long alterado;
+        // Texto dos donos e os rótulos dos clientes com que foi montado: se algum cliente foi
+        // renomeado, o rótulo dele é outro objeto e o texto é refeito
+        private transient String donos;
+        private transient String[] rotulosDonos;
+        private transient String rotulo;
+        private transient String rotuloNome;
+        private transient String rotuloDonos;
 
         Animal(String nome, boolean semDono, String observacao, String raca, String sexo) {
+            this.id = novoId();
             this.nome = nome;
             this.clientes = new ArrayList<>();
             this.semDono = semDono;
@@ -60,97 +113,780 @@ public class PetshopSystemSwing {
         void adicionarCliente(Cliente cliente) {
             if (!clientes.contains(cliente)) {
                 clientes.add(cliente);
+                donos = null;
                 semDono = false;
                 paraAdocao = false;
             }
         }
 
         void removerCliente(Cliente cliente) {
-            clientes.remove(cliente);
+            if (clientes.remove(cliente)) donos = null;
             if (clientes.isEmpty()) {
                 semDono = true;
                 paraAdocao = true;
             }
         }
 
+        private boolean donosAtualizados() {
+            if (donos == null || rotulosDonos.length != clientes.size()) return false;
+            for (int i = 0; i < rotulosDonos.length; i++) {
+                if (clientes.get(i).toString() != rotulosDonos[i]) return false;
+            }
+            return true;
+        }
+
+        // Troca todos os donos de uma vez; o índice de donos acerta só os vínculos que mudaram
+        void definirClientes(Collection<Cliente> novos) {
+            clientes.clear();
+            clientes.addAll(new LinkedHashSet<>(novos));
+            donos = null;
+            if (!clientes.isEmpty()) {
+                semDono = false;
+                paraAdocao = false;
+            }
+        }
+
+        long[] idsClientes() {
+            long[] ids = new long[clientes.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = clientes.get(i).id;
+            }
+            return ids;
+        }
+
         public String getDonos() {
-            return clientes.isEmpty() ? "Sem dono (Para adoção)" : String.join(", ", clientes.stream().map(Cliente::toString).collect(Collectors.toList()));
+            if (!donosAtualizados()) {
+                String[] rotulos = new String[clientes.size()];
+                for (int i = 0; i < rotulos.length; i++) {
+                    rotulos[i] = clientes.get(i).toString();
+                }
+                donos = rotulos.length == 0 ? "Sem dono (Para adoção)" : String.join(", ", rotulos);
+                rotulosDonos = rotulos;
+            }
+            return donos;
+        }
+
+        // Ver Cliente.copia; a lista de donos não é compartilhada, já que a alteração mexe nela
+        Animal copia() {
+            try {
+                Animal copia = (Animal) clone();
+                copia.clientes = new ArrayList<>(clientes);
+                return copia;
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
         }
 
         public String toString() {
-            return nome + " (" + getDonos() + ")";
+            String doDonos = getDonos();
+            if (rotulo == null || rotuloNome != nome || rotuloDonos != doDonos) {
+                rotulo = nome + " (" + doDonos + ")";
+                rotuloNome = nome;
+                rotuloDonos = doDonos;
+            }
+            return rotulo;
         }
     }
 
-    static class Agendamento implements Serializable {
+    static class Agendamento implements Serializable, Cloneable {
         private static final long serialVersionUID = 1L;
+        // Forma serializada das versões antigas (horário como java.util.Date), lida na migração
+        private static final ObjectStreamField[] serialPersistentFields = {
+                new ObjectStreamField("id", long.class),
+                new ObjectStreamField("animal", Animal.class),
+                new ObjectStreamField("horario", Date.class),
+                new ObjectStreamField("detalhes", String.class),
+                new ObjectStreamField("duracao", int.class),
+                new ObjectStreamField("recurso", String.class),
+                new ObjectStreamField("funcionario", long.class),
+                new ObjectStreamField("alterado", long.class)};
+        long id;
         Animal animal;
-        Date horario;
+        LocalDateTime horario;
         String detalhes;
-
-        Agendamento(Animal animal, Date horario, String detalhes) {
+        int duracao;
+        // Mesa ou sala (RECURSOS_AGENDA); vazio em agendamentos anteriores aos recursos
+        String recurso;
+        // Id do funcionário responsável; 0 = nenhum
+        long funcionario;
+        long alterado;
+
+        // Textos de exibição, refeitos só quando o horário muda: LocalDateTime é imutável, então
+        // um horário novo é sempre outro objeto e basta comparar a referência
+        private transient LocalDateTime formatadoPara;
+        private transient String dataFormatada;
+        private transient String horarioFormatado;
+        private transient long minuto;
+        // Rótulo (toString) e as partes com que foi montado
+        private transient String rotulo;
+        private transient String rotuloAnimal;
+        private transient String rotuloDetalhes;
+        private transient LocalDateTime rotuloHorario;
+
+        Agendamento(Animal animal, LocalDateTime horario, String detalhes) {
+            this.id = novoId();
             this.animal = animal;
             this.horario = horario;
             this.detalhes = detalhes != null ? detalhes : "";
+            this.duracao = DURACAO_AGENDAMENTO;
+            this.recurso = "";
+        }
+
+        String[] recursos() {
+            return recursosAgendamento(recurso, funcionario, animal);
+        }
+
+        private void formatar() {
+            if (formatadoPara == horario) return;
+            dataFormatada = FORMATO_DATA.format(horario);
+            horarioFormatado = FORMATO_HORA.format(horario);
+            minuto = IndiceHorario.minuto(horario);
+            formatadoPara = horario;
         }
 
         public String getDataFormatada() {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-            return sdf.format(horario);
+            formatar();
+            return dataFormatada;
         }
 
         public String getHorarioFormatado() {
-            SimpleDateFormat sdf = new SimpleDateFormat("HH:mm");
-            return sdf.format(horario);
+            formatar();
+            return horarioFormatado;
+        }
+
+        // Minutos desde 1970, chave dos índices da agenda
+        long minuto() {
+            formatar();
+            return minuto;
+        }
+
+        // Ver Cliente.copia
+        Agendamento copia() {
+            try {
+                return (Agendamento) clone();
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
         }
 
         public String toString() {
-            return animal.toString() + " - " + getDataFormatada() + " " + getHorarioFormatado() + " - " + detalhes;
+            String doAnimal = animal.toString();
+            if (rotulo == null || rotuloAnimal != doAnimal || rotuloDetalhes != detalhes || rotuloHorario != horario) {
+                rotulo = doAnimal + " - " + getDataFormatada() + " " + getHorarioFormatado() + " - " + detalhes;
+                rotuloAnimal = doAnimal;
+                rotuloDetalhes = detalhes;
+                rotuloHorario = horario;
+            }
+            return rotulo;
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField campos = in.readFields();
+            id = campos.get("id", 0L);
+            animal = (Animal) campos.get("animal", null);
+            Date data = (Date) campos.get("horario", null);
+            horario = data == null ? null : LocalDateTime.ofInstant(data.toInstant(), ZoneId.systemDefault());
+            detalhes = (String) campos.get("detalhes", "");
+            // Campos que não existiam quando o arquivo foi gravado ficam com o padrão
+            duracao = campos.get("duracao", 0);
+            if (duracao <= 0) duracao = DURACAO_AGENDAMENTO;
+            recurso = (String) campos.get("recurso", "");
+            if (recurso == null) recurso = "";
+            funcionario = campos.get("funcionario", 0L);
+            alterado = campos.get("alterado", 0L);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            ObjectOutputStream.PutField campos = out.putFields();
+            campos.put("id", id);
+            campos.put("animal", animal);
+            campos.put("horario", horario == null ? null : paraDate(horario));
+            campos.put("detalhes", detalhes);
+            campos.put("duracao", duracao);
+            campos.put("recurso", recurso);
+            campos.put("funcionario", funcionario);
+            campos.put("alterado", alterado);
+            out.writeFields();
         }
     }
 
     // Listas para armazenar dados
-    static ArrayList<Cliente> clientes = new ArrayList<>();
-    static ArrayList<Animal> animais = new ArrayList<>();
-    static ArrayList<Agendamento> agendamentos = new ArrayList<>();
-    static ArrayList<String> produtos = new ArrayList<>();
-    static ArrayList<String> vendas = new ArrayList<>();
-    static ArrayList<Funcionario> funcionarios = new ArrayList<>();
-    static ArrayList<String> relatorios = new ArrayList<>();
-
-    // Arquivo para persistência
+    // Clientes, animais, agendamentos e funcionários podem ser ListaPreguicosa sobre o arquivo mapeado
+    static List<Cliente> clientes = new ArrayList<>();
+    static List<Animal> animais = new ArrayList<>();
+    static List<Agendamento> agendamentos = new ArrayList<>();
+    // Produtos e vendas; null no modo terminal ou se a pasta de vendas não abriu
+    static LivroVendas livroVendas;
+    static List<Funcionario> funcionarios = new ArrayList<>();
+
+    // Arquivos para persistência: snapshot completo + diário das alterações posteriores
     private static final String ARQUIVO_DADOS = "petshop.dat";
+    private static final String ARQUIVO_DIARIO = "petshop.diario";
+    // Só um processo por pasta de dados: a abertura do diário descarta o final incompleto, o que
+    // estragaria o que outra instância (a tela ou a linha de comando) está gravando
+    private static final String ARQUIVO_TRAVA = "petshop.trava";
+
+    // Quando o diário passa destes limites ele é compactado em um novo snapshot
+    private static final int LIMITE_REGISTROS_DIARIO = 1000;
+    private static final long LIMITE_TAMANHO_DIARIO = 8L * 1024 * 1024;
+
+    private static ServicoPersistencia persistencia;
+    private static FileLock trava;
+    // Sem interface (linha de comando) as mensagens de erro vão para cá em vez de uma caixa de diálogo
+    static volatile Consumer<String> saidaErros;
+    // Variável de ambiente com a chave que a API exige (Authorization: Bearer <chave>)
+    static final String CHAVE_API = "PETSHOP_CHAVE";
+    // Modo terminal: os dados vêm do servidor da API e as alterações vão para ele, sem arquivos locais
+    static TerminalApi terminal;
+    private static long geracaoDados;
+    private static int registrosDiario;
+    private static long tamanhoDiario;
+    private static long proximoId = 1;
+    private static long ultimaAlteracao;
+    private static boolean migrarFormato;
+    // Snapshot mapeado em memória; null quando o arquivo foi lido inteiro (formato antigo ou inexistente)
+    private static ArquivoMapeado arquivoDados;
+    // Entidades que não estão no arquivo mapeado (sem arquivo mapeado, todas); junto com o índice
+    // do arquivo resolve as referências por id do diário e da compactação
+    private static final HashMap<Long, Object> entidadesPorId = new HashMap<>();
+    // Cópias de clientes e animais excluídos nesta sessão, que ainda podem ser referenciados
+    // (animal apagado de um agendamento): a compactação roda na thread de gravação e não lê as
+    // entidades vivas (ver CodecBinario.congelar)
+    private static final Map<Long, Object> excluidosReferenciaveis = new ConcurrentHashMap<>();
+    // Índices únicos para as checagens de CPF e nome já cadastrados
+    static final IndiceUnico<Cliente> clientesPorCpf = new IndiceUnico<>(() -> clientes, c -> IndiceUnico.normalizarCpf(c.cpf));
+    static final IndiceUnico<Cliente> clientesPorNome = new IndiceUnico<>(() -> clientes, c -> IndiceUnico.normalizarNome(c.nome));
+    static final IndiceUnico<Funcionario> funcionariosPorCpf = new IndiceUnico<>(() -> funcionarios, f -> IndiceUnico.normalizarCpf(f.cpf));
+    static final IndiceUnico<Funcionario> funcionariosPorNome = new IndiceUnico<>(() -> funcionarios, f -> IndiceUnico.normalizarNome(f.nome));
+    // Índices das caixas de busca das telas, com os mesmos campos que a busca sempre comparou
+    static final boolean BUSCA_IGNORA_ACENTOS = true;
+    // Formatos de exibição, compartilhados (DateTimeFormatter é imutável, ao contrário do SimpleDateFormat)
+    static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+    static final DateTimeFormatter FORMATO_DATA_HORA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+    private static final String PERIODO_HOJE = "Hoje";
+    static final String IMPORTAR_CLIENTES = "Clientes";
+    static final String IMPORTAR_ANIMAIS = "Animais";
+    static final String IMPORTAR_FUNCIONARIOS = "Funcionários";
+    private static final String PERIODO_SEMANA = "Próximos 7 dias";
+    private static final String PERIODO_TODOS = "Todos";
+    static final IndiceBusca<Cliente> buscaClientes = new IndiceBusca<>(() -> clientes,
+            c -> IndiceBusca.campos(c.nome, c.email, c.telefone, c.cpf, c.cep, c.sexo), c -> c.id, BUSCA_IGNORA_ACENTOS);
+    static final IndiceBusca<Animal> buscaAnimais = new IndiceBusca<>(() -> animais,
+            a -> IndiceBusca.campos(a.nome, a.getDonos(), a.raca, a.sexo), a -> a.id, BUSCA_IGNORA_ACENTOS);
+    static final IndiceBusca<Agendamento> buscaAgendamentos = new IndiceBusca<>(() -> agendamentos,
+            a -> IndiceBusca.campos(a.animal.toString(), a.getDataFormatada(), a.getHorarioFormatado(), a.recurso, a.detalhes), a -> a.id, BUSCA_IGNORA_ACENTOS);
+    // Agendamentos por horário, para a tela abrir no dia e os relatórios contarem por período
+    static final IndiceHorario<Agendamento> agenda = new IndiceHorario<>(() -> agendamentos, Agendamento::minuto, a -> a.id);
+    // Mesas e salas que um agendamento pode ocupar, duração padrão e expediente (minutos do dia)
+    static final String[] RECURSOS_AGENDA = {"Banho e tosa 1", "Banho e tosa 2", "Consultório veterinário"};
+    private static final String SEM_RECURSO = "(nenhum)";
+    static final int DURACAO_AGENDAMENTO = 30;
+    static final int ABERTURA_EXPEDIENTE = 8 * 60;
+    static final int FECHAMENTO_EXPEDIENTE = 18 * 60;
+    private static final int SUGESTOES_HORARIO = 5;
+    // Ocupação de cada recurso, para recusar horários em conflito e sugerir horários livres
+    static final AgendaRecursos<Agendamento> ocupacao = new AgendaRecursos<>(() -> agendamentos, Agendamento::recursos,
+            Agendamento::minuto, a -> a.duracao, a -> a.id, ABERTURA_EXPEDIENTE, FECHAMENTO_EXPEDIENTE);
+    // Animais de cada cliente (e donos de cada animal), para as exclusões em cascata
+    static final IndiceDonos<Animal> indiceDonos = new IndiceDonos<>(() -> animais, a -> a.id, Animal::idsClientes);
+    // A mesma relação com um "dono" só: o animal de cada agendamento, para a busca de agendamentos
+    // acompanhar o animal sem percorrer a agenda toda
+    static final IndiceDonos<Agendamento> agendamentosPorAnimal = new IndiceDonos<>(() -> agendamentos, a -> a.id,
+            a -> a.animal == null ? new long[0] : new long[]{a.animal.id});
+    static final IndiceBusca<Funcionario> buscaFuncionarios = new IndiceBusca<>(() -> funcionarios,
+            f -> IndiceBusca.campos(f.nome, f.email, f.telefone, f.cpf, f.cep, f.sexo), f -> f.id, BUSCA_IGNORA_ACENTOS);
+
+    static long novoId() {
+        if (terminal != null) return terminal.novoId();
+        return proximoId++;
+    }
+
+    // Faixa de ids [início, início + quantidade) para um terminal criar registros sem colidir com
+    // os dos outros
+    static long reservarIds(int quantidade) {
+        long inicio = proximoId;
+        proximoId += quantidade;
+        return inicio;
+    }
+
+    // Id escolhido de fora (PUT da API): os próximos ids gerados aqui passam dele
+    static void usarId(long id) {
+        proximoId = Math.max(proximoId, id + 1);
+    }
+
+    static Object entidadePorId(long id) {
+        Object entidade = entidadesPorId.get(id);
+        if (entidade == null && arquivoDados != null) {
+            entidade = arquivoDados.obterPorId(id);
+        }
+        return entidade;
+    }
+
+    // Resultado de uma busca sem os ids recusados pelo filtro da tela
+    private static long[] filtrarIds(long[] ids, LongPredicate filtro) {
+        int mantidos = 0;
+        for (long id : ids) {
+            if (filtro.test(id)) ids[mantidos++] = id;
+        }
+        return mantidos == ids.length ? ids : Arrays.copyOf(ids, mantidos);
+    }
 
     // Métodos para persistência
+    static void registrarInclusao(Object entidade) {
+        registrar(Diario.INCLUSAO, entidade);
+    }
+
+    static void registrarAlteracao(Object entidade) {
+        registrar(Diario.ALTERACAO, entidade);
+    }
+
+    static void registrarExclusao(Object entidade) {
+        registrar(Diario.EXCLUSAO, entidade);
+    }
+
+    // A alteração é codificada aqui, na thread que mexeu nas listas, e a gravação em disco
+    // fica com a thread do serviço de persistência
+    private static void registrar(byte operacao, Object entidade) {
+        // Os índices em memória acompanham as listas mesmo que a gravação não seja possível
+        if (operacao == Diario.INCLUSAO) {
+            entidadesPorId.put(idEntidade(entidade), entidade);
+        }
+        if (operacao != Diario.EXCLUSAO) marcarAlteracao(entidade);
+        atualizarIndices(operacao, entidade);
+        Repositorio.alterado(entidade, operacao == Diario.EXCLUSAO);
+        if (terminal != null) {
+            terminal.enviar(operacao, entidade);
+            return;
+        }
+        if (persistencia == null) {
+            mostrarErro("Erro ao salvar dados: arquivo de dados indisponível");
+            return;
+        }
+        if (operacao == Diario.EXCLUSAO) guardarExcluido(entidade);
+        byte[] dados = operacao == Diario.EXCLUSAO ? new byte[0] : CodecBinario.codificarEntidade(entidade);
+        persistencia.gravar(new Diario.Registro(operacao, tipoEntidade(entidade), idEntidade(entidade), dados));
+        registrosDiario++;
+        tamanhoDiario += dados.length;
+        if (registrosDiario >= LIMITE_REGISTROS_DIARIO || tamanhoDiario >= LIMITE_TAMANHO_DIARIO) {
+            salvarDados();
+        }
+    }
+
+    // Produtos e vendas vão para o livro de vendas, não para o diário; false se não há onde gravar
+    static boolean cadastrarProduto(LivroVendas.Produto produto) {
+        if (!livroDisponivel()) return false;
+        persistencia.gravarLancamento(livroVendas.cadastrarProduto(produto));
+        Repositorio.alteradasListas();
+        return true;
+    }
+
+    // A quantidade já precisa estar reservada (livroVendas.estoque.reservar); a venda confirma a reserva
+    static boolean registrarVenda(LivroVendas.Produto produto, int quantidade, long cliente) {
+        if (!livroDisponivel()) return false;
+        persistencia.gravarLancamento(livroVendas.registrarVenda(produto, quantidade, cliente));
+        Repositorio.alteradasListas();
+        return true;
+    }
+
+    static boolean movimentarEstoque(LivroVendas.Produto produto, int quantidade) {
+        if (!livroDisponivel()) return false;
+        persistencia.gravarLancamento(livroVendas.movimentarEstoque(produto, quantidade));
+        return true;
+    }
+
+    // Na thread do avaliador de estoque
+    private static void avisarEstoqueBaixo(List<Estoque.Saldo> baixos) {
+        List<String> linhas = new ArrayList<>();
+        for (Estoque.Saldo saldo : baixos) {
+            linhas.add(saldo.sku + ": " + saldo.disponivel() + " disponível(is), mínimo " + saldo.minimo);
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("aviso: estoque baixo: " + String.join("; ", linhas));
+        } else {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, "Estoque baixo:\n" + String.join("\n", linhas),
+                    "Estoque", JOptionPane.WARNING_MESSAGE));
+        }
+    }
+
+    private static boolean livroDisponivel() {
+        if (terminal != null) {
+            mostrarErro("As vendas ficam no computador que abre os dados, não no terminal");
+            return false;
+        }
+        if (livroVendas == null || persistencia == null) {
+            mostrarErro("Erro ao salvar dados: livro de vendas indisponível");
+            return false;
+        }
+        return true;
+    }
+
+    // Carimbo estritamente crescente: duas alterações no mesmo milissegundo ainda ficam em ordem,
+    // e a marca d'água da exportação incremental não perde nenhuma delas
+    private static void marcarAlteracao(Object entidade) {
+        ultimaAlteracao = Math.max(System.currentTimeMillis(), ultimaAlteracao + 1);
+        if (entidade instanceof Cliente) ((Cliente) entidade).alterado = ultimaAlteracao;
+        else if (entidade instanceof Animal) ((Animal) entidade).alterado = ultimaAlteracao;
+        else if (entidade instanceof Agendamento) ((Agendamento) entidade).alterado = ultimaAlteracao;
+        else ((Funcionario) entidade).alterado = ultimaAlteracao;
+    }
+
+    private static void atualizarIndices(byte operacao, Object entidade) {
+        if (entidade instanceof Cliente) {
+            Cliente cliente = (Cliente) entidade;
+            atualizarIndice(clientesPorCpf, operacao, cliente);
+            atualizarIndice(clientesPorNome, operacao, cliente);
+            atualizarIndice(buscaClientes, operacao, cliente);
+            if (operacao == Diario.ALTERACAO && (buscaAnimais.montado() || buscaAgendamentos.montado())) {
+                HashSet<Animal> animaisDoCliente = new HashSet<>();
+                for (long idAnimal : indiceDonos.animais(cliente.id)) {
+                    animaisDoCliente.add((Animal) entidadePorId(idAnimal));
+                }
+                reindexarBuscaAnimais(animaisDoCliente);
+            }
+        } else if (entidade instanceof Animal) {
+            atualizarIndice(indiceDonos, operacao, (Animal) entidade);
+            atualizarIndice(buscaAnimais, operacao, (Animal) entidade);
+            if (operacao == Diario.ALTERACAO) reindexarBuscaAnimais(Set.of((Animal) entidade));
+        } else if (entidade instanceof Agendamento) {
+            atualizarIndice(buscaAgendamentos, operacao, (Agendamento) entidade);
+            atualizarIndice(agendamentosPorAnimal, operacao, (Agendamento) entidade);
+            atualizarIndice(agenda, operacao, (Agendamento) entidade);
+            atualizarIndice(ocupacao, operacao, (Agendamento) entidade);
+        } else {
+            atualizarIndice(funcionariosPorCpf, operacao, (Funcionario) entidade);
+            atualizarIndice(funcionariosPorNome, operacao, (Funcionario) entidade);
+            atualizarIndice(buscaFuncionarios, operacao, (Funcionario) entidade);
+        }
+    }
+
+    private static <T> void atualizarIndice(IndiceUnico<T> indice, byte operacao, T entidade) {
+        if (operacao == Diario.INCLUSAO) indice.adicionar(entidade);
+        else if (operacao == Diario.ALTERACAO) indice.atualizar(entidade);
+        else indice.remover(entidade);
+    }
+
+    private static <T> void atualizarIndice(IndiceBusca<T> indice, byte operacao, T entidade) {
+        if (operacao == Diario.INCLUSAO) indice.adicionar(entidade);
+        else if (operacao == Diario.ALTERACAO) indice.atualizar(entidade);
+        else indice.remover(entidade);
+    }
+
+    private static <T> void atualizarIndice(IndiceHorario<T> indice, byte operacao, T entidade) {
+        if (operacao == Diario.INCLUSAO) indice.adicionar(entidade);
+        else if (operacao == Diario.ALTERACAO) indice.atualizar(entidade);
+        else indice.remover(entidade);
+    }
+
+    private static <T> void atualizarIndice(AgendaRecursos<T> indice, byte operacao, T entidade) {
+        if (operacao == Diario.INCLUSAO) indice.adicionar(entidade);
+        else if (operacao == Diario.ALTERACAO) indice.atualizar(entidade);
+        else indice.remover(entidade);
+    }
+
+    private static <T> void atualizarIndice(IndiceDonos<T> indice, byte operacao, T entidade) {
+        if (operacao == Diario.INCLUSAO) indice.adicionar(entidade);
+        else if (operacao == Diario.ALTERACAO) indice.atualizar(entidade);
+        else indice.remover(entidade);
+    }
+
+    // O texto de busca de um animal inclui os donos e o de um agendamento inclui o animal
+    // (com os donos), então eles mudam junto com o cliente ou o animal
+    private static void reindexarBuscaAnimais(Set<Animal> alterados) {
+        if (alterados.isEmpty()) return;
+        for (Animal animal : alterados) {
+            buscaAnimais.atualizar(animal);
+        }
+        if (!buscaAgendamentos.montado()) return;
+        for (Animal animal : alterados) {
+            for (long idAgendamento : agendamentosPorAnimal.animais(animal.id)) {
+                buscaAgendamentos.atualizar((Agendamento) entidadePorId(idAgendamento));
+            }
+        }
+    }
+
+    // Compactação: serializa um snapshot completo das listas e entrega ao serviço de persistência,
+    // que troca o arquivo de dados atomicamente e zera o diário
+    private static void guardarExcluido(Object entidade) {
+        if (entidade instanceof Cliente) excluidosReferenciaveis.put(((Cliente) entidade).id, ((Cliente) entidade).copia());
+        else if (entidade instanceof Animal) excluidosReferenciaveis.put(((Animal) entidade).id, ((Animal) entidade).copia());
+    }
+
+    // Aqui só as listas são congeladas; a codificação do arquivo inteiro fica com a thread de
+    // gravação. Um arquivo mapeado de esquema antigo não pode ser copiado registro a registro,
+    // então nesse caso (só até a primeira compactação) ela ainda é feita aqui
     private static void salvarDados() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ARQUIVO_DADOS))) {
-            oos.writeObject(clientes);
-            oos.writeObject(animais);
-            oos.writeObject(agendamentos);
-            oos.writeObject(funcionarios);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Erro ao salvar dados: " + e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        long novaGeracao = geracaoDados + 1;
+        CodecBinario.Congelado congelado = CodecBinario.congelar(clientes, animais, agendamentos, funcionarios, novaGeracao, proximoId,
+                arquivoDados, excluidosReferenciaveis);
+        if (congelado != null) {
+            persistencia.gravarSnapshot(congelado);
+        } else {
+            persistencia.gravarSnapshot(CodecBinario.codificar(clientes, animais, agendamentos, funcionarios, novaGeracao, proximoId,
+                    PetshopSystemSwing::entidadePorId), novaGeracao);
         }
+        geracaoDados = novaGeracao;
+        registrosDiario = 0;
+        tamanhoDiario = 0;
     }
 
-    @SuppressWarnings("unchecked")
-    private static void carregarDados() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ARQUIVO_DADOS))) {
-            clientes = (ArrayList<Cliente>) ois.readObject();
-            animais = (ArrayList<Animal>) ois.readObject();
-            agendamentos = (ArrayList<Agendamento>) ois.readObject();
-            funcionarios = (ArrayList<Funcionario>) ois.readObject();
-        } catch (FileNotFoundException e) {
+    // Mensagens de erro sempre aparecem pela EDT, mesmo quando a falha acontece na thread de gravação
+    static void mostrarErro(String mensagem) {
+        Consumer<String> saida = saidaErros;
+        if (saida != null) {
+            saida.accept(mensagem);
+        } else if (SwingUtilities.isEventDispatchThread()) {
+            JOptionPane.showMessageDialog(null, mensagem, "Erro", JOptionPane.ERROR_MESSAGE);
+        } else {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, mensagem, "Erro", JOptionPane.ERROR_MESSAGE));
+        }
+    }
+
+    // Abre os dados da pasta (a atual, na interface) e fica com a trava dela até o fim do processo
+    static void carregarDados(Path pasta) {
+        Path caminho = pasta.resolve(ARQUIVO_DADOS);
+        try {
+            if (!travarDados(pasta)) {
+                mostrarErro("Os dados em " + pasta.toAbsolutePath() + " estão abertos em outra instância do sistema");
+                return;
+            }
+            ServicoPersistencia.promoverPendente(caminho);
+            // Arquivo no formato atual: só o índice é lido agora, os registros quando forem usados
+            arquivoDados = ArquivoMapeado.abrir(caminho);
+            if (arquivoDados != null) {
+                clientes = arquivoDados.lista(Diario.CLIENTE);
+                animais = arquivoDados.lista(Diario.ANIMAL);
+                agendamentos = arquivoDados.lista(Diario.AGENDAMENTO);
+                funcionarios = arquivoDados.lista(Diario.FUNCIONARIO);
+                geracaoDados = arquivoDados.geracao;
+                proximoId = Math.max(proximoId, arquivoDados.proximoId);
+            } else {
+                CodecBinario.Dados dados = CodecBinario.carregar(caminho);
+                clientes = dados.clientes;
+                animais = dados.animais;
+                agendamentos = dados.agendamentos;
+                funcionarios = dados.funcionarios;
+                geracaoDados = dados.geracao;
+                proximoId = Math.max(proximoId, dados.proximoId);
+                migrarFormato = true;
+            }
+        } catch (NoSuchFileException e) {
             // Arquivo não existe ainda, inicializar listas vazias
-        } catch (IOException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(null, "Erro ao carregar dados: " + e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        } catch (IOException e) {
+            mostrarErro("Erro ao carregar dados: " + e.getMessage());
+        }
+
+        boolean idsAtribuidos = false;
+        if (arquivoDados == null) {
+            idsAtribuidos = atribuirIds();
+            paraCadaEntidade(entidade -> entidadesPorId.put(idEntidade(entidade), entidade));
+        }
+        try {
+            livroVendas = LivroVendas.abrir(pasta, e -> mostrarErro("Erro ao carregar vendas: " + e.getMessage()));
+            livroVendas.estoque.iniciarAvaliador(PetshopSystemSwing::avisarEstoqueBaixo);
+        } catch (IOException e) {
+            // Os cadastros abrem mesmo assim; só as vendas ficam indisponíveis
+            mostrarErro("Erro ao carregar vendas: " + e.getMessage());
+        }
+        try {
+            Diario diario = Diario.abrir(pasta.resolve(ARQUIVO_DIARIO), geracaoDados, PetshopSystemSwing::aplicarRegistro);
+            registrosDiario = diario.getRegistros();
+            tamanhoDiario = diario.getTamanho();
+            persistencia = new ServicoPersistencia(caminho, diario, livroVendas,
+                    e -> mostrarErro("Erro ao salvar dados: " + e.getMessage()));
+            // Ao sair, tudo o que ainda está na fila chega ao disco antes da JVM terminar
+            Runtime.getRuntime().addShutdownHook(new Thread(persistencia::encerrar, "petshop-encerramento"));
+        } catch (IOException e) {
+            mostrarErro("Erro ao carregar dados: " + e.getMessage());
+            return;
+        }
+        // Arquivo antigo (serialização Java sem IDs, ou binário sem índice): regrava no formato
+        // atual para que o diário referencie as entidades pelos IDs e a próxima abertura seja mapeada
+        if (idsAtribuidos || migrarFormato) {
+            salvarDados();
+        }
+    }
+
+    // A trava é do sistema operacional e cai sozinha quando o processo termina
+    private static boolean travarDados(Path pasta) throws IOException {
+        FileChannel canal = FileChannel.open(pasta.resolve(ARQUIVO_TRAVA), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        trava = canal.tryLock();
+        if (trava == null) canal.close();
+        return trava != null;
+    }
+
+    // Esvazia a fila de gravação e fecha o diário; para quem precisa saber que tudo chegou ao
+    // disco antes de sair (a linha de comando). Na interface o gancho de encerramento faz isso
+    static void encerrarPersistencia() {
+        if (persistencia != null) persistencia.encerrar();
+    }
+
+    // Percorre todas as entidades alcançáveis, inclusive donos e animais que só existem
+    // como referência dentro de outra entidade
+    private static void paraCadaEntidade(Consumer<Object> acao) {
+        for (Cliente cliente : clientes) acao.accept(cliente);
+        for (Animal animal : animais) {
+            acao.accept(animal);
+            for (Cliente cliente : animal.clientes) acao.accept(cliente);
+        }
+        for (Agendamento agendamento : agendamentos) {
+            acao.accept(agendamento);
+            if (agendamento.animal != null) {
+                acao.accept(agendamento.animal);
+                for (Cliente cliente : agendamento.animal.clientes) acao.accept(cliente);
+            }
+        }
+        for (Funcionario funcionario : funcionarios) acao.accept(funcionario);
+    }
+
+    private static boolean atribuirIds() {
+        boolean[] atribuiu = {false};
+        paraCadaEntidade(entidade -> proximoId = Math.max(proximoId, idEntidade(entidade) + 1));
+        paraCadaEntidade(entidade -> {
+            if (idEntidade(entidade) == 0) {
+                if (entidade instanceof Cliente) ((Cliente) entidade).id = novoId();
+                else if (entidade instanceof Animal) ((Animal) entidade).id = novoId();
+                else if (entidade instanceof Agendamento) ((Agendamento) entidade).id = novoId();
+                else ((Funcionario) entidade).id = novoId();
+                atribuiu[0] = true;
+            }
+        });
+        return atribuiu[0];
+    }
+
+    static byte tipoEntidade(Object entidade) {
+        if (entidade instanceof Cliente) return Diario.CLIENTE;
+        if (entidade instanceof Animal) return Diario.ANIMAL;
+        if (entidade instanceof Agendamento) return Diario.AGENDAMENTO;
+        return Diario.FUNCIONARIO;
+    }
+
+    static long idEntidade(Object entidade) {
+        if (entidade instanceof Cliente) return ((Cliente) entidade).id;
+        if (entidade instanceof Animal) return ((Animal) entidade).id;
+        if (entidade instanceof Agendamento) return ((Agendamento) entidade).id;
+        return ((Funcionario) entidade).id;
+    }
+
+    // Reaplica uma alteração do diário sobre as listas carregadas do snapshot
+    private static void aplicarRegistro(Diario.Registro registro) {
+        proximoId = Math.max(proximoId, registro.id + 1);
+        Object entidade = entidadePorId(registro.id);
+        if (registro.operacao == Diario.EXCLUSAO) {
+            guardarExcluido(entidade);
+            if (entidade instanceof Cliente) apagarCliente((Cliente) entidade);
+            else if (entidade instanceof Animal) {
+                animais.remove(entidade);
+                indiceDonos.remover((Animal) entidade);
+            }
+            else if (entidade instanceof Agendamento) {
+                agendamentos.remove(entidade);
+                agendamentosPorAnimal.remover((Agendamento) entidade);
+            }
+            else if (entidade instanceof Funcionario) funcionarios.remove(entidade);
+            return;
+        }
+        boolean nova = entidade == null;
+        if (nova) {
+            entidade = CodecBinario.novaEntidade(registro.tipo, registro.id);
         }
+        CodecBinario.decodificarEntidade(entidade, registro.dados, PetshopSystemSwing::entidadePorId);
+        // Se a cascata de um cliente apagado já montou o índice de donos (ou o de agendamentos por
+        // animal), ele acompanha o diário
+        if (entidade instanceof Animal) indiceDonos.atualizar((Animal) entidade);
+        else if (entidade instanceof Agendamento) agendamentosPorAnimal.atualizar((Agendamento) entidade);
+        if (!nova) return;
+        if (entidade instanceof Agendamento && ((Agendamento) entidade).animal == null) return;
+        entidadesPorId.put(registro.id, entidade);
+        if (entidade instanceof Cliente) clientes.add((Cliente) entidade);
+        else if (entidade instanceof Animal) animais.add((Animal) entidade);
+        else if (entidade instanceof Agendamento) agendamentos.add((Agendamento) entidade);
+        else funcionarios.add((Funcionario) entidade);
     }
 
+    // Se a entidade ainda está nas listas: entidadePorId também acha registros já excluídos, que
+    // continuam referenciados (animal apagado de um agendamento). Monta o índice de busca do tipo
+    static boolean listada(byte tipo, long id) {
+        switch (tipo) {
+            case Diario.CLIENTE:
+                buscaClientes.montar();
+                return buscaClientes.contem(id);
+            case Diario.ANIMAL:
+                buscaAnimais.montar();
+                return buscaAnimais.contem(id);
+            case Diario.AGENDAMENTO:
+                buscaAgendamentos.montar();
+                return buscaAgendamentos.contem(id);
+            default:
+                buscaFuncionarios.montar();
+                return buscaFuncionarios.contem(id);
+        }
+    }
+
+    // Modo terminal: estado de uma entidade como o servidor mandou, incluída ou atualizada aqui
+    // com os índices, como se a alteração tivesse sido feita nesta máquina (mas sem reenviar)
+    static void aplicarDoServidor(byte tipo, Map<String, Object> campos) {
+        long id = ServidorApi.numero(campos, "id", 0);
+        Object entidade = entidadePorId(id);
+        boolean nova = entidade == null || !listada(tipo, id);
+        if (entidade == null) {
+            entidade = CodecBinario.novaEntidade(tipo, id);
+            entidadesPorId.put(id, entidade);
+        }
+        ServidorApi.preencher(entidade, campos);
+        if (nova) {
+            if (entidade instanceof Cliente) clientes.add((Cliente) entidade);
+            else if (entidade instanceof Animal) animais.add((Animal) entidade);
+            else if (entidade instanceof Agendamento) agendamentos.add((Agendamento) entidade);
+            else funcionarios.add((Funcionario) entidade);
+        }
+        atualizarIndices(nova ? Diario.INCLUSAO : Diario.ALTERACAO, entidade);
+        Repositorio.alterado(entidade, false);
+    }
+
+    static void excluirDoServidor(long id) {
+        Object entidade = entidadePorId(id);
+        if (entidade == null || !listada(tipoEntidade(entidade), id)) return;
+        if (entidade instanceof Cliente) apagarCliente((Cliente) entidade);
+        else if (entidade instanceof Animal) animais.remove(entidade);
+        else if (entidade instanceof Agendamento) agendamentos.remove(entidade);
+        else funcionarios.remove(entidade);
+        atualizarIndices(Diario.EXCLUSAO, entidade);
+        Repositorio.alterado(entidade, true);
+    }
+
+    // Remove o cliente e desassocia ele dos animais dele (só desses, pelo índice de donos)
+    static void apagarCliente(Cliente cliente) {
+        clientes.remove(cliente);
+        HashSet<Animal> alterados = new HashSet<>();
+        for (long idAnimal : indiceDonos.removerDono(cliente.id)) {
+            Animal animal = (Animal) entidadePorId(idAnimal);
+            animal.removerCliente(cliente);
+            alterados.add(animal);
+            // Os donos do animal mudaram: a exportação incremental precisa levá-lo. Na releitura
+            // do diário o carimbo fica com a hora da carga, o que só exporta o animal de novo
+            marcarAlteracao(animal);
+            Repositorio.alterado(animal, false);
+        }
+        reindexarBuscaAnimais(alterados);
+    }
+
+    // Sem argumentos, abre os dados da pasta atual. --servir [endereço:]porta abre também a API HTTP
+    // para os terminais (sem endereço, só nesta máquina; ver ServidorApi.endereco); --servidor <url>
+    // faz desta janela um terminal de outro computador, sem dados locais
     public static void main(String[] args) {
+        String servidor = null;
+        InetSocketAddress enderecoApi = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--servidor")) servidor = args[++i];
+            else if (args[i].equals("--servir")) enderecoApi = ServidorApi.endereco(args[++i]);
+        }
+        if (servidor != null) terminal = new TerminalApi(servidor, System.getenv(CHAVE_API));
+        // Leituras de outras threads (exportação, API) pedem o instantâneo dos dados à EDT
+        Repositorio.definirDono(SwingUtilities::invokeLater, SwingUtilities::isEventDispatchThread);
+        InetSocketAddress endereco = enderecoApi;
         SwingUtilities.invokeLater(() -> {
-            carregarDados();
-            JFrame mainFrame = new JFrame("Sistema para Petshop");
+            JFrame mainFrame = new JFrame("Sistema para Petshop - Carregando dados...");
             mainFrame.setSize(600, 400);
             mainFrame.setLayout(new GridLayout(4, 2));
             mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -182,21 +918,62 @@ public class PetshopSystemSwing {
             btnFuncionarios.addActionListener(e -> abrirTelaFuncionarios());
             btnRelatorios.addActionListener(e -> abrirTelaRelatorios());
 
+            // Os dados são carregados fora da EDT; os botões só liberam quando as listas estiverem prontas
+            JButton[] botoes = {btnCadastro, btnClientes, btnAnimais, btnAgendamentos, btnProdutos, btnVendas, btnFuncionarios, btnRelatorios};
+            for (JButton botao : botoes) {
+                botao.setEnabled(false);
+            }
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() {
+                    if (terminal == null) {
+                        carregarDados(Paths.get(""));
+                        return null;
+                    }
+                    try {
+                        terminal.carregar();
+                    } catch (IOException e) {
+                        mostrarErro("Erro ao carregar dados do servidor: " + e.getMessage());
+                    }
+                    return null;
+                }
+
+                @Override
+                protected void done() {
+                    for (JButton botao : botoes) {
+                        botao.setEnabled(true);
+                    }
+                    mainFrame.setTitle("Sistema para Petshop");
+                    if (terminal != null) {
+                        terminal.acompanhar();
+                    } else if (endereco != null) {
+                        try {
+                            new ServidorApi(endereco, SwingUtilities::invokeLater, SwingUtilities::isEventDispatchThread, System.getenv(CHAVE_API)).iniciar();
+                        } catch (IOException e) {
+                            mostrarErro("Erro ao abrir a API em " + endereco.getHostString() + ":" + endereco.getPort() + ": " + e.getMessage());
+                        }
+                    }
+                }
+            }.execute();
+
             mainFrame.setLocationRelativeTo(null);
             mainFrame.setVisible(true);
         });
     }
 
-    static class Funcionario implements Serializable {
+    static class Funcionario implements Serializable, Cloneable {
     private static final long serialVersionUID = 1L;
+    long id;
     String nome;
     String email;
     String telefone;
     String cpf;
     String cep;
     String sexo;
+    long alterado;
 
     Funcionario(String nome, String email, String telefone, String cpf, String cep, String sexo) {
+        this.id = novoId();
         this.nome = nome;
         this.email = email != null ? email : "";
         this.telefone = telefone != null ? telefone : "";
@@ -205,6 +982,15 @@ public class PetshopSystemSwing {
         this.sexo = sexo;
     }
 
+    // Ver Cliente.copia
+    Funcionario copia() {
+        try {
+            return (Funcionario) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public String toString() {
         return nome + (cpf.isEmpty() ? "" : " (CPF: " + cpf + ")");
     }
@@ -218,15 +1004,17 @@ public class PetshopSystemSwing {
 
         JTextField txtBusca = new JTextField(20);
         String[] colunasClientes = {"Nome", "Sexo", "Email", "Telefone", "CPF", "CEP"};
-        DefaultTableModel modeloTabela = new DefaultTableModel(colunasClientes, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
+        ModeloTabela<Cliente> modeloTabela = new ModeloTabela<>(colunasClientes, id -> (Cliente) entidadePorId(id), (cliente, coluna) -> {
+            switch (coluna) {
+                case 0: return cliente.nome;
+                case 1: return cliente.sexo;
+                case 2: return cliente.email;
+                case 3: return cliente.telefone;
+                case 4: return cliente.cpf;
+                default: return cliente.cep;
             }
-        };
-        for (Cliente cliente : clientes) {
-            modeloTabela.addRow(new Object[]{cliente.nome, cliente.sexo, cliente.email, cliente.telefone, cliente.cpf, cliente.cep});
-        }
+        });
+        modeloTabela.mostrar(ModeloTabela.ids(clientes));
         JTable tabelaClientes = new JTable(modeloTabela);
         JScrollPane scrollTabela = new JScrollPane(tabelaClientes);
 
@@ -244,34 +1032,17 @@ public class PetshopSystemSwing {
         botoesPanel.add(btnEditar);
         botoesPanel.add(btnApagar);
 
+        JLabel lblMetricas = new JLabel();
         JPanel buscaPanel = new JPanel(new FlowLayout());
         buscaPanel.add(new JLabel("Buscar:"));
         buscaPanel.add(txtBusca);
+        buscaPanel.add(lblMetricas);
 
         frame.add(buscaPanel, BorderLayout.NORTH);
         frame.add(scrollTabela, BorderLayout.CENTER);
         frame.add(botoesPanel, BorderLayout.SOUTH);
 
-        txtBusca.getDocument().addDocumentListener(new DocumentListener() {
-            public void insertUpdate(DocumentEvent e) { filtrarClientes(); }
-            public void removeUpdate(DocumentEvent e) { filtrarClientes(); }
-            public void changedUpdate(DocumentEvent e) { filtrarClientes(); }
-
-            private void filtrarClientes() {
-                String busca = txtBusca.getText().trim().toLowerCase();
-                modeloTabela.setRowCount(0);
-                for (Cliente cliente : clientes) {
-                    if (cliente.nome.toLowerCase().contains(busca) ||
-                        cliente.email.toLowerCase().contains(busca) ||
-                        cliente.telefone.contains(busca) ||
-                        cliente.cpf.contains(busca) ||
-                        cliente.cep.contains(busca) ||
-                        cliente.sexo.toLowerCase().contains(busca)) {
-                        modeloTabela.addRow(new Object[]{cliente.nome, cliente.sexo, cliente.email, cliente.telefone, cliente.cpf, cliente.cep});
-                    }
-                }
-            }
-        });
+        new BuscaAssincrona(txtBusca, buscaClientes, resultado -> modeloTabela.mostrar(filtrarIds(resultado, buscaClientes::contem)), lblMetricas);
 
         btnEditar.addActionListener(e -> {
             int row = tabelaClientes.getSelectedRow();
@@ -279,11 +1050,9 @@ public class PetshopSystemSwing {
                 JOptionPane.showMessageDialog(frame, "Selecione um cliente!", "Erro", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            String nomeSelecionado = String.valueOf(modeloTabela.getValueAt(row, 0));
-            Cliente cliente = clientes.stream().filter(c -> c.nome.equals(nomeSelecionado)).findFirst().orElse(null);
+            Cliente cliente = modeloTabela.entidade(row);
             if (cliente == null) return;
 
-            int clienteIndex = clientes.indexOf(cliente);
             JPanel panel = new JPanel(new GridBagLayout());
             GridBagConstraints gbc = new GridBagConstraints();
             gbc.insets = new Insets(6, 10, 6, 10);
@@ -352,35 +1121,40 @@ public class PetshopSystemSwing {
                 String novoCEP = txtCEP.getText().trim();
                 String novoSexo = comboSexo.getSelectedItem().equals("Outros") ? txtSexoOutros.getText().trim() : (String) comboSexo.getSelectedItem();
 
-                if (novoNome.length() >= 3 && Pattern.matches("[\\p{L}\\s]+", novoNome)) {
-                    if (!novoEmail.isEmpty() && !Pattern.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$", novoEmail)) {
+                if (Validacao.letras(novoNome, 3)) {
+                    if (!novoEmail.isEmpty() && !Validacao.email(novoEmail)) {
                         JOptionPane.showMessageDialog(frame, "Email inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
-                    if (!novoTelefone.isEmpty() && !Pattern.matches("\\d{11}", novoTelefone)) {
+                    if (!novoTelefone.isEmpty() && !Validacao.telefone(novoTelefone)) {
                         JOptionPane.showMessageDialog(frame, "Telefone deve ter 11 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
                     if (!novoCPF.isEmpty()) {
-                        if (!Pattern.matches("\\d{11}", novoCPF)) {
+                        if (!Validacao.digitos(novoCPF, 11)) {
                             JOptionPane.showMessageDialog(frame, "CPF deve ter 11 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                             return;
                         }
-                        if (clientes.stream().anyMatch(c -> !c.equals(cliente) && c.cpf.equalsIgnoreCase(novoCPF))) {
+                        // CPF antigo sem dígitos verificadores válidos não impede editar os outros campos
+                        if (!novoCPF.equals(cliente.cpf) && !Validacao.cpf(novoCPF)) {
+                            JOptionPane.showMessageDialog(frame, "CPF inválido (dígitos verificadores não conferem)!", "Erro", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        if (clientesPorCpf.existeOutro(IndiceUnico.normalizarCpf(novoCPF), cliente)) {
                             JOptionPane.showMessageDialog(frame, "CPF já cadastrado!", "Erro", JOptionPane.ERROR_MESSAGE);
                             return;
                         }
                     }
-                    if (!novoCEP.isEmpty() && !Pattern.matches("\\d{8}", novoCEP)) {
+                    if (!novoCEP.isEmpty() && !Validacao.cep(novoCEP)) {
                         JOptionPane.showMessageDialog(frame, "CEP deve ter 8 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
                     if (comboSexo.getSelectedItem().equals("Outros") && 
-                        (novoSexo.isEmpty() || !Pattern.matches("[\\p{L}\\s]+", novoSexo) || novoSexo.length() < 2)) {
+                        !Validacao.letras(novoSexo, 2)) {
                         JOptionPane.showMessageDialog(frame, "Sexo inválido para 'Outros'!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
-                    if (clientes.stream().anyMatch(c -> !c.equals(cliente) && c.nome.equalsIgnoreCase(novoNome))) {
+                    if (clientesPorNome.existeOutro(IndiceUnico.normalizarNome(novoNome), cliente)) {
                         JOptionPane.showMessageDialog(frame, "Nome já existe!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
@@ -390,13 +1164,8 @@ public class PetshopSystemSwing {
                     cliente.cpf = novoCPF;
                     cliente.cep = novoCEP;
                     cliente.sexo = novoSexo;
-                    modeloTabela.setValueAt(novoNome, row, 0);
-                    modeloTabela.setValueAt(novoSexo, row, 1);
-                    modeloTabela.setValueAt(novoEmail, row, 2);
-                    modeloTabela.setValueAt(novoTelefone, row, 3);
-                    modeloTabela.setValueAt(novoCPF, row, 4);
-                    modeloTabela.setValueAt(novoCEP, row, 5);
-                    salvarDados();
+                    modeloTabela.alterada(row);
+                    registrarAlteracao(cliente);
                 } else {
                     JOptionPane.showMessageDialog(frame, "Nome inválido (mín. 3 letras, apenas letras e espaços)!", "Erro", JOptionPane.ERROR_MESSAGE);
                 }
@@ -409,18 +1178,14 @@ public class PetshopSystemSwing {
                 JOptionPane.showMessageDialog(frame, "Selecione um cliente!", "Erro", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            String nomeCliente = String.valueOf(modeloTabela.getValueAt(row, 0));
-            Cliente cliente = clientes.stream().filter(c -> c.nome.equals(nomeCliente)).findFirst().orElse(null);
+            Cliente cliente = modeloTabela.entidade(row);
             if (cliente == null) return;
 
             int opcao = JOptionPane.showConfirmDialog(frame, "Deseja apagar o cliente " + cliente.nome + "?", "Confirmar Exclusão", JOptionPane.YES_NO_OPTION);
             if (opcao == JOptionPane.YES_OPTION) {
-                clientes.remove(cliente);
-                modeloTabela.removeRow(row);
-                for (Animal animal : animais) {
-                    animal.removerCliente(cliente);
-                }
-                salvarDados();
+                apagarCliente(cliente);
+                modeloTabela.remover(row);
+                registrarExclusao(cliente);
             }
         });
 
@@ -436,15 +1201,16 @@ public class PetshopSystemSwing {
 
     JTextField txtBusca = new JTextField(20);
     JCheckBox chkFiltroAdocao = new JCheckBox("Mostrar apenas para adoção");
-    DefaultTableModel modeloTabela = new DefaultTableModel(new Object[]{"Nome", "Donos", "Observação", "Raça", "Sexo"}, 0) {
-        @Override
-        public boolean isCellEditable(int row, int column) {
-            return false;
+    ModeloTabela<Animal> modeloTabela = new ModeloTabela<>(new String[]{"Nome", "Donos", "Observação", "Raça", "Sexo"}, id -> (Animal) entidadePorId(id), (animal, coluna) -> {
+        switch (coluna) {
+            case 0: return animal.nome;
+            case 1: return animal.getDonos();
+            case 2: return animal.observacao;
+            case 3: return animal.raca;
+            default: return animal.sexo;
         }
-    };
-    for (Animal animal : animais) {
-        modeloTabela.addRow(new Object[]{animal.nome, animal.getDonos(), animal.observacao, animal.raca, animal.sexo});
-    }
+    });
+    modeloTabela.mostrar(ModeloTabela.ids(animais));
     JTable tabelaAnimais = new JTable(modeloTabela);
     JScrollPane scrollTabela = new JScrollPane(tabelaAnimais);
 
@@ -461,37 +1227,23 @@ public class PetshopSystemSwing {
     botoesPanel.add(btnEditar);
     botoesPanel.add(btnApagar);
 
+    JLabel lblMetricas = new JLabel();
     JPanel buscaPanel = new JPanel(new FlowLayout());
     buscaPanel.add(new JLabel("Buscar:"));
     buscaPanel.add(txtBusca);
     buscaPanel.add(chkFiltroAdocao);
+    buscaPanel.add(lblMetricas);
 
     frame.add(buscaPanel, BorderLayout.NORTH);
     frame.add(scrollTabela, BorderLayout.CENTER);
     frame.add(botoesPanel, BorderLayout.SOUTH);
 
-    Runnable atualizarTabela = () -> {
-        String busca = txtBusca.getText().trim().toLowerCase();
+    BuscaAssincrona busca = new BuscaAssincrona(txtBusca, buscaAnimais, resultado -> {
         boolean filtroAdocao = chkFiltroAdocao.isSelected();
-        modeloTabela.setRowCount(0);
-        for (Animal animal : animais) {
-            if ((animal.nome.toLowerCase().contains(busca) || 
-                 animal.getDonos().toLowerCase().contains(busca) || 
-                 animal.raca.toLowerCase().contains(busca) ||
-                 animal.sexo.toLowerCase().contains(busca)) &&
-                (!filtroAdocao || animal.paraAdocao)) {
-                modeloTabela.addRow(new Object[]{animal.nome, animal.getDonos(), animal.observacao, animal.raca, animal.sexo});
-            }
-        }
-    };
+        modeloTabela.mostrar(filtrarIds(resultado, id -> buscaAnimais.contem(id) && (!filtroAdocao || ((Animal) entidadePorId(id)).paraAdocao)));
+    }, lblMetricas);
 
-    txtBusca.getDocument().addDocumentListener(new DocumentListener() {
-        public void insertUpdate(DocumentEvent e) { atualizarTabela.run(); }
-        public void removeUpdate(DocumentEvent e) { atualizarTabela.run(); }
-        public void changedUpdate(DocumentEvent e) { atualizarTabela.run(); }
-    });
-
-    chkFiltroAdocao.addActionListener(e -> atualizarTabela.run());
+    chkFiltroAdocao.addActionListener(e -> busca.executarAgora());
 
     btnEditar.addActionListener(e -> {
         int row = tabelaAnimais.getSelectedRow();
@@ -499,8 +1251,7 @@ public class PetshopSystemSwing {
             JOptionPane.showMessageDialog(frame, "Selecione um animal!", "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        String nomeAnimal = (String) modeloTabela.getValueAt(row, 0);
-        Animal animal = animais.stream().filter(a -> a.nome.equals(nomeAnimal)).findFirst().orElse(null);
+        Animal animal = modeloTabela.entidade(row);
         if (animal == null) return;
 
         JPanel panel = new JPanel(new GridBagLayout());
@@ -519,11 +1270,11 @@ public class PetshopSystemSwing {
         txtRacaOutros.setEnabled(isOutrosRaca);
         JComboBox<String> comboSexoAnimal = new JComboBox<>(new String[]{"Macho", "Fêmea"});
         comboSexoAnimal.setSelectedItem(animal.sexo);
-        JComboBox<String> comboClientes = new JComboBox<>();
+        JComboBox<Object> comboClientes = new JComboBox<>();
         comboClientes.addItem("Selecione um cliente");
         for (Cliente cliente : clientes) {
-            if (!animal.clientes.contains(cliente)) {
-                comboClientes.addItem(cliente.toString());
+            if (!indiceDonos.possui(cliente.id, animal.id)) {
+                comboClientes.addItem(cliente);
             }
         }
         JTextField txtNovoCliente = new JTextField(20);
@@ -587,21 +1338,21 @@ public class PetshopSystemSwing {
         });
 
         btnAdicionarCliente.addActionListener(ev -> {
-            String clienteNome = (String) comboClientes.getSelectedItem();
+            Object selecionado = comboClientes.getSelectedItem();
             String novoClienteNome = txtNovoCliente.getText().trim();
             Cliente cliente = null;
-            if (clienteNome != null && !clienteNome.equals("Selecione um cliente")) {
-                cliente = clientes.stream().filter(c -> c.toString().equals(clienteNome)).findFirst().orElse(null);
-            } else if (!novoClienteNome.isEmpty() && novoClienteNome.length() >= 3 && Pattern.matches("[\\p{L}\\s]+", novoClienteNome)) {
-                if (!clientes.stream().anyMatch(c -> c.nome.equalsIgnoreCase(novoClienteNome))) {
+            if (selecionado instanceof Cliente) {
+                cliente = (Cliente) selecionado;
+            } else if (!novoClienteNome.isEmpty() && Validacao.letras(novoClienteNome, 3)) {
+                if (clientesPorNome.obter(IndiceUnico.normalizarNome(novoClienteNome)) == null) {
                     cliente = new Cliente(novoClienteNome, "", "", "", "", "Prefiro não responder");
                     clientes.add(cliente);
-                    salvarDados();
+                    registrarInclusao(cliente);
                 }
             }
             if (cliente != null && !modeloClientes.contains(cliente)) {
                 modeloClientes.addElement(cliente);
-                comboClientes.removeItem(clienteNome);
+                comboClientes.removeItem(cliente);
                 chkSemDono.setSelected(false);
                 txtNovoCliente.setText("");
             }
@@ -624,13 +1375,13 @@ public class PetshopSystemSwing {
             String novaObservacao = txtObservacao.getText();
             String novaRaca = comboRaca.getSelectedItem().equals("Outros") ? txtRacaOutros.getText().trim() : (String) comboRaca.getSelectedItem();
             String novoSexo = (String) comboSexoAnimal.getSelectedItem();
-            if (novoNome.length() >= 2 && Pattern.matches("[\\p{L}\\s]+", novoNome)) {
+            if (Validacao.letras(novoNome, 2)) {
                 if (semDono && !modeloClientes.isEmpty()) {
                     JOptionPane.showMessageDialog(frame, "Animais com clientes não podem ser sem dono!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 if (comboRaca.getSelectedItem().equals("Outros") && 
-                    (novaRaca.isEmpty() || !Pattern.matches("[\\p{L}\\s]+", novaRaca) || novaRaca.length() < 2)) {
+                    !Validacao.letras(novaRaca, 2)) {
                     JOptionPane.showMessageDialog(frame, "Raça inválida para 'Outros' (mín. 2 letras, apenas letras e espaços)!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
@@ -640,16 +1391,9 @@ public class PetshopSystemSwing {
                 animal.observacao = novaObservacao;
                 animal.raca = novaRaca;
                 animal.sexo = novoSexo;
-                animal.clientes.clear();
-                for (int i = 0; i < modeloClientes.size(); i++) {
-                    animal.adicionarCliente(modeloClientes.get(i));
-                }
-                modeloTabela.setValueAt(animal.nome, row, 0);
-                modeloTabela.setValueAt(animal.getDonos(), row, 1);
-                modeloTabela.setValueAt(animal.observacao, row, 2);
-                modeloTabela.setValueAt(animal.raca, row, 3);
-                modeloTabela.setValueAt(animal.sexo, row, 4);
-                salvarDados();
+                animal.definirClientes(Collections.list(modeloClientes.elements()));
+                modeloTabela.alterada(row);
+                registrarAlteracao(animal);
             } else {
                 JOptionPane.showMessageDialog(frame, "Nome inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
             }
@@ -662,15 +1406,14 @@ public class PetshopSystemSwing {
             JOptionPane.showMessageDialog(frame, "Selecione um animal!", "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        String nomeAnimal = (String) modeloTabela.getValueAt(row, 0);
-        Animal animal = animais.stream().filter(a -> a.nome.equals(nomeAnimal)).findFirst().orElse(null);
+        Animal animal = modeloTabela.entidade(row);
         if (animal == null) return;
 
         int opcao = JOptionPane.showConfirmDialog(frame, "Deseja apagar o animal " + animal.nome + "?", "Confirmar Exclusão", JOptionPane.YES_NO_OPTION);
         if (opcao == JOptionPane.YES_OPTION) {
             animais.remove(animal);
-            modeloTabela.removeRow(row);
-            salvarDados();
+            modeloTabela.remover(row);
+            registrarExclusao(animal);
         }
     });
 
@@ -715,6 +1458,7 @@ public class PetshopSystemSwing {
         }
 
         JButton btnCadastrar = new JButton("Cadastrar");
+        JButton btnImportar = new JButton("Importar arquivo...");
 
         GridBagConstraints gbcPanel = new GridBagConstraints();
         gbcPanel.insets = new Insets(3, 3, 3, 3);
@@ -748,9 +1492,14 @@ public class PetshopSystemSwing {
         frame.add(new JScrollPane(txtObservacao), gbc);
         gbc.gridy = 8;
         frame.add(btnCadastrar, gbc);
+        gbc.gridx = 1;
+        frame.add(btnImportar, gbc);
+        gbc.gridx = 0;
         gbc.gridy = 9;
         frame.add(lblStatus, gbc);
 
+        btnImportar.addActionListener(e -> importarArquivo(frame));
+
         ActionListener clienteListener = e -> {
             if (!chkSemDonoGlobal.isSelected()) {
                 int qtd = (Integer) comboQtdClientes.getSelectedItem();
@@ -943,40 +1692,45 @@ public class PetshopSystemSwing {
                                   camposSexoOutros.get(i).getText().trim() : (String) combosSexo.get(i).getSelectedItem();
 
                     if (!nome.isEmpty()) {
-                        if (nome.length() < 3 || !Pattern.matches("[\\p{L}\\s]+", nome)) {
+                        if (!Validacao.letras(nome, 3)) {
                             lblStatus.setText("Erro: Nome de cliente inválido (mín. 3 letras, apenas letras e espaços).");
                             erro = true;
                             break;
                         }
-                        if (!email.isEmpty() && !Pattern.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$", email)) {
+                        if (!email.isEmpty() && !Validacao.email(email)) {
                             lblStatus.setText("Erro: Email inválido.");
                             erro = true;
                             break;
                         }
-                        if (!telefone.isEmpty() && !Pattern.matches("\\d{11}", telefone)) {
+                        if (!telefone.isEmpty() && !Validacao.telefone(telefone)) {
                             lblStatus.setText("Erro: Telefone deve ter 11 dígitos numéricos.");
                             erro = true;
                             break;
                         }
                         if (!cpf.isEmpty()) {
-                            if (!Pattern.matches("\\d{11}", cpf)) {
+                            if (!Validacao.digitos(cpf, 11)) {
                                 lblStatus.setText("Erro: CPF deve ter 11 dígitos numéricos.");
                                 erro = true;
                                 break;
                             }
-                            if (clientes.stream().anyMatch(c -> c.cpf.equalsIgnoreCase(cpf))) {
+                            if (!Validacao.cpf(cpf)) {
+                                lblStatus.setText("Erro: CPF inválido (dígitos verificadores não conferem).");
+                                erro = true;
+                                break;
+                            }
+                            if (clientesPorCpf.obter(IndiceUnico.normalizarCpf(cpf)) != null) {
                                 lblStatus.setText("Erro: CPF já cadastrado.");
                                 erro = true;
                                 break;
                             }
                         }
-                        if (!cep.isEmpty() && !Pattern.matches("\\d{8}", cep)) {
+                        if (!cep.isEmpty() && !Validacao.cep(cep)) {
                             lblStatus.setText("Erro: CEP deve ter 8 dígitos numéricos.");
                             erro = true;
                             break;
                         }
                         if (combosSexo.get(i).getSelectedItem().equals("Outros") && 
-                            (sexo.isEmpty() || !Pattern.matches("[\\p{L}\\s]+", sexo) || sexo.length() < 2)) {
+                            !Validacao.letras(sexo, 2)) {
                             lblStatus.setText("Erro: Sexo inválido para 'Outros' (mín. 2 letras, apenas letras e espaços).");
                             erro = true;
                             break;
@@ -995,9 +1749,9 @@ public class PetshopSystemSwing {
                 String raca = comboRaca.getSelectedItem().equals("Outros") ? txtRacaOutros.getText().trim() : (String) comboRaca.getSelectedItem();
                 String sexo = (String) comboSexoAnimal.getSelectedItem();
                 if (!nome.isEmpty()) {
-                    if (nome.length() >= 2 && Pattern.matches("[\\p{L}\\s]+", nome)) {
+                    if (Validacao.letras(nome, 2)) {
                         if (comboRaca.getSelectedItem().equals("Outros") && 
-                            (raca.isEmpty() || !Pattern.matches("[\\p{L}\\s]+", raca) || raca.length() < 2)) {
+                            !Validacao.letras(raca, 2)) {
                             lblStatus.setText("Erro: Raça inválida para 'Outros' (mín. 2 letras, apenas letras e espaços).");
                             erro = true;
                             break;
@@ -1012,9 +1766,15 @@ public class PetshopSystemSwing {
             }
 
             if (!erro) {
-                for (Cliente cliente : novosClientes) {
-                    if (!clientes.stream().anyMatch(c -> c.nome.equalsIgnoreCase(cliente.nome))) {
+                for (int i = 0; i < novosClientes.size(); i++) {
+                    Cliente cliente = novosClientes.get(i);
+                    Cliente existente = clientesPorNome.obter(IndiceUnico.normalizarNome(cliente.nome));
+                    if (existente == null) {
                         clientes.add(cliente);
+                        registrarInclusao(cliente);
+                    } else {
+                        // Cliente com o mesmo nome já cadastrado: os animais ficam com o cadastro existente
+                        novosClientes.set(i, existente);
                     }
                 }
 
@@ -1025,6 +1785,7 @@ public class PetshopSystemSwing {
                         }
                     }
                     animais.add(animal);
+                    registrarInclusao(animal);
                 }
 
                 camposNomesClientes.forEach(txt -> txt.setText(""));
@@ -1044,7 +1805,6 @@ public class PetshopSystemSwing {
                 comboQtdClientes.setSelectedItem(1);
                 clienteListener.actionPerformed(null);
                 lblStatus.setText("Cadastro realizado com sucesso!");
-                salvarDados();
             }
         });
 
@@ -1052,6 +1812,237 @@ public class PetshopSystemSwing {
         frame.setVisible(true);
     }
 
+    // Importação em massa (CSV/TSV com cabeçalho). As linhas entram nas listas e índices lote a
+    // lote, sem registro no diário; no fim um único snapshot grava tudo de uma vez
+    private static void importarArquivo(JFrame pai) {
+        String[] tipos = {IMPORTAR_CLIENTES, IMPORTAR_ANIMAIS, IMPORTAR_FUNCIONARIOS};
+        String tipo = (String) JOptionPane.showInputDialog(pai,
+                "Colunas de clientes e funcionários: nome, email, telefone, cpf, cep, sexo\n"
+                        + "Colunas de animais: nome, raca, sexo, observacao, donos (CPFs ou nomes separados por |)\n\n"
+                        + "O que o arquivo contém?",
+                "Importar arquivo", JOptionPane.QUESTION_MESSAGE, null, tipos, tipos[0]);
+        if (tipo == null) return;
+        JFileChooser seletor = new JFileChooser();
+        if (seletor.showOpenDialog(pai) != JFileChooser.APPROVE_OPTION) return;
+        Path arquivo = seletor.getSelectedFile().toPath();
+
+        JDialog dialogo = new JDialog(pai, "Importando " + arquivo.getFileName());
+        JProgressBar barra = new JProgressBar(0, 1000);
+        barra.setStringPainted(true);
+        JLabel lblProgresso = new JLabel("Lendo o arquivo...");
+        dialogo.setLayout(new BorderLayout(10, 10));
+        dialogo.add(barra, BorderLayout.CENTER);
+        dialogo.add(lblProgresso, BorderLayout.SOUTH);
+        dialogo.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        dialogo.setSize(400, 100);
+        dialogo.setLocationRelativeTo(pai);
+        dialogo.setVisible(true);
+
+        ImportadorCsv importador = criarImportador(tipo, arquivo, (lidos, tamanho, importadas, recusadas) -> {
+            barra.setValue(tamanho == 0 ? 1000 : (int) (lidos * 1000 / tamanho));
+            lblProgresso.setText(importadas + " importado(s), " + recusadas + " recusado(s)");
+        }, false);
+        Thread thread = new Thread(() -> {
+            try {
+                ImportadorCsv.Resultado resultado = importador.importar();
+                SwingUtilities.invokeLater(() -> {
+                    dialogo.dispose();
+                    compactarDados();
+                    JOptionPane.showMessageDialog(pai, resultado.importadas + " registro(s) importado(s), " + resultado.recusadas + " recusado(s)."
+                            + (resultado.arquivoErros == null ? "" : "\nLinhas recusadas e motivos em: " + resultado.arquivoErros)
+                            + "\nReabra as telas de consulta para ver os novos registros.",
+                            "Importação concluída", JOptionPane.INFORMATION_MESSAGE);
+                });
+            } catch (IOException | InterruptedException | RuntimeException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    dialogo.dispose();
+                    // Os lotes já aplicados ficam, e precisam chegar ao disco
+                    compactarDados();
+                    mostrarErro("Erro ao importar: " + ex.getMessage());
+                });
+            }
+        }, "petshop-importacao");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Importador do tipo (IMPORTAR_CLIENTES, IMPORTAR_ANIMAIS ou IMPORTAR_FUNCIONARIOS); sem
+    // interface os lotes são aplicados na própria thread que importa
+    static ImportadorCsv criarImportador(String tipo, Path arquivo, ImportadorCsv.Progresso progresso, boolean semInterface) {
+        ImportadorCsv.Validador validador;
+        ImportadorCsv.Aplicador aplicador;
+        switch (tipo) {
+            case IMPORTAR_ANIMAIS:
+                validador = linha -> Validacao.animal(linha.campo("nome"), linha.campo("raca"), linha.campo("sexo"));
+                aplicador = PetshopSystemSwing::aplicarAnimaisImportados;
+                break;
+            case IMPORTAR_FUNCIONARIOS:
+                validador = PetshopSystemSwing::validarPessoaImportada;
+                aplicador = PetshopSystemSwing::aplicarFuncionariosImportados;
+                break;
+            default:
+                validador = PetshopSystemSwing::validarPessoaImportada;
+                aplicador = PetshopSystemSwing::aplicarClientesImportados;
+                break;
+        }
+        return new ImportadorCsv(arquivo, validador, aplicador, progresso, semInterface);
+    }
+
+    // Snapshot completo agora: fim de uma importação, ou compactação pedida pela linha de comando
+    static void compactarDados() {
+        if (terminal != null) return;
+        if (persistencia == null) {
+            mostrarErro("Erro ao salvar dados: arquivo de dados indisponível");
+            return;
+        }
+        salvarDados();
+    }
+
+    // Inclusão de um registro importado: índices atualizados como em registrar(), mas sem diário
+    private static void incluirImportado(Object entidade) {
+        entidadesPorId.put(idEntidade(entidade), entidade);
+        marcarAlteracao(entidade);
+        atualizarIndices(Diario.INCLUSAO, entidade);
+        Repositorio.alterado(entidade, false);
+        // No terminal não há snapshot local no fim: cada registro vai para o servidor
+        if (terminal != null) terminal.enviar(Diario.INCLUSAO, entidade);
+    }
+
+    private static String validarPessoaImportada(ImportadorCsv.Linha linha) {
+        return Validacao.pessoa(linha.campo("nome"), linha.campo("email"), linha.campo("telefone"),
+                linha.campo("cpf"), linha.campo("cep"), linha.campo("sexo"));
+    }
+
+    private static String sexoImportado(ImportadorCsv.Linha linha) {
+        String sexo = linha.campo("sexo");
+        return sexo.isEmpty() ? "Prefiro não responder" : sexo;
+    }
+
+    // Como no cadastro: CPF repetido é recusado, e o nome repetido indica o mesmo cliente
+    private static void aplicarClientesImportados(List<ImportadorCsv.Linha> linhas) {
+        for (ImportadorCsv.Linha linha : linhas) {
+            if (linha.erro != null) continue;
+            String nome = linha.campo("nome");
+            String cpf = linha.campo("cpf");
+            if (clientesPorCpf.obter(IndiceUnico.normalizarCpf(cpf)) != null) {
+                linha.erro = "CPF já cadastrado";
+            } else if (clientesPorNome.obter(IndiceUnico.normalizarNome(nome)) != null) {
+                linha.erro = "Cliente já cadastrado com este nome";
+            } else {
+                Cliente cliente = new Cliente(nome, linha.campo("email"), linha.campo("telefone"), cpf, linha.campo("cep"), sexoImportado(linha));
+                clientes.add(cliente);
+                incluirImportado(cliente);
+            }
+        }
+    }
+
+    private static void aplicarFuncionariosImportados(List<ImportadorCsv.Linha> linhas) {
+        for (ImportadorCsv.Linha linha : linhas) {
+            if (linha.erro != null) continue;
+            String nome = linha.campo("nome");
+            String cpf = linha.campo("cpf");
+            if (funcionariosPorCpf.obter(IndiceUnico.normalizarCpf(cpf)) != null) {
+                linha.erro = "CPF já cadastrado";
+            } else if (funcionariosPorNome.obter(IndiceUnico.normalizarNome(nome)) != null) {
+                linha.erro = "Nome já existe";
+            } else {
+                Funcionario funcionario = new Funcionario(nome, linha.campo("email"), linha.campo("telefone"), cpf, linha.campo("cep"), sexoImportado(linha));
+                funcionarios.add(funcionario);
+                incluirImportado(funcionario);
+            }
+        }
+    }
+
+    // Os donos são procurados pelo CPF (11 dígitos) ou pelo nome; sem donos, o animal fica para adoção
+    private static void aplicarAnimaisImportados(List<ImportadorCsv.Linha> linhas) {
+        for (ImportadorCsv.Linha linha : linhas) {
+            if (linha.erro != null) continue;
+            ArrayList<Cliente> donos = new ArrayList<>();
+            for (String dono : linha.campo("donos").split("\\|")) {
+                dono = dono.trim();
+                if (dono.isEmpty()) continue;
+                Cliente cliente = Validacao.digitos(dono, 11) ? clientesPorCpf.obter(IndiceUnico.normalizarCpf(dono))
+                        : clientesPorNome.obter(IndiceUnico.normalizarNome(dono));
+                if (cliente == null) {
+                    linha.erro = "Dono não encontrado: " + dono;
+                    break;
+                }
+                donos.add(cliente);
+            }
+            if (linha.erro != null) continue;
+            String sexo = linha.campo("sexo");
+            Animal animal = new Animal(linha.campo("nome"), donos.isEmpty(), linha.campo("observacao"), linha.campo("raca"), sexo.isEmpty() ? "Macho" : sexo);
+            animal.definirClientes(donos);
+            animais.add(animal);
+            incluirImportado(animal);
+        }
+    }
+
+    // Tudo o que um agendamento ocupa: a mesa ou sala, o funcionário e o próprio animal
+    static String[] recursosAgendamento(String recurso, long funcionario, Animal animal) {
+        ArrayList<String> recursos = new ArrayList<>(3);
+        if (recurso != null && !recurso.isEmpty()) recursos.add(recurso);
+        if (funcionario != 0) recursos.add("funcionario:" + funcionario);
+        if (animal != null) recursos.add("animal:" + animal.id);
+        return recursos.toArray(new String[0]);
+    }
+
+    // Recusa um horário que cruza outro agendamento da mesma mesa ou sala, do mesmo funcionário ou
+    // do mesmo animal, mostrando os conflitos e os próximos horários livres
+    private static boolean horarioLivre(Component pai, String[] recursos, LocalDateTime inicio, int duracao, long ignorar) {
+        long minuto = IndiceHorario.minuto(inicio);
+        List<Long> conflitos = ocupacao.conflitos(recursos, minuto, duracao, ignorar);
+        if (conflitos.isEmpty()) return true;
+        StringBuilder mensagem = new StringBuilder("Horário ocupado por:\n");
+        for (int i = 0; i < Math.min(conflitos.size(), SUGESTOES_HORARIO); i++) {
+            Agendamento conflito = (Agendamento) entidadePorId(conflitos.get(i));
+            mensagem.append("  ").append(conflito).append(conflito.recurso.isEmpty() ? "" : " [" + conflito.recurso + "]").append("\n");
+        }
+        mensagem.append("\nPróximos horários livres:\n");
+        for (long livre : ocupacao.sugerir(recursos, minuto, duracao, SUGESTOES_HORARIO, ignorar)) {
+            mensagem.append("  ").append(FORMATO_DATA_HORA.format(IndiceHorario.horario(livre))).append("\n");
+        }
+        JOptionPane.showMessageDialog(pai, mensagem.toString(), "Conflito de horário", JOptionPane.ERROR_MESSAGE);
+        return false;
+    }
+
+    // Recursos da agenda mais "(nenhum)", que é o recurso vazio dos agendamentos anteriores aos
+    // recursos (a API também aceita o vazio); sem ele a edição trocaria o vazio pelo primeiro recurso
+    private static JComboBox<String> comboRecursos(String selecionado) {
+        JComboBox<String> combo = new JComboBox<>();
+        combo.addItem(SEM_RECURSO);
+        for (String recurso : RECURSOS_AGENDA) {
+            combo.addItem(recurso);
+        }
+        combo.setSelectedItem(selecionado == null || selecionado.isEmpty() ? SEM_RECURSO : selecionado);
+        return combo;
+    }
+
+    private static String recursoSelecionado(JComboBox<String> combo) {
+        String recurso = (String) combo.getSelectedItem();
+        return recurso == null || recurso.equals(SEM_RECURSO) ? "" : recurso;
+    }
+
+    private static JComboBox<Funcionario> comboFuncionarios() {
+        JComboBox<Funcionario> combo = new JComboBox<>();
+        combo.addItem(null); // Nenhum funcionário
+        for (Funcionario funcionario : funcionarios) {
+            combo.addItem(funcionario);
+        }
+        return combo;
+    }
+
+    // Junta a data de um spinner com o horário do outro (os spinners do Swing trabalham com Date)
+    private static LocalDateTime combinarDataHorario(Date data, Date horario) {
+        ZoneId zona = ZoneId.systemDefault();
+        return LocalDateTime.of(data.toInstant().atZone(zona).toLocalDate(),
+                horario.toInstant().atZone(zona).toLocalTime().truncatedTo(ChronoUnit.MINUTES));
+    }
+
+    static Date paraDate(LocalDateTime horario) {
+        return Date.from(horario.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
     private static void abrirTelaAgendamentos() {
         JFrame frame = new JFrame("Gerenciar Agendamentos");
         frame.setSize(800, 500);
@@ -1076,15 +2067,23 @@ public class PetshopSystemSwing {
         JSpinner spinnerHorario = new JSpinner(new SpinnerDateModel(new Date(), null, null, Calendar.MINUTE));
         JSpinner.DateEditor editorHorario = new JSpinner.DateEditor(spinnerHorario, "HH:mm");
         spinnerHorario.setEditor(editorHorario);
+        JComboBox<String> comboRecurso = comboRecursos(RECURSOS_AGENDA[0]);
+        JComboBox<Funcionario> comboFuncionario = comboFuncionarios();
+        JSpinner spinnerDuracao = new JSpinner(new SpinnerNumberModel(DURACAO_AGENDAMENTO, 15, FECHAMENTO_EXPEDIENTE - ABERTURA_EXPEDIENTE, 15));
         JTextArea txtDetalhes = new JTextArea(3, 20);
         JScrollPane scrollDetalhes = new JScrollPane(txtDetalhes);
         JButton btnCadastrar = new JButton("Cadastrar");
+        JButton btnHorarioLivre = new JButton("Sugerir horários");
+        JComboBox<String> comboPeriodo = new JComboBox<>(new String[]{PERIODO_HOJE, PERIODO_SEMANA, PERIODO_TODOS});
 
         gbc.gridx = 0; gbc.gridy = 0;
         inputPanel.add(new JLabel("Buscar:"), gbc);
-        gbc.gridx = 1; gbc.gridwidth = 3;
+        gbc.gridx = 1;
         inputPanel.add(txtBusca, gbc);
-        gbc.gridwidth = 1;
+        gbc.gridx = 2;
+        inputPanel.add(new JLabel("Período:"), gbc);
+        gbc.gridx = 3;
+        inputPanel.add(comboPeriodo, gbc);
         gbc.gridx = 0; gbc.gridy = 1;
         inputPanel.add(new JLabel("Animal:"), gbc);
         gbc.gridx = 1; gbc.gridwidth = 3;
@@ -1099,30 +2098,53 @@ public class PetshopSystemSwing {
         gbc.gridx = 3;
         inputPanel.add(spinnerHorario, gbc);
         gbc.gridx = 0; gbc.gridy = 3;
+        inputPanel.add(new JLabel("Recurso:"), gbc);
+        gbc.gridx = 1;
+        inputPanel.add(comboRecurso, gbc);
+        gbc.gridx = 2;
+        inputPanel.add(new JLabel("Duração (min):"), gbc);
+        gbc.gridx = 3;
+        inputPanel.add(spinnerDuracao, gbc);
+        gbc.gridx = 0; gbc.gridy = 4;
+        inputPanel.add(new JLabel("Funcionário:"), gbc);
+        gbc.gridx = 1; gbc.gridwidth = 3;
+        inputPanel.add(comboFuncionario, gbc);
+        gbc.gridwidth = 1;
+        gbc.gridx = 0; gbc.gridy = 5;
         inputPanel.add(new JLabel("Detalhes:"), gbc);
         gbc.gridx = 1; gbc.gridwidth = 3; gbc.fill = GridBagConstraints.BOTH;
         inputPanel.add(scrollDetalhes, gbc);
         gbc.fill = GridBagConstraints.HORIZONTAL;
-        gbc.gridx = 1; gbc.gridy = 4; gbc.gridwidth = 1;
+        gbc.gridx = 1; gbc.gridy = 6; gbc.gridwidth = 1;
         inputPanel.add(btnCadastrar, gbc);
+        gbc.gridx = 2; gbc.gridwidth = 2;
+        inputPanel.add(btnHorarioLivre, gbc);
+        JLabel lblMetricas = new JLabel();
+        gbc.gridx = 1; gbc.gridy = 7; gbc.gridwidth = 3;
+        inputPanel.add(lblMetricas, gbc);
 
         // Tabela de agendamentos
-        String[] colunasAgendamentos = {"Animal", "Data", "Horário", "Detalhes"};
-        DefaultTableModel modeloTabela = new DefaultTableModel(colunasAgendamentos, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
+        String[] colunasAgendamentos = {"Animal", "Data", "Horário", "Recurso", "Detalhes"};
+        // Com filtro, a linha não é o índice na lista: o modelo guarda o id de cada linha
+        ModeloTabela<Agendamento> modeloTabela = new ModeloTabela<>(colunasAgendamentos, id -> (Agendamento) entidadePorId(id), (agendamento, coluna) -> {
+            switch (coluna) {
+                case 0: return agendamento.animal.toString();
+                case 1: return agendamento.getDataFormatada();
+                case 2: return agendamento.getHorarioFormatado();
+                case 3: return agendamento.recurso;
+                default: return agendamento.detalhes;
             }
-        };
-        for (Agendamento agendamento : agendamentos) {
-            modeloTabela.addRow(new Object[]{agendamento.animal.toString(), agendamento.getDataFormatada(), agendamento.getHorarioFormatado(), agendamento.detalhes});
-        }
+        });
+        // A tela abre no dia de hoje, direto da agenda ordenada por horário
+        LocalDate hoje = LocalDate.now();
+        modeloTabela.mostrar(agenda.doPeriodo(hoje, hoje));
         JTable tabelaAgendamentos = new JTable(modeloTabela);
         JScrollPane scrollTabela = new JScrollPane(tabelaAgendamentos);
         tabelaAgendamentos.getColumnModel().getColumn(0).setPreferredWidth(200);
         tabelaAgendamentos.getColumnModel().getColumn(1).setPreferredWidth(100);
         tabelaAgendamentos.getColumnModel().getColumn(2).setPreferredWidth(80);
-        tabelaAgendamentos.getColumnModel().getColumn(3).setPreferredWidth(300);
+        tabelaAgendamentos.getColumnModel().getColumn(3).setPreferredWidth(120);
+        tabelaAgendamentos.getColumnModel().getColumn(4).setPreferredWidth(300);
 
         // Painel de botões
         JPanel botoesPanel = new JPanel(new FlowLayout());
@@ -1136,22 +2158,57 @@ public class PetshopSystemSwing {
         frame.add(scrollTabela, BorderLayout.CENTER);
         frame.add(botoesPanel, BorderLayout.SOUTH);
 
-        // Filtro de busca
-        txtBusca.getDocument().addDocumentListener(new DocumentListener() {
-            public void insertUpdate(DocumentEvent e) { filtrarAgendamentos(); }
-            public void removeUpdate(DocumentEvent e) { filtrarAgendamentos(); }
-            public void changedUpdate(DocumentEvent e) { filtrarAgendamentos(); }
-
-            private void filtrarAgendamentos() {
-                String busca = txtBusca.getText().trim().toLowerCase();
-                modeloTabela.setRowCount(0);
-                for (Agendamento agendamento : agendamentos) {
-                    if (agendamento.animal.toString().toLowerCase().contains(busca) ||
-                        agendamento.getDataFormatada().toLowerCase().contains(busca) ||
-                        agendamento.getHorarioFormatado().toLowerCase().contains(busca) ||
-                        agendamento.detalhes.toLowerCase().contains(busca)) {
-                        modeloTabela.addRow(new Object[]{agendamento.animal.toString(), agendamento.getDataFormatada(), agendamento.getHorarioFormatado(), agendamento.detalhes});
-                    }
+        // Filtro de busca e período. Sem texto de busca, o período sai direto da agenda, em ordem
+        // de horário; com texto, o resultado da busca é recortado pelo horário de cada agendamento
+        BuscaAssincrona busca = new BuscaAssincrona(txtBusca, buscaAgendamentos, resultado -> {
+            Object periodo = comboPeriodo.getSelectedItem();
+            if (PERIODO_TODOS.equals(periodo)) {
+                modeloTabela.mostrar(filtrarIds(resultado, buscaAgendamentos::contem));
+                return;
+            }
+            LocalDate primeiroDia = LocalDate.now();
+            LocalDate ultimoDia = PERIODO_HOJE.equals(periodo) ? primeiroDia : primeiroDia.plusDays(6);
+            if (txtBusca.getText().trim().isEmpty()) {
+                modeloTabela.mostrar(agenda.doPeriodo(primeiroDia, ultimoDia));
+                return;
+            }
+            long de = agenda.inicioDoDia(primeiroDia);
+            long ate = agenda.inicioDoDia(ultimoDia.plusDays(1));
+            modeloTabela.mostrar(filtrarIds(resultado, id -> {
+                long minuto = agenda.minutoDoRegistro(id);
+                return minuto >= de && minuto < ate;
+            }));
+        }, lblMetricas);
+        comboPeriodo.addActionListener(e -> busca.executarAgora());
+
+        // Próximos horários livres para o recurso, o funcionário e o animal escolhidos, a partir
+        // do horário selecionado; o escolhido vai para os spinners
+        btnHorarioLivre.addActionListener(e -> {
+            Funcionario funcionario = (Funcionario) comboFuncionario.getSelectedItem();
+            String[] recursos = recursosAgendamento(recursoSelecionado(comboRecurso), funcionario == null ? 0 : funcionario.id,
+                    (Animal) comboAnimal.getSelectedItem());
+            LocalDateTime selecionado = combinarDataHorario((Date) spinnerData.getValue(), (Date) spinnerHorario.getValue());
+            long[] livres;
+            try {
+                livres = ocupacao.sugerir(recursos, IndiceHorario.minuto(selecionado), (Integer) spinnerDuracao.getValue(), SUGESTOES_HORARIO, 0);
+            } catch (IllegalArgumentException ex) {
+                // Duração que não cabe no expediente: não há horário livre a sugerir
+                JOptionPane.showMessageDialog(frame, "Nenhum horário livre: " + ex.getMessage(), "Sugerir horários", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (livres.length == 0) {
+                JOptionPane.showMessageDialog(frame, "Nenhum horário livre encontrado.", "Sugerir horários", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            String[] opcoes = new String[livres.length];
+            for (int i = 0; i < livres.length; i++) {
+                opcoes[i] = FORMATO_DATA_HORA.format(IndiceHorario.horario(livres[i]));
+            }
+            Object escolhido = JOptionPane.showInputDialog(frame, "Horários livres:", "Sugerir horários", JOptionPane.QUESTION_MESSAGE, null, opcoes, opcoes[0]);
+            for (int i = 0; i < opcoes.length; i++) {
+                if (opcoes[i].equals(escolhido)) {
+                    spinnerData.setValue(paraDate(IndiceHorario.horario(livres[i])));
+                    spinnerHorario.setValue(paraDate(IndiceHorario.horario(livres[i])));
                 }
             }
         });
@@ -1172,25 +2229,25 @@ public class PetshopSystemSwing {
                 return;
             }
 
-            // Combinar data e horário em um único Date
-            Calendar calData = Calendar.getInstance();
-            calData.setTime(data);
-            Calendar calHorario = Calendar.getInstance();
-            calHorario.setTime(horario);
-            calData.set(Calendar.HOUR_OF_DAY, calHorario.get(Calendar.HOUR_OF_DAY));
-            calData.set(Calendar.MINUTE, calHorario.get(Calendar.MINUTE));
-            calData.set(Calendar.SECOND, 0);
-            calData.set(Calendar.MILLISECOND, 0);
-            Date dataHora = calData.getTime();
+            LocalDateTime dataHora = combinarDataHorario(data, horario);
+            String recurso = recursoSelecionado(comboRecurso);
+            Funcionario funcionario = (Funcionario) comboFuncionario.getSelectedItem();
+            int duracao = (Integer) spinnerDuracao.getValue();
+            if (!horarioLivre(frame, recursosAgendamento(recurso, funcionario == null ? 0 : funcionario.id, animal), dataHora, duracao, 0)) {
+                return;
+            }
 
             Agendamento agendamento = new Agendamento(animal, dataHora, detalhes);
+            agendamento.recurso = recurso;
+            agendamento.funcionario = funcionario == null ? 0 : funcionario.id;
+            agendamento.duracao = duracao;
             agendamentos.add(agendamento);
-            modeloTabela.addRow(new Object[]{agendamento.animal.toString(), agendamento.getDataFormatada(), agendamento.getHorarioFormatado(), agendamento.detalhes});
+            modeloTabela.adicionar(agendamento.id);
             txtDetalhes.setText("");
             comboAnimal.setSelectedItem(null);
             spinnerData.setValue(new Date());
             spinnerHorario.setValue(new Date());
-            salvarDados();
+            registrarInclusao(agendamento);
             JOptionPane.showMessageDialog(frame, "Agendamento cadastrado com sucesso!", "Sucesso", JOptionPane.INFORMATION_MESSAGE);
         });
 
@@ -1201,7 +2258,8 @@ public class PetshopSystemSwing {
                 JOptionPane.showMessageDialog(frame, "Selecione um agendamento!", "Erro", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            Agendamento agendamento = agendamentos.get(row);
+            Agendamento agendamento = modeloTabela.entidade(row);
+            if (agendamento == null) return;
 
             JPanel panel = new JPanel(new GridBagLayout());
             GridBagConstraints gbcEdit = new GridBagConstraints();
@@ -1214,12 +2272,17 @@ public class PetshopSystemSwing {
                 comboAnimalEdit.addItem(animal);
             }
             comboAnimalEdit.setSelectedItem(agendamento.animal);
-            JSpinner spinnerDataEdit = new JSpinner(new SpinnerDateModel(agendamento.horario, null, null, Calendar.DAY_OF_MONTH));
+            JSpinner spinnerDataEdit = new JSpinner(new SpinnerDateModel(paraDate(agendamento.horario), null, null, Calendar.DAY_OF_MONTH));
             JSpinner.DateEditor editorDataEdit = new JSpinner.DateEditor(spinnerDataEdit, "dd/MM/yyyy");
             spinnerDataEdit.setEditor(editorDataEdit);
-            JSpinner spinnerHorarioEdit = new JSpinner(new SpinnerDateModel(agendamento.horario, null, null, Calendar.MINUTE));
+            JSpinner spinnerHorarioEdit = new JSpinner(new SpinnerDateModel(paraDate(agendamento.horario), null, null, Calendar.MINUTE));
             JSpinner.DateEditor editorHorarioEdit = new JSpinner.DateEditor(spinnerHorarioEdit, "HH:mm");
             spinnerHorarioEdit.setEditor(editorHorarioEdit);
+            JComboBox<String> comboRecursoEdit = comboRecursos(agendamento.recurso);
+            JComboBox<Funcionario> comboFuncionarioEdit = comboFuncionarios();
+            comboFuncionarioEdit.setSelectedItem(agendamento.funcionario == 0 ? null : entidadePorId(agendamento.funcionario));
+            JSpinner spinnerDuracaoEdit = new JSpinner(new SpinnerNumberModel(Math.max(15, Math.min(agendamento.duracao, FECHAMENTO_EXPEDIENTE - ABERTURA_EXPEDIENTE)),
+                    15, FECHAMENTO_EXPEDIENTE - ABERTURA_EXPEDIENTE, 15));
             JTextArea txtDetalhesEdit = new JTextArea(agendamento.detalhes, 3, 20);
             JScrollPane scrollDetalhesEdit = new JScrollPane(txtDetalhesEdit);
 
@@ -1237,6 +2300,19 @@ public class PetshopSystemSwing {
             gbcEdit.gridx = 3;
             panel.add(spinnerHorarioEdit, gbcEdit);
             gbcEdit.gridx = 0; gbcEdit.gridy = 2;
+            panel.add(new JLabel("Recurso:"), gbcEdit);
+            gbcEdit.gridx = 1;
+            panel.add(comboRecursoEdit, gbcEdit);
+            gbcEdit.gridx = 2;
+            panel.add(new JLabel("Duração (min):"), gbcEdit);
+            gbcEdit.gridx = 3;
+            panel.add(spinnerDuracaoEdit, gbcEdit);
+            gbcEdit.gridx = 0; gbcEdit.gridy = 3;
+            panel.add(new JLabel("Funcionário:"), gbcEdit);
+            gbcEdit.gridx = 1; gbcEdit.gridwidth = 3;
+            panel.add(comboFuncionarioEdit, gbcEdit);
+            gbcEdit.gridwidth = 1;
+            gbcEdit.gridx = 0; gbcEdit.gridy = 4;
             panel.add(new JLabel("Detalhes:"), gbcEdit);
             gbcEdit.gridx = 1; gbcEdit.gridwidth = 3; gbcEdit.fill = GridBagConstraints.BOTH;
             panel.add(scrollDetalhesEdit, gbcEdit);
@@ -1257,25 +2333,23 @@ public class PetshopSystemSwing {
                     return;
                 }
 
-                // Combinar nova data e horário
-                Calendar calData = Calendar.getInstance();
-                calData.setTime(novaData);
-                Calendar calHorario = Calendar.getInstance();
-                calHorario.setTime(novoHorario);
-                calData.set(Calendar.HOUR_OF_DAY, calHorario.get(Calendar.HOUR_OF_DAY));
-                calData.set(Calendar.MINUTE, calHorario.get(Calendar.MINUTE));
-                calData.set(Calendar.SECOND, 0);
-                calData.set(Calendar.MILLISECOND, 0);
-                Date novaDataHora = calData.getTime();
+                LocalDateTime novaDataHora = combinarDataHorario(novaData, novoHorario);
+                String novoRecurso = recursoSelecionado(comboRecursoEdit);
+                Funcionario novoFuncionario = (Funcionario) comboFuncionarioEdit.getSelectedItem();
+                long idFuncionario = novoFuncionario == null ? 0 : novoFuncionario.id;
+                int novaDuracao = (Integer) spinnerDuracaoEdit.getValue();
+                if (!horarioLivre(frame, recursosAgendamento(novoRecurso, idFuncionario, novoAnimal), novaDataHora, novaDuracao, agendamento.id)) {
+                    return;
+                }
 
                 agendamento.animal = novoAnimal;
                 agendamento.horario = novaDataHora;
                 agendamento.detalhes = novosDetalhes;
-                modeloTabela.setValueAt(agendamento.animal.toString(), row, 0);
-                modeloTabela.setValueAt(agendamento.getDataFormatada(), row, 1);
-                modeloTabela.setValueAt(agendamento.getHorarioFormatado(), row, 2);
-                modeloTabela.setValueAt(agendamento.detalhes, row, 3);
-                salvarDados();
+                agendamento.recurso = novoRecurso;
+                agendamento.funcionario = idFuncionario;
+                agendamento.duracao = novaDuracao;
+                modeloTabela.alterada(row);
+                registrarAlteracao(agendamento);
                 JOptionPane.showMessageDialog(frame, "Agendamento editado com sucesso!", "Sucesso", JOptionPane.INFORMATION_MESSAGE);
             }
         });
@@ -1287,12 +2361,13 @@ public class PetshopSystemSwing {
                 JOptionPane.showMessageDialog(frame, "Selecione um agendamento!", "Erro", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            Agendamento agendamento = agendamentos.get(row);
+            Agendamento agendamento = modeloTabela.entidade(row);
+            if (agendamento == null) return;
             int opcao = JOptionPane.showConfirmDialog(frame, "Deseja apagar o agendamento para " + agendamento.animal.nome + " em " + agendamento.getDataFormatada() + "?", "Confirmar Exclusão", JOptionPane.YES_NO_OPTION);
             if (opcao == JOptionPane.YES_OPTION) {
-                agendamentos.remove(row);
-                modeloTabela.removeRow(row);
-                salvarDados();
+                agendamentos.remove(agendamento);
+                modeloTabela.remover(row);
+                registrarExclusao(agendamento);
                 JOptionPane.showMessageDialog(frame, "Agendamento apagado com sucesso!", "Sucesso", JOptionPane.INFORMATION_MESSAGE);
             }
         });
@@ -1303,55 +2378,267 @@ public class PetshopSystemSwing {
 
     private static void abrirTelaProdutos() {
         JFrame frame = new JFrame("Gerenciar Produtos");
-        frame.setSize(400, 300);
+        frame.setSize(520, 380);
         frame.setLayout(new FlowLayout());
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
-        JTextField txtProduto = new JTextField(20);
+        JTextField txtSku = new JTextField(8);
+        JTextField txtProduto = new JTextField(16);
+        JTextField txtPreco = new JTextField(6);
+        JTextField txtMinimo = new JTextField("0", 4);
         JButton btnCadastrar = new JButton("Cadastrar");
-        JTextArea txtLista = new JTextArea(10, 40);
-        txtLista.setEditable(false);
-
+        JTextField txtEntrada = new JTextField(4);
+        JButton btnEntrada = new JButton("Lançar entrada/ajuste");
+        DefaultListModel<String> modelo = new DefaultListModel<>();
+        List<LivroVendas.Produto> cadastrados = livroVendas != null ? livroVendas.produtos() : List.of();
+        for (LivroVendas.Produto produto : cadastrados) modelo.addElement(rotuloProduto(produto));
+        JList<String> lista = new JList<>(modelo);
+        JScrollPane rolagem = new JScrollPane(lista);
+        rolagem.setPreferredSize(new Dimension(480, 200));
+
+        frame.add(new JLabel("SKU:"));
+        frame.add(txtSku);
         frame.add(new JLabel("Nome do Produto:"));
         frame.add(txtProduto);
+        frame.add(new JLabel("Preço (R$):"));
+        frame.add(txtPreco);
+        frame.add(new JLabel("Estoque mínimo:"));
+        frame.add(txtMinimo);
         frame.add(btnCadastrar);
-        frame.add(new JScrollPane(txtLista));
+        frame.add(new JLabel("Quantidade (negativa para ajuste):"));
+        frame.add(txtEntrada);
+        frame.add(btnEntrada);
+        frame.add(rolagem);
+
+        // Posição de cada SKU na lista, para trocar a linha quando o produto é atualizado
+        HashMap<String, Integer> posicoes = new HashMap<>();
+        for (int i = 0; i < cadastrados.size(); i++) posicoes.put(cadastrados.get(i).sku, i);
 
         btnCadastrar.addActionListener(e -> {
-            String produto = txtProduto.getText();
-            if (!produto.isEmpty()) {
-                produtos.add(produto);
-                txtLista.setText("Produtos:\n" + String.join("\n", produtos));
-                txtProduto.setText("");
+            String sku = txtSku.getText().trim();
+            String nome = txtProduto.getText().trim();
+            if (sku.isEmpty() || nome.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, "Informe o SKU e o nome do produto!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            long preco;
+            try {
+                preco = LivroVendas.centavos(txtPreco.getText());
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(frame, "Preço inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (preco < 0) {
+                JOptionPane.showMessageDialog(frame, "Preço inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            int minimo;
+            try {
+                minimo = Integer.parseInt(txtMinimo.getText().trim());
+            } catch (NumberFormatException ex) {
+                minimo = -1;
+            }
+            if (minimo < 0) {
+                JOptionPane.showMessageDialog(frame, "Estoque mínimo inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (livroVendas != null && livroVendas.produto(sku) != null && JOptionPane.showConfirmDialog(frame,
+                    "O SKU " + sku + " já existe. Atualizar o produto?", "Confirmar", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+                return;
             }
+            LivroVendas.Produto produto = new LivroVendas.Produto(sku, nome, preco, minimo);
+            if (!cadastrarProduto(produto)) return;
+            Integer posicao = posicoes.get(sku);
+            if (posicao != null) {
+                modelo.set(posicao, rotuloProduto(produto));
+            } else {
+                posicoes.put(sku, modelo.size());
+                modelo.addElement(rotuloProduto(produto));
+            }
+            txtSku.setText("");
+            txtProduto.setText("");
+            txtPreco.setText("");
+            txtMinimo.setText("0");
+        });
+
+        btnEntrada.addActionListener(e -> {
+            LivroVendas.Produto produto = livroVendas != null ? livroVendas.produto(txtSku.getText().trim()) : null;
+            if (produto == null) {
+                JOptionPane.showMessageDialog(frame, "Informe o SKU de um produto cadastrado!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            int quantidade;
+            try {
+                quantidade = Integer.parseInt(txtEntrada.getText().trim());
+            } catch (NumberFormatException ex) {
+                quantidade = 0;
+            }
+            if (quantidade == 0) {
+                JOptionPane.showMessageDialog(frame, "Quantidade inválida!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (!movimentarEstoque(produto, quantidade)) return;
+            modelo.set(posicoes.get(produto.sku), rotuloProduto(produto));
+            txtEntrada.setText("");
         });
 
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
 
+    // O estoque é o do momento em que a linha foi montada
+    private static String rotuloProduto(LivroVendas.Produto produto) {
+        Estoque.Saldo saldo = livroVendas.estoque.saldo(produto.sku);
+        return produto.sku + " - " + produto.nome + " - " + LivroVendas.reais(produto.precoCentavos)
+                + " - estoque " + (saldo != null ? saldo.disponivel() : 0) + (produto.minimo > 0 ? " (mín. " + produto.minimo + ")" : "");
+    }
+
+    // Lista das vendas direto sobre o livro: cada venda nova avisa uma linha inserida, e só as
+    // linhas visíveis são formatadas
+    private static class ModeloVendas extends AbstractListModel<String> {
+        private static final long serialVersionUID = 1L;
+
+        private List<LivroVendas.Venda> vendas = livroVendas != null ? livroVendas.vendas() : List.of();
+
+        void atualizar() {
+            int antes = vendas.size();
+            vendas = livroVendas.vendas();
+            if (vendas.size() > antes) fireIntervalAdded(this, antes, vendas.size() - 1);
+        }
+
+        @Override
+        public int getSize() {
+            return vendas.size();
+        }
+
+        @Override
+        public String getElementAt(int i) {
+            LivroVendas.Venda venda = vendas.get(i);
+            LivroVendas.Produto produto = livroVendas.produto(venda.sku);
+            Object cliente = venda.cliente == 0 ? null : entidadePorId(venda.cliente);
+            return "#" + venda.numero + "  " + FORMATO_DATA_HORA.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(venda.momento), ZoneId.systemDefault()))
+                    + "  " + venda.quantidade + " x " + (produto != null ? produto.nome : venda.sku) + "  " + LivroVendas.reais(venda.totalCentavos())
+                    + (cliente instanceof Cliente ? "  " + ((Cliente) cliente).nome : "");
+        }
+    }
+
+    // Item da venda em andamento, com a quantidade já reservada no estoque
+    private static class ItemVenda {
+        final LivroVendas.Produto produto;
+        final int quantidade;
+
+        ItemVenda(LivroVendas.Produto produto, int quantidade) {
+            this.produto = produto;
+            this.quantidade = quantidade;
+        }
+
+        @Override
+        public String toString() {
+            return quantidade + " x " + produto.nome + "  " + LivroVendas.reais(produto.precoCentavos * quantidade);
+        }
+    }
+
     private static void abrirTelaVendas() {
         JFrame frame = new JFrame("Gerenciar Vendas");
-        frame.setSize(400, 300);
+        frame.setSize(540, 480);
         frame.setLayout(new FlowLayout());
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
-        JTextField txtVenda = new JTextField(20);
-        JButton btnCadastrar = new JButton("Cadastrar");
-        JTextArea txtLista = new JTextArea(10, 40);
-        txtLista.setEditable(false);
+        JTextField txtSku = new JTextField(8);
+        JTextField txtQuantidade = new JTextField("1", 3);
+        JButton btnAdicionar = new JButton("Adicionar");
+        DefaultListModel<ItemVenda> itens = new DefaultListModel<>();
+        JList<ItemVenda> listaItens = new JList<>(itens);
+        JScrollPane rolagemItens = new JScrollPane(listaItens);
+        rolagemItens.setPreferredSize(new Dimension(500, 90));
+        JTextField txtCpf = new JTextField(11);
+        JButton btnFinalizar = new JButton("Finalizar venda");
+        JButton btnCancelar = new JButton("Cancelar itens");
+        ModeloVendas modelo = new ModeloVendas();
+        JList<String> lista = new JList<>(modelo);
+        // Altura fixa: a lista não mede cada linha para saber o tamanho total
+        lista.setPrototypeCellValue("#0000000  00/00/0000 00:00  00 x Produto com um nome comprido  R$ 0000,00  Cliente");
+        JScrollPane rolagem = new JScrollPane(lista);
+        rolagem.setPreferredSize(new Dimension(500, 200));
+
+        frame.add(new JLabel("SKU:"));
+        frame.add(txtSku);
+        frame.add(new JLabel("Qtd.:"));
+        frame.add(txtQuantidade);
+        frame.add(btnAdicionar);
+        frame.add(rolagemItens);
+        frame.add(new JLabel("CPF do cliente (opcional):"));
+        frame.add(txtCpf);
+        frame.add(btnFinalizar);
+        frame.add(btnCancelar);
+        frame.add(rolagem);
+        if (modelo.getSize() > 0) lista.ensureIndexIsVisible(modelo.getSize() - 1);
+
+        // Cada item adicionado já sai do disponível, então outro caixa não vende o mesmo estoque
+        btnAdicionar.addActionListener(e -> {
+            LivroVendas.Produto produto = livroVendas != null ? livroVendas.produto(txtSku.getText().trim()) : null;
+            if (produto == null) {
+                JOptionPane.showMessageDialog(frame, "Produto não cadastrado!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            int quantidade;
+            try {
+                quantidade = Integer.parseInt(txtQuantidade.getText().trim());
+            } catch (NumberFormatException ex) {
+                quantidade = 0;
+            }
+            if (quantidade <= 0) {
+                JOptionPane.showMessageDialog(frame, "Quantidade inválida!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (!livroVendas.estoque.reservar(produto.sku, quantidade)) {
+                JOptionPane.showMessageDialog(frame, "Estoque insuficiente: " + livroVendas.estoque.saldo(produto.sku).disponivel()
+                        + " disponível(is)", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            itens.addElement(new ItemVenda(produto, quantidade));
+            txtSku.setText("");
+            txtQuantidade.setText("1");
+            txtSku.requestFocusInWindow();
+        });
 
-        frame.add(new JLabel("Venda (ex: Produto, Cliente):"));
-        frame.add(txtVenda);
-        frame.add(btnCadastrar);
-        frame.add(new JScrollPane(txtLista));
+        btnFinalizar.addActionListener(e -> {
+            if (itens.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, "Adicione ao menos um item!", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            long cliente = 0;
+            String cpf = txtCpf.getText().trim();
+            if (!cpf.isEmpty()) {
+                Cliente encontrado = clientesPorCpf.obter(IndiceUnico.normalizarCpf(cpf));
+                if (encontrado == null) {
+                    JOptionPane.showMessageDialog(frame, "Cliente não encontrado para o CPF informado!", "Erro", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                cliente = encontrado.id;
+            }
+            while (!itens.isEmpty()) {
+                ItemVenda item = itens.get(0);
+                if (!registrarVenda(item.produto, item.quantidade, cliente)) break;
+                itens.remove(0);
+            }
+            modelo.atualizar();
+            lista.ensureIndexIsVisible(modelo.getSize() - 1);
+            txtCpf.setText("");
+        });
 
-        btnCadastrar.addActionListener(e -> {
-            String venda = txtVenda.getText();
-            if (!venda.isEmpty()) {
-                vendas.add(venda);
-                txtLista.setText("Vendas:\n" + String.join("\n", vendas));
-                txtVenda.setText("");
+        Runnable cancelar = () -> {
+            for (int i = 0; i < itens.size(); i++) {
+                livroVendas.estoque.liberar(itens.get(i).produto.sku, itens.get(i).quantidade);
+            }
+            itens.clear();
+        };
+        btnCancelar.addActionListener(e -> cancelar.run());
+        // Fechar a tela com itens pendentes devolve as reservas
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                cancelar.run();
             }
         });
 
@@ -1367,15 +2654,17 @@ private static void abrirTelaFuncionarios() {
 
     JTextField txtBusca = new JTextField(20);
     String[] colunasFuncionarios = {"Nome", "Sexo", "Email", "Telefone", "CPF", "CEP"};
-    DefaultTableModel modeloTabela = new DefaultTableModel(colunasFuncionarios, 0) {
-        @Override
-        public boolean isCellEditable(int row, int column) {
-            return false;
+    ModeloTabela<Funcionario> modeloTabela = new ModeloTabela<>(colunasFuncionarios, id -> (Funcionario) entidadePorId(id), (funcionario, coluna) -> {
+        switch (coluna) {
+            case 0: return funcionario.nome;
+            case 1: return funcionario.sexo;
+            case 2: return funcionario.email;
+            case 3: return funcionario.telefone;
+            case 4: return funcionario.cpf;
+            default: return funcionario.cep;
         }
-    };
-    for (Funcionario funcionario : funcionarios) {
-        modeloTabela.addRow(new Object[]{funcionario.nome, funcionario.sexo, funcionario.email, funcionario.telefone, funcionario.cpf, funcionario.cep});
-    }
+    });
+    modeloTabela.mostrar(ModeloTabela.ids(funcionarios));
     JTable tabelaFuncionarios = new JTable(modeloTabela);
     JScrollPane scrollTabela = new JScrollPane(tabelaFuncionarios);
 
@@ -1395,34 +2684,17 @@ private static void abrirTelaFuncionarios() {
     botoesPanel.add(btnEditar);
     botoesPanel.add(btnApagar);
 
+    JLabel lblMetricas = new JLabel();
     JPanel buscaPanel = new JPanel(new FlowLayout());
     buscaPanel.add(new JLabel("Buscar:"));
     buscaPanel.add(txtBusca);
+    buscaPanel.add(lblMetricas);
 
     frame.add(buscaPanel, BorderLayout.NORTH);
     frame.add(scrollTabela, BorderLayout.CENTER);
     frame.add(botoesPanel, BorderLayout.SOUTH);
 
-    txtBusca.getDocument().addDocumentListener(new DocumentListener() {
-        public void insertUpdate(DocumentEvent e) { filtrarFuncionarios(); }
-        public void removeUpdate(DocumentEvent e) { filtrarFuncionarios(); }
-        public void changedUpdate(DocumentEvent e) { filtrarFuncionarios(); }
-
-        private void filtrarFuncionarios() {
-            String busca = txtBusca.getText().trim().toLowerCase();
-            modeloTabela.setRowCount(0);
-            for (Funcionario funcionario : funcionarios) {
-                if (funcionario.nome.toLowerCase().contains(busca) ||
-                    funcionario.email.toLowerCase().contains(busca) ||
-                    funcionario.telefone.contains(busca) ||
-                    funcionario.cpf.contains(busca) ||
-                    funcionario.cep.contains(busca) ||
-                    funcionario.sexo.toLowerCase().contains(busca)) {
-                    modeloTabela.addRow(new Object[]{funcionario.nome, funcionario.sexo, funcionario.email, funcionario.telefone, funcionario.cpf, funcionario.cep});
-                }
-            }
-        }
-    });
+    new BuscaAssincrona(txtBusca, buscaFuncionarios, resultado -> modeloTabela.mostrar(filtrarIds(resultado, buscaFuncionarios::contem)), lblMetricas);
 
     btnCadastrar.addActionListener(e -> {
         JPanel panel = new JPanel(new GridBagLayout());
@@ -1489,42 +2761,46 @@ private static void abrirTelaFuncionarios() {
             String cep = txtCEP.getText().trim();
             String sexo = comboSexo.getSelectedItem().equals("Outros") ? txtSexoOutros.getText().trim() : (String) comboSexo.getSelectedItem();
 
-            if (nome.length() >= 3 && Pattern.matches("[\\p{L}\\s]+", nome)) {
-                if (!email.isEmpty() && !Pattern.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$", email)) {
+            if (Validacao.letras(nome, 3)) {
+                if (!email.isEmpty() && !Validacao.email(email)) {
                     JOptionPane.showMessageDialog(frame, "Email inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                if (!telefone.isEmpty() && !Pattern.matches("\\d{11}", telefone)) {
+                if (!telefone.isEmpty() && !Validacao.telefone(telefone)) {
                     JOptionPane.showMessageDialog(frame, "Telefone deve ter 11 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 if (!cpf.isEmpty()) {
-                    if (!Pattern.matches("\\d{11}", cpf)) {
+                    if (!Validacao.digitos(cpf, 11)) {
                         JOptionPane.showMessageDialog(frame, "CPF deve ter 11 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
-                    if (funcionarios.stream().anyMatch(f -> f.cpf.equalsIgnoreCase(cpf))) {
+                    if (!Validacao.cpf(cpf)) {
+                        JOptionPane.showMessageDialog(frame, "CPF inválido (dígitos verificadores não conferem)!", "Erro", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    if (funcionariosPorCpf.obter(IndiceUnico.normalizarCpf(cpf)) != null) {
                         JOptionPane.showMessageDialog(frame, "CPF já cadastrado!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
                 }
-                if (!cep.isEmpty() && !Pattern.matches("\\d{8}", cep)) {
+                if (!cep.isEmpty() && !Validacao.cep(cep)) {
                     JOptionPane.showMessageDialog(frame, "CEP deve ter 8 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 if (comboSexo.getSelectedItem().equals("Outros") && 
-                    (sexo.isEmpty() || !Pattern.matches("[\\p{L}\\s]+", sexo) || sexo.length() < 2)) {
+                    !Validacao.letras(sexo, 2)) {
                     JOptionPane.showMessageDialog(frame, "Sexo inválido para 'Outros'!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                if (funcionarios.stream().anyMatch(f -> f.nome.equalsIgnoreCase(nome))) {
+                if (funcionariosPorNome.obter(IndiceUnico.normalizarNome(nome)) != null) {
                     JOptionPane.showMessageDialog(frame, "Nome já existe!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 Funcionario funcionario = new Funcionario(nome, email, telefone, cpf, cep, sexo);
                 funcionarios.add(funcionario);
-                modeloTabela.addRow(new Object[]{nome, sexo, email, telefone, cpf, cep});
-                salvarDados();
+                modeloTabela.adicionar(funcionario.id);
+                registrarInclusao(funcionario);
                 JOptionPane.showMessageDialog(frame, "Funcionário cadastrado com sucesso!", "Sucesso", JOptionPane.INFORMATION_MESSAGE);
             } else {
                 JOptionPane.showMessageDialog(frame, "Nome inválido (mín. 3 letras, apenas letras e espaços)!", "Erro", JOptionPane.ERROR_MESSAGE);
@@ -1538,11 +2814,9 @@ private static void abrirTelaFuncionarios() {
             JOptionPane.showMessageDialog(frame, "Selecione um funcionário!", "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        String nomeSelecionado = String.valueOf(modeloTabela.getValueAt(row, 0));
-        Funcionario funcionario = funcionarios.stream().filter(f -> f.nome.equals(nomeSelecionado)).findFirst().orElse(null);
+        Funcionario funcionario = modeloTabela.entidade(row);
         if (funcionario == null) return;
 
-        int funcionarioIndex = funcionarios.indexOf(funcionario);
         JPanel panel = new JPanel(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.insets = new Insets(6, 10, 6, 10);
@@ -1613,35 +2887,40 @@ private static void abrirTelaFuncionarios() {
             String novoCEP = txtCEP.getText().trim();
             String novoSexo = comboSexo.getSelectedItem().equals("Outros") ? txtSexoOutros.getText().trim() : (String) comboSexo.getSelectedItem();
 
-            if (novoNome.length() >= 3 && Pattern.matches("[\\p{L}\\s]+", novoNome)) {
-                if (!novoEmail.isEmpty() && !Pattern.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$", novoEmail)) {
+            if (Validacao.letras(novoNome, 3)) {
+                if (!novoEmail.isEmpty() && !Validacao.email(novoEmail)) {
                     JOptionPane.showMessageDialog(frame, "Email inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                if (!novoTelefone.isEmpty() && !Pattern.matches("\\d{11}", novoTelefone)) {
+                if (!novoTelefone.isEmpty() && !Validacao.telefone(novoTelefone)) {
                     JOptionPane.showMessageDialog(frame, "Telefone deve ter 11 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 if (!novoCPF.isEmpty()) {
-                    if (!Pattern.matches("\\d{11}", novoCPF)) {
+                    if (!Validacao.digitos(novoCPF, 11)) {
                         JOptionPane.showMessageDialog(frame, "CPF deve ter 11 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
-                    if (funcionarios.stream().anyMatch(f -> !f.equals(funcionario) && f.cpf.equalsIgnoreCase(novoCPF))) {
+                    // CPF antigo sem dígitos verificadores válidos não impede editar os outros campos
+                    if (!novoCPF.equals(funcionario.cpf) && !Validacao.cpf(novoCPF)) {
+                        JOptionPane.showMessageDialog(frame, "CPF inválido (dígitos verificadores não conferem)!", "Erro", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    if (funcionariosPorCpf.existeOutro(IndiceUnico.normalizarCpf(novoCPF), funcionario)) {
                         JOptionPane.showMessageDialog(frame, "CPF já cadastrado!", "Erro", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
                 }
-                if (!novoCEP.isEmpty() && !Pattern.matches("\\d{8}", novoCEP)) {
+                if (!novoCEP.isEmpty() && !Validacao.cep(novoCEP)) {
                     JOptionPane.showMessageDialog(frame, "CEP deve ter 8 dígitos numéricos!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 if (comboSexo.getSelectedItem().equals("Outros") && 
-                    (novoSexo.isEmpty() || !Pattern.matches("[\\p{L}\\s]+", novoSexo) || novoSexo.length() < 2)) {
+                    !Validacao.letras(novoSexo, 2)) {
                     JOptionPane.showMessageDialog(frame, "Sexo inválido para 'Outros'!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                if (funcionarios.stream().anyMatch(f -> !f.equals(funcionario) && f.nome.equalsIgnoreCase(novoNome))) {
+                if (funcionariosPorNome.existeOutro(IndiceUnico.normalizarNome(novoNome), funcionario)) {
                     JOptionPane.showMessageDialog(frame, "Nome já existe!", "Erro", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
@@ -1651,13 +2930,8 @@ private static void abrirTelaFuncionarios() {
                 funcionario.cpf = novoCPF;
                 funcionario.cep = novoCEP;
                 funcionario.sexo = novoSexo;
-                modeloTabela.setValueAt(novoNome, row, 0);
-                modeloTabela.setValueAt(novoSexo, row, 1);
-                modeloTabela.setValueAt(novoEmail, row, 2);
-                modeloTabela.setValueAt(novoTelefone, row, 3);
-                modeloTabela.setValueAt(novoCPF, row, 4);
-                modeloTabela.setValueAt(novoCEP, row, 5);
-                salvarDados();
+                modeloTabela.alterada(row);
+                registrarAlteracao(funcionario);
                 JOptionPane.showMessageDialog(frame, "Funcionário editado com sucesso!", "Sucesso", JOptionPane.INFORMATION_MESSAGE);
             } else {
                 JOptionPane.showMessageDialog(frame, "Nome inválido (mín. 3 letras, apenas letras e espaços)!", "Erro", JOptionPane.ERROR_MESSAGE);
@@ -1671,15 +2945,14 @@ private static void abrirTelaFuncionarios() {
             JOptionPane.showMessageDialog(frame, "Selecione um funcionário!", "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        String nomeFuncionario = String.valueOf(modeloTabela.getValueAt(row, 0));
-        Funcionario funcionario = funcionarios.stream().filter(f -> f.nome.equals(nomeFuncionario)).findFirst().orElse(null);
+        Funcionario funcionario = modeloTabela.entidade(row);
         if (funcionario == null) return;
 
         int opcao = JOptionPane.showConfirmDialog(frame, "Deseja apagar o funcionário " + funcionario.nome + "?", "Confirmar Exclusão", JOptionPane.YES_NO_OPTION);
         if (opcao == JOptionPane.YES_OPTION) {
             funcionarios.remove(funcionario);
-            modeloTabela.removeRow(row);
-            salvarDados();
+            modeloTabela.remover(row);
+            registrarExclusao(funcionario);
             JOptionPane.showMessageDialog(frame, "Funcionário apagado com sucesso!", "Sucesso", JOptionPane.INFORMATION_MESSAGE);
         }
     });
@@ -1688,33 +2961,161 @@ private static void abrirTelaFuncionarios() {
     frame.setVisible(true);
 }
 
+    // Raças além destas somam numa linha só
+    private static final int RACAS_NO_RELATORIO = 10;
+
+    // Só formata: os números já vêm contados (Agregados)
+    static String gerarRelatorio(Agregados.Resumo dados) {
+        StringBuilder relatorio = new StringBuilder();
+        relatorio.append("Relatório do Sistema Petshop\n");
+        relatorio.append("Dados de ").append(FORMATO_DATA_HORA.format(
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(dados.momento), ZoneId.systemDefault()))).append("\n\n");
+        relatorio.append("Total de Clientes: ").append(dados.clientes).append("\n");
+        relatorio.append("Total de Animais: ").append(dados.animais).append("\n");
+        relatorio.append("Animais para Adoção: ").append(dados.paraAdocao).append("\n");
+        relatorio.append("Total de Agendamentos: ").append(dados.agendamentos).append("\n");
+        relatorio.append("Agendamentos Hoje: ").append(dados.agendamentosHoje).append("\n");
+        relatorio.append("Agendamentos nos Próximos 7 Dias: ").append(dados.agendamentosSemana).append("\n");
+        relatorio.append("Agendamentos neste Mês: ").append(dados.agendamentosMes).append("\n");
+        relatorio.append("Total de Produtos: ").append(dados.produtos).append("\n");
+        relatorio.append("Total de Vendas: ").append(dados.vendas).append("\n");
+        relatorio.append("Vendas Hoje: ").append(dados.vendasHoje[0]).append(" (").append(LivroVendas.reais(dados.vendasHoje[1])).append(")\n");
+        relatorio.append("Vendas neste Mês: ").append(dados.vendasMes[0]).append(" (").append(LivroVendas.reais(dados.vendasMes[1])).append(")\n");
+        relatorio.append("Total de Funcionários: ").append(dados.funcionarios).append("\n");
+        if (dados.animais == 0) return relatorio.toString();
+        relatorio.append("\nAnimais por Raça:\n");
+        int outras = 0;
+        for (int i = 0; i < dados.porRaca.size(); i++) {
+            Map.Entry<String, Integer> raca = dados.porRaca.get(i);
+            if (i < RACAS_NO_RELATORIO) relatorio.append("  ").append(raca.getKey()).append(": ").append(raca.getValue()).append("\n");
+            else outras += raca.getValue();
+        }
+        if (outras > 0) relatorio.append("  Outras: ").append(outras).append("\n");
+        relatorio.append("\nAnimais por Sexo:\n");
+        for (Map.Entry<String, Integer> sexo : dados.porSexo) {
+            relatorio.append("  ").append(sexo.getKey()).append(": ").append(sexo.getValue()).append("\n");
+        }
+        return relatorio.toString();
+    }
+
     private static void abrirTelaRelatorios() {
         JFrame frame = new JFrame("Relatórios");
-        frame.setSize(400, 300);
+        frame.setSize(640, 360);
         frame.setLayout(new FlowLayout());
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
-        JTextArea txtRelatorio = new JTextArea(10, 40);
+        JTextArea txtRelatorio = new JTextArea(14, 60);
         txtRelatorio.setEditable(false);
+        // As tabelas das análises ficam alinhadas em colunas
+        txtRelatorio.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
         JButton btnGerar = new JButton("Gerar Relatório");
+        JButton btnAnalises = new JButton("Análises do Histórico");
+        JButton btnExportar = new JButton("Exportar dados...");
 
         frame.add(btnGerar);
+        frame.add(btnAnalises);
+        frame.add(btnExportar);
         frame.add(new JScrollPane(txtRelatorio));
 
+        btnExportar.addActionListener(e -> exportarDados(frame));
+
         btnGerar.addActionListener(e -> {
-            StringBuilder relatorio = new StringBuilder();
-            relatorio.append("Relatório do Sistema Petshop\n\n");
-            relatorio.append("Total de Clientes: ").append(clientes.size()).append("\n");
-            relatorio.append("Total de Animais: ").append(animais.size()).append("\n");
-            relatorio.append("Animais para Adoção: ").append(animais.stream().filter(a -> a.paraAdocao).count()).append("\n");
-            relatorio.append("Total de Agendamentos: ").append(agendamentos.size()).append("\n");
-            relatorio.append("Total de Produtos: ").append(produtos.size()).append("\n");
-            relatorio.append("Total de Vendas: ").append(vendas.size()).append("\n");
-            relatorios.add("Total de Funcionários: " + funcionarios.size());
-            txtRelatorio.setText(relatorio.toString());
+            // Os contadores já estão em dia; só o primeiro relatório conta os cadastros, e essa
+            // contagem fica fora da EDT
+            btnGerar.setEnabled(false);
+            Thread thread = new Thread(() -> {
+                try {
+                    String texto = gerarRelatorio(Agregados.resumo());
+                    SwingUtilities.invokeLater(() -> {
+                        txtRelatorio.setText(texto);
+                        txtRelatorio.setCaretPosition(0);
+                    });
+                } catch (RuntimeException ex) {
+                    mostrarErro("Erro ao gerar relatório: " + ex.getMessage());
+                } finally {
+                    SwingUtilities.invokeLater(() -> btnGerar.setEnabled(true));
+                }
+            }, "petshop-relatorio");
+            thread.setDaemon(true);
+            thread.start();
+        });
+
+        btnAnalises.addActionListener(e -> {
+            // O instantâneo é pedido da thread das análises, que monta o que faltar sem segurar a
+            // EDT; as contas rodam em paralelo
+            btnAnalises.setEnabled(false);
+            Thread thread = new Thread(() -> {
+                try {
+                    Repositorio.Instantaneo dados = Repositorio.instantaneo();
+                    String texto = Analises.texto(Analises.analisar(dados), dados);
+                    SwingUtilities.invokeLater(() -> {
+                        txtRelatorio.setText(texto);
+                        txtRelatorio.setCaretPosition(0);
+                    });
+                } catch (RuntimeException ex) {
+                    mostrarErro("Erro ao gerar análises: " + ex.getMessage());
+                } finally {
+                    SwingUtilities.invokeLater(() -> btnAnalises.setEnabled(true));
+                }
+            }, "petshop-analises");
+            thread.setDaemon(true);
+            thread.start();
         });
 
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
-}
\ No newline at end of file
+
+    private static final String EXPORTAR_CSV = "CSV";
+    private static final String EXPORTAR_JSON = "JSON Lines";
+
+    // Um arquivo por tipo de cadastro na pasta escolhida. As perguntas ficam na EDT; os arquivos
+    // são escritos em outra thread a partir de um instantâneo
+    private static void exportarDados(JFrame pai) {
+        String[] formatos = {EXPORTAR_CSV, EXPORTAR_JSON};
+        String formato = (String) JOptionPane.showInputDialog(pai, "Formato dos arquivos:", "Exportar dados",
+                JOptionPane.QUESTION_MESSAGE, null, formatos, formatos[0]);
+        if (formato == null) return;
+        JFileChooser seletor = new JFileChooser();
+        seletor.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (seletor.showSaveDialog(pai) != JFileChooser.APPROVE_OPTION) return;
+        Path pasta = seletor.getSelectedFile().toPath();
+
+        try {
+            long desde = 0;
+            long desdeVenda = 0;
+            long anterior = Exportador.marcaAnterior(pasta);
+            if (anterior > 0) {
+                int resposta = JOptionPane.showConfirmDialog(pai,
+                        "Esta pasta já recebeu uma exportação em " + FORMATO_DATA_HORA.format(
+                                LocalDateTime.ofInstant(Instant.ofEpochMilli(anterior), ZoneId.systemDefault()))
+                                + ".\nExportar só o que mudou desde então?\n(Exclusões só aparecem numa exportação completa.)",
+                        "Exportar dados", JOptionPane.YES_NO_CANCEL_OPTION);
+                if (resposta == JOptionPane.CANCEL_OPTION || resposta == JOptionPane.CLOSED_OPTION) return;
+                if (resposta == JOptionPane.YES_OPTION) {
+                    desde = anterior;
+                    desdeVenda = Exportador.ultimaVendaAnterior(pasta);
+                }
+            }
+            // Os arquivos são escritos fora da EDT, a partir de um instantâneo dos dados
+            long marca = desde;
+            long marcaVenda = desdeVenda;
+            Thread thread = new Thread(() -> {
+                try {
+                    Exportador.Resultado resultado = new Exportador(pasta, EXPORTAR_JSON.equals(formato)).exportar(marca, marcaVenda);
+                    StringBuilder mensagem = new StringBuilder(marca > 0 ? "Exportação incremental concluída:\n" : "Exportação concluída:\n");
+                    for (Map.Entry<String, Integer> arquivo : resultado.registros.entrySet()) {
+                        mensagem.append(arquivo.getKey()).append(": ").append(arquivo.getValue()).append(" registro(s)\n");
+                    }
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(pai, mensagem.toString()));
+                } catch (IOException | RuntimeException ex) {
+                    mostrarErro("Erro ao exportar dados: " + ex.getMessage());
+                }
+            }, "petshop-exportacao");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException ex) {
+            mostrarErro("Erro ao exportar dados: " + ex.getMessage());
+        }
+    }
+}
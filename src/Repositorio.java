@@ -0,0 +1,485 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+// Leitura dos cadastros fora da thread dona das listas (exportação, API). As listas e os índices continuam de uma thread só (a EDT na interface), que é a única
+// que altera; quem está em outra thread pede um Instantaneo: as linhas de todos os tipos como
+// estavam num mesmo momento, com os valores das colunas da exportação, imutáveis e sem trava para
+// ler. O instantâneo é montado na thread dona na primeira leitura depois de uma alteração e
+// reaproveitado até a próxima; a montagem parte das Linhas anteriores e só refaz as linhas dos
+// registros alterados, copiando os blocos e as partes do mapa de posições em que eles estão
+// (copy-on-write), então custa o número de alterações e não o de registros. Quem guarda um
+// instantâneo (exportação) continua lendo aquela versão pelo tempo que precisar, sem segurar as
+// alterações das telas.
+//
+// O instantâneo atual fica guardado (o custo de memória é o de uma linha por registro), para
+// nenhuma leitura depois da primeira precisar montar tudo de novo. Montar do zero só acontece na
+// primeira leitura de um tipo e depois de muitas alterações sem leitura; pedido de outra thread,
+// isso é feito na thread de quem pediu, sobre cópias das listas tiradas na thread dona
+// (CodecBinario.congelada), e as alterações feitas enquanto isso são aplicadas por cima.
+class Repositorio {
+    // Com mais registros alterados que isso sem ninguém ler, o tipo é montado do zero na próxima leitura
+    private static final int LIMITE_ALTERADOS = 1 << 16;
+    // Acima disso, a leitura de outra thread monta o tipo do zero na thread dela em vez de
+    // aplicar as alterações na thread dona
+    private static final int ALTERADOS_NA_DONA = 4096;
+    private static final byte[] TIPOS = {Diario.CLIENTE, Diario.ANIMAL, Diario.AGENDAMENTO, Diario.FUNCIONARIO};
+    // Marca de exclusão em alterados
+    private static final Object EXCLUIDA = new Object();
+
+    // Linhas de um tipo, na ordem da lista. Ficam em blocos de tamanho fixo e cada id tem uma
+    // vaga (bloco * TAMANHO_BLOCO + índice) que não muda: a exclusão deixa a vaga vazia e a
+    // inclusão ocupa a próxima vaga do fim, como na lista. Para as posições contínuas de get e
+    // posicao, cada bloco com vagas vazias guarda as ocupadas e antes[b] conta as linhas dos
+    // blocos anteriores.
+    static final class Linhas extends AbstractList<Object[]> {
+        private static final int TAMANHO_BLOCO = 1024;
+        // Registros por parte do mapa de posições (uma alteração copia só a parte do id)
+        private static final int POR_PARTE = 1024;
+
+        final Exportador.Tabela<?> tabela;
+        private final Object[][][] blocos;
+        // null = bloco sem vagas vazias
+        private final int[][] ocupadas;
+        private final int[] antes;
+        private final int vagas;
+        private final HashMap<Long, Integer>[] partes;
+
+        private Linhas(Exportador.Tabela<?> tabela, Object[][][] blocos, int[][] ocupadas, int vagas, HashMap<Long, Integer>[] partes) {
+            this.tabela = tabela;
+            this.blocos = blocos;
+            this.ocupadas = ocupadas;
+            this.vagas = vagas;
+            this.partes = partes;
+            this.antes = new int[blocos.length + 1];
+            for (int b = 0; b < blocos.length; b++) {
+                antes[b + 1] = antes[b] + (ocupadas[b] != null ? ocupadas[b].length : Math.min(TAMANHO_BLOCO, vagas - b * TAMANHO_BLOCO));
+            }
+        }
+
+        // Todas as linhas da lista, do zero
+        static <T> Linhas montar(Exportador.Tabela<T> tabela) {
+            return montar(tabela, tabela.lista.get());
+        }
+
+        // O mesmo sobre uma cópia da lista, em qualquer thread
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static <T> Linhas montar(Exportador.Tabela<T> tabela, List<T> lista) {
+            int quantidade = lista.size();
+            Object[][][] blocos = new Object[(quantidade + TAMANHO_BLOCO - 1) / TAMANHO_BLOCO][][];
+            HashMap<Long, Integer>[] partes = new HashMap[Integer.highestOneBit(Math.max(1, quantidade / POR_PARTE))];
+            for (int p = 0; p < partes.length; p++) partes[p] = new HashMap<>(quantidade / partes.length * 2 + 16);
+            for (int i = 0; i < quantidade; i++) {
+                if (i % TAMANHO_BLOCO == 0) blocos[i / TAMANHO_BLOCO] = new Object[TAMANHO_BLOCO][];
+                Object[] linha = tabela.valores.valores(ListaPreguicosa.semGuardar(lista, i));
+                blocos[i / TAMANHO_BLOCO][i % TAMANHO_BLOCO] = linha;
+                partes[parte((Long) linha[0], partes.length)].put((Long) linha[0], i);
+            }
+            return new Linhas(tabela, blocos, new int[blocos.length][], quantidade, partes);
+        }
+
+        private static int parte(long id, int partes) {
+            return Long.hashCode(id * 0x9E3779B97F4A7C15L) & (partes - 1);
+        }
+
+        // Estas linhas com as alterações (id -> entidade ou EXCLUIDA, na ordem em que apareceram),
+        // sem mexer nelas. null se o resultado não bate com o fim da lista (a lista mudou sem
+        // passar por alterado); quem chama monta do zero
+        @SuppressWarnings("unchecked")
+        <T> Linhas aplicar(Map<Long, Object> alteracoes) {
+            Exportador.Tabela<T> tabela = (Exportador.Tabela<T>) this.tabela;
+            Object[][][] blocos = this.blocos.clone();
+            int[][] ocupadas = this.ocupadas.clone();
+            HashMap<Long, Integer>[] partes = this.partes.clone();
+            boolean[] blocoCopiado = new boolean[blocos.length];
+            boolean[] parteCopiada = new boolean[partes.length];
+            int vagas = this.vagas;
+            ArrayList<Long> incluidos = new ArrayList<>();
+            for (Map.Entry<Long, Object> alteracao : alteracoes.entrySet()) {
+                long id = alteracao.getKey();
+                boolean excluida = alteracao.getValue() == EXCLUIDA;
+                int p = parte(id, partes.length);
+                Integer vaga = partes[p].get(id);
+                if (vaga == null && excluida) continue;
+                // Só inclusões e exclusões mexem no mapa de posições
+                if ((vaga == null || excluida) && !parteCopiada[p]) {
+                    partes[p] = new HashMap<>(partes[p]);
+                    parteCopiada[p] = true;
+                }
+                if (vaga == null) {
+                    vaga = vagas++;
+                    partes[p].put(id, vaga);
+                    incluidos.add(id);
+                    if (vaga / TAMANHO_BLOCO == blocos.length) {
+                        blocos = Arrays.copyOf(blocos, blocos.length + 1);
+                        ocupadas = Arrays.copyOf(ocupadas, blocos.length);
+                        blocoCopiado = Arrays.copyOf(blocoCopiado, blocos.length);
+                        blocos[blocos.length - 1] = new Object[TAMANHO_BLOCO][];
+                        blocoCopiado[blocos.length - 1] = true;
+                    }
+                } else if (excluida) {
+                    partes[p].remove(id);
+                }
+                int b = vaga / TAMANHO_BLOCO;
+                if (!blocoCopiado[b]) {
+                    blocos[b] = blocos[b].clone();
+                    blocoCopiado[b] = true;
+                }
+                blocos[b][vaga % TAMANHO_BLOCO] = excluida ? null : tabela.valores.valores((T) alteracao.getValue());
+            }
+            for (int b = 0; b < blocos.length; b++) {
+                if (blocoCopiado[b]) ocupadas[b] = ocupadas(blocos[b], Math.min(TAMANHO_BLOCO, vagas - b * TAMANHO_BLOCO));
+            }
+            Linhas novas = new Linhas(tabela, blocos, ocupadas, vagas, partes);
+            // As inclusões vão para o fim da lista, na mesma ordem
+            List<T> lista = tabela.lista.get();
+            if (novas.size() != lista.size()) return null;
+            for (int i = 0; i < incluidos.size(); i++) {
+                if (id(lista, lista.size() - incluidos.size() + i) != incluidos.get(i)) return null;
+            }
+            return novas;
+        }
+
+        // Vagas ocupadas do bloco, ou null se estão todas
+        private static int[] ocupadas(Object[][] bloco, int usadas) {
+            int quantidade = 0;
+            for (int i = 0; i < usadas; i++) {
+                if (bloco[i] != null) quantidade++;
+            }
+            if (quantidade == usadas) return null;
+            int[] ocupadas = new int[quantidade];
+            quantidade = 0;
+            for (int i = 0; i < usadas; i++) {
+                if (bloco[i] != null) ocupadas[quantidade++] = i;
+            }
+            return ocupadas;
+        }
+
+        @Override
+        public Object[] get(int i) {
+            if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("Índice " + i + ", tamanho " + size());
+            // Último bloco com antes[b] <= i, que não pode ser um bloco vazio
+            int b = 0;
+            int fim = blocos.length - 1;
+            while (b < fim) {
+                int meio = (b + fim + 1) >>> 1;
+                if (antes[meio] <= i) b = meio;
+                else fim = meio - 1;
+            }
+            int k = i - antes[b];
+            return blocos[b][ocupadas[b] == null ? k : ocupadas[b][k]];
+        }
+
+        @Override
+        public int size() {
+            return antes[blocos.length];
+        }
+
+        // Percorre os blocos em sequência, sem a busca de get por linha
+        @Override
+        public Iterator<Object[]> iterator() {
+            return new Iterator<Object[]>() {
+                private int bloco;
+                private int k;
+
+                @Override
+                public boolean hasNext() {
+                    while (bloco < blocos.length && k == antes[bloco + 1] - antes[bloco]) {
+                        bloco++;
+                        k = 0;
+                    }
+                    return bloco < blocos.length;
+                }
+
+                @Override
+                public Object[] next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    int vaga = ocupadas[bloco] == null ? k : ocupadas[bloco][k];
+                    k++;
+                    return blocos[bloco][vaga];
+                }
+            };
+        }
+
+        // null se o id não está listado neste tipo
+        Object[] porId(long id) {
+            Integer vaga = partes[parte(id, partes.length)].get(id);
+            return vaga == null ? null : blocos[vaga / TAMANHO_BLOCO][vaga % TAMANHO_BLOCO];
+        }
+
+        // -1 se o id não está listado neste tipo
+        int posicao(long id) {
+            Integer vaga = partes[parte(id, partes.length)].get(id);
+            if (vaga == null) return -1;
+            int b = vaga / TAMANHO_BLOCO;
+            return antes[b] + (ocupadas[b] == null ? vaga % TAMANHO_BLOCO : Arrays.binarySearch(ocupadas[b], vaga % TAMANHO_BLOCO));
+        }
+    }
+
+    static final class Instantaneo {
+        // Alterações feitas até este instantâneo (ver versao())
+        final long versao;
+        // Quando foi montado (System.currentTimeMillis)
+        final long momento;
+        private final Linhas[] tipos;
+        final List<LivroVendas.Produto> produtos;
+        final List<LivroVendas.Venda> vendas;
+
+        private Instantaneo(long versao, Linhas[] tipos, List<LivroVendas.Produto> produtos, List<LivroVendas.Venda> vendas) {
+            this.versao = versao;
+            this.momento = System.currentTimeMillis();
+            this.tipos = tipos;
+            this.produtos = produtos;
+            this.vendas = vendas;
+        }
+
+        Linhas linhas(byte tipo) {
+            return tipos[indice(tipo)];
+        }
+    }
+
+    // Tipos copiados na thread dona para serem montados do zero em outra thread
+    private static final class Montagem {
+        // null = o tipo não precisa
+        final List<?>[] listas = new List<?>[TIPOS.length];
+        final int[] descartes = new int[TIPOS.length];
+        // Quando nenhum tipo precisa ser montado do zero
+        Instantaneo pronto;
+    }
+
+    // Só a thread dona escreve; volatile para os leitores saberem se o instantâneo ainda vale
+    private static volatile long versao;
+    private static volatile Instantaneo atual;
+    // Por tipo, as últimas Linhas montadas (null = montar do zero) e as alterações desde então:
+    // id -> entidade ou EXCLUIDA. Só a thread dona mexe
+    private static final Linhas[] ultimas = new Linhas[TIPOS.length];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final LinkedHashMap<Long, Object>[] alterados = new LinkedHashMap[TIPOS.length];
+    // Enquanto há montagens do tipo em outra thread, as alterações desde a cópia da primeira delas.
+    // As que copiaram depois recebem alterações a mais, o que não muda o resultado: aplicar uma
+    // alteração que a cópia já tinha refaz a mesma linha
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final LinkedHashMap<Long, Object>[] desdeCopia = new LinkedHashMap[TIPOS.length];
+    private static final int[] emAndamento = new int[TIPOS.length];
+    // Conta as vezes em que desdeCopia passou do limite e foi descartado: uma montagem que começou
+    // antes disso perdeu alterações e não pode ser usada
+    private static final int[] descartes = new int[TIPOS.length];
+    private static boolean listasAlteradas;
+
+    static {
+        for (int t = 0; t < TIPOS.length; t++) {
+            alterados[t] = new LinkedHashMap<>();
+            desdeCopia[t] = new LinkedHashMap<>();
+        }
+    }
+
+    // Quem monta os instantâneos pedidos de outras threads; sem dono (linha de comando) a
+    // própria thread que pede é a dona
+    private static volatile Executor dono;
+    private static volatile BooleanSupplier naThreadDona;
+    // Avisado na thread dona a cada alteração, com o id (0 para o livro de vendas); a versão já
+    // inclui a alteração
+    static LongConsumer ouvinte;
+
+    static void definirDono(Executor executor, BooleanSupplier naThreadDona) {
+        Repositorio.naThreadDona = naThreadDona;
+        Repositorio.dono = executor;
+    }
+
+    static long versao() {
+        return versao;
+    }
+
+    // Chamado na thread dona depois de cada inclusão, alteração ou exclusão, já com as listas
+    // atualizadas (e para os animais que uma exclusão de cliente alterou)
+    static void alterado(Object entidade, boolean excluida) {
+        long id = PetshopSystemSwing.idEntidade(entidade);
+        Agregados.alterado(entidade, excluida);
+        int t = indice(PetshopSystemSwing.tipoEntidade(entidade));
+        // Uma entidade alterada várias vezes fica na posição da primeira, então as inclusões
+        // continuam na ordem da lista
+        if (ultimas[t] == null || alterados[t].size() >= LIMITE_ALTERADOS) {
+            ultimas[t] = null;
+            alterados[t].clear();
+        } else {
+            alterados[t].put(id, excluida ? EXCLUIDA : entidade);
+        }
+        if (emAndamento[t] > 0 && desdeCopia[t].size() >= LIMITE_ALTERADOS) {
+            desdeCopia[t].clear();
+            descartes[t]++;
+        } else if (emAndamento[t] > 0) {
+            desdeCopia[t].put(id, excluida ? EXCLUIDA : entidade);
+        }
+        versao++;
+        LongConsumer ouvinte = Repositorio.ouvinte;
+        if (ouvinte != null) ouvinte.accept(id);
+    }
+
+    // Produtos e vendas, que ficam no livro de vendas e não no diário
+    static void alteradasListas() {
+        listasAlteradas = true;
+        versao++;
+        LongConsumer ouvinte = Repositorio.ouvinte;
+        if (ouvinte != null) ouvinte.accept(0);
+    }
+
+    // O estado atual; sem trava quando nada mudou desde o último instantâneo. Fora da thread dona,
+    // o que precisar ser montado do zero é montado aqui
+    static Instantaneo instantaneo() {
+        Instantaneo instantaneo = atual;
+        if (instantaneo != null && instantaneo.versao == versao) return instantaneo;
+        Executor executor = dono;
+        if (executor == null || naThreadDona.getAsBoolean()) return montar();
+        while (true) {
+            Montagem montagem = naDona(Repositorio::preparar);
+            if (montagem.pronto != null) return montagem.pronto;
+            Linhas[] montadas = new Linhas[TIPOS.length];
+            try {
+                for (int t = 0; t < TIPOS.length; t++) {
+                    if (montagem.listas[t] != null) montadas[t] = montar(Exportador.tabela(TIPOS[t]), montagem.listas[t]);
+                }
+            } finally {
+                // null se as alterações de algum tipo foram descartadas durante a montagem (raro)
+                instantaneo = naDona(() -> instalar(montagem, montadas));
+            }
+            if (instantaneo != null) return instantaneo;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Linhas montar(Exportador.Tabela<T> tabela, List<?> lista) {
+        return Linhas.montar(tabela, (List<T>) lista);
+    }
+
+    // Roda na thread dona e espera o resultado; direto, se já está nela ou se não há dona
+    static <T> T naDona(Callable<T> calculo) {
+        Executor executor = dono;
+        if (executor == null || naThreadDona.getAsBoolean()) {
+            try {
+                return calculo.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Erro ao ler os dados: " + e, e);
+            }
+        }
+        FutureTask<T> tarefa = new FutureTask<>(calculo);
+        executor.execute(tarefa);
+        try {
+            return tarefa.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido esperando os dados", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Erro ao ler os dados: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // Na thread dona: cópias das listas dos tipos sem Linhas ou com alterações demais para
+    // aplicar aqui, ou o instantâneo, se nenhum tipo precisa ser montado do zero
+    private static Montagem preparar() {
+        Montagem montagem = new Montagem();
+        boolean copiou = false;
+        for (int t = 0; t < TIPOS.length; t++) {
+            if (!montarFora(t)) continue;
+            montagem.listas[t] = congelada(TIPOS[t]);
+            montagem.descartes[t] = descartes[t];
+            if (emAndamento[t]++ == 0) desdeCopia[t].clear();
+            copiou = true;
+        }
+        if (!copiou) montagem.pronto = montar();
+        return montagem;
+    }
+
+    private static boolean montarFora(int t) {
+        return ultimas[t] == null || alterados[t].size() > ALTERADOS_NA_DONA;
+    }
+
+    // Na thread dona: as Linhas montadas em outra thread, com as alterações feitas desde a cópia.
+    // Se outro pedido já instalou as dele, estas são descartadas
+    private static Instantaneo instalar(Montagem montagem, Linhas[] montadas) {
+        for (int t = 0; t < TIPOS.length; t++) {
+            if (montagem.listas[t] == null) continue;
+            Linhas linhas = montadas[t] == null || !montarFora(t) || descartes[t] != montagem.descartes[t]
+                    ? null : montadas[t].aplicar(desdeCopia[t]);
+            if (--emAndamento[t] == 0) desdeCopia[t].clear();
+            if (linhas == null) continue;
+            ultimas[t] = linhas;
+            alterados[t].clear();
+        }
+        for (int t = 0; t < TIPOS.length; t++) {
+            if (montarFora(t)) return null;
+        }
+        return montar();
+    }
+
+    private static List<?> congelada(byte tipo) {
+        switch (tipo) {
+            case Diario.CLIENTE:
+                return CodecBinario.congelada(PetshopSystemSwing.clientes, PetshopSystemSwing.Cliente::copia);
+            case Diario.ANIMAL:
+                return CodecBinario.congelada(PetshopSystemSwing.animais, PetshopSystemSwing.Animal::copia);
+            case Diario.AGENDAMENTO:
+                return CodecBinario.congelada(PetshopSystemSwing.agendamentos, PetshopSystemSwing.Agendamento::copia);
+            default:
+                return CodecBinario.congelada(PetshopSystemSwing.funcionarios, PetshopSystemSwing.Funcionario::copia);
+        }
+    }
+
+    // Na thread dona. Vários pedidos enfileirados juntos montam um instantâneo só
+    private static Instantaneo montar() {
+        Instantaneo anterior = atual;
+        if (anterior != null && anterior.versao == versao) return anterior;
+        Linhas[] tipos = new Linhas[TIPOS.length];
+        for (int t = 0; t < TIPOS.length; t++) {
+            Linhas ultimas = Repositorio.ultimas[t];
+            if (ultimas != null && alterados[t].isEmpty()) {
+                tipos[t] = ultimas;
+                continue;
+            }
+            tipos[t] = ultimas == null ? null : ultimas.aplicar(alterados[t]);
+            if (tipos[t] == null) tipos[t] = Linhas.montar(Exportador.tabela(TIPOS[t]));
+            Repositorio.ultimas[t] = tipos[t];
+            alterados[t].clear();
+        }
+        LivroVendas livro = PetshopSystemSwing.livroVendas;
+        List<LivroVendas.Produto> produtos = anterior != null && !listasAlteradas ? anterior.produtos
+                : livro != null ? livro.produtos() : List.of();
+        // As vendas só crescem: a lista do livro já é o prefixo imutável até aqui, sem cópia
+        List<LivroVendas.Venda> vendas = livro != null ? livro.vendas() : List.of();
+        listasAlteradas = false;
+        Instantaneo instantaneo = new Instantaneo(versao, tipos, produtos, vendas);
+        atual = instantaneo;
+        return instantaneo;
+    }
+
+    private static <T> long id(List<T> lista, int i) {
+        // O id sai do arquivo mapeado sem decodificar o registro
+        return lista instanceof ListaPreguicosa ? ((ListaPreguicosa<T>) lista).id(i) : PetshopSystemSwing.idEntidade(lista.get(i));
+    }
+
+    private static int indice(byte tipo) {
+        switch (tipo) {
+            case Diario.CLIENTE:
+                return 0;
+            case Diario.ANIMAL:
+                return 1;
+            case Diario.AGENDAMENTO:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.*;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Persistência assíncrona: uma única thread grava o diário, os snapshots e o livro de vendas,
+// então a thread do Swing (EDT) só codifica a alteração e segue em frente.
+class ServicoPersistencia {
+    // Fila limitada: se o disco não acompanhar, quem grava espera (back-pressure)
+    private static final int CAPACIDADE_FILA = 4096;
+    private static final int MAXIMO_POR_LOTE = 512;
+    // Tempo que o gravador espera por mais alterações antes de gravar, juntando rajadas em um único fsync
+    private static final long ESPERA_LOTE_MS = 20;
+    private static final long ESPERA_ENCERRAMENTO_MS = 10_000;
+
+    private static final Object FIM = new Object();
+
+    // Registro já codificado do livro de vendas
+    private static class Lancamento {
+        final byte[] dados;
+
+        Lancamento(byte[] dados) {
+            this.dados = dados;
+        }
+    }
+
+    // A codificação fica para a thread de gravação (ver CodecBinario.Congelado)
+    private static class Snapshot {
+        final Supplier<byte[]> dados;
+        final long geracao;
+
+        Snapshot(Supplier<byte[]> dados, long geracao) {
+            this.dados = dados;
+            this.geracao = geracao;
+        }
+    }
+
+    private final BlockingQueue<Object> fila = new ArrayBlockingQueue<>(CAPACIDADE_FILA);
+    private final Path arquivoDados;
+    private final Diario diario;
+    // null = sem livro de vendas (não abriu)
+    private final LivroVendas livro;
+    private final Consumer<IOException> tratadorErro;
+    private final Thread gravador;
+    private volatile boolean encerrado;
+
+    ServicoPersistencia(Path arquivoDados, Diario diario, LivroVendas livro, Consumer<IOException> tratadorErro) {
+        this.arquivoDados = arquivoDados;
+        this.diario = diario;
+        this.livro = livro;
+        this.tratadorErro = tratadorErro;
+        this.gravador = new Thread(this::executar, "petshop-persistencia");
+        // Daemon para não segurar a JVM; o gancho de encerramento esvazia a fila antes de sair
+        this.gravador.setDaemon(true);
+        this.gravador.start();
+    }
+
+    void gravar(Diario.Registro registro) {
+        enfileirar(registro);
+    }
+
+    void gravarLancamento(byte[] dados) {
+        enfileirar(new Lancamento(dados));
+    }
+
+    void gravarSnapshot(byte[] dados, long geracao) {
+        enfileirar(new Snapshot(() -> dados, geracao));
+    }
+
+    void gravarSnapshot(CodecBinario.Congelado congelado) {
+        enfileirar(new Snapshot(congelado::codificar, congelado.geracao));
+    }
+
+    private void enfileirar(Object tarefa) {
+        if (encerrado) {
+            tratadorErro.accept(new IOException("Persistência já encerrada"));
+            return;
+        }
+        try {
+            fila.put(tarefa);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tratadorErro.accept(new InterruptedIOException("Gravação interrompida"));
+        }
+    }
+
+    // Espera tudo o que já foi enfileirado chegar ao disco e fecha o diário. Se o gravador não
+    // termina a tempo, os arquivos ficam abertos para ele: fechar no meio de uma gravação perderia
+    // o que ainda estava na fila
+    void encerrar() {
+        if (encerrado) return;
+        encerrado = true;
+        try {
+            fila.put(FIM);
+            gravador.join(ESPERA_ENCERRAMENTO_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (gravador.isAlive()) {
+            tratadorErro.accept(new IOException("A gravação não terminou em " + ESPERA_ENCERRAMENTO_MS / 1000
+                    + " s; o diário não foi fechado e as últimas alterações podem não ter sido gravadas"));
+            return;
+        }
+        try {
+            diario.close();
+        } catch (IOException e) {
+            tratadorErro.accept(e);
+        }
+        if (livro != null) {
+            try {
+                livro.close();
+            } catch (IOException e) {
+                tratadorErro.accept(e);
+            }
+        }
+    }
+
+    private void executar() {
+        ArrayList<Object> lote = new ArrayList<>();
+        boolean fim = false;
+        while (!fim) {
+            try {
+                Object tarefa = fila.take();
+                lote.add(tarefa);
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESPERA_LOTE_MS);
+                while (tarefa != FIM && lote.size() < MAXIMO_POR_LOTE) {
+                    tarefa = fila.poll(limite - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (tarefa == null) break;
+                    lote.add(tarefa);
+                }
+            } catch (InterruptedException e) {
+                fim = true;
+            }
+            fim |= processar(lote);
+            lote.clear();
+        }
+    }
+
+    private boolean processar(List<Object> lote) {
+        ArrayList<Diario.Registro> registros = new ArrayList<>();
+        ArrayList<byte[]> lancamentos = new ArrayList<>();
+        for (Object tarefa : lote) {
+            if (tarefa instanceof Diario.Registro) {
+                registros.add((Diario.Registro) tarefa);
+                continue;
+            }
+            if (tarefa instanceof Lancamento) {
+                lancamentos.add(((Lancamento) tarefa).dados);
+                continue;
+            }
+            gravarRegistros(registros);
+            gravarLancamentos(lancamentos);
+            if (tarefa == FIM) {
+                return true;
+            }
+            gravarSnapshotAgora((Snapshot) tarefa);
+        }
+        gravarRegistros(registros);
+        gravarLancamentos(lancamentos);
+        return false;
+    }
+
+    private void gravarRegistros(List<Diario.Registro> registros) {
+        if (registros.isEmpty()) return;
+        try {
+            diario.registrarLote(coalescer(registros));
+            diario.sincronizar();
+        } catch (IOException e) {
+            tratadorErro.accept(e);
+        }
+        registros.clear();
+    }
+
+    private void gravarLancamentos(List<byte[]> lancamentos) {
+        if (lancamentos.isEmpty()) return;
+        try {
+            if (livro == null) throw new IOException("livro de vendas indisponível");
+            livro.registrarLote(lancamentos);
+            livro.sincronizar();
+        } catch (IOException e) {
+            tratadorErro.accept(e);
+        }
+        lancamentos.clear();
+    }
+
+    // Uma alteração seguida de outra alteração da mesma entidade no mesmo lote é descartada:
+    // os registros de alteração carregam o estado completo da entidade. Antes de uma exclusão
+    // ela é mantida, porque a entidade excluída ainda pode ser referenciada (animal de um agendamento)
+    private static List<Diario.Registro> coalescer(List<Diario.Registro> registros) {
+        HashMap<Long, Integer> ultimaAlteracao = new HashMap<>();
+        for (int i = 0; i < registros.size(); i++) {
+            if (registros.get(i).operacao == Diario.ALTERACAO) ultimaAlteracao.put(registros.get(i).id, i);
+        }
+        ArrayList<Diario.Registro> resultado = new ArrayList<>(registros.size());
+        for (int i = 0; i < registros.size(); i++) {
+            Diario.Registro registro = registros.get(i);
+            boolean substituido = registro.operacao == Diario.ALTERACAO && ultimaAlteracao.get(registro.id) != i;
+            if (!substituido) {
+                resultado.add(registro);
+            }
+        }
+        return resultado;
+    }
+
+    // Grava o snapshot em um arquivo temporário, troca o arquivo de dados atomicamente
+    // e zera o diário para a nova geração
+    private void gravarSnapshotAgora(Snapshot snapshot) {
+        Path temporario = Paths.get(arquivoDados + ".tmp");
+        Path pendente = pendente(arquivoDados);
+        byte[] dados;
+        try {
+            dados = snapshot.dados.get();
+        } catch (RuntimeException e) {
+            // O diário não é zerado, então nada se perde; a thread de gravação continua viva
+            tratadorErro.accept(new IOException("Falha ao codificar o snapshot", e));
+            return;
+        }
+        try {
+            try (FileOutputStream fos = new FileOutputStream(temporario.toFile())) {
+                fos.write(dados);
+                fos.getFD().sync();
+            }
+            // Um pendente antigo não pode sobreviver a um snapshot mais novo
+            Files.deleteIfExists(pendente);
+            try {
+                Files.move(temporario, arquivoDados, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileSystemException e) {
+                // No Windows o arquivo de dados mapeado em memória não pode ser substituído:
+                // o snapshot fica ao lado e é promovido na próxima abertura (promoverPendente)
+                Files.move(temporario, pendente, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            diario.reiniciar(snapshot.geracao);
+        } catch (IOException e) {
+            tratadorErro.accept(e);
+        }
+    }
+
+    // Chamado antes de abrir o arquivo de dados
+    static void promoverPendente(Path arquivoDados) throws IOException {
+        Path pendente = pendente(arquivoDados);
+        if (Files.exists(pendente)) {
+            Files.move(pendente, arquivoDados, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static Path pendente(Path arquivoDados) {
+        return Paths.get(arquivoDados + ".novo");
+    }
+}
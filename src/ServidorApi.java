@@ -0,0 +1,819 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+// API HTTP/JSON sobre os dados abertos neste processo, para os terminais do balcão usarem um só
+// armazenamento. As requisições chegam num pool de threads, mas todo acesso às listas e índices é
+// entregue à thread dona deles (a EDT quando a tela hospeda o servidor, uma thread própria na
+// linha de comando), como qualquer alteração feita pelas telas. Só o JSON da requisição é lido e
+// a resposta enviada fora dela.
+//
+//   GET    /api/{tipo}?busca=&inicio=&limite=   lista (agendamentos aceitam também de= e ate=, datas ISO)
+//   GET    /api/{tipo}/{id}
+//   POST   /api/{tipo}                          inclui com id novo
+//   PUT    /api/{tipo}/{id}                     inclui ou altera; campo ausente mantém o valor
+//   DELETE /api/{tipo}/{id}
+//   GET    /api/dados                           tudo, para um terminal começar
+//   GET    /api/alteracoes?desde=               o que mudou depois da sequência informada
+//   POST   /api/ids?quantidade=                 reserva uma faixa de ids para um terminal
+//   GET    /api/estoque                         saldo de cada SKU (disponível, reservado, mínimo)
+//   POST   /api/vendas                          {sku, quantidade, cliente}: reserva no estoque e registra a venda
+//   GET    /api/relatorio?reconstruir=1         texto da tela Relatórios; reconstruir confere os contadores
+//
+// {tipo} é clientes, animais, agendamentos ou funcionarios, com os campos da exportação. As regras
+// são as das telas: campos validados, CPF e nome únicos, horário sem conflito na agenda.
+class ServidorApi {
+    private static final int THREADS = 16;
+    private static final int TAMANHO_MAXIMO_CORPO = 1 << 20;
+    // Alterações lembradas para os terminais; um terminal mais atrasado que isso recarrega tudo
+    private static final int CAPACIDADE_ALTERACOES = 1 << 16;
+    private static final int LIMITE_PADRAO = 100;
+    private static final int LIMITE_MAXIMO = 1000;
+    private static final int RESERVA_MAXIMA = 10_000;
+    private static final long ESPERA_DONO_S = 30;
+    static final String CABECALHO_INSTANCIA = "X-Instancia";
+
+    static {
+        // Cabeçalhos e corpo saem em escritas separadas; com o Nagle ligado cada resposta esperaria
+        // o ACK atrasado do cliente (~40 ms). Lido quando o primeiro HttpServer é criado
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    // Recusa com o status HTTP e a mensagem para quem chamou
+    static class Falha extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+        final String[] colunas;
+        final Object[] valores;
+
+        Falha(int status, String mensagem) {
+            this(status, mensagem, new String[]{"erro"}, new Object[]{mensagem});
+        }
+
+        Falha(int status, String mensagem, String[] colunas, Object[] valores) {
+            super(mensagem);
+            this.status = status;
+            this.colunas = colunas;
+            this.valores = valores;
+        }
+    }
+
+    private static class Resposta {
+        final int status;
+        final String corpo;
+
+        Resposta(int status, String corpo) {
+            this.status = status;
+            this.corpo = corpo;
+        }
+    }
+
+    private interface Operacao {
+        Resposta executar(StringWriter saida) throws IOException;
+    }
+
+    private final HttpServer servidor;
+    private final ExecutorService threads;
+    private final Executor dono;
+    private final BooleanSupplier naThreadDona;
+    // "Bearer <chave>" em bytes, comparado em tempo constante; null = sem autenticação
+    private final byte[] autorizacao;
+    // Muda a cada vez que o servidor sobe: um terminal com ids reservados de outra instância
+    // precisa recarregar, porque ids não usados podem ter sido reservados de novo
+    final String instancia = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    // Id alterado em cada versão do Repositorio (fila circular); só a thread dona mexe
+    private final long[] alteracoes = new long[CAPACIDADE_ALTERACOES];
+    // Versão do Repositorio quando o servidor subiu; alterações de antes não foram guardadas
+    private long primeiraVersao;
+
+    ServidorApi(InetSocketAddress endereco, Executor dono, BooleanSupplier naThreadDona, String chave) throws IOException {
+        this.dono = dono;
+        this.naThreadDona = naThreadDona;
+        this.autorizacao = chave == null || chave.isEmpty() ? null : ("Bearer " + chave).getBytes(StandardCharsets.UTF_8);
+        AtomicInteger contador = new AtomicInteger();
+        threads = Executors.newFixedThreadPool(THREADS, tarefa -> {
+            Thread thread = new Thread(tarefa, "petshop-api-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        servidor = HttpServer.create(endereco, 0);
+        servidor.setExecutor(threads);
+        servidor.createContext("/api/", this::atender);
+    }
+
+    // Chamado na thread dona, depois que os dados foram carregados
+    void iniciar() {
+        Repositorio.definirDono(dono, naThreadDona);
+        primeiraVersao = Repositorio.versao();
+        Repositorio.ouvinte = this::registrarAlteracao;
+        servidor.start();
+    }
+
+    int porta() {
+        return servidor.getAddress().getPort();
+    }
+
+    // "[endereço:]porta" da linha de comando. Sem endereço, só esta máquina (loopback); para os
+    // terminais de outros computadores, o endereço da placa de rede ou 0.0.0.0 (todas)
+    static InetSocketAddress endereco(String texto) {
+        int separador = texto.lastIndexOf(':');
+        int porta = Integer.parseInt(texto.substring(separador + 1));
+        if (separador < 0) return new InetSocketAddress(InetAddress.getLoopbackAddress(), porta);
+        String host = texto.substring(0, separador);
+        if (host.startsWith("[") && host.endsWith("]")) host = host.substring(1, host.length() - 1);
+        return new InetSocketAddress(host, porta);
+    }
+
+    void parar() {
+        servidor.stop(0);
+        threads.shutdown();
+    }
+
+    private void registrarAlteracao(long id) {
+        alteracoes[(int) ((Repositorio.versao() - 1) % CAPACIDADE_ALTERACOES)] = id;
+    }
+
+    private void atender(HttpExchange troca) {
+        try {
+            Resposta resposta;
+            try {
+                String enviada = troca.getRequestHeaders().getFirst("Authorization");
+                if (autorizacao != null && !MessageDigest.isEqual(autorizacao, enviada == null ? new byte[0] : enviada.getBytes(StandardCharsets.UTF_8))) {
+                    throw new Falha(401, "Chave de acesso inválida");
+                }
+                String metodo = troca.getRequestMethod();
+                String[] caminho = troca.getRequestURI().getPath().substring("/api/".length()).split("/");
+                Map<String, String> parametros = parametros(troca.getRequestURI().getRawQuery());
+                Map<String, Object> corpo = metodo.equals("POST") || metodo.equals("PUT") ? lerCorpo(troca.getRequestBody()) : null;
+                String instanciaTerminal = troca.getRequestHeaders().getFirst(CABECALHO_INSTANCIA);
+                // Reservar ids vale sempre; gravar com ids de outra instância, não
+                if (instanciaTerminal != null && !instanciaTerminal.equals(instancia) && !metodo.equals("GET") && !caminho[0].equals("ids")) {
+                    throw new Falha(409, "O servidor foi reiniciado; recarregue os dados");
+                }
+                resposta = caminho[0].equals("vendas") ? vender(metodo, caminho, corpo) : lerDoInstantaneo(metodo, caminho, parametros);
+                if (resposta == null) resposta = naThreadDona(saida -> rotear(metodo, caminho, parametros, corpo, saida));
+            } catch (Falha f) {
+                resposta = falha(f);
+            } catch (RuntimeException e) {
+                resposta = falha(new Falha(500, "Erro interno: " + e));
+            }
+            byte[] bytes = resposta.corpo.getBytes(StandardCharsets.UTF_8);
+            troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            troca.getResponseHeaders().set(CABECALHO_INSTANCIA, instancia);
+            // Sem corpo (204) o tamanho vai como -1
+            troca.sendResponseHeaders(resposta.status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream saida = troca.getResponseBody()) {
+                saida.write(bytes);
+            }
+        } catch (IOException e) {
+            // Conexão fechada pelo outro lado; não há a quem responder
+        } finally {
+            troca.close();
+        }
+    }
+
+    // Leituras que não dependem dos índices saem de um instantâneo do Repositorio, na thread da
+    // requisição: sem fila na thread dona enquanto nada muda. null = atender na thread dona
+    private Resposta lerDoInstantaneo(String metodo, String[] caminho, Map<String, String> parametros) throws IOException {
+        if (!metodo.equals("GET") || caminho[0].equals("alteracoes")) return null;
+        StringWriter saida = new StringWriter();
+        if (caminho[0].equals("estoque")) {
+            if (caminho.length != 1) throw new Falha(404, "Caminho não encontrado");
+            escreverEstoque(saida);
+            return new Resposta(200, saida.toString());
+        }
+        if (caminho[0].equals("relatorio")) {
+            if (caminho.length != 1) throw new Falha(404, "Caminho não encontrado");
+            escreverRelatorio(saida, "1".equals(parametros.get("reconstruir")));
+            return new Resposta(200, saida.toString());
+        }
+        if (caminho[0].equals("dados")) {
+            if (caminho.length != 1) throw new Falha(404, "Caminho não encontrado");
+            escreverDados(saida, Repositorio.instantaneo(), null);
+            return new Resposta(200, saida.toString());
+        }
+        if (caminho.length == 1 && filtrada(parametros)) return null;
+        byte tipo = tipo(caminho[0]);
+        Repositorio.Linhas linhas = Repositorio.instantaneo().linhas(tipo);
+        if (caminho.length == 1) {
+            listar(linhas, null, parametros, saida);
+            return new Resposta(200, saida.toString());
+        }
+        if (caminho.length != 2) throw new Falha(404, "Caminho não encontrado");
+        long id = id(caminho[1]);
+        Object[] linha = linhas.porId(id);
+        if (linha == null) throw new Falha(404, "Registro " + id + " não encontrado");
+        Json.escrever(saida, linhas.tabela.colunas, linha);
+        return new Resposta(200, saida.toString());
+    }
+
+    // Com reconstruir, conta tudo de novo e diz se os contadores mantidos batem com a contagem
+    private static void escreverRelatorio(StringWriter saida, boolean reconstruir) throws IOException {
+        if (!reconstruir) {
+            Agregados.Resumo resumo = Agregados.resumo();
+            Json.escrever(saida, new String[]{"versao", "relatorio"}, new Object[]{resumo.versao, PetshopSystemSwing.gerarRelatorio(resumo)});
+            return;
+        }
+        Agregados.Resumo[] conferencia = Agregados.conferencia();
+        Json.escrever(saida, new String[]{"versao", "relatorio", "confere"}, new Object[]{conferencia[1].versao,
+                PetshopSystemSwing.gerarRelatorio(conferencia[1]), conferencia[0].mesmosNumeros(conferencia[1])});
+    }
+
+    // Os saldos são atômicos por SKU: lidos aqui, sem passar pela thread dona
+    private static void escreverEstoque(StringWriter saida) throws IOException {
+        LivroVendas livro = PetshopSystemSwing.livroVendas;
+        if (livro == null) throw new Falha(503, "Livro de vendas indisponível");
+        saida.write("{\"itens\":[");
+        boolean primeiro = true;
+        for (Estoque.Saldo saldo : livro.estoque.saldos()) {
+            if (!primeiro) saida.write(',');
+            primeiro = false;
+            int[] atual = saldo.saldo();
+            Json.escrever(saida, new String[]{"sku", "disponivel", "reservado", "minimo"},
+                    new Object[]{saldo.sku, (long) atual[0], (long) atual[1], (long) saldo.minimo});
+        }
+        saida.write("]}");
+    }
+
+    // A reserva no estoque é feita na thread da requisição: vários caixas disputam o mesmo SKU sem
+    // fila na thread dona, e quem não tem estoque recebe 409 sem chegar a ela. Só o registro da
+    // venda no livro passa pela thread dona; se ela não registrar, a reserva volta
+    private Resposta vender(String metodo, String[] caminho, Map<String, Object> corpo) {
+        if (caminho.length != 1) throw new Falha(404, "Caminho não encontrado");
+        if (!metodo.equals("POST")) throw new Falha(405, "Método não permitido");
+        LivroVendas livro = PetshopSystemSwing.livroVendas;
+        if (livro == null) throw new Falha(503, "Livro de vendas indisponível");
+        String sku = texto(corpo, "sku");
+        long quantidade = numero(corpo, "quantidade", 1);
+        long cliente = numero(corpo, "cliente", 0);
+        if (quantidade < 1 || quantidade > Integer.MAX_VALUE) throw new Falha(422, "Quantidade inválida");
+        Estoque.Saldo saldo = livro.estoque.saldo(sku);
+        if (saldo == null) throw new Falha(404, "Produto não encontrado: " + sku);
+        if (!livro.estoque.reservar(sku, (int) quantidade)) {
+            throw new Falha(409, "Estoque insuficiente", new String[]{"erro", "disponivel"}, new Object[]{"Estoque insuficiente", (long) saldo.disponivel()});
+        }
+        // 0 = na fila, 1 = a thread dona assumiu a reserva, 2 = a requisição desistiu e devolveu
+        AtomicInteger reserva = new AtomicInteger();
+        try {
+            return naThreadDona(saida -> {
+                if (!reserva.compareAndSet(0, 1)) return null;
+                try {
+                    LivroVendas.Produto produto = livro.produto(sku);
+                    if (produto == null) throw new Falha(404, "Produto não encontrado: " + sku);
+                    if (cliente != 0 && !existe(Diario.CLIENTE, cliente)) throw new Falha(422, "Cliente não encontrado: " + cliente);
+                    if (!PetshopSystemSwing.registrarVenda(produto, (int) quantidade, cliente)) throw new Falha(503, "Livro de vendas indisponível");
+                } catch (RuntimeException e) {
+                    livro.estoque.liberar(sku, (int) quantidade);
+                    throw e;
+                }
+                List<LivroVendas.Venda> vendas = livro.vendas();
+                LivroVendas.Venda venda = vendas.get(vendas.size() - 1);
+                Json.escrever(saida, new String[]{"numero", "sku", "quantidade", "preco", "total", "cliente", "momento"},
+                        new Object[]{venda.numero, venda.sku, (long) venda.quantidade, venda.precoCentavos, venda.totalCentavos(), venda.cliente, venda.momento});
+                return new Resposta(201, saida.toString());
+            });
+        } catch (RuntimeException e) {
+            if (reserva.compareAndSet(0, 2)) livro.estoque.liberar(sku, (int) quantidade);
+            throw e;
+        }
+    }
+
+    private Resposta naThreadDona(Operacao operacao) {
+        FutureTask<Resposta> tarefa = new FutureTask<>(() -> operacao.executar(new StringWriter()));
+        dono.execute(tarefa);
+        try {
+            return tarefa.get(ESPERA_DONO_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Falha(503, "Servidor encerrando");
+        } catch (TimeoutException e) {
+            tarefa.cancel(false);
+            throw new Falha(503, "Servidor ocupado, tente de novo");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Falha) throw (Falha) e.getCause();
+            throw new Falha(500, "Erro interno: " + e.getCause());
+        }
+    }
+
+    private static Resposta falha(Falha f) {
+        StringWriter saida = new StringWriter();
+        try {
+            Json.escrever(saida, f.colunas, f.valores);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Resposta(f.status, saida.toString());
+    }
+
+    private Resposta rotear(String metodo, String[] caminho, Map<String, String> parametros, Map<String, Object> corpo,
+                            StringWriter saida) throws IOException {
+        if (caminho.length == 1 && caminho[0].equals("alteracoes") && metodo.equals("GET")) {
+            long desde = parametroNumero(parametros, "desde", 0);
+            long versao = Repositorio.versao();
+            if (desde < primeiraVersao || desde > versao || versao - desde > CAPACIDADE_ALTERACOES) {
+                throw new Falha(410, "Alterações não disponíveis desde " + desde + "; recarregue os dados");
+            }
+            LinkedHashSet<Long> ids = new LinkedHashSet<>();
+            for (long i = desde; i < versao; i++) {
+                long id = alteracoes[(int) (i % CAPACIDADE_ALTERACOES)];
+                // 0: produto ou venda, fora da API
+                if (id != 0) ids.add(id);
+            }
+            escreverDados(saida, Repositorio.instantaneo(), ids);
+            return new Resposta(200, saida.toString());
+        }
+        if (caminho.length == 1 && caminho[0].equals("ids") && metodo.equals("POST")) {
+            long quantidade = parametroNumero(parametros, "quantidade", 1000);
+            if (quantidade < 1 || quantidade > RESERVA_MAXIMA) throw new Falha(400, "Quantidade deve estar entre 1 e " + RESERVA_MAXIMA);
+            long inicio = PetshopSystemSwing.reservarIds((int) quantidade);
+            Json.escrever(saida, new String[]{"instancia", "inicio", "fim"}, new Object[]{instancia, inicio, inicio + quantidade});
+            return new Resposta(200, saida.toString());
+        }
+
+        byte tipo = tipo(caminho[0]);
+        if (caminho.length == 1) {
+            switch (metodo) {
+                case "GET":
+                    // Na thread dona o instantâneo está sempre em dia com os índices
+                    listar(Repositorio.instantaneo().linhas(tipo), idsFiltrados(tipo, parametros), parametros, saida);
+                    return new Resposta(200, saida.toString());
+                case "POST":
+                    escrever(saida, salvar(tipo, 0, corpo));
+                    return new Resposta(201, saida.toString());
+                default:
+                    throw new Falha(405, "Método não permitido");
+            }
+        }
+        if (caminho.length != 2) throw new Falha(404, "Caminho não encontrado");
+        long id = id(caminho[1]);
+        switch (metodo) {
+            case "PUT":
+                boolean nova = !existe(tipo, id);
+                escrever(saida, salvar(tipo, id, corpo));
+                return new Resposta(nova ? 201 : 200, saida.toString());
+            case "DELETE":
+                excluir(obter(tipo, id));
+                return new Resposta(204, "");
+            default:
+                throw new Falha(405, "Método não permitido");
+        }
+    }
+
+    private static byte tipo(String nome) {
+        switch (nome) {
+            case "clientes":
+                return Diario.CLIENTE;
+            case "animais":
+                return Diario.ANIMAL;
+            case "agendamentos":
+                return Diario.AGENDAMENTO;
+            case "funcionarios":
+                return Diario.FUNCIONARIO;
+            default:
+                throw new Falha(404, "Caminho não encontrado");
+        }
+    }
+
+    private static long id(String texto) {
+        try {
+            long id = Long.parseLong(texto);
+            if (id > 0) return id;
+        } catch (NumberFormatException e) {
+            // cai no erro abaixo
+        }
+        throw new Falha(404, "Id inválido: " + texto);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void escrever(StringWriter saida, Object entidade) throws IOException {
+        Exportador.Tabela<T> tabela = (Exportador.Tabela<T>) Exportador.tabela(PetshopSystemSwing.tipoEntidade(entidade));
+        tabela.json(saida, (T) entidade);
+    }
+
+    private static boolean existe(byte tipo, long id) {
+        Object entidade = PetshopSystemSwing.entidadePorId(id);
+        return entidade != null && PetshopSystemSwing.tipoEntidade(entidade) == tipo && PetshopSystemSwing.listada(tipo, id);
+    }
+
+    private static Object obter(byte tipo, long id) {
+        if (!existe(tipo, id)) throw new Falha(404, "Registro " + id + " não encontrado");
+        return PetshopSystemSwing.entidadePorId(id);
+    }
+
+    private static boolean filtrada(Map<String, String> parametros) {
+        return !parametros.getOrDefault("busca", "").isEmpty() || parametros.containsKey("de") || parametros.containsKey("ate");
+    }
+
+    // Ids da busca e (agendamentos) do período, pelos índices; null sem filtro
+    private static long[] idsFiltrados(byte tipo, Map<String, String> parametros) {
+        String busca = parametros.getOrDefault("busca", "");
+        long[] ids = null;
+        if (tipo == Diario.AGENDAMENTO && (parametros.containsKey("de") || parametros.containsKey("ate"))) {
+            try {
+                LocalDate de = LocalDate.parse(parametros.getOrDefault("de", parametros.get("ate")));
+                LocalDate ate = LocalDate.parse(parametros.getOrDefault("ate", parametros.get("de")));
+                ids = PetshopSystemSwing.agenda.doPeriodo(de, ate);
+            } catch (DateTimeParseException e) {
+                throw new Falha(400, "Data inválida (use AAAA-MM-DD)");
+            }
+        }
+        if (!busca.isEmpty()) {
+            long[] encontrados = indiceBusca(tipo).buscar(busca);
+            if (ids == null) {
+                ids = encontrados;
+            } else {
+                HashSet<Long> daBusca = new HashSet<>();
+                for (long id : encontrados) daBusca.add(id);
+                int mantidos = 0;
+                for (long id : ids) {
+                    if (daBusca.contains(id)) ids[mantidos++] = id;
+                }
+                ids = java.util.Arrays.copyOf(ids, mantidos);
+            }
+        }
+        return ids;
+    }
+
+    // Uma página das linhas do tipo, ou só das dos ids
+    private static void listar(Repositorio.Linhas linhas, long[] ids, Map<String, String> parametros, StringWriter saida) throws IOException {
+        long inicio = Math.max(0, parametroNumero(parametros, "inicio", 0));
+        long limite = Math.min(LIMITE_MAXIMO, Math.max(0, parametroNumero(parametros, "limite", LIMITE_PADRAO)));
+        int total = ids != null ? ids.length : linhas.size();
+        saida.write("{\"total\":" + total + ",\"inicio\":" + inicio + ",\"itens\":[");
+        for (long i = inicio; i < Math.min(total, inicio + limite); i++) {
+            if (i > inicio) saida.write(',');
+            Json.escrever(saida, linhas.tabela.colunas, ids != null ? linhas.porId(ids[(int) i]) : linhas.get((int) i));
+        }
+        saida.write("]}");
+    }
+
+    private static IndiceBusca<?> indiceBusca(byte tipo) {
+        switch (tipo) {
+            case Diario.CLIENTE:
+                return PetshopSystemSwing.buscaClientes;
+            case Diario.ANIMAL:
+                return PetshopSystemSwing.buscaAnimais;
+            case Diario.AGENDAMENTO:
+                return PetshopSystemSwing.buscaAgendamentos;
+            default:
+                return PetshopSystemSwing.buscaFuncionarios;
+        }
+    }
+
+    // Todos os registros do instantâneo (ids == null) ou só os dos ids, separados por tipo, na ordem
+    // em que um terminal pode aplicá-los (quem é referenciado antes); ids que não estão mais
+    // listados saem em excluidos. Com ids, só na thread dona (o tipo vem de entidadePorId)
+    private void escreverDados(StringWriter saida, Repositorio.Instantaneo dados, LinkedHashSet<Long> ids) throws IOException {
+        saida.write("{\"instancia\":\"" + instancia + "\",\"sequencia\":" + dados.versao);
+        byte[] ordem = {Diario.CLIENTE, Diario.FUNCIONARIO, Diario.ANIMAL, Diario.AGENDAMENTO};
+        HashMap<Byte, List<Object[]>> porTipo = new HashMap<>();
+        List<Long> excluidos = new ArrayList<>();
+        if (ids != null) {
+            for (long id : ids) {
+                Object entidade = PetshopSystemSwing.entidadePorId(id);
+                byte tipo = entidade == null ? 0 : PetshopSystemSwing.tipoEntidade(entidade);
+                Object[] linha = entidade == null ? null : dados.linhas(tipo).porId(id);
+                if (linha != null) porTipo.computeIfAbsent(tipo, t -> new ArrayList<>()).add(linha);
+                else excluidos.add(id);
+            }
+        }
+        for (byte tipo : ordem) {
+            Repositorio.Linhas linhas = dados.linhas(tipo);
+            saida.write(",\"" + linhas.tabela.nome + "\":[");
+            List<Object[]> escolhidas = ids == null ? linhas : porTipo.getOrDefault(tipo, List.of());
+            for (int i = 0; i < escolhidas.size(); i++) {
+                if (i > 0) saida.write(',');
+                Json.escrever(saida, linhas.tabela.colunas, escolhidas.get(i));
+            }
+            saida.write(']');
+        }
+        if (ids != null) {
+            saida.write(",\"excluidos\":");
+            long[] idsExcluidos = new long[excluidos.size()];
+            for (int i = 0; i < idsExcluidos.length; i++) idsExcluidos[i] = excluidos.get(i);
+            Json.valor(saida, idsExcluidos);
+        }
+        saida.write('}');
+    }
+
+    // Inclusão (id 0 = novo, ou id escolhido pelo terminal) ou alteração, com as regras das telas
+    private static Object salvar(byte tipo, long id, Map<String, Object> corpo) {
+        Object atual = id == 0 ? null : PetshopSystemSwing.entidadePorId(id);
+        if (atual != null && PetshopSystemSwing.tipoEntidade(atual) != tipo) throw new Falha(409, "O id " + id + " é de outro tipo de registro");
+        if (atual != null && !PetshopSystemSwing.listada(tipo, id)) throw new Falha(409, "O registro " + id + " foi excluído");
+
+        // Valores atuais com os do corpo por cima; num registro novo, campo ausente fica com o padrão
+        Map<String, Object> campos = atual != null ? campos(atual) : new LinkedHashMap<>();
+        for (Map.Entry<String, Object> campo : corpo.entrySet()) {
+            if (!campo.getKey().equals("id") && !campo.getKey().equals("alterado")) campos.put(campo.getKey(), campo.getValue());
+        }
+        validar(tipo, atual, campos);
+
+        if (atual != null) {
+            preencher(atual, campos);
+            PetshopSystemSwing.registrarAlteracao(atual);
+            return atual;
+        }
+        if (id == 0) {
+            id = PetshopSystemSwing.novoId();
+        } else if (PetshopSystemSwing.entidadePorId(id) == null) {
+            PetshopSystemSwing.usarId(id);
+        }
+        Object nova = CodecBinario.novaEntidade(tipo, id);
+        preencher(nova, campos);
+        adicionar(nova);
+        PetshopSystemSwing.registrarInclusao(nova);
+        return nova;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void adicionar(Object entidade) {
+        ((List<Object>) Exportador.tabela(PetshopSystemSwing.tipoEntidade(entidade)).lista.get()).add(entidade);
+    }
+
+    private static void excluir(Object entidade) {
+        if (entidade instanceof PetshopSystemSwing.Cliente) {
+            PetshopSystemSwing.apagarCliente((PetshopSystemSwing.Cliente) entidade);
+        } else {
+            Exportador.tabela(PetshopSystemSwing.tipoEntidade(entidade)).lista.get().remove(entidade);
+        }
+        PetshopSystemSwing.registrarExclusao(entidade);
+    }
+
+    // Campos da entidade como viriam no JSON (listas de ids como List<Long>)
+    @SuppressWarnings("unchecked")
+    private static <T> Map<String, Object> campos(Object entidade) {
+        Exportador.Tabela<T> tabela = (Exportador.Tabela<T>) Exportador.tabela(PetshopSystemSwing.tipoEntidade(entidade));
+        Object[] valores = tabela.valores.valores((T) entidade);
+        LinkedHashMap<String, Object> campos = new LinkedHashMap<>();
+        for (int i = 0; i < valores.length; i++) {
+            Object valor = valores[i];
+            if (valor instanceof long[]) {
+                List<Object> ids = new ArrayList<>();
+                for (long id : (long[]) valor) ids.add(id);
+                valor = ids;
+            } else if (valor instanceof Integer) {
+                valor = (long) (Integer) valor;
+            }
+            campos.put(tabela.colunas[i], valor);
+        }
+        return campos;
+    }
+
+    private static void validar(byte tipo, Object atual, Map<String, Object> campos) {
+        switch (tipo) {
+            case Diario.CLIENTE:
+            case Diario.FUNCIONARIO: {
+                String nome = texto(campos, "nome").trim();
+                String cpf = texto(campos, "cpf").trim();
+                String cpfAtual = atual instanceof PetshopSystemSwing.Cliente ? ((PetshopSystemSwing.Cliente) atual).cpf
+                        : atual instanceof PetshopSystemSwing.Funcionario ? ((PetshopSystemSwing.Funcionario) atual).cpf : null;
+                if (texto(campos, "sexo").isEmpty()) campos.put("sexo", "Prefiro não responder");
+                // Como na edição pelas telas, um CPF antigo que não muda não é conferido de novo
+                String erro = Validacao.pessoa(nome, texto(campos, "email").trim(), texto(campos, "telefone").trim(),
+                        cpf.equals(cpfAtual) ? "" : cpf, texto(campos, "cep").trim(), texto(campos, "sexo").trim());
+                if (erro != null) throw new Falha(422, erro);
+                boolean repetido;
+                boolean nomeRepetido;
+                if (tipo == Diario.CLIENTE) {
+                    PetshopSystemSwing.Cliente cliente = (PetshopSystemSwing.Cliente) atual;
+                    repetido = PetshopSystemSwing.clientesPorCpf.existeOutro(IndiceUnico.normalizarCpf(cpf), cliente);
+                    nomeRepetido = PetshopSystemSwing.clientesPorNome.existeOutro(IndiceUnico.normalizarNome(nome), cliente);
+                } else {
+                    PetshopSystemSwing.Funcionario funcionario = (PetshopSystemSwing.Funcionario) atual;
+                    repetido = PetshopSystemSwing.funcionariosPorCpf.existeOutro(IndiceUnico.normalizarCpf(cpf), funcionario);
+                    nomeRepetido = PetshopSystemSwing.funcionariosPorNome.existeOutro(IndiceUnico.normalizarNome(nome), funcionario);
+                }
+                if (repetido) throw new Falha(409, "CPF já cadastrado");
+                if (nomeRepetido) throw new Falha(409, "Nome já existe");
+                for (String campo : new String[]{"nome", "email", "telefone", "cpf", "cep", "sexo"}) {
+                    campos.put(campo, texto(campos, campo).trim());
+                }
+                break;
+            }
+            case Diario.ANIMAL: {
+                if (texto(campos, "sexo").isEmpty()) campos.put("sexo", "Macho");
+                String erro = Validacao.animal(texto(campos, "nome").trim(), texto(campos, "raca").trim(), texto(campos, "sexo"));
+                if (erro != null) throw new Falha(422, erro);
+                List<Long> donos = ids(campos, "donos");
+                for (long dono : donos) {
+                    if (!existe(Diario.CLIENTE, dono)) throw new Falha(422, "Dono não encontrado: " + dono);
+                }
+                boolean semDono = booleano(campos, "sem_dono");
+                if (semDono && !donos.isEmpty()) throw new Falha(422, "Animais com clientes não podem ser sem dono");
+                // Como nas telas, "para adoção" acompanha "sem dono"
+                campos.put("para_adocao", semDono);
+                campos.put("nome", texto(campos, "nome").trim());
+                campos.put("raca", texto(campos, "raca").trim());
+                break;
+            }
+            default: {
+                long animal = numero(campos, "animal", 0);
+                if (!existe(Diario.ANIMAL, animal)) throw new Falha(422, "Animal não encontrado: " + animal);
+                if (texto(campos, "detalhes").trim().isEmpty()) throw new Falha(422, "Informe os detalhes do agendamento");
+                LocalDateTime horario = horario(campos);
+                long duracao = numero(campos, "duracao", PetshopSystemSwing.DURACAO_AGENDAMENTO);
+                int expediente = PetshopSystemSwing.FECHAMENTO_EXPEDIENTE - PetshopSystemSwing.ABERTURA_EXPEDIENTE;
+                if (duracao < 1 || duracao > expediente) throw new Falha(422, "Duração deve estar entre 1 e " + expediente + " minutos");
+                String recurso = texto(campos, "recurso");
+                if (!recurso.isEmpty() && !List.of(PetshopSystemSwing.RECURSOS_AGENDA).contains(recurso)) {
+                    throw new Falha(422, "Recurso inválido: " + recurso);
+                }
+                long funcionario = numero(campos, "funcionario", 0);
+                if (funcionario != 0 && !existe(Diario.FUNCIONARIO, funcionario)) throw new Falha(422, "Funcionário não encontrado: " + funcionario);
+                long ignorar = atual == null ? 0 : ((PetshopSystemSwing.Agendamento) atual).id;
+                String[] recursos = PetshopSystemSwing.recursosAgendamento(recurso, funcionario,
+                        (PetshopSystemSwing.Animal) PetshopSystemSwing.entidadePorId(animal));
+                long minuto = IndiceHorario.minuto(horario);
+                List<Long> conflitos = PetshopSystemSwing.ocupacao.conflitos(recursos, minuto, (int) duracao, ignorar);
+                if (!conflitos.isEmpty()) {
+                    long[] idsConflitos = new long[conflitos.size()];
+                    for (int i = 0; i < idsConflitos.length; i++) idsConflitos[i] = conflitos.get(i);
+                    long[] livres;
+                    try {
+                        livres = PetshopSystemSwing.ocupacao.sugerir(recursos, minuto, (int) duracao, 5, ignorar);
+                    } catch (IllegalArgumentException e) {
+                        throw new Falha(400, e.getMessage());
+                    }
+                    String[] sugestoes = new String[livres.length];
+                    for (int i = 0; i < livres.length; i++) sugestoes[i] = IndiceHorario.horario(livres[i]).toString();
+                    throw new Falha(409, "Horário ocupado", new String[]{"erro", "conflitos", "sugestoes"},
+                            new Object[]{"Horário ocupado", idsConflitos, sugestoes});
+                }
+                campos.put("detalhes", texto(campos, "detalhes").trim());
+                break;
+            }
+        }
+    }
+
+    // Campos do JSON (os mesmos da exportação) sobre a entidade; as referências são resolvidas
+    // por id. Usado pelo servidor depois de validar e pelo terminal com o que o servidor mandou
+    static void preencher(Object entidade, Map<String, Object> campos) {
+        if (entidade instanceof PetshopSystemSwing.Cliente) {
+            PetshopSystemSwing.Cliente c = (PetshopSystemSwing.Cliente) entidade;
+            c.nome = texto(campos, "nome");
+            c.email = texto(campos, "email");
+            c.telefone = texto(campos, "telefone");
+            c.cpf = texto(campos, "cpf");
+            c.cep = texto(campos, "cep");
+            c.sexo = texto(campos, "sexo");
+            c.alterado = numero(campos, "alterado", c.alterado);
+        } else if (entidade instanceof PetshopSystemSwing.Funcionario) {
+            PetshopSystemSwing.Funcionario f = (PetshopSystemSwing.Funcionario) entidade;
+            f.nome = texto(campos, "nome");
+            f.email = texto(campos, "email");
+            f.telefone = texto(campos, "telefone");
+            f.cpf = texto(campos, "cpf");
+            f.cep = texto(campos, "cep");
+            f.sexo = texto(campos, "sexo");
+            f.alterado = numero(campos, "alterado", f.alterado);
+        } else if (entidade instanceof PetshopSystemSwing.Animal) {
+            PetshopSystemSwing.Animal a = (PetshopSystemSwing.Animal) entidade;
+            a.nome = texto(campos, "nome");
+            a.raca = texto(campos, "raca");
+            a.sexo = texto(campos, "sexo");
+            a.observacao = texto(campos, "observacao");
+            List<PetshopSystemSwing.Cliente> donos = new ArrayList<>();
+            for (long dono : ids(campos, "donos")) {
+                Object cliente = PetshopSystemSwing.entidadePorId(dono);
+                if (cliente instanceof PetshopSystemSwing.Cliente) donos.add((PetshopSystemSwing.Cliente) cliente);
+            }
+            a.definirClientes(donos);
+            a.semDono = booleano(campos, "sem_dono");
+            a.paraAdocao = booleano(campos, "para_adocao");
+            a.alterado = numero(campos, "alterado", a.alterado);
+        } else {
+            PetshopSystemSwing.Agendamento a = (PetshopSystemSwing.Agendamento) entidade;
+            Object animal = PetshopSystemSwing.entidadePorId(numero(campos, "animal", 0));
+            if (animal instanceof PetshopSystemSwing.Animal) a.animal = (PetshopSystemSwing.Animal) animal;
+            a.horario = horario(campos);
+            a.duracao = (int) numero(campos, "duracao", PetshopSystemSwing.DURACAO_AGENDAMENTO);
+            a.recurso = texto(campos, "recurso");
+            a.funcionario = numero(campos, "funcionario", 0);
+            a.detalhes = texto(campos, "detalhes");
+            a.alterado = numero(campos, "alterado", a.alterado);
+        }
+    }
+
+    static String texto(Map<String, Object> campos, String nome) {
+        Object valor = campos.get(nome);
+        if (valor == null) return "";
+        if (!(valor instanceof String)) throw new Falha(400, "O campo " + nome + " deve ser texto");
+        return (String) valor;
+    }
+
+    static long numero(Map<String, Object> campos, String nome, long padrao) {
+        Object valor = campos.get(nome);
+        if (valor == null) return padrao;
+        if (!(valor instanceof Long)) throw new Falha(400, "O campo " + nome + " deve ser um número inteiro");
+        return (Long) valor;
+    }
+
+    private static boolean booleano(Map<String, Object> campos, String nome) {
+        Object valor = campos.get(nome);
+        if (valor == null) return false;
+        if (!(valor instanceof Boolean)) throw new Falha(400, "O campo " + nome + " deve ser true ou false");
+        return (Boolean) valor;
+    }
+
+    private static List<Long> ids(Map<String, Object> campos, String nome) {
+        Object valor = campos.get(nome);
+        List<Long> ids = new ArrayList<>();
+        if (valor == null) return ids;
+        if (!(valor instanceof List)) throw new Falha(400, "O campo " + nome + " deve ser uma lista de ids");
+        for (Object id : (List<?>) valor) {
+            if (!(id instanceof Long)) throw new Falha(400, "O campo " + nome + " deve ser uma lista de ids");
+            ids.add((Long) id);
+        }
+        return ids;
+    }
+
+    // Horário local ISO (2026-01-31T14:30), em minutos inteiros como nas telas
+    private static LocalDateTime horario(Map<String, Object> campos) {
+        String texto = texto(campos, "horario");
+        if (texto.isEmpty()) throw new Falha(422, "Informe o horário do agendamento");
+        try {
+            return LocalDateTime.parse(texto).truncatedTo(ChronoUnit.MINUTES);
+        } catch (DateTimeParseException e) {
+            throw new Falha(400, "Horário inválido (use AAAA-MM-DDTHH:MM): " + texto);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> lerCorpo(InputStream entrada) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int lidos;
+        while ((lidos = entrada.read(buffer)) > 0) {
+            bytes.write(buffer, 0, lidos);
+            if (bytes.size() > TAMANHO_MAXIMO_CORPO) throw new Falha(413, "Corpo da requisição grande demais");
+        }
+        if (bytes.size() == 0) return new LinkedHashMap<>();
+        Object valor;
+        try {
+            valor = Json.ler(bytes.toString(StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new Falha(400, e.getMessage());
+        }
+        if (!(valor instanceof Map)) throw new Falha(400, "O corpo deve ser um objeto JSON");
+        return (Map<String, Object>) valor;
+    }
+
+    private static Map<String, String> parametros(String consulta) {
+        HashMap<String, String> parametros = new HashMap<>();
+        if (consulta == null || consulta.isEmpty()) return parametros;
+        for (String par : consulta.split("&")) {
+            int igual = par.indexOf('=');
+            try {
+                String nome = URLDecoder.decode(igual < 0 ? par : par.substring(0, igual), "UTF-8");
+                String valor = igual < 0 ? "" : URLDecoder.decode(par.substring(igual + 1), "UTF-8");
+                parametros.put(nome, valor);
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                throw new Falha(400, "Parâmetro inválido: " + par);
+            }
+        }
+        return parametros;
+    }
+
+    private static long parametroNumero(Map<String, String> parametros, String nome, long padrao) {
+        String valor = parametros.get(nome);
+        if (valor == null || valor.isEmpty()) return padrao;
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            throw new Falha(400, "Parâmetro " + nome + " deve ser um número");
+        }
+    }
+}
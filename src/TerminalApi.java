@@ -0,0 +1,223 @@
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+// Modo terminal da interface: os dados vêm do ServidorApi de outra máquina em vez dos arquivos
+// locais. Cada alteração feita nas telas é enviada na hora (PUT ou DELETE); se o servidor recusar,
+// o erro aparece como nas telas e o registro volta a ficar como está no servidor. As alterações dos
+// outros terminais chegam a cada poucos segundos pela lista de alterações do servidor e são
+// aplicadas na EDT; uma tela aberta mostra os dados novos quando for aberta de novo.
+// Quando dois terminais alteram o mesmo registro, fica a última gravação.
+class TerminalApi {
+    private static final int RESERVA_IDS = 1000;
+    private static final long INTERVALO_MS = 2000;
+    private static final Duration ESPERA = Duration.ofSeconds(10);
+    private static final String[] ORDEM = {"clientes", "funcionarios", "animais", "agendamentos"};
+    private static final byte[] TIPOS = {Diario.CLIENTE, Diario.FUNCIONARIO, Diario.ANIMAL, Diario.AGENDAMENTO};
+
+    private final HttpClient cliente = HttpClient.newBuilder().connectTimeout(ESPERA).build();
+    private final String base;
+    // null = servidor sem autenticação
+    private final String chave;
+    private volatile String instancia;
+    // Trocou a instância do servidor: o próximo ciclo recarrega tudo
+    private volatile boolean recarregar;
+    // Faixa de ids reservada para este terminal [proximoId, fimIds); só a EDT mexe
+    private long proximoId;
+    private long fimIds;
+    // Enquanto aplica dados do servidor: as entidades recebem o id de lá logo depois de criadas
+    private boolean aplicando;
+    private long sequencia;
+
+    TerminalApi(String url, String chave) {
+        this.base = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.chave = chave == null || chave.isEmpty() ? null : chave;
+    }
+
+    long novoId() {
+        if (aplicando) return 0;
+        if (proximoId >= fimIds) {
+            try {
+                HttpResponse<String> resposta = chamar("POST", "/api/ids?quantidade=" + RESERVA_IDS, null);
+                if (resposta.statusCode() != 200) throw new IOException(erro(resposta));
+                Map<String, Object> faixa = objeto(resposta);
+                proximoId = ServidorApi.numero(faixa, "inicio", 0);
+                fimIds = ServidorApi.numero(faixa, "fim", 0);
+            } catch (IOException e) {
+                throw new IllegalStateException("Servidor indisponível: " + e.getMessage(), e);
+            }
+        }
+        return proximoId++;
+    }
+
+    // Carga inicial, antes de as telas serem liberadas
+    void carregar() throws IOException {
+        HttpResponse<String> resposta = chamar("GET", "/api/dados", null);
+        if (resposta.statusCode() != 200) throw new IOException(erro(resposta));
+        aplicar(objeto(resposta), true);
+    }
+
+    // Verifica as alterações dos outros terminais até o processo acabar
+    void acompanhar() {
+        Thread thread = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(INTERVALO_MS);
+                    sincronizar();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    // Servidor fora do ar: tenta de novo no próximo ciclo
+                }
+            }
+        }, "petshop-sincronizacao");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void sincronizar() throws IOException, InterruptedException {
+        HttpResponse<String> resposta = recarregar ? null : chamar("GET", "/api/alteracoes?desde=" + sequencia, null);
+        boolean completo = resposta == null || resposta.statusCode() == 410
+                || !instancia.equals(resposta.headers().firstValue(ServidorApi.CABECALHO_INSTANCIA).orElse(instancia));
+        if (completo) resposta = chamar("GET", "/api/dados", null);
+        if (resposta.statusCode() != 200) return;
+        Map<String, Object> dados = objeto(resposta);
+        try {
+            SwingUtilities.invokeAndWait(() -> aplicar(dados, completo));
+        } catch (InvocationTargetException e) {
+            PetshopSystemSwing.mostrarErro("Erro ao aplicar alterações do servidor: " + e.getCause());
+        }
+    }
+
+    // Estado do servidor sobre as listas; completo = o que não veio não existe mais
+    @SuppressWarnings("unchecked")
+    private void aplicar(Map<String, Object> dados, boolean completo) {
+        aplicando = true;
+        try {
+            String novaInstancia = (String) dados.get("instancia");
+            if (instancia != null && !instancia.equals(novaInstancia)) {
+                // Os ids reservados na instância anterior podem ser reservados de novo
+                fimIds = 0;
+            }
+            HashSet<Long> recebidos = new HashSet<>();
+            for (int t = 0; t < ORDEM.length; t++) {
+                for (Object item : (List<Object>) dados.get(ORDEM[t])) {
+                    Map<String, Object> campos = (Map<String, Object>) item;
+                    recebidos.add(ServidorApi.numero(campos, "id", 0));
+                    PetshopSystemSwing.aplicarDoServidor(TIPOS[t], campos);
+                }
+            }
+            if (completo) {
+                List<Long> locais = new ArrayList<>();
+                for (List<?> lista : List.of(PetshopSystemSwing.agendamentos, PetshopSystemSwing.animais,
+                        PetshopSystemSwing.funcionarios, PetshopSystemSwing.clientes)) {
+                    for (Object entidade : lista) locais.add(PetshopSystemSwing.idEntidade(entidade));
+                }
+                for (long id : locais) {
+                    if (!recebidos.contains(id)) PetshopSystemSwing.excluirDoServidor(id);
+                }
+            } else {
+                for (Object id : (List<Object>) dados.get("excluidos")) {
+                    PetshopSystemSwing.excluirDoServidor((Long) id);
+                }
+            }
+            instancia = novaInstancia;
+            sequencia = ServidorApi.numero(dados, "sequencia", 0);
+            recarregar = false;
+        } finally {
+            aplicando = false;
+        }
+    }
+
+    // Chamado por PetshopSystemSwing.registrar, na EDT, depois que a tela alterou as listas
+    @SuppressWarnings("unchecked")
+    <T> void enviar(byte operacao, Object entidade) {
+        if (aplicando) return;
+        Exportador.Tabela<T> tabela = (Exportador.Tabela<T>) Exportador.tabela(PetshopSystemSwing.tipoEntidade(entidade));
+        long id = PetshopSystemSwing.idEntidade(entidade);
+        String caminho = "/api/" + tabela.nome + "/" + id;
+        try {
+            HttpResponse<String> resposta;
+            if (operacao == Diario.EXCLUSAO) {
+                resposta = chamar("DELETE", caminho, null);
+                // Já excluído em outro terminal: o resultado é o mesmo
+                if (resposta.statusCode() == 404) return;
+            } else {
+                StringWriter corpo = new StringWriter();
+                tabela.json(corpo, (T) entidade);
+                resposta = chamar("PUT", caminho, corpo.toString());
+            }
+            if (resposta.statusCode() < 300) return;
+            String outraInstancia = resposta.headers().firstValue(ServidorApi.CABECALHO_INSTANCIA).orElse(instancia);
+            if (!outraInstancia.equals(instancia)) {
+                recarregar = true;
+                fimIds = 0;
+            }
+            PetshopSystemSwing.mostrarErro("O servidor recusou a alteração: " + erro(resposta));
+            reconciliar(tabela.nome, id);
+        } catch (IOException e) {
+            PetshopSystemSwing.mostrarErro("Servidor indisponível, a alteração não foi salva: " + e.getMessage());
+        }
+    }
+
+    // O registro volta a ficar como está no servidor (ou some, se lá ele não existe)
+    private void reconciliar(String nome, long id) throws IOException {
+        HttpResponse<String> resposta = chamar("GET", "/api/" + nome + "/" + id, null);
+        aplicando = true;
+        try {
+            if (resposta.statusCode() == 200) {
+                PetshopSystemSwing.aplicarDoServidor(TIPOS[List.of(ORDEM).indexOf(nome)], objeto(resposta));
+            } else if (resposta.statusCode() == 404) {
+                PetshopSystemSwing.excluirDoServidor(id);
+            }
+        } finally {
+            aplicando = false;
+        }
+    }
+
+    private HttpResponse<String> chamar(String metodo, String caminho, String corpo) throws IOException {
+        HttpRequest.Builder requisicao = HttpRequest.newBuilder(URI.create(base + caminho)).timeout(ESPERA)
+                .method(metodo, corpo == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(corpo, StandardCharsets.UTF_8));
+        if (corpo != null) requisicao.header("Content-Type", "application/json; charset=utf-8");
+        if (chave != null) requisicao.header("Authorization", "Bearer " + chave);
+        if (instancia != null) requisicao.header(ServidorApi.CABECALHO_INSTANCIA, instancia);
+        try {
+            return cliente.send(requisicao.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> objeto(HttpResponse<String> resposta) throws IOException {
+        try {
+            Object valor = Json.ler(resposta.body());
+            if (valor instanceof Map) return (Map<String, Object>) valor;
+        } catch (IllegalArgumentException e) {
+            // cai no erro abaixo
+        }
+        throw new IOException("Resposta inesperada do servidor (" + resposta.statusCode() + ")");
+    }
+
+    private static String erro(HttpResponse<String> resposta) {
+        try {
+            Object mensagem = objeto(resposta).get("erro");
+            if (mensagem != null) return mensagem.toString();
+        } catch (IOException e) {
+            // sem corpo JSON
+        }
+        return "status " + resposta.statusCode();
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.regex.Pattern;
+
+// Regras de cadastro (nome, email, telefone, CPF, CEP, sexo e raça), usadas pelas telas e pela
+// importação de arquivos. Só o email usa expressão regular, compilada uma vez; nomes e dígitos são
+// conferidos caractere a caractere, sem alocar nada, porque rodam por linha nos laços de cadastro
+// e importação. O CPF confere também os dígitos verificadores.
+class Validacao {
+    private static final Pattern EMAIL = Pattern.compile("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$");
+
+    static final String[] SEXOS_PESSOA = {"Masculino", "Feminino", "Não Binário", "Prefiro não responder"};
+    static final String[] SEXOS_ANIMAL = {"Macho", "Fêmea"};
+    static final String[] RACAS = {"Cachorro", "Gato", "Roedor", "Aves"};
+
+    // Só letras (de qualquer alfabeto) e espaços, com pelo menos minimo caracteres; o mesmo que
+    // [\p{L}\s]+ das telas
+    static boolean letras(String valor, int minimo) {
+        int tamanho = valor.length();
+        if (tamanho < minimo || tamanho == 0) return false;
+        for (int i = 0; i < tamanho; ) {
+            int c = valor.codePointAt(i);
+            if (!Character.isLetter(c) && !espaco(c)) return false;
+            i += Character.charCount(c);
+        }
+        return true;
+    }
+
+    // \s sem UNICODE_CHARACTER_CLASS
+    private static boolean espaco(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    static boolean email(String valor) {
+        return EMAIL.matcher(valor).matches();
+    }
+
+    // Exatamente quantidade dígitos de 0 a 9 (\d sem UNICODE_CHARACTER_CLASS)
+    static boolean digitos(String valor, int quantidade) {
+        if (valor.length() != quantidade) return false;
+        for (int i = 0; i < quantidade; i++) {
+            char c = valor.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    static boolean telefone(String valor) {
+        return digitos(valor, 11);
+    }
+
+    static boolean cep(String valor) {
+        return digitos(valor, 8);
+    }
+
+    // 11 dígitos com os dois verificadores corretos (módulo 11); sequências repetidas como
+    // 111.111.111-11 passam na conta mas não são CPFs válidos
+    static boolean cpf(String valor) {
+        if (!digitos(valor, 11)) return false;
+        boolean repetido = true;
+        for (int i = 1; i < 11 && repetido; i++) {
+            repetido = valor.charAt(i) == valor.charAt(0);
+        }
+        if (repetido) return false;
+        return verificador(valor, 9) == valor.charAt(9) - '0' && verificador(valor, 10) == valor.charAt(10) - '0';
+    }
+
+    // Dígito verificador da posição: soma dos anteriores com pesos decrescentes a partir de posicao + 1
+    private static int verificador(String valor, int posicao) {
+        int soma = 0;
+        for (int i = 0; i < posicao; i++) {
+            soma += (valor.charAt(i) - '0') * (posicao + 1 - i);
+        }
+        int resto = soma * 10 % 11;
+        return resto == 10 ? 0 : resto;
+    }
+
+    // Cliente ou funcionário; campos vazios são aceitos, como nas telas. Devolve a mensagem de
+    // erro, ou null se os valores são aceitos
+    static String pessoa(String nome, String email, String telefone, String cpf, String cep, String sexo) {
+        if (!letras(nome, 3)) return "Nome inválido (mín. 3 letras, apenas letras e espaços)";
+        if (!email.isEmpty() && !email(email)) return "Email inválido";
+        if (!telefone.isEmpty() && !telefone(telefone)) return "Telefone deve ter 11 dígitos numéricos";
+        if (!cpf.isEmpty() && !digitos(cpf, 11)) return "CPF deve ter 11 dígitos numéricos";
+        if (!cpf.isEmpty() && !cpf(cpf)) return "CPF inválido (dígitos verificadores não conferem)";
+        if (!cep.isEmpty() && !cep(cep)) return "CEP deve ter 8 dígitos numéricos";
+        if (!sexo.isEmpty() && !opcao(SEXOS_PESSOA, sexo) && !letras(sexo, 2)) return "Sexo inválido (mín. 2 letras, apenas letras e espaços)";
+        return null;
+    }
+
+    static String animal(String nome, String raca, String sexo) {
+        if (!letras(nome, 2)) return "Nome de animal inválido (mín. 2 letras, apenas letras e espaços)";
+        if (!opcao(RACAS, raca) && !letras(raca, 2)) return "Raça inválida (mín. 2 letras, apenas letras e espaços)";
+        if (!sexo.isEmpty() && !opcao(SEXOS_ANIMAL, sexo)) return "Sexo do animal deve ser Macho ou Fêmea";
+        return null;
+    }
+
+    private static boolean opcao(String[] opcoes, String valor) {
+        for (String opcao : opcoes) {
+            if (opcao.equals(valor)) return true;
+        }
+        return false;
+    }
+}